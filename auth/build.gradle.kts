@@ -3,6 +3,7 @@ plugins {
 	eclipse
 	id("org.springframework.boot") version "3.4.1"
 	id("io.spring.dependency-management") version "1.1.7"
+	id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "com.thisjowi"
@@ -72,3 +73,33 @@ dependencyManagement {
 tasks.withType<Test> {
 	useJUnitPlatform()
 }
+
+tasks.register<JavaExec>("buildBreachCorpus") {
+	group = "application"
+	description = "Compacts a Have I Been Pwned SHA-1 dump into the memory-mapped breach corpus"
+	classpath = sourceSets["main"].runtimeClasspath
+	mainClass = "com.thisjowi.auth.utils.BreachCorpusBuilder"
+	args = listOfNotNull(
+		project.findProperty("breach.input")?.toString(),
+		project.findProperty("breach.output")?.toString(),
+		project.findProperty("breach.min-count")?.toString()
+	)
+}
+
+tasks.register<JavaExec>("breachBenchmark") {
+	group = "verification"
+	description = "Measures breach corpus lookups over a synthetic corpus"
+	classpath = sourceSets["test"].runtimeClasspath
+	mainClass = "com.thisjowi.auth.bench.BreachCorpusBenchmark"
+	maxHeapSize = "2g"
+	systemProperties(project.properties.filterKeys { it.startsWith("bench.") })
+}
+
+// ./gradlew jmh: sampled latency of the password strength estimator, see PasswordStrengthBenchmark
+jmh {
+	benchmarkMode = listOf("sample")
+	timeUnit = "us"
+	warmupIterations = 3
+	iterations = 5
+	fork = 1
+}
@@ -48,6 +48,8 @@ public class SecurityConfig {
                     "/api/v1/auth/user",
                     "/api/v1/auth/validate"
                 ).permitAll()
+                // Breach lookups from the other services, by SHA-1 hash; the controller checks the service token
+                .requestMatchers("/api/v1/auth/breach-check").permitAll()
                 // Documentation routes
                 .requestMatchers(
                     "/swagger-ui/**",
@@ -13,6 +13,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
 import java.util.Map;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -22,7 +25,9 @@ import com.thisjowi.auth.repository.UserRepository;
 import com.thisjowi.auth.service.UserService;
 import com.thisjowi.auth.service.ChangePasswordService;
 import com.thisjowi.auth.service.EmailService;
+import com.thisjowi.auth.utils.BreachCorpus;
 import com.thisjowi.auth.utils.JwtUtil;
+import com.thisjowi.auth.utils.ServiceToken;
 import com.thisjowi.auth.dto.ChangePasswordRequest;
 
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -39,13 +44,19 @@ public class AuthRestController {
     private final JwtUtil jwtUtil;
     private final ChangePasswordService changePasswordService;
     private final EmailService emailService;
+    private final BreachCorpus breachCorpus;
+    private final ServiceToken serviceToken;
     private final Logger log = LoggerFactory.getLogger(AuthRestController.class);
 
+    private static final int MAX_BREACH_CHECK_HASHES = 1000;
+
     public AuthRestController(AuthenticationManager authenticationManager,
                               UserRepository userRepository, PasswordEncoder passwordEncoder,
                               UserService userService, JwtUtil jwtUtil,
                               ChangePasswordService changePasswordService,
-                              EmailService emailService) {
+                              EmailService emailService,
+                              BreachCorpus breachCorpus,
+                              ServiceToken serviceToken) {
         this.authenticationManager = authenticationManager;
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
@@ -53,6 +64,8 @@ public class AuthRestController {
         this.jwtUtil = jwtUtil;
         this.changePasswordService = changePasswordService;
         this.emailService = emailService;
+        this.breachCorpus = breachCorpus;
+        this.serviceToken = serviceToken;
     }
 
     @PostMapping("/login")
@@ -117,6 +130,13 @@ public class AuthRestController {
                     .body(Map.of("success", false, "message", "Email already exists"));
         }
 
+        // Same strength threshold and breach check as a password change
+        Map<String, Object> strengthValidation = changePasswordService.validatePasswordStrength(password);
+        if (!(boolean) strengthValidation.get("isValid")) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("success", false, "message", (String) strengthValidation.get("error")));
+        }
+
         User user = new User();
         user.setEmail(email);
         user.setPassword(passwordEncoder.encode(password));
@@ -427,13 +447,15 @@ public class AuthRestController {
                 log.debug("Password strength validation passed");
                 return ResponseEntity.ok(Map.of(
                         "success", true,
-                        "message", "Password is strong and meets all requirements"
+                        "message", "Password is strong and meets all requirements",
+                        "score", result.get("score")
                 ));
             } else {
                 log.debug("Password strength validation failed: {}", result.get("error"));
                 return ResponseEntity.ok(Map.of(
                         "success", false,
-                        "message", (String) result.get("error")
+                        "message", (String) result.get("error"),
+                        "score", result.getOrDefault("score", 0)
                 ));
             }
         } catch (Exception e) {
@@ -443,6 +465,38 @@ public class AuthRestController {
         }
     }
 
+    /**
+     * Breach corpus lookup for the other services, so the corpus is mapped by this service only.
+     * Takes hex SHA-1 hashes instead of passwords and answers one flag per hash, in order.
+     * Internal only: callers must send the service token.
+     */
+    @PostMapping("/breach-check")
+    public ResponseEntity<?> breachCheck(@RequestHeader(value = ServiceToken.HEADER, required = false) String token,
+                                         @RequestBody Map<String, List<String>> body) {
+        if (!serviceToken.matches(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(Map.of("success", false, "message", "Internal endpoint"));
+        }
+        List<String> hashes = body.get("hashes");
+        if (hashes == null || hashes.size() > MAX_BREACH_CHECK_HASHES) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("success", false, "message", "Expected up to " + MAX_BREACH_CHECK_HASHES + " hashes"));
+        }
+        List<Boolean> breached = new ArrayList<>(hashes.size());
+        try {
+            for (String hash : hashes) {
+                if (hash == null || hash.length() != 40) {
+                    throw new IllegalArgumentException(hash);
+                }
+                breached.add(breachCorpus.contains(HexFormat.of().parseHex(hash)));
+            }
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(Map.of("success", false, "message", "Hashes must be 40 hexadecimal characters"));
+        }
+        return ResponseEntity.ok(Map.of("breached", breached));
+    }
+
     @DeleteMapping("/delete-account")
     public ResponseEntity<?> deleteAccount(@RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authHeader) {
         if (authHeader == null || !authHeader.startsWith("Bearer ")) {
@@ -0,0 +1,17 @@
+package com.thisjowi.auth.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO for account deletion events; other services purge the user's data when they receive it
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserDeletedEvent {
+    private Long userId;
+    private String eventType; // "USER_DELETED"
+    private Long timestamp;
+}
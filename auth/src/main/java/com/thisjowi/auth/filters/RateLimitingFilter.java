@@ -1,5 +1,6 @@
 package com.thisjowi.auth.filters;
 
+import com.thisjowi.auth.utils.ServiceToken;
 import io.github.bucket4j.Bandwidth;
 import io.github.bucket4j.Bucket;
 import io.github.bucket4j.Refill;
@@ -31,6 +32,12 @@ public class RateLimitingFilter extends OncePerRequestFilter {
     private static final int REGISTER_REQUESTS_PER_MINUTE = 3;
     private static final int CHANGE_PASSWORD_REQUESTS_PER_MINUTE = 3;
     private static final int DEFAULT_REQUESTS_PER_MINUTE = 100;
+
+    private final ServiceToken serviceToken;
+
+    public RateLimitingFilter(ServiceToken serviceToken) {
+        this.serviceToken = serviceToken;
+    }
     
     @Override
     protected void doFilterInternal(HttpServletRequest request,
@@ -97,8 +104,11 @@ public class RateLimitingFilter extends OncePerRequestFilter {
     @Override
     protected boolean shouldNotFilter(HttpServletRequest request) throws ServletException {
         String path = request.getRequestURI();
-        // Don't apply rate limiting to health checks, metrics, etc.
+        // Don't apply rate limiting to health checks, metrics, etc., nor to the other services'
+        // breach lookups, which would all share the bucket of their pod's address. Breach lookups
+        // without the service token are limited like any other request.
         return path.equals("/actuator/health") || 
+               (path.equals("/api/v1/auth/breach-check") && serviceToken.matches(request.getHeader(ServiceToken.HEADER))) ||
                path.equals("/swagger-ui.html") ||
                path.startsWith("/swagger-ui/") ||
                path.startsWith("/v3/api-docs");
@@ -7,6 +7,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
+import com.thisjowi.auth.dto.UserDeletedEvent;
 import com.thisjowi.auth.dto.UserRegisteredEvent;
 import com.thisjowi.auth.entity.User;
 
@@ -51,4 +52,24 @@ public class KafkaProducerService {
             logger.error("Error serializing user registered event", e);
         }
     }
+
+    /**
+     * Send user deleted event to Kafka. Keyed by user id so it stays ordered after the
+     * registration event of the same user.
+     */
+    public void sendUserDeletedEvent(Long userId) {
+        try {
+            UserDeletedEvent event = new UserDeletedEvent(
+                userId,
+                "USER_DELETED",
+                Instant.now().getEpochSecond()
+            );
+            
+            String message = objectMapper.writeValueAsString(event);
+            kafkaTemplate.send("auth-events", userId.toString(), message);
+            logger.info("User deleted event sent to Kafka: userId={}", userId);
+        } catch (JsonProcessingException e) {
+            logger.error("Error serializing user deleted event", e);
+        }
+    }
 }
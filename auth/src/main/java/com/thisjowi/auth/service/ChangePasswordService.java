@@ -2,11 +2,14 @@ package com.thisjowi.auth.service;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import com.thisjowi.auth.dto.ChangePasswordRequest;
 import com.thisjowi.auth.entity.User;
+import com.thisjowi.auth.utils.BreachCorpus;
 import com.thisjowi.auth.utils.JwtUtil;
+import com.thisjowi.auth.utils.PasswordStrengthEstimator;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -23,13 +26,22 @@ public class ChangePasswordService {
     private final UserService userService;
     private final PasswordEncoder passwordEncoder;
     private final JwtUtil jwtUtil;
+    private final BreachCorpus breachCorpus;
+    private final PasswordStrengthEstimator strengthEstimator;
+    private final int minScore;
 
     public ChangePasswordService(UserService userService,
                                  PasswordEncoder passwordEncoder,
-                                 JwtUtil jwtUtil) {
+                                 JwtUtil jwtUtil,
+                                 BreachCorpus breachCorpus,
+                                 PasswordStrengthEstimator strengthEstimator,
+                                 @Value("${app.password-strength.min-score:3}") int minScore) {
         this.userService = userService;
         this.passwordEncoder = passwordEncoder;
         this.jwtUtil = jwtUtil;
+        this.breachCorpus = breachCorpus;
+        this.strengthEstimator = strengthEstimator;
+        this.minScore = minScore;
     }
 
     /**
@@ -109,7 +121,7 @@ public class ChangePasswordService {
      * Validate password strength.
      * 
      * @param password Password to validate
-     * @return Map with validation result and error messages if any
+     * @return Map with validation result, the estimated score (0-4) and error messages if any
      */
     public Map<String, Object> validatePasswordStrength(String password) {
         Map<String, Object> result = new HashMap<>();
@@ -127,41 +139,23 @@ public class ChangePasswordService {
             return result;
         }
 
-        // Check password character requirements using linear iteration (prevents ReDoS)
-        boolean hasUpper = false;
-        boolean hasLower = false;
-        boolean hasDigit = false;
-        boolean hasSpecial = false;
-        String specialChars = "!@#$%^&*()_+-=[]{}; ':\"\\|,.<>?/";
-        
-        for (char c : password.toCharArray()) {
-            if (Character.isUpperCase(c)) hasUpper = true;
-            else if (Character.isLowerCase(c)) hasLower = true;
-            else if (Character.isDigit(c)) hasDigit = true;
-            else if (specialChars.indexOf(c) >= 0) hasSpecial = true;
-        }
-        
-        if (!hasUpper) {
-            result.put("isValid", false);
-            result.put("error", "Password must contain at least one uppercase letter");
-            return result;
-        }
-        
-        if (!hasLower) {
+        // Estimated guesses instead of character-class rules: "Password1!" passes those but is guessed quickly
+        PasswordStrengthEstimator.Estimate estimate = strengthEstimator.estimate(password);
+        result.put("score", estimate.score());
+        result.put("guessesLog10", Math.round(estimate.guessesLog10() * 100) / 100.0);
+        if (estimate.score() < minScore) {
             result.put("isValid", false);
-            result.put("error", "Password must contain at least one lowercase letter");
+            result.put("error", estimate.warning() != null
+                    ? "Password is too easy to guess. " + estimate.warning()
+                    : "Password is too easy to guess, add more words or characters");
             return result;
         }
-        
-        if (!hasDigit) {
-            result.put("isValid", false);
-            result.put("error", "Password must contain at least one digit");
-            return result;
-        }
-        
-        if (!hasSpecial) {
+
+        // Offline lookup in the memory-mapped breach corpus, no external call
+        if (breachCorpus.isBreached(password)) {
             result.put("isValid", false);
-            result.put("error", "Password must contain at least one special character (!@#$%^&*...)");
+            result.put("breached", true);
+            result.put("error", "This password has appeared in a data breach, please choose another one");
             return result;
         }
 
@@ -11,6 +11,8 @@ import org.springframework.cache.CacheManager;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import com.thisjowi.auth.entity.Account;
 import com.thisjowi.auth.entity.Deployment;
@@ -56,6 +58,14 @@ public class UserService {
             
             log.info("Successfully deleted user with ID: {}", userId);
             
+            // Tell note, password and otp to purge the user's data, but only once the delete is committed
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    kafkaProducerService.sendUserDeletedEvent(userId);
+                }
+            });
+            
             // Programmatically evict usersById cache entry if present
             var cacheById = cacheManager.getCache("usersById");
             if (cacheById != null) {
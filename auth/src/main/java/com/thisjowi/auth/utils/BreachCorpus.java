@@ -0,0 +1,212 @@
+package com.thisjowi.auth.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Offline check against known-breached passwords, without calling any external API.
+ *
+ * The corpus is a file written by {@link BreachCorpusBuilder} from a Have I Been Pwned style SHA-1
+ * dump and memory-mapped read-only, so the OS page cache holds it rather than the heap.
+ * Layout (big-endian):
+ * <pre>
+ * int magic "TJBC", int version, long count
+ * long[65537] fan-out: index of the first record of each 16-bit hash prefix, then count
+ * long[count] records: SHA-1 bytes 2..9 of every hash, sorted (unsigned) within its prefix
+ * </pre>
+ * A lookup reads the fan-out table (on heap, 512 KB) and searches its bucket in a few probes,
+ * without allocating. 80 bits of hash are kept, so a false positive has a chance of
+ * about count / 2^80. Disabled when {@code app.breach-corpus.path} is not set.
+ *
+ * This is the only copy: the password service checks its entries through POST /breach-check.
+ */
+@Component
+public class BreachCorpus {
+    private static final Logger log = LoggerFactory.getLogger(BreachCorpus.class);
+
+    public static final int MAGIC = 0x544A4243;
+    public static final int VERSION = 1;
+    public static final int FANOUT_SIZE = 1 << 16;
+    public static final int HEADER_SIZE = Integer.BYTES * 2 + Long.BYTES + (FANOUT_SIZE + 1) * Long.BYTES;
+
+    // One mapping holds at most 2^27 records (1 GiB); a MappedByteBuffer cannot exceed 2 GiB
+    private static final int CHUNK_SHIFT = 27;
+    private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+    private static final int INTERPOLATION_STEPS = 4;
+
+    private static final ThreadLocal<Sha1> SHA1 = ThreadLocal.withInitial(Sha1::new);
+
+    private final long[] fanout;
+    private final MappedByteBuffer[] chunks;
+    private final long count;
+
+    public BreachCorpus(@Value("${app.breach-corpus.path:}") String path) {
+        if (path == null || path.isBlank()) {
+            log.info("No app.breach-corpus.path configured, breached-password checks are disabled");
+            this.fanout = null;
+            this.chunks = new MappedByteBuffer[0];
+            this.count = 0;
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(Path.of(path), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // read the whole header
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IllegalArgumentException("Not a breach corpus file: " + path);
+            }
+            this.count = header.getLong();
+            this.fanout = new long[FANOUT_SIZE + 1];
+            header.asLongBuffer().get(fanout);
+            if (fanout[FANOUT_SIZE] != count || channel.size() != HEADER_SIZE + count * Long.BYTES) {
+                throw new IllegalArgumentException("Breach corpus file is truncated or corrupt: " + path);
+            }
+
+            int chunkCount = (int) ((count + CHUNK_MASK) >>> CHUNK_SHIFT);
+            this.chunks = new MappedByteBuffer[chunkCount];
+            for (int i = 0; i < chunkCount; i++) {
+                long first = (long) i << CHUNK_SHIFT;
+                long records = Math.min(CHUNK_MASK + 1, count - first);
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + first * Long.BYTES, records * Long.BYTES);
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not open breach corpus " + path, e);
+        }
+        log.info("✓ Breach corpus loaded with {} hashes", count);
+    }
+
+    public boolean isEnabled() {
+        return fanout != null;
+    }
+
+    public long size() {
+        return count;
+    }
+
+    /**
+     * Whether the password appears in the corpus. Only passwords with non-ASCII characters
+     * allocate (for their UTF-8 encoding).
+     */
+    public boolean isBreached(String password) {
+        if (fanout == null || password == null) {
+            return false;
+        }
+        byte[] digest = SHA1.get().hash(password);
+        return contains(digest);
+    }
+
+    /**
+     * Whether a SHA-1 hash (20 bytes, only the first 10 are used) appears in the corpus.
+     */
+    public boolean contains(byte[] sha1) {
+        int prefix = (sha1[0] & 0xFF) << 8 | (sha1[1] & 0xFF);
+        long suffix = 0;
+        for (int i = 2; i < 10; i++) {
+            suffix = suffix << 8 | (sha1[i] & 0xFF);
+        }
+        return contains(prefix, suffix);
+    }
+
+    /**
+     * Search of the prefix bucket for SHA-1 bytes 2..9. Hashes are uniformly distributed, so the
+     * position is interpolated from the value (2-3 probes for 1B hashes instead of ~14 for a binary
+     * search); after a few steps it falls back to bisection, which bounds the worst case.
+     */
+    public boolean contains(int prefix, long suffix) {
+        if (fanout == null) {
+            return false;
+        }
+        long low = fanout[prefix];
+        long high = fanout[prefix + 1] - 1;
+        // Known bounds of the values in [low, high] as fractions of the 64-bit range
+        double lowValue = 0.0;
+        double highValue = 1.0;
+        double target = fraction(suffix);
+        int steps = 0;
+        while (low <= high) {
+            long mid;
+            if (steps++ < INTERPOLATION_STEPS && highValue > lowValue) {
+                double position = (target - lowValue) / (highValue - lowValue) * (high - low + 1);
+                mid = Math.min(high, low + Math.max(0, (long) position));
+            } else {
+                mid = (low + high) >>> 1;
+            }
+            long value = record(mid);
+            int cmp = Long.compareUnsigned(value, suffix);
+            if (cmp < 0) {
+                low = mid + 1;
+                lowValue = fraction(value);
+            } else if (cmp > 0) {
+                high = mid - 1;
+                highValue = fraction(value);
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static double fraction(long unsigned) {
+        return (unsigned >>> 11) * 0x1.0p-53;
+    }
+
+    private long record(long index) {
+        return chunks[(int) (index >>> CHUNK_SHIFT)].getLong((int) ((index & CHUNK_MASK) << 3));
+    }
+
+    // Per-thread digest and buffers, reused across lookups
+    private static final class Sha1 {
+        private final MessageDigest digest;
+        private final byte[] out = new byte[20];
+        private byte[] ascii = new byte[128];
+
+        Sha1() {
+            try {
+                digest = MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-1 not available", e);
+            }
+        }
+
+        byte[] hash(String password) {
+            int length = password.length();
+            if (ascii.length < length) {
+                ascii = new byte[Math.max(length, ascii.length * 2)];
+            }
+            for (int i = 0; i < length; i++) {
+                char c = password.charAt(i);
+                if (c >= 0x80) {
+                    digest.update(password.getBytes(StandardCharsets.UTF_8));
+                    return finish();
+                }
+                ascii[i] = (byte) c;
+            }
+            digest.update(ascii, 0, length);
+            return finish();
+        }
+
+        private byte[] finish() {
+            try {
+                digest.digest(out, 0, out.length);
+                return out;
+            } catch (DigestException e) {
+                throw new IllegalStateException("SHA-1 digest failed", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.thisjowi.auth.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Offline tool that compacts a Have I Been Pwned SHA-1 dump into the file read by {@link BreachCorpus}.
+ *
+ * The input is the "ordered by hash" text dump ({@code <40 hex chars>:<count>} per line, as written
+ * by the official downloader). It is streamed once with constant memory; 1B hashes become an 8 GB file.
+ * <pre>
+ * ./gradlew buildBreachCorpus -Pbreach.input=pwnedpasswords.txt -Pbreach.output=breach.bin [-Pbreach.min-count=2]
+ * </pre>
+ * With min-count, hashes seen fewer times than that in breaches are left out to shrink the file.
+ */
+public final class BreachCorpusBuilder {
+
+    private BreachCorpusBuilder() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BreachCorpusBuilder <hibp sha1 dump> <output file> [min count]");
+            System.exit(2);
+        }
+        Path input = Path.of(args[0]);
+        Path output = Path.of(args[1]);
+        long minCount = args.length > 2 ? Long.parseLong(args[2]) : 1;
+
+        long lines = 0;
+        long started = System.nanoTime();
+        try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.US_ASCII);
+             Writer writer = new Writer(output)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines++;
+                if (line.length() < 40) {
+                    continue;
+                }
+                int colon = line.indexOf(':', 40);
+                if (colon > 0 && Long.parseLong(line, colon + 1, line.length(), 10) < minCount) {
+                    continue;
+                }
+                writer.add((int) parseHex(line, 0, 4), parseHex(line, 4, 20));
+                if (lines % 100_000_000 == 0) {
+                    System.out.printf("%,d lines read%n", lines);
+                }
+            }
+            System.out.printf("%,d hashes written to %s in %ds%n", writer.count(), output,
+                    (System.nanoTime() - started) / 1_000_000_000L);
+        }
+    }
+
+    private static long parseHex(String s, int from, int to) {
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = Character.digit(s.charAt(i), 16);
+            if (digit < 0) {
+                throw new IllegalArgumentException("Not a SHA-1 hex hash: " + s);
+            }
+            value = value << 4 | digit;
+        }
+        return value;
+    }
+
+    /**
+     * Writes records in hash order, then the header with the fan-out table. Hashes that are equal
+     * in the 80 stored bits are written once.
+     */
+    public static final class Writer implements Closeable {
+        private final FileChannel channel;
+        private final DataOutputStream records;
+        private final long[] fanout = new long[BreachCorpus.FANOUT_SIZE + 1];
+        private int lastPrefix = -1;
+        private long lastSuffix;
+        private long count;
+
+        public Writer(Path output) throws IOException {
+            this.channel = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            channel.position(BreachCorpus.HEADER_SIZE);
+            this.records = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 20));
+        }
+
+        public void add(int prefix, long suffix) throws IOException {
+            if (prefix < lastPrefix || (prefix == lastPrefix && Long.compareUnsigned(suffix, lastSuffix) <= 0)) {
+                if (prefix == lastPrefix && suffix == lastSuffix) {
+                    return;
+                }
+                throw new IllegalArgumentException("Input is not sorted by hash at record " + count);
+            }
+            // Buckets between the last prefix and this one are empty and start here
+            for (int p = lastPrefix + 1; p <= prefix; p++) {
+                fanout[p] = count;
+            }
+            records.writeLong(suffix);
+            lastPrefix = prefix;
+            lastSuffix = suffix;
+            count++;
+        }
+
+        public long count() {
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            records.flush();
+            for (int p = lastPrefix + 1; p <= BreachCorpus.FANOUT_SIZE; p++) {
+                fanout[p] = count;
+            }
+            ByteBuffer header = ByteBuffer.allocate(BreachCorpus.HEADER_SIZE);
+            header.putInt(BreachCorpus.MAGIC).putInt(BreachCorpus.VERSION).putLong(count);
+            header.asLongBuffer().put(fanout);
+            header.position(BreachCorpus.HEADER_SIZE).flip();
+            long position = 0;
+            while (header.hasRemaining()) {
+                position += channel.write(header, position);
+            }
+            channel.close();
+        }
+    }
+}
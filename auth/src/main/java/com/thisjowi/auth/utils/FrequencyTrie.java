@@ -0,0 +1,129 @@
+package com.thisjowi.auth.utils;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable trie of frequency-ranked dictionaries, flattened into parallel arrays after loading:
+ * node {@code n} has its children in {@code [childStart[n], childStart[n + 1])} of the edge arrays,
+ * sorted by label, so a step is a binary search over a handful of chars and no objects are touched.
+ * A node that ends a word holds the word's rank (1 = most common) and its dictionary.
+ */
+final class FrequencyTrie {
+
+    static final int ROOT = 0;
+    static final int NONE = -1;
+
+    private final int[] childStart;
+    private final char[] labels;
+    private final int[] targets;
+    private final int[] ranks;
+    private final byte[] dictionaries;
+
+    private FrequencyTrie(int[] childStart, char[] labels, int[] targets, int[] ranks, byte[] dictionaries) {
+        this.childStart = childStart;
+        this.labels = labels;
+        this.targets = targets;
+        this.ranks = ranks;
+        this.dictionaries = dictionaries;
+    }
+
+    /**
+     * @param dictionaries word lists, most common word first; a word in several lists keeps its best rank
+     */
+    static FrequencyTrie build(List<List<String>> dictionaries) {
+        BuildNode root = new BuildNode();
+        int nodeCount = 1;
+        for (int d = 0; d < dictionaries.size(); d++) {
+            List<String> words = dictionaries.get(d);
+            for (int r = 0; r < words.size(); r++) {
+                String word = words.get(r).trim().toLowerCase(Locale.ROOT);
+                if (word.isEmpty()) {
+                    continue;
+                }
+                BuildNode node = root;
+                for (int i = 0; i < word.length(); i++) {
+                    BuildNode child = node.children.get(word.charAt(i));
+                    if (child == null) {
+                        child = new BuildNode();
+                        node.children.put(word.charAt(i), child);
+                        nodeCount++;
+                    }
+                    node = child;
+                }
+                if (node.rank == 0 || r + 1 < node.rank) {
+                    node.rank = r + 1;
+                    node.dictionary = (byte) d;
+                }
+            }
+        }
+
+        // Breadth-first numbering: a node's children get consecutive ids and edges
+        int[] childStart = new int[nodeCount + 1];
+        char[] labels = new char[nodeCount - 1];
+        int[] targets = new int[nodeCount - 1];
+        int[] ranks = new int[nodeCount];
+        byte[] dicts = new byte[nodeCount];
+        ArrayDeque<BuildNode> queue = new ArrayDeque<>();
+        queue.add(root);
+        int id = 0;
+        int nextId = 1;
+        int edge = 0;
+        while (!queue.isEmpty()) {
+            BuildNode node = queue.poll();
+            childStart[id] = edge;
+            ranks[id] = node.rank;
+            dicts[id] = node.dictionary;
+            for (Map.Entry<Character, BuildNode> child : node.children.entrySet()) {
+                labels[edge] = child.getKey();
+                targets[edge] = nextId++;
+                edge++;
+                queue.add(child.getValue());
+            }
+            id++;
+        }
+        childStart[nodeCount] = edge;
+        return new FrequencyTrie(childStart, labels, targets, ranks, dicts);
+    }
+
+    int child(int node, char c) {
+        int low = childStart[node];
+        int high = childStart[node + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char label = labels[mid];
+            if (label < c) {
+                low = mid + 1;
+            } else if (label > c) {
+                high = mid - 1;
+            } else {
+                return targets[mid];
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * @return the rank of the word ending at this node, 0 if none does
+     */
+    int rank(int node) {
+        return ranks[node];
+    }
+
+    int dictionary(int node) {
+        return dictionaries[node];
+    }
+
+    int size() {
+        return ranks.length;
+    }
+
+    private static final class BuildNode {
+        final Map<Character, BuildNode> children = new TreeMap<>();
+        int rank;
+        byte dictionary;
+    }
+}
@@ -0,0 +1,107 @@
+package com.thisjowi.auth.utils;
+
+import java.util.Arrays;
+
+/**
+ * Adjacency of the keys of a US QWERTY keyboard, for spotting walks like "qwerty" or "zaq12wsx".
+ * Rows are laid out on a slanted grid in which every key has up to six neighbours:
+ * left, upper-left, upper-right, right, lower-right and lower-left. Both characters of a key
+ * (e.g. '1' and '!') map to the same key, so shifted walks are found too.
+ */
+final class KeyboardGraph {
+
+    static final int DIRECTIONS = 6;
+    static final int NO_KEY = -1;
+
+    private static final String[][] ROWS = {
+            {"`1234567890-=", "~!@#$%^&*()_+"},
+            {"qwertyuiop[]\\", "QWERTYUIOP{}|"},
+            {"asdfghjkl;'", "ASDFGHJKL:\""},
+            {"zxcvbnm,./", "ZXCVBNM<>?"},
+    };
+    // Column of each row's first key on the slanted grid
+    private static final int[] ROW_OFFSETS = {0, 1, 1, 1};
+    private static final int[][] NEIGHBOUR_STEPS = {{-1, 0}, {0, -1}, {1, -1}, {1, 0}, {0, 1}, {-1, 1}};
+
+    private final int[] keyOf = new int[128];
+    private final boolean[] shifted = new boolean[128];
+    private final int[] neighbours;
+    private final int keyCount;
+    private final double averageDegree;
+
+    KeyboardGraph() {
+        Arrays.fill(keyOf, NO_KEY);
+        int columns = 0;
+        for (int r = 0; r < ROWS.length; r++) {
+            columns = Math.max(columns, ROW_OFFSETS[r] + ROWS[r][0].length());
+        }
+        int[][] grid = new int[ROWS.length][columns];
+        for (int[] row : grid) {
+            Arrays.fill(row, NO_KEY);
+        }
+        int key = 0;
+        for (int r = 0; r < ROWS.length; r++) {
+            String plain = ROWS[r][0];
+            String shift = ROWS[r][1];
+            for (int c = 0; c < plain.length(); c++) {
+                grid[r][ROW_OFFSETS[r] + c] = key;
+                keyOf[plain.charAt(c)] = key;
+                keyOf[shift.charAt(c)] = key;
+                shifted[shift.charAt(c)] = shift.charAt(c) != plain.charAt(c);
+                key++;
+            }
+        }
+        keyCount = key;
+        neighbours = new int[keyCount * DIRECTIONS];
+        Arrays.fill(neighbours, NO_KEY);
+        int edges = 0;
+        for (int r = 0; r < grid.length; r++) {
+            for (int c = 0; c < columns; c++) {
+                int k = grid[r][c];
+                if (k == NO_KEY) {
+                    continue;
+                }
+                for (int d = 0; d < DIRECTIONS; d++) {
+                    int nc = c + NEIGHBOUR_STEPS[d][0];
+                    int nr = r + NEIGHBOUR_STEPS[d][1];
+                    if (nr >= 0 && nr < grid.length && nc >= 0 && nc < columns && grid[nr][nc] != NO_KEY) {
+                        neighbours[k * DIRECTIONS + d] = grid[nr][nc];
+                        edges++;
+                    }
+                }
+            }
+        }
+        averageDegree = (double) edges / keyCount;
+    }
+
+    int key(char c) {
+        return c < 128 ? keyOf[c] : NO_KEY;
+    }
+
+    boolean isShifted(char c) {
+        return c < 128 && shifted[c];
+    }
+
+    /**
+     * @return the direction from key {@code from} to key {@code to}, or -1 if they are not adjacent
+     */
+    int direction(int from, int to) {
+        for (int d = 0; d < DIRECTIONS; d++) {
+            if (neighbours[from * DIRECTIONS + d] == to) {
+                return d;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Starting positions for a walk: both characters of every key.
+     */
+    int startingPositions() {
+        return keyCount * 2;
+    }
+
+    double averageDegree() {
+        return averageDegree;
+    }
+}
@@ -0,0 +1,635 @@
+package com.thisjowi.auth.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Year;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Password strength estimation in the style of zxcvbn: instead of counting character classes it
+ * estimates how many guesses an attacker who knows common patterns would need.
+ *
+ * The password is matched against ranked dictionaries (with l33t substitutions and reversed),
+ * keyboard walks, repeats, sequences and dates. A dynamic program then picks the sequence of
+ * matches and brute-forced gaps that needs the fewest guesses, so "Password1!" scores as a common
+ * word plus two cheap characters. Scores run from 0 (too guessable) to 4, like zxcvbn's.
+ *
+ * Dictionaries are loaded once into a flat {@link FrequencyTrie}; matching and the dynamic program
+ * work on per-thread scratch arrays, so an estimate allocates only its result. Only the first
+ * 64 characters are analysed, longer passwords count every further character as brute force.
+ */
+@Component
+public class PasswordStrengthEstimator {
+    private static final Logger log = LoggerFactory.getLogger(PasswordStrengthEstimator.class);
+
+    public static final String DEFAULT_DICTIONARIES = "classpath:password-strength/passwords.txt,"
+            + "classpath:password-strength/english.txt,classpath:password-strength/names.txt";
+
+    public static final int MAX_ANALYZED = 64;
+
+    static final byte DICTIONARY = 1;
+    static final byte SPATIAL = 2;
+    static final byte REPEAT = 3;
+    static final byte SEQUENCE = 4;
+    static final byte DATE = 5;
+
+    private static final int MIN_WORD_LENGTH = 2;
+    private static final int MAX_REPEAT_BASE = 16;
+    private static final double LOG10_2 = Math.log10(2);
+    // Each additional match in the decomposition costs at least this many guesses (zxcvbn's 10000)
+    private static final double LOG10_SEQUENCE_PENALTY = 4;
+    private static final int MIN_YEAR_SPACE = 20;
+    private static final int REFERENCE_YEAR = Year.now().getValue();
+    private static final String DATE_SEPARATORS = " -/._\\";
+    private static final double[] LOG10_FACTORIAL = new double[MAX_ANALYZED + 2];
+    private static final char[][] L33T = new char[128][];
+
+    static {
+        for (int i = 2; i < LOG10_FACTORIAL.length; i++) {
+            LOG10_FACTORIAL[i] = LOG10_FACTORIAL[i - 1] + Math.log10(i);
+        }
+        String[][] table = {
+                {"4@", "a"}, {"8", "b"}, {"({[<", "c"}, {"3", "e"}, {"69", "g"}, {"!", "i"}, {"1|", "il"},
+                {"7", "lt"}, {"0", "o"}, {"$5", "s"}, {"+", "t"}, {"%", "x"}, {"2", "z"},
+        };
+        for (String[] entry : table) {
+            for (char sub : entry[0].toCharArray()) {
+                L33T[sub] = entry[1].toCharArray();
+            }
+        }
+    }
+
+    /**
+     * @param score 0-4, see {@link #score(double)}
+     * @param guessesLog10 log10 of the estimated number of guesses
+     * @param warning what makes the password guessable, or null
+     */
+    public record Estimate(int score, double guessesLog10, String warning) {
+    }
+
+    private final FrequencyTrie trie;
+    private final KeyboardGraph keyboard = new KeyboardGraph();
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    public PasswordStrengthEstimator(
+            @Value("${app.password-strength.dictionaries:" + DEFAULT_DICTIONARIES + "}") String dictionaries,
+            ResourceLoader resourceLoader) {
+        List<List<String>> lists = new ArrayList<>();
+        for (String location : dictionaries.split(",")) {
+            if (!location.isBlank()) {
+                lists.add(load(resourceLoader.getResource(location.trim())));
+            }
+        }
+        this.trie = FrequencyTrie.build(lists);
+        log.info("✓ Password strength dictionaries loaded: {} lists, {} trie nodes", lists.size(), trie.size());
+    }
+
+    /**
+     * 0: too guessable (< 10^3 guesses), 1: very guessable (< 10^6), 2: somewhat guessable (< 10^8),
+     * 3: safely unguessable online (< 10^10), 4: very unguessable.
+     */
+    public static int score(double guessesLog10) {
+        if (guessesLog10 < 3) {
+            return 0;
+        } else if (guessesLog10 < 6) {
+            return 1;
+        } else if (guessesLog10 < 8) {
+            return 2;
+        } else if (guessesLog10 < 10) {
+            return 3;
+        }
+        return 4;
+    }
+
+    public Estimate estimate(String password) {
+        if (password == null || password.isEmpty()) {
+            return new Estimate(0, 0, null);
+        }
+        Scratch s = scratch.get();
+        int n = Math.min(password.length(), MAX_ANALYZED);
+        s.count = 0;
+        for (int i = 0; i < n; i++) {
+            char c = password.charAt(i);
+            s.chars[i] = c;
+            s.lower[i] = Character.toLowerCase(c);
+        }
+
+        matchDictionary(s, n);
+        matchSpatial(s, n);
+        matchRepeats(s, n);
+        matchSequences(s, n);
+        matchDates(s, n);
+
+        double guessesLog10 = mostGuessableSequence(s, n) + (password.length() - n);
+        int score = score(guessesLog10);
+        return new Estimate(score, guessesLog10, score > 2 ? null : warning(s));
+    }
+
+    // ---- dictionary ----
+
+    private void matchDictionary(Scratch s, int n) {
+        for (int i = 0; i < n; i++) {
+            walk(s, n, FrequencyTrie.ROOT, i, i, 1, 0);
+            walk(s, n, FrequencyTrie.ROOT, i, i, -1, 0);
+        }
+    }
+
+    // Follows the trie from position j on, trying each character and its l33t readings
+    private void walk(Scratch s, int n, int node, int start, int j, int step, int substitutions) {
+        if (j < 0 || j >= n) {
+            return;
+        }
+        char c = s.lower[j];
+        int next = trie.child(node, c);
+        if (next != FrequencyTrie.NONE) {
+            visit(s, n, next, start, j, step, substitutions);
+        }
+        char[] readings = c < 128 ? L33T[c] : null;
+        if (readings != null) {
+            for (char reading : readings) {
+                next = trie.child(node, reading);
+                if (next != FrequencyTrie.NONE) {
+                    visit(s, n, next, start, j, step, substitutions + 1);
+                }
+            }
+        }
+    }
+
+    private void visit(Scratch s, int n, int node, int start, int j, int step, int substitutions) {
+        int rank = trie.rank(node);
+        int length = Math.abs(j - start) + 1;
+        if (rank > 0 && length >= MIN_WORD_LENGTH) {
+            int from = Math.min(start, j);
+            int to = Math.max(start, j);
+            double guesses = Math.log10(rank) + Math.log10(uppercaseVariations(s, from, to))
+                    + substitutions * LOG10_2 + (step < 0 ? LOG10_2 : 0);
+            s.add(from, to, guesses, DICTIONARY, trie.dictionary(node));
+        }
+        walk(s, n, node, start, j + step, step, substitutions);
+    }
+
+    private static double uppercaseVariations(Scratch s, int from, int to) {
+        int upper = 0;
+        int lower = 0;
+        for (int i = from; i <= to; i++) {
+            if (Character.isUpperCase(s.chars[i])) {
+                upper++;
+            } else if (Character.isLowerCase(s.chars[i])) {
+                lower++;
+            }
+        }
+        if (upper == 0) {
+            return 1;
+        }
+        // All caps, capitalized or only the last letter upper: one extra guess each
+        if (lower == 0 || (upper == 1 && (Character.isUpperCase(s.chars[from]) || Character.isUpperCase(s.chars[to])))) {
+            return 2;
+        }
+        return sumBinomials(upper + lower, Math.min(upper, lower));
+    }
+
+    // ---- keyboard walks ----
+
+    private void matchSpatial(Scratch s, int n) {
+        int i = 0;
+        while (i < n - 2) {
+            int j = i;
+            int lastDirection = -1;
+            int turns = 0;
+            int shifted = keyboard.isShifted(s.chars[i]) ? 1 : 0;
+            while (j + 1 < n) {
+                int from = keyboard.key(s.chars[j]);
+                int to = keyboard.key(s.chars[j + 1]);
+                int direction = from == KeyboardGraph.NO_KEY || to == KeyboardGraph.NO_KEY ? -1 : keyboard.direction(from, to);
+                if (direction < 0) {
+                    break;
+                }
+                if (direction != lastDirection) {
+                    turns++;
+                    lastDirection = direction;
+                }
+                if (keyboard.isShifted(s.chars[j + 1])) {
+                    shifted++;
+                }
+                j++;
+            }
+            if (j - i + 1 >= 3) {
+                s.add(i, j, spatialGuesses(j - i + 1, turns, shifted), SPATIAL, 0);
+                i = j;
+            } else {
+                i++;
+            }
+        }
+    }
+
+    private double spatialGuesses(int length, int turns, int shifted) {
+        double startingPositions = keyboard.startingPositions();
+        double degree = keyboard.averageDegree();
+        double guesses = 0;
+        for (int i = 2; i <= length; i++) {
+            for (int j = 1; j <= Math.min(turns, i - 1); j++) {
+                guesses += binomial(i - 1, j - 1) * startingPositions * Math.pow(degree, j);
+            }
+        }
+        if (shifted > 0) {
+            int unshifted = length - shifted;
+            guesses *= unshifted == 0 ? 2 : sumBinomials(length, Math.min(shifted, unshifted));
+        }
+        return Math.log10(guesses);
+    }
+
+    // ---- repeats ----
+
+    private static void matchRepeats(Scratch s, int n) {
+        for (int i = 0; i < n - 1; i++) {
+            int maxBase = Math.min((n - i) / 2, MAX_REPEAT_BASE);
+            for (int base = 1; base <= maxBase; base++) {
+                if (i >= base && sameRun(s.lower, i - base, i, base)) {
+                    // Already covered by the repeat starting one base earlier
+                    continue;
+                }
+                int repeats = 1;
+                while (i + (repeats + 1) * base <= n && sameRun(s.lower, i, i + repeats * base, base)) {
+                    repeats++;
+                }
+                if (repeats >= 3 || (repeats == 2 && base > 1)) {
+                    double guesses = base * Math.log10(cardinality(s, i, i + base - 1)) + Math.log10(repeats);
+                    s.add(i, i + repeats * base - 1, guesses, REPEAT, 0);
+                }
+            }
+        }
+    }
+
+    private static boolean sameRun(char[] chars, int a, int b, int length) {
+        for (int k = 0; k < length; k++) {
+            if (chars[a + k] != chars[b + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int cardinality(Scratch s, int from, int to) {
+        boolean digit = false;
+        boolean lower = false;
+        boolean upper = false;
+        boolean other = false;
+        for (int i = from; i <= to; i++) {
+            char c = s.chars[i];
+            if (c >= '0' && c <= '9') {
+                digit = true;
+            } else if (c >= 'a' && c <= 'z') {
+                lower = true;
+            } else if (c >= 'A' && c <= 'Z') {
+                upper = true;
+            } else {
+                other = true;
+            }
+        }
+        return (digit ? 10 : 0) + (lower ? 26 : 0) + (upper ? 26 : 0) + (other ? 33 : 0);
+    }
+
+    // ---- sequences ----
+
+    private static void matchSequences(Scratch s, int n) {
+        int i = 0;
+        while (i < n - 2) {
+            int delta = s.chars[i + 1] - s.chars[i];
+            int j = i + 1;
+            if (delta != 0 && Math.abs(delta) <= 5 && charClass(s.chars[i]) != 0 && charClass(s.chars[i]) == charClass(s.chars[j])) {
+                while (j + 1 < n && s.chars[j + 1] - s.chars[j] == delta && charClass(s.chars[j + 1]) == charClass(s.chars[i])) {
+                    j++;
+                }
+            }
+            if (j - i + 1 >= 3) {
+                char first = s.chars[i];
+                double base = "aAzZ019".indexOf(first) >= 0 ? 4 : charClass(first) == 1 ? 10 : 26;
+                if (delta < 0) {
+                    base *= 2;
+                }
+                s.add(i, j, Math.log10(base * (j - i + 1)), SEQUENCE, 0);
+                i = j;
+            } else {
+                i++;
+            }
+        }
+    }
+
+    // 1 digit, 2 lower case, 3 upper case, 0 anything else
+    private static int charClass(char c) {
+        if (c >= '0' && c <= '9') {
+            return 1;
+        } else if (c >= 'a' && c <= 'z') {
+            return 2;
+        } else if (c >= 'A' && c <= 'Z') {
+            return 3;
+        }
+        return 0;
+    }
+
+    // ---- dates ----
+
+    private static void matchDates(Scratch s, int n) {
+        for (int i = 0; i < n; i++) {
+            for (int length = 4; length <= 10 && i + length <= n; length++) {
+                int end = i + length - 1;
+                if (allDigits(s.chars, i, end)) {
+                    if (length == 4) {
+                        int year = number(s.chars, i, 4);
+                        if (year >= 1000 && year <= 2050) {
+                            s.add(i, end, Math.log10(yearSpace(year)), DATE, 0);
+                        }
+                    }
+                    if (length == 6 || length == 8) {
+                        int year = compactDateYear(s.chars, i, length);
+                        if (year > 0) {
+                            s.add(i, end, Math.log10(365.0 * yearSpace(year)), DATE, 0);
+                        }
+                    }
+                } else if (length >= 6) {
+                    int year = separatedDateYear(s.chars, i, end);
+                    if (year > 0) {
+                        s.add(i, end, Math.log10(365.0 * yearSpace(year) * 4), DATE, 0);
+                    }
+                }
+            }
+        }
+    }
+
+    // Year of a 6 or 8 digit date (yyyymmdd, ddmmyyyy, mmddyyyy, yymmdd, ddmmyy, mmddyy), or 0
+    private static int compactDateYear(char[] c, int i, int length) {
+        int yearDigits = length == 8 ? 4 : 2;
+        int[][] layouts = length == 8 ? COMPACT_8 : COMPACT_6;
+        for (int[] layout : layouts) {
+            // layout: offsets of year, month, day
+            int year = fullYear(number(c, i + layout[0], yearDigits), yearDigits);
+            int month = number(c, i + layout[1], 2);
+            int day = number(c, i + layout[2], 2);
+            if (validDate(year, month, day)) {
+                return year;
+            }
+        }
+        return 0;
+    }
+
+    private static final int[][] COMPACT_8 = {{0, 4, 6}, {4, 2, 0}, {4, 0, 2}};
+    private static final int[][] COMPACT_6 = {{0, 2, 4}, {4, 2, 0}, {4, 0, 2}};
+
+    // Year of d-m-y, m-d-y or y-m-d with the same separator twice, or 0
+    private static int separatedDateYear(char[] c, int from, int to) {
+        int first = -1;
+        int second = -1;
+        for (int k = from; k <= to; k++) {
+            if (c[k] < '0' || c[k] > '9') {
+                if (DATE_SEPARATORS.indexOf(c[k]) < 0) {
+                    return 0;
+                }
+                if (first < 0) {
+                    first = k;
+                } else if (second < 0 && c[k] == c[first]) {
+                    second = k;
+                } else {
+                    return 0;
+                }
+            }
+        }
+        if (first <= from || second <= first + 1 || second >= to) {
+            return 0;
+        }
+        int[] lengths = {first - from, second - first - 1, to - second};
+        int[] values = {number(c, from, lengths[0]), number(c, first + 1, lengths[1]), number(c, second + 1, lengths[2])};
+        if (lengths[0] > 4 || lengths[1] > 2 || lengths[2] > 4) {
+            return 0;
+        }
+        if (lengths[0] == 4 && validDate(values[0], values[1], values[2])) {
+            return values[0];
+        }
+        if (lengths[2] == 2 || lengths[2] == 4) {
+            int year = fullYear(values[2], lengths[2]);
+            if (validDate(year, values[1], values[0]) || validDate(year, values[0], values[1])) {
+                return year;
+            }
+        }
+        return 0;
+    }
+
+    private static boolean validDate(int year, int month, int day) {
+        return year >= 1000 && year <= 2050 && month >= 1 && month <= 12 && day >= 1 && day <= 31;
+    }
+
+    private static int fullYear(int year, int digits) {
+        if (digits == 4) {
+            return year;
+        }
+        return year > 50 ? 1900 + year : 2000 + year;
+    }
+
+    private static int yearSpace(int year) {
+        return Math.max(Math.abs(year - REFERENCE_YEAR), MIN_YEAR_SPACE);
+    }
+
+    private static boolean allDigits(char[] c, int from, int to) {
+        for (int k = from; k <= to; k++) {
+            if (c[k] < '0' || c[k] > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int number(char[] c, int from, int length) {
+        int value = 0;
+        for (int k = from; k < from + length; k++) {
+            value = value * 10 + (c[k] - '0');
+        }
+        return value;
+    }
+
+    // ---- decomposition ----
+
+    /**
+     * Minimum over all ways to cover the password with matches and brute-forced gaps of
+     * log10(l! * product of guesses + 10000^(l - 1)) for l pieces, as in zxcvbn. best[k][l] is the
+     * cheapest product for the first k characters in l pieces, brute[k][l] the same with the last
+     * piece brute forced, which lets a gap grow one character at a time instead of trying every start.
+     */
+    private static double mostGuessableSequence(Scratch s, int n) {
+        for (int k = 0; k <= n; k++) {
+            Arrays.fill(s.best[k], 0, n + 1, Double.POSITIVE_INFINITY);
+            Arrays.fill(s.brute[k], 0, n + 1, Double.POSITIVE_INFINITY);
+        }
+        s.best[0][0] = 0;
+        for (int k = 1; k <= n; k++) {
+            double[] row = s.best[k];
+            int[] back = s.back[k];
+            // Brute force costs 10 guesses per character: start a new gap or extend the last one
+            double[] brute = s.brute[k];
+            boolean[] extended = s.extended[k];
+            for (int l = 1; l <= k; l++) {
+                double open = s.best[k - 1][l - 1] + 1;
+                double extend = s.brute[k - 1][l] + 1;
+                extended[l] = extend < open;
+                brute[l] = Math.min(open, extend);
+                row[l] = brute[l];
+                back[l] = -1;
+            }
+            for (int m = 0; m < s.count; m++) {
+                if (s.end[m] != k - 1) {
+                    continue;
+                }
+                double[] previous = s.best[s.start[m]];
+                for (int l = 0; l <= s.start[m]; l++) {
+                    double candidate = previous[l] + s.guesses[m];
+                    if (candidate < row[l + 1]) {
+                        row[l + 1] = candidate;
+                        back[l + 1] = m;
+                    }
+                }
+            }
+        }
+
+        double min = Double.POSITIVE_INFINITY;
+        int pieces = 1;
+        for (int l = 1; l <= n; l++) {
+            if (s.best[n][l] == Double.POSITIVE_INFINITY) {
+                continue;
+            }
+            double total = log10Sum(LOG10_FACTORIAL[l] + s.best[n][l], LOG10_SEQUENCE_PENALTY * (l - 1));
+            if (total < min) {
+                min = total;
+                pieces = l;
+            }
+        }
+
+        // Longest pattern match in the winning sequence, for the warning
+        s.weakest = -1;
+        int k = n;
+        int l = pieces;
+        boolean inGap = false;
+        while (k > 0) {
+            if (inGap) {
+                inGap = s.extended[k][l];
+                if (!inGap) {
+                    l--;
+                }
+                k--;
+                continue;
+            }
+            int choice = s.back[k][l];
+            if (choice < 0) {
+                inGap = true;
+                continue;
+            }
+            if (s.weakest < 0 || s.end[choice] - s.start[choice] > s.end[s.weakest] - s.start[s.weakest]) {
+                s.weakest = choice;
+            }
+            k = s.start[choice];
+            l--;
+        }
+        return min;
+    }
+
+    private static String warning(Scratch s) {
+        if (s.weakest < 0) {
+            return null;
+        }
+        return switch (s.pattern[s.weakest]) {
+            case DICTIONARY -> switch (s.dictionary[s.weakest]) {
+                case 0 -> "This is similar to a commonly used password";
+                case 2 -> "Names and surnames by themselves are easy to guess";
+                default -> "A word by itself is easy to guess";
+            };
+            case SPATIAL -> "Straight rows and short patterns of keys are easy to guess";
+            case REPEAT -> "Repeats like \"aaa\" or \"abcabc\" are easy to guess";
+            case SEQUENCE -> "Sequences like abc or 6543 are easy to guess";
+            case DATE -> "Dates and years are easy to guess";
+            default -> null;
+        };
+    }
+
+    private static double log10Sum(double a, double b) {
+        double max = Math.max(a, b);
+        return max + Math.log10(1 + Math.pow(10, Math.min(a, b) - max));
+    }
+
+    private static double binomial(int n, int k) {
+        if (k < 0 || k > n) {
+            return 0;
+        }
+        double result = 1;
+        for (int i = 1; i <= k; i++) {
+            result = result * (n - k + i) / i;
+        }
+        return result;
+    }
+
+    private static double sumBinomials(int n, int upTo) {
+        double sum = 0;
+        for (int i = 1; i <= upTo; i++) {
+            sum += binomial(n, i);
+        }
+        return sum;
+    }
+
+    private static List<String> load(Resource resource) {
+        List<String> words = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank() && !line.startsWith("#")) {
+                    words.add(line);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not load password dictionary " + resource.getDescription(), e);
+        }
+        return words;
+    }
+
+    // Per-thread buffers: matches found so far and the dynamic program's tables
+    private static final class Scratch {
+        final char[] chars = new char[MAX_ANALYZED];
+        final char[] lower = new char[MAX_ANALYZED];
+        final double[][] best = new double[MAX_ANALYZED + 1][MAX_ANALYZED + 1];
+        final double[][] brute = new double[MAX_ANALYZED + 1][MAX_ANALYZED + 1];
+        final boolean[][] extended = new boolean[MAX_ANALYZED + 1][MAX_ANALYZED + 1];
+        final int[][] back = new int[MAX_ANALYZED + 1][MAX_ANALYZED + 1];
+        int[] start = new int[256];
+        int[] end = new int[256];
+        double[] guesses = new double[256];
+        byte[] pattern = new byte[256];
+        byte[] dictionary = new byte[256];
+        int count;
+        int weakest;
+
+        void add(int from, int to, double guessesLog10, byte kind, int dict) {
+            if (count == start.length) {
+                int size = count * 2;
+                start = Arrays.copyOf(start, size);
+                end = Arrays.copyOf(end, size);
+                guesses = Arrays.copyOf(guesses, size);
+                pattern = Arrays.copyOf(pattern, size);
+                dictionary = Arrays.copyOf(dictionary, size);
+            }
+            // Any multi-character match takes at least 50 guesses, a single character 10
+            double minimum = from == to ? 1 : 1.69897;
+            start[count] = from;
+            end[count] = to;
+            guesses[count] = Math.max(guessesLog10, minimum);
+            pattern[count] = kind;
+            dictionary[count] = (byte) dict;
+            count++;
+        }
+    }
+}
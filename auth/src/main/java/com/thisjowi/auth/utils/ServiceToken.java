@@ -0,0 +1,39 @@
+package com.thisjowi.auth.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Shared secret the other services send in the {@value #HEADER} header on internal-only endpoints
+ * such as /breach-check. Without {@code app.breach-check.service-token} every caller is refused.
+ */
+@Component
+public class ServiceToken {
+    private static final Logger log = LoggerFactory.getLogger(ServiceToken.class);
+
+    public static final String HEADER = "X-Service-Token";
+
+    private final byte[] token;
+
+    public ServiceToken(@Value("${app.breach-check.service-token:}") String token) {
+        if (token == null || token.isBlank()) {
+            log.warn("No app.breach-check.service-token configured, internal endpoints refuse every caller");
+            this.token = null;
+        } else {
+            this.token = token.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Whether the presented header value is the configured token, compared in constant time.
+     */
+    public boolean matches(String presented) {
+        return token != null && presented != null
+                && MessageDigest.isEqual(token, presented.getBytes(StandardCharsets.UTF_8));
+    }
+}
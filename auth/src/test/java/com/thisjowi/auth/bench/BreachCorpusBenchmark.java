@@ -0,0 +1,165 @@
+package com.thisjowi.auth.bench;
+
+import com.thisjowi.auth.utils.BreachCorpus;
+import com.thisjowi.auth.utils.BreachCorpusBuilder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup latency of {@link BreachCorpus} over a synthetic corpus the size of the HIBP dump.
+ * <pre>
+ * ./gradlew breachBenchmark -Pbench.hashes=1000000000 -Pbench.corpus=/data/breach-bench.bin
+ * </pre>
+ * The corpus (uniformly random hashes, 8 bytes per hash) is generated on the first run and reused
+ * afterwards. Measures hits and misses separately, single-threaded per-lookup percentiles, multi-threaded
+ * throughput and heap bytes allocated per lookup. Numbers assume the file fits in the page cache;
+ * run once to warm it. Other settings (bench.*): lookups, threads.
+ */
+public class BreachCorpusBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        long hashes = Long.getLong("bench.hashes", 1_000_000_000L);
+        Path corpus = Path.of(System.getProperty("bench.corpus", System.getProperty("java.io.tmpdir") + "/breach-bench.bin"));
+        int lookups = Integer.getInteger("bench.lookups", 5_000_000);
+        int threads = Integer.getInteger("bench.threads", Runtime.getRuntime().availableProcessors());
+
+        if (!Files.exists(corpus)) {
+            System.out.printf("Generating %,d hashes into %s%n", hashes, corpus);
+            generate(corpus, hashes);
+        }
+        BreachCorpus breachCorpus = new BreachCorpus(corpus.toString());
+        long[][] hits = sampleHits(corpus, lookups);
+        long[][] misses = randomPairs(lookups, 7);
+
+        // Warm-up: page in what the samples touch and let the JIT compile the search
+        for (int round = 0; round < 3; round++) {
+            run(breachCorpus, hits);
+            run(breachCorpus, misses);
+        }
+
+        System.out.printf("%ncorpus %,d hashes, %d MB%n", breachCorpus.size(), Files.size(corpus) >> 20);
+        System.out.printf("%-8s %10s %10s %10s %10s%n", "lookups", "mean", "p50", "p99", "p99.9");
+        report("hit", breachCorpus, hits);
+        report("miss", breachCorpus, misses);
+
+        long allocated = allocatedBytes();
+        int found = run(breachCorpus, hits);
+        long perLookup = (allocatedBytes() - allocated) / lookups;
+        System.out.printf("%nheap allocated per lookup: %d bytes (%d hits)%n", perLookup, found);
+
+        long started = System.nanoTime();
+        try (ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+            Future<?>[] futures = new Future<?>[threads];
+            for (int t = 0; t < threads; t++) {
+                futures[t] = executor.submit(() -> run(breachCorpus, misses));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+        System.out.printf("%d threads: %,.0f lookups/s%n", threads, (double) threads * lookups / seconds);
+    }
+
+    private static int run(BreachCorpus corpus, long[][] pairs) {
+        int found = 0;
+        long[] prefixes = pairs[0];
+        long[] suffixes = pairs[1];
+        for (int i = 0; i < prefixes.length; i++) {
+            if (corpus.contains((int) prefixes[i], suffixes[i])) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    private static void report(String name, BreachCorpus corpus, long[][] pairs) {
+        int samples = Math.min(pairs[0].length, 1_000_000);
+        long[] nanos = new long[samples];
+        long total = 0;
+        for (int i = 0; i < samples; i++) {
+            long start = System.nanoTime();
+            corpus.contains((int) pairs[0][i], pairs[1][i]);
+            nanos[i] = System.nanoTime() - start;
+            total += nanos[i];
+        }
+        Arrays.sort(nanos);
+        System.out.printf("%-8s %8dns %8dns %8dns %8dns%n", name, total / samples,
+                nanos[samples / 2], nanos[(int) (samples * 0.99)], nanos[(int) (samples * 0.999)]);
+    }
+
+    // Random buckets of uniformly distributed hashes, written in order bucket by bucket
+    private static void generate(Path corpus, long hashes) throws IOException {
+        SplittableRandom random = new SplittableRandom(42);
+        long perBucket = hashes / BreachCorpus.FANOUT_SIZE;
+        long remainder = hashes % BreachCorpus.FANOUT_SIZE;
+        long started = System.nanoTime();
+        try (BreachCorpusBuilder.Writer writer = new BreachCorpusBuilder.Writer(corpus)) {
+            for (int prefix = 0; prefix < BreachCorpus.FANOUT_SIZE; prefix++) {
+                long[] suffixes = new long[(int) (perBucket + (prefix < remainder ? 1 : 0))];
+                // Sorted unsigned: flip the sign bit, sort signed, flip back
+                for (int i = 0; i < suffixes.length; i++) {
+                    suffixes[i] = random.nextLong() ^ Long.MIN_VALUE;
+                }
+                Arrays.sort(suffixes);
+                for (long suffix : suffixes) {
+                    writer.add(prefix, suffix ^ Long.MIN_VALUE);
+                }
+            }
+        }
+        System.out.printf("Generated in %ds%n", TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - started));
+    }
+
+    // Records read straight from the file, with their prefix found in the fan-out table
+    private static long[][] sampleHits(Path corpus, int count) throws IOException {
+        long[][] pairs = new long[2][count];
+        try (RandomAccessFile file = new RandomAccessFile(corpus.toFile(), "r")) {
+            long[] fanout = new long[BreachCorpus.FANOUT_SIZE + 1];
+            file.seek(Integer.BYTES * 2 + Long.BYTES);
+            for (int i = 0; i < fanout.length; i++) {
+                fanout[i] = file.readLong();
+            }
+            SplittableRandom random = new SplittableRandom(3);
+            for (int i = 0; i < count; i++) {
+                long index = random.nextLong(fanout[BreachCorpus.FANOUT_SIZE]);
+                int prefix = Arrays.binarySearch(fanout, index);
+                if (prefix < 0) {
+                    prefix = -prefix - 2;
+                } else {
+                    // First of the buckets starting at this index that is not empty
+                    while (fanout[prefix + 1] == index) {
+                        prefix++;
+                    }
+                }
+                file.seek(BreachCorpus.HEADER_SIZE + index * Long.BYTES);
+                pairs[0][i] = prefix;
+                pairs[1][i] = file.readLong();
+            }
+        }
+        return pairs;
+    }
+
+    private static long[][] randomPairs(int count, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        long[][] pairs = new long[2][count];
+        for (int i = 0; i < count; i++) {
+            pairs[0][i] = random.nextInt(BreachCorpus.FANOUT_SIZE);
+            pairs[1][i] = random.nextLong();
+        }
+        return pairs;
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+}
@@ -0,0 +1,69 @@
+package com.thisjowi.auth.service;
+
+import com.thisjowi.auth.utils.BreachCorpus;
+import com.thisjowi.auth.utils.JwtUtil;
+import com.thisjowi.auth.utils.PasswordStrengthEstimator;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ChangePasswordServiceTest {
+
+    private static final PasswordStrengthEstimator ESTIMATOR = new PasswordStrengthEstimator(
+            PasswordStrengthEstimator.DEFAULT_DICTIONARIES, new DefaultResourceLoader());
+
+    private final BreachCorpus breachCorpus = mock(BreachCorpus.class);
+
+    private ChangePasswordService service(int minScore) {
+        return new ChangePasswordService(mock(UserService.class), mock(PasswordEncoder.class), mock(JwtUtil.class),
+                breachCorpus, ESTIMATOR, minScore);
+    }
+
+    @Test
+    public void testGuessablePasswordIsRejectedBelowTheThreshold() {
+        Map<String, Object> result = service(3).validatePasswordStrength("Password1!");
+
+        assertEquals(false, result.get("isValid"));
+        assertEquals(1, result.get("score"));
+        assertEquals("Password is too easy to guess. This is similar to a commonly used password", result.get("error"));
+    }
+
+    @Test
+    public void testThresholdIsConfigurable() {
+        assertEquals(true, service(1).validatePasswordStrength("Password1!").get("isValid"));
+        assertEquals(false, service(4).validatePasswordStrength("S3cur1ty").get("isValid"));
+        assertEquals(true, service(3).validatePasswordStrength("S3cur1ty").get("isValid"));
+    }
+
+    @Test
+    public void testStrongPassphraseIsAccepted() {
+        Map<String, Object> result = service(3).validatePasswordStrength("vortex-lemur-quilt-safari-97");
+
+        assertEquals(true, result.get("isValid"));
+        assertEquals(4, result.get("score"));
+        assertNull(result.get("error"));
+    }
+
+    @Test
+    public void testBreachedPasswordIsRejectedEvenWhenStrong() {
+        when(breachCorpus.isBreached("vortex-lemur-quilt-safari-97")).thenReturn(true);
+
+        Map<String, Object> result = service(3).validatePasswordStrength("vortex-lemur-quilt-safari-97");
+
+        assertEquals(false, result.get("isValid"));
+        assertEquals(true, result.get("breached"));
+    }
+
+    @Test
+    public void testLengthLimits() {
+        assertEquals("Password must be at least 8 characters long", service(0).validatePasswordStrength("Ab1!xyz").get("error"));
+        assertEquals("Password must not exceed 128 characters", service(0).validatePasswordStrength("x".repeat(129)).get("error"));
+        assertEquals(false, service(0).validatePasswordStrength(null).get("isValid"));
+    }
+}
@@ -0,0 +1,109 @@
+package com.thisjowi.auth.utils;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PasswordStrengthEstimatorTest {
+
+    private static final String COMMON = "This is similar to a commonly used password";
+
+    private final PasswordStrengthEstimator estimator = new PasswordStrengthEstimator(
+            PasswordStrengthEstimator.DEFAULT_DICTIONARIES, new DefaultResourceLoader());
+
+    @Test
+    public void testCharacterClassPasswordsAreWeak() {
+        // Upper, lower, digit and symbol, yet a common word plus two cheap characters
+        for (String password : new String[]{"Password1!", "Qwerty123!", "Monkey2024", "Dragon1!"}) {
+            PasswordStrengthEstimator.Estimate estimate = estimator.estimate(password);
+            assertTrue(estimate.score() < 3, password + " scored " + estimate.score());
+            assertNotNull(estimate.warning(), password);
+        }
+    }
+
+    @Test
+    public void testLongRandomPassphrasesAreStrong() {
+        for (String password : new String[]{"vortex-lemur-quilt-safari-97", "correct horse battery staple",
+                "ThisIsMyLongerPassphrase2024", "xK9#mQ2$vL7pW"}) {
+            PasswordStrengthEstimator.Estimate estimate = estimator.estimate(password);
+            assertEquals(4, estimate.score(), password);
+            assertNull(estimate.warning(), password);
+        }
+    }
+
+    @Test
+    public void testKeyboardWalks() {
+        PasswordStrengthEstimator.Estimate row = estimator.estimate("asdfghjkl;");
+        assertTrue(row.score() <= 1, "scored " + row.score());
+        assertEquals("Straight rows and short patterns of keys are easy to guess", row.warning());
+
+        PasswordStrengthEstimator.Estimate shifted = estimator.estimate("!QAZ@WSX");
+        assertTrue(shifted.score() < 3, "scored " + shifted.score());
+        assertEquals("Straight rows and short patterns of keys are easy to guess", shifted.warning());
+    }
+
+    @Test
+    public void testDates() {
+        for (String password : new String[]{"19900512", "12/05/1990", "05-12-90", "1990"}) {
+            PasswordStrengthEstimator.Estimate estimate = estimator.estimate(password);
+            assertTrue(estimate.score() <= 1, password + " scored " + estimate.score());
+            assertEquals("Dates and years are easy to guess", estimate.warning(), password);
+        }
+    }
+
+    @Test
+    public void testRepeatsAndSequences() {
+        assertEquals(0, estimator.estimate("zzzzzzzz").score());
+        assertEquals("Repeats like \"aaa\" or \"abcabc\" are easy to guess", estimator.estimate("zzzzzzzz").warning());
+        assertTrue(estimator.estimate("xyzxyzxyzxyz").score() <= 1);
+
+        assertEquals(0, estimator.estimate("abcdefghij").score());
+        assertEquals("Sequences like abc or 6543 are easy to guess", estimator.estimate("abcdefghij").warning());
+        assertEquals("Sequences like abc or 6543 are easy to guess", estimator.estimate("9876543210").warning());
+    }
+
+    @Test
+    public void testL33tReversedAndCapitalizedWords() {
+        for (String password : new String[]{"P@ssw0rd", "dr@g0n", "M0nk3y", "drowssap", "PASSWORD"}) {
+            PasswordStrengthEstimator.Estimate estimate = estimator.estimate(password);
+            assertEquals(0, estimate.score(), password);
+            assertEquals(COMMON, estimate.warning(), password);
+        }
+        // Substitutions and capitals cost a few guesses, but nowhere near random characters
+        double plain = estimator.estimate("sunshine").guessesLog10();
+        double l33t = estimator.estimate("Sunsh1ne").guessesLog10();
+        assertTrue(l33t >= plain);
+        assertTrue(l33t < 3);
+    }
+
+    @Test
+    public void testNames() {
+        PasswordStrengthEstimator.Estimate estimate = estimator.estimate("michael1985");
+        assertTrue(estimate.score() <= 1);
+        assertEquals("Names and surnames by themselves are easy to guess", estimate.warning());
+    }
+
+    @Test
+    public void testCharactersBeyondTheAnalyzedPrefixCountAsBruteForce() {
+        String prefix = "a".repeat(PasswordStrengthEstimator.MAX_ANALYZED);
+        double analyzed = estimator.estimate(prefix).guessesLog10();
+
+        assertEquals(analyzed + 10, estimator.estimate(prefix + "0123456789").guessesLog10(), 1e-9);
+    }
+
+    @Test
+    public void testEmptyPassword() {
+        assertEquals(new PasswordStrengthEstimator.Estimate(0, 0, null), estimator.estimate(""));
+        assertEquals(0, estimator.estimate(null).score());
+    }
+
+    @Test
+    public void testScoreThresholds() {
+        assertEquals(0, PasswordStrengthEstimator.score(2.99));
+        assertEquals(1, PasswordStrengthEstimator.score(3));
+        assertEquals(2, PasswordStrengthEstimator.score(6));
+        assertEquals(3, PasswordStrengthEstimator.score(8));
+        assertEquals(4, PasswordStrengthEstimator.score(10));
+    }
+}
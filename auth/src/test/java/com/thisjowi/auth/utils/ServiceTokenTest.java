@@ -0,0 +1,28 @@
+package com.thisjowi.auth.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ServiceTokenTest {
+
+    @Test
+    public void testMatchesOnlyTheConfiguredToken() {
+        ServiceToken serviceToken = new ServiceToken("internal-token");
+
+        assertTrue(serviceToken.matches("internal-token"));
+        assertFalse(serviceToken.matches("internal-token "));
+        assertFalse(serviceToken.matches("other"));
+        assertFalse(serviceToken.matches(""));
+        assertFalse(serviceToken.matches(null));
+    }
+
+    @Test
+    public void testUnconfiguredTokenRefusesEveryCaller() {
+        ServiceToken serviceToken = new ServiceToken("");
+
+        assertFalse(serviceToken.matches(""));
+        assertFalse(serviceToken.matches(null));
+        assertFalse(new ServiceToken(null).matches(null));
+    }
+}
@@ -40,9 +40,13 @@ dependencies {
 	implementation("org.springframework.cloud:spring-cloud-starter-bootstrap")
 	implementation("org.flywaydb:flyway-core:10.22.0")
 	implementation("org.flywaydb:flyway-database-postgresql:10.22.0")
+	implementation("org.roaringbitmap:RoaringBitmap:1.3.0")
+	implementation("org.springframework:spring-r2dbc")
+	implementation("io.r2dbc:r2dbc-pool")
 	compileOnly("org.projectlombok:lombok")
 	runtimeOnly("com.h2database:h2")
 	runtimeOnly("org.postgresql:postgresql")
+	runtimeOnly("org.postgresql:r2dbc-postgresql")
 	annotationProcessor("org.projectlombok:lombok")
 	testImplementation("org.springframework.boot:spring-boot-starter-test")
 	testImplementation("io.projectreactor:reactor-test")
@@ -60,3 +64,12 @@ dependencyManagement {
 tasks.withType<Test> {
 	useJUnitPlatform()
 }
+
+// Slow-client load test against running instances, see NotesLoadBenchmark
+tasks.register<JavaExec>("loadBenchmark") {
+	group = "verification"
+	description = "Compares the servlet and reactive note endpoints under many slow clients"
+	classpath = sourceSets["test"].runtimeClasspath
+	mainClass = "com.thisjowi.note.bench.NotesLoadBenchmark"
+	systemProperties(project.properties.filterKeys { it.startsWith("bench.") })
+}
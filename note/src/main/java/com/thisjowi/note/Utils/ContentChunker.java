@@ -0,0 +1,73 @@
+package com.thisjowi.note.Utils;
+
+import java.util.SplittableRandom;
+
+/**
+ * Content-defined chunking with a gear rolling hash.
+ * Boundaries depend only on the bytes around them, so an edit shifts at most the
+ * chunks it touches and the rest of the note keeps identical chunks.
+ */
+public final class ContentChunker {
+
+    public static final int MIN_CHUNK_SIZE = 2 * 1024;
+    public static final int MAX_CHUNK_SIZE = 64 * 1024;
+
+    // 13 high bits -> 8 KiB average chunk past the minimum
+    private static final long BOUNDARY_MASK = 0x1FFFL << 51;
+
+    // Fixed seed: every instance must cut the same content at the same places
+    private static final long[] GEAR = new long[256];
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x6e6f7465L);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    private ContentChunker() {
+    }
+
+    /**
+     * Split the given bytes into chunks.
+     *
+     * @return the exclusive end offset of every chunk, in order; empty for empty input
+     */
+    public static int[] boundaries(byte[] data) {
+        int[] ends = new int[Math.max(4, data.length / MIN_CHUNK_SIZE + 1)];
+        int count = 0;
+        int start = 0;
+        while (start < data.length) {
+            int end = nextBoundary(data, start);
+            if (count == ends.length) {
+                int[] grown = new int[ends.length * 2];
+                System.arraycopy(ends, 0, grown, 0, count);
+                ends = grown;
+            }
+            ends[count++] = end;
+            start = end;
+        }
+        int[] result = new int[count];
+        System.arraycopy(ends, 0, result, 0, count);
+        return result;
+    }
+
+    private static int nextBoundary(byte[] data, int start) {
+        int limit = Math.min(data.length, start + MAX_CHUNK_SIZE);
+        if (limit - start <= MIN_CHUNK_SIZE) {
+            return limit;
+        }
+        long hash = 0;
+        // Bytes before the minimum size still feed the hash but cannot cut
+        for (int i = start; i < start + MIN_CHUNK_SIZE; i++) {
+            hash = (hash << 1) + GEAR[data[i] & 0xFF];
+        }
+        for (int i = start + MIN_CHUNK_SIZE; i < limit; i++) {
+            hash = (hash << 1) + GEAR[data[i] & 0xFF];
+            if ((hash & BOUNDARY_MASK) == 0) {
+                return i + 1;
+            }
+        }
+        return limit;
+    }
+}
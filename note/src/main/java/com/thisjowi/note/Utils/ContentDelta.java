@@ -0,0 +1,192 @@
+package com.thisjowi.note.Utils;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Binary delta between two versions of note content, used for revision history.
+ *
+ * <pre>
+ * delta: [version 1] op*
+ * op:    [1][offset varint][length varint]  copy bytes from the base
+ *        [2][length varint][bytes]          insert new bytes
+ * </pre>
+ *
+ * The common prefix and suffix become single copies. What is left in the middle is matched at
+ * content-defined chunk boundaries, so a few scattered edits in a large note still produce a
+ * delta of about the size of the edited chunks.
+ */
+public final class ContentDelta {
+
+    private static final byte VERSION = 1;
+    private static final byte OP_COPY = 1;
+    private static final byte OP_INSERT = 2;
+
+    private ContentDelta() {
+    }
+
+    public static byte[] diff(byte[] base, byte[] target) {
+        int prefix = 0;
+        int max = Math.min(base.length, target.length);
+        while (prefix < max && base[prefix] == target[prefix]) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < max - prefix && base[base.length - 1 - suffix] == target[target.length - 1 - suffix]) {
+            suffix++;
+        }
+
+        Writer writer = new Writer(target);
+        writer.copy(0, prefix);
+        diffMiddle(base, prefix, base.length - suffix, target, prefix, target.length - suffix, writer);
+        writer.copy(base.length - suffix, suffix);
+        return writer.finish();
+    }
+
+    public static byte[] apply(byte[] base, byte[] delta) {
+        if (delta.length == 0 || delta[0] != VERSION) {
+            throw new IllegalStateException("Unsupported delta format");
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(base.length + delta.length);
+        int[] pos = {1};
+        while (pos[0] < delta.length) {
+            byte op = delta[pos[0]++];
+            if (op == OP_COPY) {
+                int offset = readVarint(delta, pos);
+                int length = readVarint(delta, pos);
+                if (offset < 0 || length < 0 || offset + length > base.length) {
+                    throw new IllegalStateException("Delta copies outside the base content");
+                }
+                out.write(base, offset, length);
+            } else if (op == OP_INSERT) {
+                int length = readVarint(delta, pos);
+                if (length < 0 || pos[0] + length > delta.length) {
+                    throw new IllegalStateException("Truncated delta");
+                }
+                out.write(delta, pos[0], length);
+                pos[0] += length;
+            } else {
+                throw new IllegalStateException("Unknown delta operation " + op);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    // Changed region: copy target chunks that also occur in the base, insert the rest
+    private static void diffMiddle(byte[] base, int baseStart, int baseEnd,
+                                   byte[] target, int targetStart, int targetEnd, Writer writer) {
+        if (targetEnd - targetStart < 2 * ContentChunker.MIN_CHUNK_SIZE || baseEnd - baseStart < ContentChunker.MIN_CHUNK_SIZE) {
+            writer.insert(targetStart, targetEnd - targetStart);
+            return;
+        }
+        Map<ByteBuffer, Integer> baseChunks = new HashMap<>();
+        int start = baseStart;
+        for (int end : ContentChunker.boundaries(Arrays.copyOfRange(base, baseStart, baseEnd))) {
+            baseChunks.putIfAbsent(ByteBuffer.wrap(base, start, baseStart + end - start).slice(), start);
+            start = baseStart + end;
+        }
+        start = targetStart;
+        for (int end : ContentChunker.boundaries(Arrays.copyOfRange(target, targetStart, targetEnd))) {
+            int length = targetStart + end - start;
+            Integer offset = baseChunks.get(ByteBuffer.wrap(target, start, length).slice());
+            if (offset != null) {
+                writer.copy(offset, length);
+            } else {
+                writer.insert(start, length);
+            }
+            start = targetStart + end;
+        }
+    }
+
+    private static int readVarint(byte[] data, int[] pos) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (pos[0] >= data.length) {
+                throw new IllegalStateException("Truncated delta");
+            }
+            byte b = data[pos[0]++];
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Malformed delta");
+    }
+
+    // Emits ops, merging adjacent copies and adjacent inserts
+    private static final class Writer {
+        private final byte[] target;
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private int copyOffset = -1;
+        private int copyLength;
+        private int insertStart = -1;
+        private int insertLength;
+
+        Writer(byte[] target) {
+            this.target = target;
+            out.write(VERSION);
+        }
+
+        void copy(int offset, int length) {
+            if (length == 0) {
+                return;
+            }
+            flushInsert();
+            if (copyOffset >= 0 && copyOffset + copyLength == offset) {
+                copyLength += length;
+                return;
+            }
+            flushCopy();
+            copyOffset = offset;
+            copyLength = length;
+        }
+
+        void insert(int start, int length) {
+            if (length == 0) {
+                return;
+            }
+            flushCopy();
+            if (insertStart >= 0) {
+                insertLength += length;
+                return;
+            }
+            insertStart = start;
+            insertLength = length;
+        }
+
+        byte[] finish() {
+            flushCopy();
+            flushInsert();
+            return out.toByteArray();
+        }
+
+        private void flushCopy() {
+            if (copyOffset >= 0) {
+                out.write(OP_COPY);
+                writeVarint(copyOffset);
+                writeVarint(copyLength);
+                copyOffset = -1;
+            }
+        }
+
+        private void flushInsert() {
+            if (insertStart >= 0) {
+                out.write(OP_INSERT);
+                writeVarint(insertLength);
+                out.write(target, insertStart, insertLength);
+                insertStart = -1;
+            }
+        }
+
+        private void writeVarint(int value) {
+            while ((value & ~0x7F) != 0) {
+                out.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.write(value);
+        }
+    }
+}
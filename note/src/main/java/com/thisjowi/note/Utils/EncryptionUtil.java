@@ -6,13 +6,16 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.Cipher;
+import javax.crypto.Mac;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.HexFormat;
 
 
 @Component
@@ -25,6 +28,33 @@ public class EncryptionUtil {
     private static final int IV_SIZE = 16; // 128 bits for AES
     private static final String ALGORITHM = "AES/CBC/PKCS5Padding";
     private static final String KEY_ALGORITHM = "AES";
+
+    // Note content format: "v1:" + Base64(IV + ciphertext), where the plaintext starts with a codec byte
+    public static final String CONTENT_FORMAT_PREFIX = "v1:";
+    private static final byte CODEC_RAW = 0;
+    private static final byte CODEC_DEFLATE = 1;
+
+    // Binary content format (BYTEA columns): format byte + IV + ciphertext
+    private static final byte BINARY_FORMAT_LEGACY = 0; // plaintext is raw UTF-8
+    private static final byte BINARY_FORMAT_V1 = 1;     // plaintext starts with a codec byte
+
+    // Chunk fingerprints: truncated HMAC-SHA256 under a key derived from the secret
+    public static final int FINGERPRINT_SIZE = 16;
+    private static final ThreadLocal<Mac> FINGERPRINT_MAC = ThreadLocal.withInitial(() -> {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(EncryptionUtil.instance.fingerprintKey, "HmacSHA256"));
+            return mac;
+        } catch (Exception e) {
+            throw new IllegalStateException("HmacSHA256 not available", e);
+        }
+    });
+
+    private final byte[] fingerprintKey;
+    private final byte[] attachmentKey;
+    private final byte[] tagIndexKey;
+    private final boolean compressionEnabled;
+    private final int compressionThreshold;
     
     // Static instance for static method access (initialized by Spring)
     private static EncryptionUtil instance;
@@ -34,8 +64,12 @@ public class EncryptionUtil {
      * Uses ${JWT_SECRET} environment variable via Spring injection.
      * 
      * @param secretKey the encryption secret key (minimum 32 characters)
+     * @param compressionEnabled whether note content above the threshold is compressed before encryption
+     * @param compressionThreshold minimum plaintext size in bytes before compression is attempted
      */
-    public EncryptionUtil(@Value("${jwt.secret:}") String secretKey) {
+    public EncryptionUtil(@Value("${jwt.secret:}") String secretKey,
+                          @Value("${notes.compression.enabled:true}") boolean compressionEnabled,
+                          @Value("${notes.compression.threshold-bytes:512}") int compressionThreshold) {
         if (secretKey == null || secretKey.trim().isEmpty()) {
             logger.warn("[Encryption] No encryption key provided, using development default");
             secretKey = "default-dev-secret-key-at-least-32-characters-long";
@@ -47,6 +81,11 @@ public class EncryptionUtil {
         
         // Generate consistent key bytes using SHA-256
         this.secretKeyBytes = generateKeyBytes(secretKey);
+        this.fingerprintKey = deriveKey(this.secretKeyBytes, "note-chunk-fingerprint");
+        this.attachmentKey = deriveKey(this.secretKeyBytes, "note-attachment");
+        this.tagIndexKey = deriveKey(this.secretKeyBytes, "note-tag-index");
+        this.compressionEnabled = compressionEnabled;
+        this.compressionThreshold = Math.max(0, compressionThreshold);
         
         // Set static instance for static method access
         instance = this;
@@ -67,6 +106,19 @@ public class EncryptionUtil {
         }
     }
 
+    /**
+     * Derive an independent sub-key so the encryption key is never used for anything else.
+     */
+    private static byte[] deriveKey(byte[] masterKey, String purpose) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(masterKey, "HmacSHA256"));
+            return mac.doFinal(purpose.getBytes(StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            throw new IllegalStateException("HmacSHA256 not available", e);
+        }
+    }
+
     /**
      * Encrypt plaintext using AES-256-CBC with random IV.
      * 
@@ -84,24 +136,7 @@ public class EncryptionUtil {
         }
 
         try {
-            // Generate random IV
-            SecureRandom random = new SecureRandom();
-            byte[] iv = new byte[IV_SIZE];
-            random.nextBytes(iv);
-
-            // Create cipher
-            Cipher cipher = Cipher.getInstance(ALGORITHM);
-            SecretKeySpec keySpec = new SecretKeySpec(instance.secretKeyBytes, 0, AES_KEY_SIZE, KEY_ALGORITHM);
-            IvParameterSpec ivSpec = new IvParameterSpec(iv);
-            cipher.init(Cipher.ENCRYPT_MODE, keySpec, ivSpec);
-
-            // Encrypt
-            byte[] encrypted = cipher.doFinal(plaintext.getBytes(StandardCharsets.UTF_8));
-
-            // Concatenate IV + ciphertext
-            byte[] ivAndEncrypted = new byte[IV_SIZE + encrypted.length];
-            System.arraycopy(iv, 0, ivAndEncrypted, 0, IV_SIZE);
-            System.arraycopy(encrypted, 0, ivAndEncrypted, IV_SIZE, encrypted.length);
+            byte[] ivAndEncrypted = encryptBytes(plaintext.getBytes(StandardCharsets.UTF_8));
 
             // Base64 encode
             String result = Base64.getEncoder().encodeToString(ivAndEncrypted);
@@ -145,22 +180,7 @@ public class EncryptionUtil {
                 return encryptedText;
             }
 
-            // Extract IV
-            byte[] iv = new byte[IV_SIZE];
-            System.arraycopy(decodedBytes, 0, iv, 0, IV_SIZE);
-
-            // Extract ciphertext
-            byte[] ciphertext = new byte[decodedBytes.length - IV_SIZE];
-            System.arraycopy(decodedBytes, IV_SIZE, ciphertext, 0, decodedBytes.length - IV_SIZE);
-
-            // Create cipher
-            Cipher cipher = Cipher.getInstance(ALGORITHM);
-            SecretKeySpec keySpec = new SecretKeySpec(instance.secretKeyBytes, 0, AES_KEY_SIZE, KEY_ALGORITHM);
-            IvParameterSpec ivSpec = new IvParameterSpec(iv);
-            cipher.init(Cipher.DECRYPT_MODE, keySpec, ivSpec);
-
-            // Decrypt
-            byte[] decrypted = cipher.doFinal(ciphertext);
+            byte[] decrypted = decryptBytes(decodedBytes, 0, decodedBytes.length);
             String result = new String(decrypted, StandardCharsets.UTF_8);
             logger.debug("[Encryption] Data decrypted successfully (encrypted length: {}, decrypted length: {})", encryptedText.length(), result.length());
             return result;
@@ -169,5 +189,253 @@ public class EncryptionUtil {
             throw new RuntimeException("Error decrypting data: " + e.getMessage(), e);
         }
     }
+
+    /**
+     * Encrypt note content, compressing it first when it is large enough to benefit.
+     * The chosen codec is recorded in the first plaintext byte so reads are transparent.
+     *
+     * @param plaintext the note content
+     * @return "v1:" followed by the Base64-encoded IV + ciphertext
+     */
+    public static String encryptContent(String plaintext) {
+        if (instance == null) {
+            throw new IllegalStateException("EncryptionUtil not initialized. Ensure Spring context is loaded.");
+        }
+        if (plaintext == null || plaintext.isEmpty()) {
+            return plaintext;
+        }
+
+        try {
+            byte[] encoded = encodeContent(plaintext.getBytes(StandardCharsets.UTF_8));
+            String result = CONTENT_FORMAT_PREFIX + Base64.getEncoder().encodeToString(encryptBytes(encoded));
+            logger.debug("[Encryption] Content encrypted (plaintext length: {}, stored length: {})", plaintext.length(), result.length());
+            return result;
+        } catch (Exception e) {
+            logger.error("[Encryption] Content encryption failed", e);
+            throw new RuntimeException("Error encrypting content: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Decrypt note content written by {@link #encryptContent(String)}.
+     * Values stored before the content format existed are handed to {@link #decrypt(String)}.
+     */
+    public static String decryptContent(String storedContent) {
+        if (storedContent == null || !storedContent.startsWith(CONTENT_FORMAT_PREFIX)) {
+            return decrypt(storedContent);
+        }
+        if (instance == null) {
+            throw new IllegalStateException("EncryptionUtil not initialized. Ensure Spring context is loaded.");
+        }
+
+        try {
+            byte[] decoded = Base64.getDecoder().decode(storedContent.substring(CONTENT_FORMAT_PREFIX.length()));
+            byte[] payload = decryptBytes(decoded, 0, decoded.length);
+            return new String(decodeContent(payload), StandardCharsets.UTF_8);
+        } catch (Exception e) {
+            logger.error("[Encryption] Content decryption failed", e);
+            throw new RuntimeException("Error decrypting content: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Binary counterpart of {@link #encryptContent(String)} for BYTEA columns: no Base64 on the way in or out.
+     *
+     * @param plaintext the note content
+     * @return format byte + IV + ciphertext, or null for null content
+     */
+    public static byte[] encryptContentToBytes(String plaintext) {
+        if (plaintext == null) {
+            return null;
+        }
+        return encryptContentToBytes(plaintext.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Encrypt raw content bytes (a whole note or a single chunk) into the binary format.
+     */
+    public static byte[] encryptContentToBytes(byte[] plaintext) {
+        if (instance == null) {
+            throw new IllegalStateException("EncryptionUtil not initialized. Ensure Spring context is loaded.");
+        }
+        if (plaintext == null) {
+            return null;
+        }
+
+        try {
+            return withCodec(BINARY_FORMAT_V1, encryptBytes(encodeContent(plaintext)));
+        } catch (Exception e) {
+            logger.error("[Encryption] Content encryption failed", e);
+            throw new RuntimeException("Error encrypting content: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Decrypt note content stored by {@link #encryptContentToBytes(String)} or re-encoded by {@link #toBinaryContent(String)}.
+     */
+    public static String decryptContent(byte[] storedContent) {
+        byte[] plaintext = decryptContentToBytes(storedContent);
+        return plaintext == null ? null : new String(plaintext, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decrypt binary content back to the raw plaintext bytes.
+     */
+    public static byte[] decryptContentToBytes(byte[] storedContent) {
+        if (instance == null) {
+            throw new IllegalStateException("EncryptionUtil not initialized. Ensure Spring context is loaded.");
+        }
+        if (storedContent == null) {
+            return null;
+        }
+
+        try {
+            byte[] decrypted = decryptBytes(storedContent, 1, storedContent.length - 1);
+            switch (storedContent[0]) {
+                case BINARY_FORMAT_LEGACY:
+                    return decrypted;
+                case BINARY_FORMAT_V1:
+                    return decodeContent(decrypted);
+                default:
+                    throw new IllegalStateException("Unknown binary content format: " + storedContent[0]);
+            }
+        } catch (Exception e) {
+            logger.error("[Encryption] Content decryption failed", e);
+            throw new RuntimeException("Error decrypting content: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Keyed fingerprint of {@code data[offset, offset + length)}, used to recognise unchanged content
+     * chunks without storing anything derived from the plaintext in the clear.
+     *
+     * @return the first {@link #FINGERPRINT_SIZE} bytes of HMAC-SHA256
+     */
+    public static byte[] fingerprint(byte[] data, int offset, int length) {
+        if (instance == null) {
+            throw new IllegalStateException("EncryptionUtil not initialized. Ensure Spring context is loaded.");
+        }
+        Mac mac = FINGERPRINT_MAC.get();
+        mac.update(data, offset, length);
+        return Arrays.copyOf(mac.doFinal(), FINGERPRINT_SIZE);
+    }
+
+    /**
+     * AES-256 key for attachment blobs, derived from the secret so it is never shared with note content.
+     */
+    public static byte[] attachmentKey() {
+        if (instance == null) {
+            throw new IllegalStateException("EncryptionUtil not initialized. Ensure Spring context is loaded.");
+        }
+        return instance.attachmentKey.clone();
+    }
+
+    /**
+     * Opaque, stable id of a tag or folder name for the tag index, so the index never stores names in the clear.
+     *
+     * @return hex of the first {@link #FINGERPRINT_SIZE} bytes of HMAC-SHA256
+     */
+    public static String tagKey(String normalizedName) {
+        if (instance == null) {
+            throw new IllegalStateException("EncryptionUtil not initialized. Ensure Spring context is loaded.");
+        }
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(instance.tagIndexKey, "HmacSHA256"));
+            byte[] digest = mac.doFinal(normalizedName.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, FINGERPRINT_SIZE);
+        } catch (Exception e) {
+            throw new IllegalStateException("HmacSHA256 not available", e);
+        }
+    }
+
+    /**
+     * Re-encode a Base64 content value into the binary format without decrypting it.
+     * Legacy plaintext values (not valid ciphertext) are encrypted on the way.
+     */
+    public static byte[] toBinaryContent(String storedContent) {
+        if (storedContent == null) {
+            return null;
+        }
+        if (storedContent.startsWith(CONTENT_FORMAT_PREFIX)) {
+            return withCodec(BINARY_FORMAT_V1, Base64.getDecoder().decode(storedContent.substring(CONTENT_FORMAT_PREFIX.length())));
+        }
+        try {
+            byte[] decoded = Base64.getDecoder().decode(storedContent);
+            if (decoded.length >= IV_SIZE + 16) {
+                return withCodec(BINARY_FORMAT_LEGACY, decoded);
+            }
+        } catch (IllegalArgumentException e) {
+            // Not Base64: stored before encryption was introduced
+        }
+        return encryptContentToBytes(storedContent);
+    }
+
+    /**
+     * Prefix the plaintext with its codec byte, deflating it when enabled, above the threshold and actually smaller.
+     */
+    static byte[] encodeContent(byte[] plaintext) {
+        if (instance.compressionEnabled && plaintext.length >= instance.compressionThreshold) {
+            byte[] compressed = CompressionUtil.deflate(plaintext);
+            if (compressed.length < plaintext.length) {
+                return withCodec(CODEC_DEFLATE, compressed);
+            }
+        }
+        return withCodec(CODEC_RAW, plaintext);
+    }
+
+    static byte[] decodeContent(byte[] payload) {
+        if (payload.length == 0) {
+            throw new IllegalStateException("Missing content codec header");
+        }
+        switch (payload[0]) {
+            case CODEC_RAW:
+                byte[] raw = new byte[payload.length - 1];
+                System.arraycopy(payload, 1, raw, 0, raw.length);
+                return raw;
+            case CODEC_DEFLATE:
+                return CompressionUtil.inflate(payload, 1, payload.length - 1);
+            default:
+                throw new IllegalStateException("Unknown content codec: " + payload[0]);
+        }
+    }
+
+    private static byte[] withCodec(byte header, byte[] body) {
+        byte[] out = new byte[body.length + 1];
+        out[0] = header;
+        System.arraycopy(body, 0, out, 1, body.length);
+        return out;
+    }
+
+    /**
+     * AES-256-CBC encrypt raw bytes with a random IV.
+     *
+     * @return IV + ciphertext
+     */
+    static byte[] encryptBytes(byte[] plaintext) throws Exception {
+        SecureRandom random = new SecureRandom();
+        byte[] iv = new byte[IV_SIZE];
+        random.nextBytes(iv);
+
+        Cipher cipher = Cipher.getInstance(ALGORITHM);
+        SecretKeySpec keySpec = new SecretKeySpec(instance.secretKeyBytes, 0, AES_KEY_SIZE, KEY_ALGORITHM);
+        cipher.init(Cipher.ENCRYPT_MODE, keySpec, new IvParameterSpec(iv));
+        byte[] encrypted = cipher.doFinal(plaintext);
+
+        byte[] ivAndEncrypted = new byte[IV_SIZE + encrypted.length];
+        System.arraycopy(iv, 0, ivAndEncrypted, 0, IV_SIZE);
+        System.arraycopy(encrypted, 0, ivAndEncrypted, IV_SIZE, encrypted.length);
+        return ivAndEncrypted;
+    }
+
+    /**
+     * AES-256-CBC decrypt {@code data[offset, offset + length)} laid out as IV + ciphertext.
+     */
+    static byte[] decryptBytes(byte[] data, int offset, int length) throws Exception {
+        Cipher cipher = Cipher.getInstance(ALGORITHM);
+        SecretKeySpec keySpec = new SecretKeySpec(instance.secretKeyBytes, 0, AES_KEY_SIZE, KEY_ALGORITHM);
+        cipher.init(Cipher.DECRYPT_MODE, keySpec, new IvParameterSpec(data, offset, IV_SIZE));
+        return cipher.doFinal(data, offset + IV_SIZE, length - IV_SIZE);
+    }
 }
 
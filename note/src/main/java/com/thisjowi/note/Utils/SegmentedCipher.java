@@ -0,0 +1,214 @@
+package com.thisjowi.note.Utils;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+/**
+ * Streaming AES-GCM for large blobs. The plaintext is cut into fixed-size segments that are
+ * sealed on their own, so any segment can be decrypted without touching the others.
+ *
+ * <pre>
+ * header:  [version 1][segment size int32][nonce prefix 7 bytes]
+ * segment: [ciphertext][16 byte tag], every segment but the last holds exactly segment-size bytes
+ * </pre>
+ *
+ * The 12-byte nonce of segment i is prefix || i (int32) || last flag, so segments cannot be
+ * reordered, dropped or truncated without failing authentication. Kept free of Spring, like
+ * the other helpers in this package.
+ */
+public final class SegmentedCipher {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024;
+    public static final int TAG_SIZE = 16;
+    private static final byte VERSION = 1;
+    private static final int NONCE_PREFIX_SIZE = 7;
+    public static final int HEADER_SIZE = 1 + 4 + NONCE_PREFIX_SIZE;
+    private static final String ALGORITHM = "AES/GCM/NoPadding";
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private SegmentedCipher() {
+    }
+
+    /**
+     * Number of segments holding {@code plaintextSize} bytes; an empty blob still has one (empty) segment.
+     */
+    public static long segmentCount(long plaintextSize, int segmentSize) {
+        return plaintextSize == 0 ? 1 : (plaintextSize + segmentSize - 1) / segmentSize;
+    }
+
+    /**
+     * Byte offset of segment {@code index} in the ciphertext.
+     */
+    public static long segmentOffset(long index, int segmentSize) {
+        return HEADER_SIZE + index * (segmentSize + (long) TAG_SIZE);
+    }
+
+    /**
+     * Wrap {@code out} so everything written to the returned stream is encrypted. Memory use is one
+     * segment. Closing the stream seals the last segment and closes {@code out}.
+     *
+     * @param aad bound to every segment, so a blob only decrypts under the name it was written for
+     */
+    public static EncryptingStream encrypt(OutputStream out, byte[] key, byte[] aad, int segmentSize) throws IOException {
+        return new EncryptingStream(out, key, aad, segmentSize);
+    }
+
+    /**
+     * Parse a blob header and return a decryptor for its segments.
+     */
+    public static Decryptor decryptor(byte[] header, byte[] key, byte[] aad) {
+        if (header.length < HEADER_SIZE || header[0] != VERSION) {
+            throw new IllegalStateException("Unsupported attachment format");
+        }
+        int segmentSize = ByteBuffer.wrap(header, 1, 4).getInt();
+        byte[] prefix = new byte[NONCE_PREFIX_SIZE];
+        System.arraycopy(header, 5, prefix, 0, NONCE_PREFIX_SIZE);
+        return new Decryptor(key, aad, segmentSize, prefix);
+    }
+
+    private static byte[] nonce(byte[] prefix, long index, boolean last) {
+        if (index > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Too many segments");
+        }
+        return ByteBuffer.allocate(12).put(prefix).putInt((int) index).put((byte) (last ? 1 : 0)).array();
+    }
+
+    private static Cipher newCipher() {
+        try {
+            return Cipher.getInstance(ALGORITHM);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES/GCM not available", e);
+        }
+    }
+
+    public static final class EncryptingStream extends FilterOutputStream {
+
+        private final Cipher cipher = newCipher();
+        private final SecretKeySpec key;
+        private final byte[] aad;
+        private final byte[] prefix = new byte[NONCE_PREFIX_SIZE];
+        private final byte[] buffer;
+        private int buffered;
+        private long index;
+        private long plaintextSize;
+        private boolean closed;
+
+        private EncryptingStream(OutputStream out, byte[] key, byte[] aad, int segmentSize) throws IOException {
+            super(out);
+            if (segmentSize <= 0) {
+                throw new IllegalArgumentException("Segment size must be positive");
+            }
+            this.key = new SecretKeySpec(key, "AES");
+            this.aad = aad;
+            this.buffer = new byte[segmentSize];
+            RANDOM.nextBytes(prefix);
+            out.write(ByteBuffer.allocate(HEADER_SIZE).put(VERSION).putInt(segmentSize).put(prefix).array());
+        }
+
+        /**
+         * Plaintext bytes written so far.
+         */
+        public long size() {
+            return plaintextSize;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                // A full buffer is only sealed once more data arrives: the final segment needs the last flag
+                if (buffered == buffer.length) {
+                    seal(false);
+                }
+                int n = Math.min(len, buffer.length - buffered);
+                System.arraycopy(b, off, buffer, buffered, n);
+                buffered += n;
+                plaintextSize += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() {
+            // Segments are written whole; flushing a partial one would break the format
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                seal(true);
+                out.flush();
+            } finally {
+                out.close();
+            }
+        }
+
+        private void seal(boolean last) throws IOException {
+            try {
+                cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_SIZE * 8, nonce(prefix, index, last)));
+                if (aad != null) {
+                    cipher.updateAAD(aad);
+                }
+                out.write(cipher.doFinal(buffer, 0, buffered));
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Failed to encrypt attachment segment", e);
+            }
+            index++;
+            buffered = 0;
+        }
+    }
+
+    public static final class Decryptor {
+
+        private final Cipher cipher = newCipher();
+        private final SecretKeySpec key;
+        private final byte[] aad;
+        private final int segmentSize;
+        private final byte[] prefix;
+
+        private Decryptor(byte[] key, byte[] aad, int segmentSize, byte[] prefix) {
+            this.key = new SecretKeySpec(key, "AES");
+            this.aad = aad;
+            this.segmentSize = segmentSize;
+            this.prefix = prefix;
+        }
+
+        public int segmentSize() {
+            return segmentSize;
+        }
+
+        /**
+         * Decrypt and authenticate one segment ({@code length} bytes including the tag).
+         */
+        public byte[] decryptSegment(long index, boolean last, byte[] segment, int length) {
+            try {
+                cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_SIZE * 8, nonce(prefix, index, last)));
+                if (aad != null) {
+                    cipher.updateAAD(aad);
+                }
+                return cipher.doFinal(segment, 0, length);
+            } catch (AEADBadTagException e) {
+                throw new IllegalStateException("Attachment segment " + index + " failed authentication", e);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Failed to decrypt attachment segment", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.thisjowi.note.config;
+
+import org.springframework.boot.autoconfigure.flyway.FlywayConfigurationCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class FlywayConfig {
+
+    // The notes schema was created by Hibernate before migrations existed, so existing
+    // databases are baselined below V1. Services can share a database, hence the own history table.
+    @Bean
+    public FlywayConfigurationCustomizer flywayConfigurationCustomizer() {
+        return configuration -> configuration
+                .baselineOnMigrate(true)
+                .baselineVersion("0")
+                .table("flyway_schema_history_notes");
+    }
+}
@@ -0,0 +1,70 @@
+package com.thisjowi.note.config;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Beans of the reactive profile: an R2DBC pool on the same database as JPA and the schedulers that
+ * keep blocking work off the event loop.
+ *
+ * Boot's R2DBC auto-configuration is excluded in {@code NoteApplication}: it would fail the servlet
+ * profile without an R2DBC URL, and its transaction manager would replace the JPA one.
+ */
+@Configuration
+@Profile("reactive")
+public class ReactiveConfig {
+
+    // Defaults to the JDBC URL with the scheme swapped, so no extra configuration is needed
+    @Bean(destroyMethod = "dispose")
+    public ConnectionPool connectionFactory(
+            @Value("${spring.r2dbc.url:}") String r2dbcUrl,
+            @Value("${spring.datasource.url:}") String jdbcUrl,
+            @Value("${spring.datasource.username:}") String username,
+            @Value("${spring.datasource.password:}") String password,
+            @Value("${notes.reactive.pool-size:20}") int poolSize) {
+        String url = !r2dbcUrl.isBlank() ? r2dbcUrl : jdbcUrl.replaceFirst("^jdbc:", "r2dbc:");
+        ConnectionFactoryOptions.Builder options = ConnectionFactoryOptions.parse(url).mutate();
+        if (!username.isBlank()) {
+            options.option(ConnectionFactoryOptions.USER, username);
+        }
+        if (!password.isBlank()) {
+            options.option(ConnectionFactoryOptions.PASSWORD, password);
+        }
+        ConnectionFactory connectionFactory = ConnectionFactories.get(options.build());
+        return new ConnectionPool(ConnectionPoolConfiguration.builder(connectionFactory)
+                .maxSize(poolSize)
+                .build());
+    }
+
+    @Bean
+    public DatabaseClient databaseClient(ConnectionFactory connectionFactory) {
+        return DatabaseClient.create(connectionFactory);
+    }
+
+    // Decryption and decompression: CPU bound, so one thread per core and a bounded queue
+    @Bean(destroyMethod = "dispose")
+    public Scheduler cryptoScheduler(
+            @Value("${notes.reactive.crypto-threads:0}") int threads,
+            @Value("${notes.reactive.crypto-queue:10000}") int queue) {
+        int size = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        return Schedulers.newBoundedElastic(size, queue, "note-crypto");
+    }
+
+    // Writes still go through JPA; sized like the JDBC pool so callers queue here instead of on it
+    @Bean(destroyMethod = "dispose")
+    public Scheduler jpaScheduler(
+            @Value("${notes.reactive.jpa-threads:10}") int threads,
+            @Value("${notes.reactive.jpa-queue:10000}") int queue) {
+        return Schedulers.newBoundedElastic(threads, queue, "note-jpa");
+    }
+}
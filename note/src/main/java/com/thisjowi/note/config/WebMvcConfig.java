@@ -0,0 +1,22 @@
+package com.thisjowi.note.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+@Profile("!reactive")
+public class WebMvcConfig implements WebMvcConfigurer {
+
+    // Streaming responses (content, import, export) run asynchronously; the container default
+    // of 30 seconds is too short for a large import or export
+    @Value("${notes.streaming.timeout-ms:600000}")
+    private long streamingTimeout;
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setDefaultTimeout(streamingTimeout);
+    }
+}
@@ -0,0 +1,202 @@
+package com.thisjowi.note.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import com.thisjowi.note.entity.Note;
+import com.thisjowi.note.entity.NoteAttachment;
+import com.thisjowi.note.service.AttachmentService;
+import com.thisjowi.note.service.AuthenticationClient;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+
+@RestController
+@Profile("!reactive")
+@RequestMapping("/api/v1/notes/{noteId}/attachments")
+public class AttachmentController {
+
+    @Autowired
+    private AttachmentService attachmentService;
+
+    @Autowired
+    private AuthenticationClient authenticationClient;
+
+    private Long extractUserIdFromToken(String authHeader) {
+        if (authHeader == null || authHeader.isEmpty()) {
+            return null;
+        }
+        Long userId = authenticationClient.getUserIdFromToken(authHeader);
+        // getUserIdFromToken returns -1 if there is an error
+        return (userId != null && userId >= 0) ? userId : null;
+    }
+
+    // 401 / 404 / 403 for the note, or null when the user owns it
+    private ResponseEntity<?> checkNote(Long userId, Optional<Note> note) {
+        if (userId == null) {
+            return ResponseEntity.status(401).build(); // Unauthorized
+        }
+        if (note.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!note.get().getUserId().equals(userId)) {
+            return ResponseEntity.status(403).build(); // Forbidden
+        }
+        return null;
+    }
+
+    @GetMapping
+    public ResponseEntity<?> listAttachments(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authHeader,
+            @PathVariable Long noteId) {
+        Long userId = extractUserIdFromToken(authHeader);
+        ResponseEntity<?> denied = checkNote(userId, userId == null ? Optional.empty() : attachmentService.findLiveNote(noteId));
+        if (denied != null) {
+            return denied;
+        }
+        List<NoteAttachment> attachments = attachmentService.list(noteId);
+        return ResponseEntity.ok(attachments);
+    }
+
+    // Multipart upload; the container spools the part to disk, so it is read back as a stream
+    @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<?> uploadMultipart(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authHeader,
+            @PathVariable Long noteId,
+            @RequestParam("file") MultipartFile file) throws IOException {
+        try (InputStream input = file.getInputStream()) {
+            return upload(authHeader, noteId, file.getOriginalFilename(), file.getContentType(), input);
+        }
+    }
+
+    // Raw upload: the request body is the file, encrypted as it arrives
+    @PostMapping(consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<?> uploadStream(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authHeader,
+            @PathVariable Long noteId,
+            @RequestParam("name") String name,
+            @RequestParam(value = "type", required = false) String type,
+            HttpServletRequest request) throws IOException {
+        return upload(authHeader, noteId, name, type, request.getInputStream());
+    }
+
+    private ResponseEntity<?> upload(String authHeader, Long noteId, String name, String type, InputStream input) throws IOException {
+        Long userId = extractUserIdFromToken(authHeader);
+        Optional<Note> note = userId == null ? Optional.empty() : attachmentService.findLiveNote(noteId);
+        ResponseEntity<?> denied = checkNote(userId, note);
+        if (denied != null) {
+            return denied;
+        }
+        if (name == null || name.isBlank()) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            NoteAttachment saved = attachmentService.upload(note.get(), name, normalizeType(type), input);
+            return ResponseEntity.status(HttpStatus.CREATED).body(saved);
+        } catch (AttachmentService.AttachmentTooLargeException e) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+        }
+    }
+
+    // Download, honouring a single HTTP Range; only the segments covering it are decrypted
+    @GetMapping("/{attachmentId}")
+    public ResponseEntity<?> download(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authHeader,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String rangeHeader,
+            @PathVariable Long noteId,
+            @PathVariable Long attachmentId) {
+        Long userId = extractUserIdFromToken(authHeader);
+        ResponseEntity<?> denied = checkNote(userId, userId == null ? Optional.empty() : attachmentService.findLiveNote(noteId));
+        if (denied != null) {
+            return denied;
+        }
+        Optional<NoteAttachment> found = attachmentService.find(noteId, attachmentId);
+        if (found.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+
+        NoteAttachment attachment = found.get();
+        long size = attachment.getSize();
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        headers.setContentType(MediaType.parseMediaType(attachment.getContentType()));
+        headers.setContentDisposition(ContentDisposition.attachment()
+                .filename(attachment.getFileName(), StandardCharsets.UTF_8).build());
+
+        long start = 0;
+        long end = size - 1;
+        HttpStatus status = HttpStatus.OK;
+        if (rangeHeader != null && size > 0) {
+            List<HttpRange> ranges;
+            try {
+                ranges = HttpRange.parseRanges(rangeHeader);
+            } catch (IllegalArgumentException e) {
+                ranges = List.of();
+            }
+            // Multiple ranges are answered with the whole file, which RFC 9110 allows
+            if (ranges.size() == 1) {
+                try {
+                    start = ranges.get(0).getRangeStart(size);
+                    end = ranges.get(0).getRangeEnd(size);
+                } catch (IllegalArgumentException e) {
+                    return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                            .header(HttpHeaders.CONTENT_RANGE, "bytes */" + size).build();
+                }
+                status = HttpStatus.PARTIAL_CONTENT;
+                headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+            }
+        }
+        headers.setContentLength(size == 0 ? 0 : end - start + 1);
+
+        long from = start;
+        long to = end;
+        StreamingResponseBody body = out -> {
+            if (size > 0) {
+                attachmentService.streamRange(attachment, from, to, out);
+            }
+        };
+        return new ResponseEntity<>(body, headers, status);
+    }
+
+    @DeleteMapping("/{attachmentId}")
+    public ResponseEntity<?> deleteAttachment(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authHeader,
+            @PathVariable Long noteId,
+            @PathVariable Long attachmentId) {
+        Long userId = extractUserIdFromToken(authHeader);
+        ResponseEntity<?> denied = checkNote(userId, userId == null ? Optional.empty() : attachmentService.findLiveNote(noteId));
+        if (denied != null) {
+            return denied;
+        }
+        Optional<NoteAttachment> found = attachmentService.find(noteId, attachmentId);
+        if (found.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        attachmentService.delete(found.get());
+        return ResponseEntity.noContent().build();
+    }
+
+    private static String normalizeType(String type) {
+        if (type == null || type.isBlank()) {
+            return MediaType.APPLICATION_OCTET_STREAM_VALUE;
+        }
+        try {
+            return MediaType.parseMediaType(type).toString();
+        } catch (IllegalArgumentException e) {
+            return MediaType.APPLICATION_OCTET_STREAM_VALUE;
+        }
+    }
+}
@@ -1,22 +1,40 @@
 package com.thisjowi.note.controller;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import com.thisjowi.note.entity.Note;
+import com.thisjowi.note.entity.NoteChanges;
+import com.thisjowi.note.entity.NoteRevision;
 import com.thisjowi.note.repository.NoteRepository;
 import com.thisjowi.note.service.NoteService;
 import com.thisjowi.note.service.AuthenticationClient;
+import com.thisjowi.note.service.CollectionVersionCache;
+import com.thisjowi.note.service.NoteTransferService;
+import com.thisjowi.note.service.TagIndexService;
 import com.thisjowi.note.kafka.KafkaConsumerService;
 
+import jakarta.servlet.http.HttpServletRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @RestController
+@Profile("!reactive")
 @RequestMapping("/api/v1/notes")
 public class NotesController {
 
+    private static final int MAX_CHANGES_PAGE = 1000;
+
     @Autowired
     private NoteService notesService;
 
@@ -26,6 +44,12 @@ public class NotesController {
     @Autowired
     private AuthenticationClient authenticationClient;
 
+    @Autowired
+    private CollectionVersionCache collectionVersions;
+
+    @Autowired
+    private NoteTransferService transferService;
+
     /**
      * Extracts the userId from the JWT token in the Authorization header
      * @param authHeader the value of the Authorization header (ex: "Bearer token...")
@@ -51,21 +75,118 @@ public class NotesController {
 
         // Assign the userId of the authenticated user to the note
         note.setUserId(userId);
-        Note savedNote = notesService.saveNote(note);
-        return ResponseEntity.ok(savedNote);
+        try {
+            Note savedNote = notesService.saveNote(note);
+            return ResponseEntity.ok(savedNote);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build(); // Too many tags or an invalid tag name
+        }
     }
 
     @GetMapping
     public ResponseEntity<List<Note>> getAllNotes(
-            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authHeader) {
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authHeader,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         Long userId = extractUserIdFromToken(authHeader);
         if (userId == null) {
             return ResponseEntity.status(401).build(); // Unauthorized
         }
 
+        // Nothing changed since the client's copy: skip the query and the decryption
+        String etag = collectionVersions.etag(userId);
+        if (collectionVersions.matches(etag, ifNoneMatch)) {
+            return ResponseEntity.status(304).eTag(etag).cacheControl(CacheControl.noCache().cachePrivate()).build();
+        }
+
         // Return only the notes of the authenticated user
         List<Note> notes = notesService.getNotesByUserId(userId);
-        return ResponseEntity.ok(notes);
+        return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache().cachePrivate()).body(notes);
+    }
+
+    // Notes created, updated or deleted since the client's last sync (since = 0 for a full sync, paged with afterId)
+    @GetMapping("/changes")
+    public ResponseEntity<NoteChanges> getChanges(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authHeader,
+            @RequestParam(value = "since", defaultValue = "0") long since,
+            @RequestParam(value = "afterId", required = false) Long afterId,
+            @RequestParam(value = "limit", defaultValue = "500") int limit) {
+        Long userId = extractUserIdFromToken(authHeader);
+        if (userId == null) {
+            return ResponseEntity.status(401).build(); // Unauthorized
+        }
+        if (since < 0 || limit < 1 || (afterId != null && afterId < 0)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        NoteChanges changes = notesService.getChangesSince(userId, since, afterId, Math.min(limit, MAX_CHANGES_PAGE));
+        return ResponseEntity.ok(changes);
+    }
+
+    // Bulk import: NDJSON in, NDJSON progress / error / summary lines out
+    @PostMapping(value = "/import", consumes = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_PLAIN_VALUE})
+    public ResponseEntity<StreamingResponseBody> importNotes(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authHeader,
+            HttpServletRequest request) throws IOException {
+        Long userId = extractUserIdFromToken(authHeader);
+        if (userId == null) {
+            return ResponseEntity.status(401).build(); // Unauthorized
+        }
+
+        InputStream input = request.getInputStream();
+        StreamingResponseBody body = out -> transferService.importNotes(userId, input, out);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    // Bulk export of the user's notes as NDJSON
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportNotes(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authHeader) {
+        Long userId = extractUserIdFromToken(authHeader);
+        if (userId == null) {
+            return ResponseEntity.status(401).build(); // Unauthorized
+        }
+
+        StreamingResponseBody body = out -> transferService.exportNotes(userId, out);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    // Tags and folders of the user with their note counts
+    @GetMapping("/tags")
+    public ResponseEntity<List<TagIndexService.TagCount>> getTags(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authHeader) {
+        Long userId = extractUserIdFromToken(authHeader);
+        if (userId == null) {
+            return ResponseEntity.status(401).build(); // Unauthorized
+        }
+
+        return ResponseEntity.ok(notesService.getTagCounts(userId));
+    }
+
+    // Notes with all tags in "all", any tag in "any" and/or in "folder"; countOnly answers {"count": n}
+    @GetMapping("/filter")
+    public ResponseEntity<?> filterNotes(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authHeader,
+            @RequestParam(value = "all", required = false) List<String> all,
+            @RequestParam(value = "any", required = false) List<String> any,
+            @RequestParam(value = "folder", required = false) String folder,
+            @RequestParam(value = "limit", defaultValue = "100") int limit,
+            @RequestParam(value = "countOnly", defaultValue = "false") boolean countOnly) {
+        Long userId = extractUserIdFromToken(authHeader);
+        if (userId == null) {
+            return ResponseEntity.status(401).build(); // Unauthorized
+        }
+        if ((all == null || all.isEmpty()) && (any == null || any.isEmpty()) && (folder == null || folder.isBlank())) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        try {
+            if (countOnly) {
+                return ResponseEntity.ok(Map.of("count", notesService.countNotes(userId, all, any, folder)));
+            }
+            return ResponseEntity.ok(notesService.filterNotes(userId, all, any, folder, Math.max(1, Math.min(limit, 1000))));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
     }
 
     // Search for notes by title fragment (filtered by user)
@@ -96,6 +217,103 @@ public class NotesController {
         return noteOpt.map(ResponseEntity::ok).orElseGet(() -> ResponseEntity.notFound().build());
     }
 
+    // Stream the decrypted content of a note by ID (validating user ownership)
+    @GetMapping("/{id}/content")
+    public ResponseEntity<StreamingResponseBody> getNoteContent(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authHeader,
+            @PathVariable Long id) {
+        Long userId = extractUserIdFromToken(authHeader);
+        if (userId == null) {
+            return ResponseEntity.status(401).build(); // Unauthorized
+        }
+
+        Optional<Note> noteOpt = noteRepository.findById(id).filter(n -> !n.isDeleted());
+        if (noteOpt.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+
+        Note note = noteOpt.get();
+        if (!note.getUserId().equals(userId)) {
+            return ResponseEntity.status(403).build(); // Forbidden
+        }
+
+        StreamingResponseBody body = out -> notesService.streamContent(note, out);
+        return ResponseEntity.ok()
+                .contentType(new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8))
+                .body(body);
+    }
+
+    // Revision history of a note (validating user ownership)
+    @GetMapping("/{id}/revisions")
+    public ResponseEntity<List<NoteRevision>> getRevisions(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authHeader,
+            @PathVariable Long id) {
+        Long userId = extractUserIdFromToken(authHeader);
+        if (userId == null) {
+            return ResponseEntity.status(401).build(); // Unauthorized
+        }
+
+        Optional<Note> noteOpt = noteRepository.findById(id).filter(n -> !n.isDeleted());
+        if (noteOpt.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!noteOpt.get().getUserId().equals(userId)) {
+            return ResponseEntity.status(403).build(); // Forbidden
+        }
+
+        return ResponseEntity.ok(notesService.getRevisions(id));
+    }
+
+    // Content of an old revision, rebuilt on request (validating user ownership)
+    @GetMapping("/{id}/revisions/{revision}")
+    public ResponseEntity<String> getRevisionContent(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authHeader,
+            @PathVariable Long id,
+            @PathVariable int revision) {
+        Long userId = extractUserIdFromToken(authHeader);
+        if (userId == null) {
+            return ResponseEntity.status(401).build(); // Unauthorized
+        }
+
+        Optional<Note> noteOpt = noteRepository.findById(id).filter(n -> !n.isDeleted());
+        if (noteOpt.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!noteOpt.get().getUserId().equals(userId)) {
+            return ResponseEntity.status(403).build(); // Forbidden
+        }
+
+        return notesService.getRevisionContent(id, revision)
+                .map(content -> ResponseEntity.ok()
+                        .contentType(new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8))
+                        .body(content))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    // Undo: make an old revision the current content (validating user ownership)
+    @PostMapping("/{id}/revisions/{revision}/restore")
+    public ResponseEntity<Note> restoreRevision(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authHeader,
+            @PathVariable Long id,
+            @PathVariable int revision) {
+        Long userId = extractUserIdFromToken(authHeader);
+        if (userId == null) {
+            return ResponseEntity.status(401).build(); // Unauthorized
+        }
+
+        Optional<Note> noteOpt = noteRepository.findById(id).filter(n -> !n.isDeleted());
+        if (noteOpt.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!noteOpt.get().getUserId().equals(userId)) {
+            return ResponseEntity.status(403).build(); // Forbidden
+        }
+
+        return notesService.restoreRevision(noteOpt.get(), revision)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
     // Update note found by title (validating user ownership)
     @PutMapping("/{title}")
     public ResponseEntity<Note> updateNote(
@@ -107,7 +325,12 @@ public class NotesController {
             return ResponseEntity.status(401).build(); // Unauthorized
         }
 
-        Optional<Note> updated = notesService.updateNoteByTitleAndUserId(title, noteDetails, userId);
+        Optional<Note> updated;
+        try {
+            updated = notesService.updateNoteByTitleAndUserId(title, noteDetails, userId);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build(); // Too many tags or an invalid tag name
+        }
         return updated.map(ResponseEntity::ok).orElseGet(() -> ResponseEntity.notFound().build());
     }
 
@@ -121,23 +344,14 @@ public class NotesController {
             return ResponseEntity.status(401).build(); // Unauthorized
         }
 
-        // Verify that the note belongs to the authenticated user
-        Optional<Note> noteOpt = noteRepository.findById(id);
-        if (noteOpt.isEmpty()) {
-            return ResponseEntity.notFound().build();
+        // Ownership is part of the delete statement; only a failed delete needs a second query
+        if (notesService.deleteNoteForUser(id, userId)) {
+            return ResponseEntity.noContent().build();
         }
-
-        Note note = noteOpt.get();
-        if (!note.getUserId().equals(userId)) {
+        if (notesService.isLiveNote(id)) {
             // The note does not belong to the authenticated user
             return ResponseEntity.status(403).build(); // Forbidden
         }
-
-        boolean deleted = notesService.deleteNoteById(id);
-        if (deleted) {
-            return ResponseEntity.noContent().build();
-        } else {
-            return ResponseEntity.notFound().build();
-        }
+        return ResponseEntity.notFound().build();
     }
 }
\ No newline at end of file
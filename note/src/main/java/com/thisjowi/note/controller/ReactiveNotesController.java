@@ -0,0 +1,157 @@
+package com.thisjowi.note.controller;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import com.thisjowi.note.entity.Note;
+import com.thisjowi.note.entity.NoteChanges;
+import com.thisjowi.note.service.AuthenticationClient;
+import com.thisjowi.note.service.CollectionVersionCache;
+import com.thisjowi.note.service.ReactiveNoteService;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+
+/**
+ * WebFlux version of the core {@link NotesController} endpoints, active with the reactive profile.
+ * Same paths, parameters and status codes. Attachments, revisions, tags and bulk import/export are
+ * only served by the servlet stack.
+ */
+@RestController
+@Profile("reactive")
+@RequestMapping("/api/v1/notes")
+public class ReactiveNotesController {
+
+    private static final int MAX_CHANGES_PAGE = 1000;
+    private static final DataBufferFactory BUFFERS = DefaultDataBufferFactory.sharedInstance;
+
+    private final ReactiveNoteService notesService;
+    private final AuthenticationClient authenticationClient;
+    private final CollectionVersionCache collectionVersions;
+
+    public ReactiveNotesController(ReactiveNoteService notesService, AuthenticationClient authenticationClient,
+                                   CollectionVersionCache collectionVersions) {
+        this.notesService = notesService;
+        this.authenticationClient = authenticationClient;
+        this.collectionVersions = collectionVersions;
+    }
+
+    /**
+     * Resolves the user of the Authorization header and runs {@code handler} with it, or answers 401.
+     */
+    private <T> Mono<ResponseEntity<T>> withUser(String authHeader, Function<Long, Mono<ResponseEntity<T>>> handler) {
+        if (authHeader == null || authHeader.isEmpty()) {
+            return Mono.just(ResponseEntity.status(401).<T>build()); // Unauthorized
+        }
+        return authenticationClient.userIdFromToken(authHeader)
+                .filter(userId -> userId >= 0)
+                .flatMap(handler)
+                .switchIfEmpty(Mono.fromSupplier(() -> ResponseEntity.status(401).<T>build()));
+    }
+
+    @PostMapping
+    public Mono<ResponseEntity<Note>> createNote(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authHeader,
+            @RequestBody Note note) {
+        return withUser(authHeader, userId -> {
+            note.setUserId(userId);
+            return notesService.saveNote(note)
+                    .map(ResponseEntity::ok)
+                    .onErrorResume(IllegalArgumentException.class, e -> Mono.just(ResponseEntity.badRequest().build()));
+        });
+    }
+
+    @GetMapping
+    public Mono<ResponseEntity<Flux<Note>>> getAllNotes(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authHeader,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return withUser(authHeader, userId -> {
+            String etag = collectionVersions.etag(userId);
+            if (collectionVersions.matches(etag, ifNoneMatch)) {
+                return Mono.just(ResponseEntity.status(304).eTag(etag).cacheControl(CacheControl.noCache().cachePrivate()).build());
+            }
+            // Streamed as a JSON array: notes are decrypted as fast as the client reads them
+            return Mono.just(ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache().cachePrivate())
+                    .body(notesService.getNotesByUserId(userId)));
+        });
+    }
+
+    @GetMapping("/changes")
+    public Mono<ResponseEntity<NoteChanges>> getChanges(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authHeader,
+            @RequestParam(value = "since", defaultValue = "0") long since,
+            @RequestParam(value = "afterId", required = false) Long afterId,
+            @RequestParam(value = "limit", defaultValue = "500") int limit) {
+        return withUser(authHeader, userId -> {
+            if (since < 0 || limit < 1 || (afterId != null && afterId < 0)) {
+                return Mono.just(ResponseEntity.badRequest().build());
+            }
+            return notesService.getChangesSince(userId, since, afterId, Math.min(limit, MAX_CHANGES_PAGE)).map(ResponseEntity::ok);
+        });
+    }
+
+    @GetMapping("/search")
+    public Mono<ResponseEntity<Flux<Note>>> searchNotes(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authHeader,
+            @RequestParam(value = "title", required = false) String title) {
+        return withUser(authHeader, userId -> Mono.just(ResponseEntity.ok(notesService.searchNotesByTitleAndUserId(title, userId))));
+    }
+
+    @GetMapping("/{title}")
+    public Mono<ResponseEntity<Note>> getNoteByTitle(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authHeader,
+            @PathVariable String title) {
+        return withUser(authHeader, userId -> notesService.getNoteByTitleAndUserId(title, userId)
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build()));
+    }
+
+    @GetMapping("/{id}/content")
+    public Mono<ResponseEntity<Flux<DataBuffer>>> getNoteContent(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authHeader,
+            @PathVariable Long id) {
+        return withUser(authHeader, userId -> notesService.findLiveNote(id)
+                .map(note -> {
+                    if (!note.getUserId().equals(userId)) {
+                        return ResponseEntity.status(403).<Flux<DataBuffer>>build(); // Forbidden
+                    }
+                    Flux<DataBuffer> body = notesService.streamContent(note).map(BUFFERS::wrap);
+                    return ResponseEntity.ok()
+                            .contentType(new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8))
+                            .body(body);
+                })
+                .defaultIfEmpty(ResponseEntity.notFound().build()));
+    }
+
+    @PutMapping("/{title}")
+    public Mono<ResponseEntity<Note>> updateNote(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authHeader,
+            @PathVariable String title,
+            @RequestBody Note noteDetails) {
+        return withUser(authHeader, userId -> notesService.updateNoteByTitleAndUserId(title, noteDetails, userId)
+                .map(updated -> updated.map(ResponseEntity::ok).orElseGet(() -> ResponseEntity.notFound().build()))
+                .onErrorResume(IllegalArgumentException.class, e -> Mono.just(ResponseEntity.badRequest().build())));
+    }
+
+    @DeleteMapping("/{id}")
+    public Mono<ResponseEntity<Void>> deleteNote(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authHeader,
+            @PathVariable Long id) {
+        return withUser(authHeader, userId -> notesService.deleteNoteForUser(id, userId).flatMap(deleted -> {
+            if (deleted) {
+                return Mono.just(ResponseEntity.noContent().<Void>build());
+            }
+            return notesService.isLiveNote(id).map(live -> live
+                    ? ResponseEntity.status(403).<Void>build() // Forbidden
+                    : ResponseEntity.notFound().<Void>build());
+        }));
+    }
+}
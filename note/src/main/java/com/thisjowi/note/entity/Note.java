@@ -1,5 +1,6 @@
 package com.thisjowi.note.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
@@ -8,6 +9,7 @@ import lombok.Setter;
 import org.springframework.format.annotation.DateTimeFormat;
 
 import java.time.LocalDateTime;
+import java.util.List;
 
 
 
@@ -16,21 +18,69 @@ import java.time.LocalDateTime;
 @Setter
 @NoArgsConstructor
 @AllArgsConstructor
-@Table(name = "notes")
+@Table(name = "notes", indexes = @Index(name = "idx_notes_user_seq", columnList = "user_id, seq"))
 public class Note {
 
    @Id @GeneratedValue(strategy = GenerationType.IDENTITY)
    private Long Id;
 
+   // Legacy Base64 ciphertext; cleared once the row has moved to contentBin
    @Column(columnDefinition = "TEXT")
    private String content;
 
+   // Format byte + IV + ciphertext, see EncryptionUtil.encryptContentToBytes
+   @JsonIgnore
+   @Column(name = "content_bin", columnDefinition = "BYTEA")
+   private byte[] contentBin;
+
+   // Large notes: ordered chunk fingerprints (16 bytes each), chunks live in note_chunks
+   @JsonIgnore
+   @Column(name = "chunk_manifest", columnDefinition = "BYTEA")
+   private byte[] chunkManifest;
+
    @Column(unique = true, nullable = false)
    private String title;
 
+   // Encrypted, newline-separated tag names; the API works with the decrypted list in tags
+   @JsonIgnore
+   @Column(name = "tags", columnDefinition = "TEXT")
+   private String tagsEnc;
+
+   @Transient
+   private List<String> tags;
+
+   // Encrypted folder name; the API works with the decrypted value in folder
+   @JsonIgnore
+   @Column(name = "folder", columnDefinition = "TEXT")
+   private String folderEnc;
+
+   @Transient
+   private String folder;
+
    @DateTimeFormat
    private LocalDateTime createdAt;
 
+   @DateTimeFormat
+   private LocalDateTime updatedAt;
+
    private Long userId;
 
+   // Per-user change sequence, see NoteSyncState. Null for rows not written since it was introduced.
+   private Long seq;
+
+   // Tombstone: deleted notes keep their row (without content) so clients can sync the deletion
+   @Column(nullable = false)
+   private boolean deleted;
+
+   // updatedAt and seq are set by NoteService on every user-visible change
+   @PrePersist
+   void onCreate() {
+      if (createdAt == null) {
+         createdAt = LocalDateTime.now();
+      }
+      if (updatedAt == null) {
+         updatedAt = createdAt;
+      }
+   }
+
 }
@@ -0,0 +1,48 @@
+package com.thisjowi.note.entity;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * File attached to a note. The bytes live encrypted in the blob store under blobKey;
+ * this row only holds what is needed to list the file and serve ranges of it.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@Table(name = "note_attachments", indexes = @Index(name = "idx_note_attachments_note", columnList = "note_id"))
+public class NoteAttachment {
+
+   @Id @GeneratedValue(strategy = GenerationType.IDENTITY)
+   private Long id;
+
+   @Column(name = "note_id", nullable = false)
+   private Long noteId;
+
+   @Column(name = "user_id", nullable = false)
+   private Long userId;
+
+   // Encrypted with EncryptionUtil.encrypt; file names can be as sensitive as the content
+   @Column(name = "file_name", nullable = false, columnDefinition = "TEXT")
+   private String fileName;
+
+   @Column(name = "content_type", nullable = false)
+   private String contentType;
+
+   // Plaintext size in bytes
+   @Column(nullable = false)
+   private long size;
+
+   @JsonIgnore
+   @Column(name = "blob_key", nullable = false, unique = true, length = 64)
+   private String blobKey;
+
+   @Column(name = "created_at", nullable = false)
+   private LocalDateTime createdAt;
+}
@@ -0,0 +1,33 @@
+package com.thisjowi.note.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * Response of GET /api/v1/notes/changes.
+ * Clients pass {@code seq} back as {@code since} (and {@code afterId}, while set) on the next call and keep
+ * paging while {@code hasMore} is set.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class NoteChanges {
+
+    private long seq;
+
+    private boolean hasMore;
+
+    // Created or updated notes, decrypted
+    private List<Note> notes;
+
+    // Ids of notes deleted since the cursor
+    private List<Long> deleted;
+
+    // Full sync only: last note id of this page, null once every live note has been sent
+    private Long afterId;
+}
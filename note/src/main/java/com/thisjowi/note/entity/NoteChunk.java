@@ -0,0 +1,41 @@
+package com.thisjowi.note.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * One independently encrypted piece of a large note.
+ * Chunks are identified by their keyed fingerprint; the note's manifest gives their order.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "note_chunks",
+       uniqueConstraints = @UniqueConstraint(columnNames = {"note_id", "fingerprint"}))
+public class NoteChunk {
+
+   @Id @GeneratedValue(strategy = GenerationType.IDENTITY)
+   private Long id;
+
+   @Column(name = "note_id", nullable = false)
+   private Long noteId;
+
+   // Hex of EncryptionUtil.fingerprint
+   @Column(nullable = false, length = 32)
+   private String fingerprint;
+
+   // Format byte + IV + ciphertext, see EncryptionUtil.encryptContentToBytes
+   @Column(nullable = false, columnDefinition = "BYTEA")
+   private byte[] data;
+
+   public NoteChunk(Long noteId, String fingerprint, byte[] data) {
+      this.noteId = noteId;
+      this.fingerprint = fingerprint;
+      this.data = data;
+   }
+}
@@ -0,0 +1,46 @@
+package com.thisjowi.note.entity;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * One version of a note's content. Snapshots hold the full content; the revisions after a
+ * snapshot hold a ContentDelta against the revision before them. Both are encrypted
+ * (and compressed when worthwhile) with EncryptionUtil.encryptContentToBytes.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@Table(name = "note_revisions",
+       uniqueConstraints = @UniqueConstraint(name = "uk_note_revisions_note_revision", columnNames = {"note_id", "revision"}))
+public class NoteRevision {
+
+   @Id @GeneratedValue(strategy = GenerationType.IDENTITY)
+   private Long id;
+
+   @Column(name = "note_id", nullable = false)
+   private Long noteId;
+
+   @Column(nullable = false)
+   private int revision;
+
+   @Column(nullable = false)
+   private boolean snapshot;
+
+   @JsonIgnore
+   @Column(nullable = false, columnDefinition = "BYTEA")
+   private byte[] data;
+
+   // Plaintext size of the content at this revision
+   @Column(nullable = false)
+   private long size;
+
+   @Column(name = "created_at", nullable = false)
+   private LocalDateTime createdAt;
+}
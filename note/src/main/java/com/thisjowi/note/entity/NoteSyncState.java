@@ -0,0 +1,27 @@
+package com.thisjowi.note.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Last change sequence handed out per user. Bumping it takes the row lock, so a user's
+ * writes get increasing sequence numbers in commit order.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "note_sync_state")
+public class NoteSyncState {
+
+   @Id
+   @Column(name = "user_id")
+   private Long userId;
+
+   @Column(name = "last_seq", nullable = false)
+   private long lastSeq;
+}
@@ -0,0 +1,39 @@
+package com.thisjowi.note.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Persisted bitmap of the notes carrying one tag (or sitting in one folder) for one user.
+ * tagKey is EncryptionUtil.tagKey of the normalised name, so lookups never need the name itself.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@Table(name = "note_tag_index",
+       uniqueConstraints = @UniqueConstraint(name = "uk_note_tag_index_user_tag", columnNames = {"user_id", "tag_key"}))
+public class NoteTagIndex {
+
+   @Id @GeneratedValue(strategy = GenerationType.IDENTITY)
+   private Long id;
+
+   @Column(name = "user_id", nullable = false)
+   private Long userId;
+
+   @Column(name = "tag_key", nullable = false, length = 32)
+   private String tagKey;
+
+   @Column(nullable = false)
+   private boolean folder;
+
+   // Display name, encrypted with EncryptionUtil.encrypt
+   @Column(nullable = false, columnDefinition = "TEXT")
+   private String name;
+
+   // Serialized Roaring64NavigableMap of note ids
+   @Column(nullable = false, columnDefinition = "BYTEA")
+   private byte[] bitmap;
+}
@@ -0,0 +1,41 @@
+package com.thisjowi.note.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Pending or finished purge of a deleted account. lastId is the checkpoint: every note of the
+ * user with an id at or below it is already gone, so a restarted purge continues after it.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+@Table(name = "note_user_purges")
+public class UserPurge {
+
+   @Id
+   @Column(name = "user_id")
+   private Long userId;
+
+   @Column(name = "last_id", nullable = false)
+   private long lastId;
+
+   @Column(nullable = false)
+   private long purged;
+
+   @Column(name = "requested_at", nullable = false)
+   private LocalDateTime requestedAt;
+
+   @Column(name = "completed_at")
+   private LocalDateTime completedAt;
+
+   public UserPurge(Long userId, LocalDateTime requestedAt) {
+      this.userId = userId;
+      this.requestedAt = requestedAt;
+   }
+}
@@ -1,6 +1,9 @@
 package com.thisjowi.note.kafka;
 import java.util.concurrent.atomic.AtomicReference;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.thisjowi.note.service.UserPurgeService;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Service;
 
@@ -10,10 +13,41 @@ public class KafkaConsumerService {
     // Stores the latest token received
     public static final AtomicReference<String> LAST_TOKEN = new AtomicReference<>(null);
 
+    private final ObjectMapper objectMapper;
+    private final UserPurgeService userPurgeService;
+
+    public KafkaConsumerService(ObjectMapper objectMapper, UserPurgeService userPurgeService) {
+        this.objectMapper = objectMapper;
+        this.userPurgeService = userPurgeService;
+    }
+
     @KafkaListener(topics = "auth-events", groupId = "notes-service-group")
     public void listen(String message) {
+        if (isUserDeleted(message)) {
+            return;
+        }
         // We assume that the message is the JWT token
         System.out.println("[Notes] Token received from Kafka: " + message);
         LAST_TOKEN.set(message);
     }
+
+    // Account deletion events are JSON; hand them to the purge job instead of treating them as a token
+    private boolean isUserDeleted(String message) {
+        if (message == null || !message.startsWith("{")) {
+            return false;
+        }
+        JsonNode event;
+        try {
+            event = objectMapper.readTree(message);
+        } catch (Exception e) {
+            System.err.println("[Notes] Could not read event from Kafka: " + e.getMessage());
+            return false;
+        }
+        if (!"USER_DELETED".equals(event.path("eventType").asText())) {
+            return false;
+        }
+        // Failures propagate so the container redelivers the event
+        userPurgeService.requestPurge(event.path("userId").asLong());
+        return true;
+    }
 }
@@ -0,0 +1,16 @@
+package com.thisjowi.note.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import com.thisjowi.note.entity.NoteAttachment;
+
+import java.util.List;
+
+public interface NoteAttachmentRepository extends JpaRepository<NoteAttachment, Long> {
+
+    List<NoteAttachment> findByNoteIdOrderByIdAsc(Long noteId);
+
+    // Blobs of the purged note range, collected before the rows go away
+    @Query("select a from NoteAttachment a where a.userId = :userId and a.noteId > :fromId and a.noteId <= :toId")
+    List<NoteAttachment> findForPurge(Long userId, Long fromId, Long toId);
+}
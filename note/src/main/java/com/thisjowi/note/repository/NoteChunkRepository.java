@@ -0,0 +1,31 @@
+package com.thisjowi.note.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import com.thisjowi.note.entity.NoteChunk;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface NoteChunkRepository extends JpaRepository<NoteChunk, Long> {
+
+    @Query("select c.fingerprint from NoteChunk c where c.noteId = :noteId")
+    List<String> findFingerprintsByNoteId(Long noteId);
+
+    List<NoteChunk> findByNoteIdAndFingerprintIn(Long noteId, Collection<String> fingerprints);
+
+    @Modifying
+    @Query("delete from NoteChunk c where c.noteId = :noteId and c.fingerprint in :fingerprints")
+    int deleteByNoteIdAndFingerprintIn(Long noteId, Collection<String> fingerprints);
+
+    @Modifying
+    @Query("delete from NoteChunk c where c.noteId = :noteId")
+    int deleteByNoteId(Long noteId);
+
+    // Chunks of the user's notes with ids in (fromId, toId]; runs before the notes of the range are deleted
+    @Modifying
+    @Query("delete from NoteChunk c where c.noteId > :fromId and c.noteId <= :toId "
+            + "and c.noteId in (select n.Id from Note n where n.userId = :userId)")
+    int deleteRangeForPurge(Long userId, Long fromId, Long toId);
+}
@@ -1,16 +1,62 @@
 package com.thisjowi.note.repository;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import com.thisjowi.note.entity.Note;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
 public interface NoteRepository extends JpaRepository<Note, Long> {
-    List<Note> findByUserId(Long userId);
-    List<Note> findByTitleIgnoreCaseContainingAndUserId(String title, Long userId);
-    Optional<Note> findByTitleIgnoreCaseAndUserId(String title, Long userId);
+    List<Note> findByDeletedFalse();
+    List<Note> findByUserIdAndDeletedFalse(Long userId);
+    List<Note> findByTitleIgnoreCaseContainingAndUserIdAndDeletedFalse(String title, Long userId);
+    Optional<Note> findByTitleIgnoreCaseAndUserIdAndDeletedFalse(String title, Long userId);
     Optional<Note> findByCreatedAt(LocalDateTime createdAt);
-    Optional<Note> findByTitleIgnoreCase(String title);
-    List<Note> findByTitleIgnoreCaseContaining(String title);
-}
\ No newline at end of file
+    Optional<Note> findByTitleIgnoreCaseAndDeletedFalse(String title);
+    List<Note> findByTitleIgnoreCaseContainingAndDeletedFalse(String title);
+
+    // Incremental sync, served by idx_notes_user_seq; includes tombstones
+    List<Note> findByUserIdAndSeqGreaterThanOrderBySeqAsc(Long userId, Long seq, Pageable pageable);
+
+    /**
+     * Soft-delete a note only if it belongs to the user, in one statement: locks the row if it is live and
+     * owned, and only then takes the next sync sequence, turns the row into a tombstone and drops its chunks.
+     * Returns the number of notes deleted (0 or 1).
+     */
+    @Modifying
+    @Query(value = "WITH t AS ("
+            + "  SELECT id FROM notes WHERE id = :id AND user_id = :userId AND deleted = FALSE FOR UPDATE"
+            + "), s AS ("
+            + "  INSERT INTO note_sync_state (user_id, last_seq) SELECT :userId, 1 FROM t"
+            + "  ON CONFLICT (user_id) DO UPDATE SET last_seq = note_sync_state.last_seq + 1"
+            + "  RETURNING last_seq"
+            + "), c AS ("
+            + "  DELETE FROM note_chunks WHERE note_id IN (SELECT id FROM t)"
+            + ") UPDATE notes SET deleted = TRUE, content = NULL, content_bin = NULL, chunk_manifest = NULL, tags = NULL, folder = NULL,"
+            + "    seq = (SELECT last_seq FROM s), updated_at = now()"
+            + "  WHERE id IN (SELECT id FROM t)", nativeQuery = true)
+    int softDeleteOwned(Long id, Long userId);
+
+    // Follow-up after a failed owner-scoped mutation: 403 if the note exists, 404 otherwise
+    @Query("select count(n) > 0 from Note n where n.Id = :id and n.deleted = false")
+    boolean isLive(Long id);
+
+    // Keyset pagination for export and full sync
+    @Query("select n from Note n where n.userId = :userId and n.deleted = false and n.Id > :afterId order by n.Id")
+    List<Note> findPageForExport(Long userId, Long afterId, Pageable pageable);
+
+    // Rows still holding Base64 text content, oldest first
+    @Query("select n from Note n where n.content is not null and n.contentBin is null order by n.Id")
+    List<Note> findLegacyContent(Pageable pageable);
+
+    // Account purge: next primary-key range of the user's notes, tombstones included
+    @Query("select n.Id from Note n where n.userId = :userId and n.Id > :afterId order by n.Id")
+    List<Long> findIdsForPurge(Long userId, Long afterId, Pageable pageable);
+
+    @Modifying
+    @Query("delete from Note n where n.userId = :userId and n.Id > :fromId and n.Id <= :toId")
+    int deleteRangeForPurge(Long userId, Long fromId, Long toId);
+}
@@ -0,0 +1,56 @@
+package com.thisjowi.note.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import com.thisjowi.note.entity.NoteRevision;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+public interface NoteRevisionRepository extends JpaRepository<NoteRevision, Long> {
+
+    Optional<NoteRevision> findTopByNoteIdOrderByRevisionDesc(Long noteId);
+
+    List<NoteRevision> findByNoteIdOrderByRevisionAsc(Long noteId);
+
+    // Everything needed to rebuild a revision: the closest snapshot at or before it and the deltas after it
+    @Query("select r from NoteRevision r where r.noteId = :noteId and r.revision <= :revision and r.revision >= "
+            + "(select max(s.revision) from NoteRevision s where s.noteId = :noteId and s.snapshot = true and s.revision <= :revision) "
+            + "order by r.revision")
+    List<NoteRevision> findChain(Long noteId, int revision);
+
+    /**
+     * Write a revision in one statement. Two edits of the same note can both take the same next
+     * revision number; the later one replaces the row instead of failing on uk_note_revisions_note_revision,
+     * like it replaces the note content.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO note_revisions (note_id, revision, snapshot, data, size, created_at) "
+            + "VALUES (:noteId, :revision, :snapshot, :data, :size, :createdAt) "
+            + "ON CONFLICT (note_id, revision) DO UPDATE SET snapshot = EXCLUDED.snapshot, data = EXCLUDED.data, "
+            + "size = EXCLUDED.size, created_at = EXCLUDED.created_at", nativeQuery = true)
+    int upsert(Long noteId, int revision, boolean snapshot, byte[] data, long size, LocalDateTime createdAt);
+
+    @Query("select max(r.revision) from NoteRevision r where r.noteId = :noteId and r.snapshot = true")
+    Integer findLatestSnapshot(Long noteId);
+
+    // Notes with old revisions to thin out to one per day, or with more revisions than allowed
+    @Query(value = "SELECT note_id FROM ("
+            + "  SELECT note_id FROM note_revisions WHERE created_at < :cutoff"
+            + "  GROUP BY note_id, CAST(created_at AS DATE) HAVING count(*) > 1"
+            + "  UNION"
+            + "  SELECT note_id FROM note_revisions GROUP BY note_id HAVING count(*) > :maxRevisions"
+            + ") c LIMIT :limit", nativeQuery = true)
+    List<Long> findNotesToCompact(LocalDateTime cutoff, int maxRevisions, int limit);
+
+    @Modifying
+    @Query("delete from NoteRevision r where r.noteId = :noteId")
+    int deleteByNoteId(Long noteId);
+
+    @Modifying
+    @Query("delete from NoteRevision r where r.noteId > :fromId and r.noteId <= :toId "
+            + "and r.noteId in (select n.Id from Note n where n.userId = :userId)")
+    int deleteRangeForPurge(Long userId, Long fromId, Long toId);
+}
@@ -0,0 +1,20 @@
+package com.thisjowi.note.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import com.thisjowi.note.entity.NoteSyncState;
+
+public interface NoteSyncStateRepository extends JpaRepository<NoteSyncState, Long> {
+
+    // Single round trip; the upsert locks the user's row until the surrounding transaction ends
+    @Query(value = "INSERT INTO note_sync_state (user_id, last_seq) VALUES (:userId, 1) "
+            + "ON CONFLICT (user_id) DO UPDATE SET last_seq = note_sync_state.last_seq + 1 "
+            + "RETURNING last_seq", nativeQuery = true)
+    long nextSeq(Long userId);
+
+    // Reserve a block of sequence numbers; returns the last one, the block is (result - count, result]
+    @Query(value = "INSERT INTO note_sync_state (user_id, last_seq) VALUES (:userId, :count) "
+            + "ON CONFLICT (user_id) DO UPDATE SET last_seq = note_sync_state.last_seq + :count "
+            + "RETURNING last_seq", nativeQuery = true)
+    long allocateSeqs(Long userId, long count);
+}
@@ -0,0 +1,37 @@
+package com.thisjowi.note.repository;
+
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import com.thisjowi.note.entity.NoteTagIndex;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface NoteTagIndexRepository extends JpaRepository<NoteTagIndex, Long> {
+
+    List<NoteTagIndex> findByUserId(Long userId);
+
+    // Creates a missing row so findForUpdate has something to lock; a concurrent insert of the same tag
+    // waits for the other transaction instead of failing on uk_note_tag_index_user_tag
+    @Modifying
+    @Query(value = "INSERT INTO note_tag_index (user_id, tag_key, folder, name, bitmap) "
+            + "VALUES (:userId, :tagKey, :folder, :name, :bitmap) "
+            + "ON CONFLICT (user_id, tag_key) DO NOTHING", nativeQuery = true)
+    int insertIfAbsent(Long userId, String tagKey, boolean folder, String name, byte[] bitmap);
+
+    // Rows about to be modified; the lock keeps concurrent edits of the same tag from losing updates
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select t from NoteTagIndex t where t.userId = :userId and t.tagKey in :tagKeys")
+    List<NoteTagIndex> findForUpdate(Long userId, Collection<String> tagKeys);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select t from NoteTagIndex t where t.userId = :userId")
+    List<NoteTagIndex> findAllForUpdate(Long userId);
+
+    @Modifying
+    @Query("delete from NoteTagIndex t where t.userId = :userId")
+    int deleteByUserId(Long userId);
+}
@@ -0,0 +1,119 @@
+package com.thisjowi.note.repository;
+
+import com.thisjowi.note.entity.Note;
+import com.thisjowi.note.entity.NoteChunk;
+import io.r2dbc.spi.Readable;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+/**
+ * Non-blocking reads of notes over R2DBC, for the reactive profile. Mirrors the queries of
+ * {@link NoteRepository} that serve the read endpoints; writes keep going through JPA.
+ */
+@Repository
+@Profile("reactive")
+public class ReactiveNoteRepository {
+
+    private static final String COLUMNS = "id, title, content, content_bin, chunk_manifest, tags, folder, "
+            + "created_at, updated_at, user_id, seq, deleted";
+
+    private final DatabaseClient databaseClient;
+
+    public ReactiveNoteRepository(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    public Mono<Note> findById(Long id) {
+        return databaseClient.sql("SELECT " + COLUMNS + " FROM notes WHERE id = :id")
+                .bind("id", id)
+                .map(ReactiveNoteRepository::toNote)
+                .one();
+    }
+
+    public Flux<Note> findByUserIdAndDeletedFalse(Long userId) {
+        return databaseClient.sql("SELECT " + COLUMNS + " FROM notes WHERE user_id = :userId AND deleted = FALSE")
+                .bind("userId", userId)
+                .map(ReactiveNoteRepository::toNote)
+                .all();
+    }
+
+    public Mono<Note> findByTitleIgnoreCaseAndUserIdAndDeletedFalse(String title, Long userId) {
+        return databaseClient.sql("SELECT " + COLUMNS + " FROM notes "
+                        + "WHERE user_id = :userId AND deleted = FALSE AND lower(title) = lower(:title) LIMIT 1")
+                .bind("userId", userId)
+                .bind("title", title)
+                .map(ReactiveNoteRepository::toNote)
+                .one();
+    }
+
+    public Flux<Note> findByTitleIgnoreCaseContainingAndUserIdAndDeletedFalse(String title, Long userId) {
+        return databaseClient.sql("SELECT " + COLUMNS + " FROM notes "
+                        + "WHERE user_id = :userId AND deleted = FALSE AND strpos(lower(title), lower(:title)) > 0")
+                .bind("userId", userId)
+                .bind("title", title)
+                .map(ReactiveNoteRepository::toNote)
+                .all();
+    }
+
+    // Full sync, a page of live notes at a time by id
+    public Flux<Note> findPageAfterId(Long userId, long afterId, int limit) {
+        return databaseClient.sql("SELECT " + COLUMNS + " FROM notes "
+                        + "WHERE user_id = :userId AND deleted = FALSE AND id > :afterId ORDER BY id LIMIT :limit")
+                .bind("userId", userId)
+                .bind("afterId", afterId)
+                .bind("limit", limit)
+                .map(ReactiveNoteRepository::toNote)
+                .all();
+    }
+
+    // Incremental sync, tombstones included
+    public Flux<Note> findByUserIdAndSeqGreaterThanOrderBySeqAsc(Long userId, long since, int limit) {
+        return databaseClient.sql("SELECT " + COLUMNS + " FROM notes "
+                        + "WHERE user_id = :userId AND seq > :since ORDER BY seq LIMIT :limit")
+                .bind("userId", userId)
+                .bind("since", since)
+                .bind("limit", limit)
+                .map(ReactiveNoteRepository::toNote)
+                .all();
+    }
+
+    public Mono<Long> findLastSeq(Long userId) {
+        return databaseClient.sql("SELECT last_seq FROM note_sync_state WHERE user_id = :userId")
+                .bind("userId", userId)
+                .map(row -> row.get("last_seq", Long.class))
+                .one();
+    }
+
+    public Flux<NoteChunk> findChunks(Long noteId, Collection<String> fingerprints) {
+        return databaseClient.sql("SELECT note_id, fingerprint, data FROM note_chunks "
+                        + "WHERE note_id = :noteId AND fingerprint = ANY(:fingerprints)")
+                .bind("noteId", noteId)
+                .bind("fingerprints", fingerprints.toArray(String[]::new))
+                .map(row -> new NoteChunk(row.get("note_id", Long.class), row.get("fingerprint", String.class),
+                        row.get("data", byte[].class)))
+                .all();
+    }
+
+    private static Note toNote(Readable row) {
+        Note note = new Note();
+        note.setId(row.get("id", Long.class));
+        note.setTitle(row.get("title", String.class));
+        note.setContent(row.get("content", String.class));
+        note.setContentBin(row.get("content_bin", byte[].class));
+        note.setChunkManifest(row.get("chunk_manifest", byte[].class));
+        note.setTagsEnc(row.get("tags", String.class));
+        note.setFolderEnc(row.get("folder", String.class));
+        note.setCreatedAt(row.get("created_at", LocalDateTime.class));
+        note.setUpdatedAt(row.get("updated_at", LocalDateTime.class));
+        note.setUserId(row.get("user_id", Long.class));
+        note.setSeq(row.get("seq", Long.class));
+        note.setDeleted(Boolean.TRUE.equals(row.get("deleted", Boolean.class)));
+        return note;
+    }
+}
@@ -0,0 +1,209 @@
+package com.thisjowi.note.service;
+
+import com.thisjowi.note.Utils.EncryptionUtil;
+import com.thisjowi.note.Utils.SegmentedCipher;
+import com.thisjowi.note.entity.Note;
+import com.thisjowi.note.entity.NoteAttachment;
+import com.thisjowi.note.repository.NoteAttachmentRepository;
+import com.thisjowi.note.repository.NoteRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Note attachments. Uploads are encrypted segment by segment while they stream into the blob store
+ * and range downloads decrypt only the segments they cover, so a request never holds more than
+ * one segment of a file in memory.
+ */
+@Service
+public class AttachmentService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AttachmentService.class);
+    private static final int COPY_BUFFER = 8192;
+
+    private final NoteAttachmentRepository attachmentRepository;
+    private final NoteRepository noteRepository;
+    private final BlobStore blobStore;
+    private final long maxBytes;
+    private final int segmentSize;
+
+    public AttachmentService(NoteAttachmentRepository attachmentRepository,
+                             NoteRepository noteRepository,
+                             BlobStore blobStore,
+                             @Value("${notes.attachments.max-bytes:104857600}") long maxBytes,
+                             @Value("${notes.attachments.segment-bytes:65536}") int segmentSize) {
+        this.attachmentRepository = attachmentRepository;
+        this.noteRepository = noteRepository;
+        this.blobStore = blobStore;
+        this.maxBytes = maxBytes;
+        this.segmentSize = segmentSize;
+    }
+
+    public static class AttachmentTooLargeException extends RuntimeException {
+        public AttachmentTooLargeException(long maxBytes) {
+            super("Attachment exceeds the limit of " + maxBytes + " bytes");
+        }
+    }
+
+    public Optional<Note> findLiveNote(Long noteId) {
+        return noteRepository.findById(noteId).filter(n -> !n.isDeleted());
+    }
+
+    public List<NoteAttachment> list(Long noteId) {
+        return attachmentRepository.findByNoteIdOrderByIdAsc(noteId).stream().map(this::decryptName).toList();
+    }
+
+    public Optional<NoteAttachment> find(Long noteId, Long attachmentId) {
+        return attachmentRepository.findById(attachmentId)
+                .filter(a -> a.getNoteId().equals(noteId))
+                .map(this::decryptName);
+    }
+
+    /**
+     * Encrypt {@code input} into a new blob and record it on the note.
+     *
+     * @throws AttachmentTooLargeException if the stream is longer than notes.attachments.max-bytes
+     */
+    public NoteAttachment upload(Note note, String fileName, String contentType, InputStream input) throws IOException {
+        String blobKey = UUID.randomUUID().toString();
+        long size;
+        try (SegmentedCipher.EncryptingStream out = SegmentedCipher.encrypt(
+                blobStore.create(blobKey), EncryptionUtil.attachmentKey(), aad(blobKey), segmentSize)) {
+            byte[] buffer = new byte[COPY_BUFFER];
+            int n;
+            while ((n = input.read(buffer)) != -1) {
+                if (out.size() + n > maxBytes) {
+                    throw new AttachmentTooLargeException(maxBytes);
+                }
+                out.write(buffer, 0, n);
+            }
+            size = out.size();
+        } catch (IOException | RuntimeException e) {
+            deleteBlobQuietly(blobKey);
+            throw e;
+        }
+
+        NoteAttachment attachment = new NoteAttachment();
+        attachment.setNoteId(note.getId());
+        attachment.setUserId(note.getUserId());
+        attachment.setFileName(EncryptionUtil.encrypt(fileName));
+        attachment.setContentType(contentType);
+        attachment.setSize(size);
+        attachment.setBlobKey(blobKey);
+        attachment.setCreatedAt(LocalDateTime.now());
+        try {
+            return decryptName(attachmentRepository.save(attachment));
+        } catch (RuntimeException e) {
+            deleteBlobQuietly(blobKey);
+            throw e;
+        }
+    }
+
+    /**
+     * Write plaintext bytes {@code [start, end]} (inclusive) of the attachment to {@code out}.
+     */
+    public void streamRange(NoteAttachment attachment, long start, long end, OutputStream out) throws IOException {
+        String blobKey = attachment.getBlobKey();
+        byte[] header;
+        try (InputStream in = blobStore.open(blobKey, 0)) {
+            header = in.readNBytes(SegmentedCipher.HEADER_SIZE);
+        }
+        SegmentedCipher.Decryptor decryptor = SegmentedCipher.decryptor(header, EncryptionUtil.attachmentKey(), aad(blobKey));
+        int segment = decryptor.segmentSize();
+        long size = attachment.getSize();
+        long lastSegment = SegmentedCipher.segmentCount(size, segment) - 1;
+        long first = start / segment;
+        long last = end / segment;
+
+        try (InputStream in = blobStore.open(blobKey, SegmentedCipher.segmentOffset(first, segment))) {
+            byte[] buffer = new byte[segment + SegmentedCipher.TAG_SIZE];
+            for (long i = first; i <= last; i++) {
+                boolean isLast = i == lastSegment;
+                int length = (isLast ? (int) (size - i * segment) : segment) + SegmentedCipher.TAG_SIZE;
+                if (in.readNBytes(buffer, 0, length) != length) {
+                    throw new IllegalStateException("Attachment blob is truncated");
+                }
+                byte[] plain = decryptor.decryptSegment(i, isLast, buffer, length);
+                int from = i == first ? (int) (start - i * segment) : 0;
+                int to = i == last ? (int) (end - i * segment) + 1 : plain.length;
+                out.write(plain, from, to - from);
+            }
+        }
+    }
+
+    public void delete(NoteAttachment attachment) {
+        attachmentRepository.deleteById(attachment.getId());
+        deleteBlobs(List.of(attachment));
+    }
+
+    // Called when a note is deleted; must run inside the caller's transaction
+    public void deleteForNote(Long noteId) {
+        List<NoteAttachment> attachments = attachmentRepository.findByNoteIdOrderByIdAsc(noteId);
+        if (!attachments.isEmpty()) {
+            attachmentRepository.deleteAllInBatch(attachments);
+            deleteBlobs(attachments);
+        }
+    }
+
+    // Account purge: attachments of the user's notes with ids in (fromId, toId]
+    public void deleteForPurge(Long userId, Long fromId, Long toId) {
+        List<NoteAttachment> attachments = attachmentRepository.findForPurge(userId, fromId, toId);
+        if (!attachments.isEmpty()) {
+            attachmentRepository.deleteAllInBatch(attachments);
+            deleteBlobs(attachments);
+        }
+    }
+
+    // Blobs go only once the rows are gone for good; a rollback must not leave rows without files
+    private void deleteBlobs(List<NoteAttachment> attachments) {
+        Runnable task = () -> attachments.forEach(a -> deleteBlobQuietly(a.getBlobKey()));
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    task.run();
+                }
+            });
+        } else {
+            task.run();
+        }
+    }
+
+    private void deleteBlobQuietly(String blobKey) {
+        try {
+            blobStore.delete(blobKey);
+        } catch (IOException e) {
+            logger.warn("[Attachments] Could not delete blob {}: {}", blobKey, e.getMessage());
+        }
+    }
+
+    // The blob key is authenticated with every segment, so blobs cannot be swapped between attachments
+    private static byte[] aad(String blobKey) {
+        return blobKey.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private NoteAttachment decryptName(NoteAttachment attachment) {
+        NoteAttachment copy = new NoteAttachment();
+        copy.setId(attachment.getId());
+        copy.setNoteId(attachment.getNoteId());
+        copy.setUserId(attachment.getUserId());
+        copy.setFileName(EncryptionUtil.decrypt(attachment.getFileName()));
+        copy.setContentType(attachment.getContentType());
+        copy.setSize(attachment.getSize());
+        copy.setBlobKey(attachment.getBlobKey());
+        copy.setCreatedAt(attachment.getCreatedAt());
+        return copy;
+    }
+}
@@ -28,10 +28,15 @@ public class AuthenticationClient {
     }
 
     public Long getUserIdFromToken(String token) {
+        return userIdFromToken(token).block();
+    }
+
+    // Non-blocking variant for the reactive controllers; emits -1 if the token is rejected
+    public Mono<Long> userIdFromToken(String token) {
         String headerValue = token != null && token.startsWith("Bearer ") ? token : ("Bearer " + token);
         log.debug("Calling Authentication service /user to validate token");
 
-        Mono<Long> mono = authenticationWebClient.get()
+        return authenticationWebClient.get()
                 .uri("/user")
                 .header(HttpHeaders.AUTHORIZATION, headerValue)
                 .exchangeToMono((ClientResponse resp) -> {
@@ -50,7 +55,5 @@ public class AuthenticationClient {
                     log.error("Error calling auth service to get user id", e);
                     return Mono.just(-1L);
                 });
-
-        return mono.block();
     }
 }
\ No newline at end of file
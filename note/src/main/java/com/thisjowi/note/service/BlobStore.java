@@ -0,0 +1,21 @@
+package com.thisjowi.note.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Storage for opaque attachment blobs (already encrypted by the caller).
+ * Implementations must make a blob visible only once the stream returned by {@link #create} is closed.
+ */
+public interface BlobStore {
+
+    OutputStream create(String key) throws IOException;
+
+    /**
+     * Open a blob positioned at {@code offset}, so range reads never stream the bytes in front of it.
+     */
+    InputStream open(String key, long offset) throws IOException;
+
+    void delete(String key) throws IOException;
+}
@@ -0,0 +1,66 @@
+package com.thisjowi.note.service;
+
+import com.thisjowi.note.Utils.EncryptionUtil;
+import com.thisjowi.note.entity.Note;
+import com.thisjowi.note.repository.NoteRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * Moves note content from the legacy Base64 TEXT column to the binary column in small batches.
+ * Ciphertext is re-encoded, not decrypted, so the job never handles plaintext of migrated rows.
+ */
+@Component
+public class ContentMigrationJob {
+
+    private static final Logger logger = LoggerFactory.getLogger(ContentMigrationJob.class);
+
+    private final NoteRepository noteRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int batchSize;
+
+    public ContentMigrationJob(NoteRepository noteRepository,
+                               TransactionTemplate transactionTemplate,
+                               @Value("${notes.binary-migration.enabled:true}") boolean enabled,
+                               @Value("${notes.binary-migration.batch-size:500}") int batchSize) {
+        this.noteRepository = noteRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(fixedDelayString = "${notes.binary-migration.delay-ms:30000}", initialDelayString = "${notes.binary-migration.initial-delay-ms:60000}")
+    public void migrate() {
+        if (!enabled) {
+            return;
+        }
+        int migrated = 0;
+        int batch;
+        do {
+            batch = transactionTemplate.execute(status -> migrateBatch());
+            migrated += batch;
+        } while (batch == batchSize);
+
+        if (migrated > 0) {
+            logger.info("[Migration] Moved {} notes to binary content storage", migrated);
+        }
+    }
+
+    private int migrateBatch() {
+        List<Note> notes = noteRepository.findLegacyContent(PageRequest.of(0, batchSize));
+        for (Note note : notes) {
+            note.setContentBin(EncryptionUtil.toBinaryContent(note.getContent()));
+            note.setContent(null);
+        }
+        noteRepository.saveAll(notes);
+        return notes.size();
+    }
+}
@@ -0,0 +1,181 @@
+package com.thisjowi.note.service;
+
+import com.thisjowi.note.Utils.ContentChunker;
+import com.thisjowi.note.Utils.EncryptionUtil;
+import com.thisjowi.note.entity.Note;
+import com.thisjowi.note.entity.NoteChunk;
+import com.thisjowi.note.repository.NoteChunkRepository;
+import com.thisjowi.note.repository.NoteRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads and writes encrypted note content.
+ * Small notes are a single ciphertext in the note row. Notes above the chunking threshold are split
+ * into content-defined chunks that are encrypted on their own, so an edit only writes the chunks it changed.
+ */
+@Component
+public class NoteContentStore {
+
+    private static final HexFormat HEX = HexFormat.of();
+    // Chunks fetched per query when reassembling a note
+    private static final int READ_BATCH = 16;
+
+    private final NoteRepository noteRepository;
+    private final NoteChunkRepository chunkRepository;
+    private final int chunkingThreshold;
+
+    public NoteContentStore(NoteRepository noteRepository,
+                            NoteChunkRepository chunkRepository,
+                            @Value("${notes.chunking.threshold-bytes:65536}") int chunkingThreshold) {
+        this.noteRepository = noteRepository;
+        this.chunkRepository = chunkRepository;
+        this.chunkingThreshold = chunkingThreshold;
+    }
+
+    /**
+     * Encrypt and store the content of a note. Must run inside the caller's transaction.
+     *
+     * @return the number of ciphertext bytes written
+     */
+    public long write(Note note, String content) {
+        byte[] plaintext = content == null ? null : content.getBytes(StandardCharsets.UTF_8);
+        note.setContent(null);
+
+        if (plaintext == null || !isChunked(plaintext.length)) {
+            if (note.getId() != null) {
+                chunkRepository.deleteByNoteId(note.getId());
+            }
+            note.setChunkManifest(null);
+            note.setContentBin(EncryptionUtil.encryptContentToBytes(plaintext));
+            return note.getContentBin() == null ? 0 : note.getContentBin().length;
+        }
+
+        if (note.getId() == null) {
+            // Chunks reference the note, so a new note needs its id first
+            noteRepository.save(note);
+        }
+        note.setContentBin(null);
+
+        int[] ends = ContentChunker.boundaries(plaintext);
+        byte[] manifest = new byte[ends.length * EncryptionUtil.FINGERPRINT_SIZE];
+        Set<String> stored = new HashSet<>(chunkRepository.findFingerprintsByNoteId(note.getId()));
+        Set<String> referenced = new HashSet<>();
+        List<NoteChunk> added = new ArrayList<>();
+        long written = 0;
+
+        int start = 0;
+        for (int i = 0; i < ends.length; i++) {
+            int length = ends[i] - start;
+            byte[] fingerprint = EncryptionUtil.fingerprint(plaintext, start, length);
+            System.arraycopy(fingerprint, 0, manifest, i * EncryptionUtil.FINGERPRINT_SIZE, fingerprint.length);
+
+            String key = HEX.formatHex(fingerprint);
+            if (referenced.add(key) && !stored.contains(key)) {
+                byte[] chunk = new byte[length];
+                System.arraycopy(plaintext, start, chunk, 0, length);
+                byte[] data = EncryptionUtil.encryptContentToBytes(chunk);
+                added.add(new NoteChunk(note.getId(), key, data));
+                written += data.length;
+            }
+            start = ends[i];
+        }
+
+        stored.removeAll(referenced);
+        if (!stored.isEmpty()) {
+            chunkRepository.deleteByNoteIdAndFingerprintIn(note.getId(), stored);
+        }
+        chunkRepository.saveAll(added);
+        note.setChunkManifest(manifest);
+        return written + manifest.length;
+    }
+
+    /**
+     * Whether content of this many UTF-8 bytes is stored as chunks rather than inline.
+     */
+    public boolean isChunked(int plaintextLength) {
+        return plaintextLength >= chunkingThreshold;
+    }
+
+    /**
+     * Decrypt the whole content of a note.
+     */
+    public String read(Note note) {
+        if (note.getChunkManifest() != null) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(note.getChunkManifest().length / EncryptionUtil.FINGERPRINT_SIZE * 8192);
+            writeChunks(note, out);
+            return out.toString(StandardCharsets.UTF_8);
+        }
+        if (note.getContentBin() != null) {
+            return EncryptionUtil.decryptContent(note.getContentBin());
+        }
+        // Rows not migrated yet still carry Base64 text
+        return EncryptionUtil.decryptContent(note.getContent());
+    }
+
+    /**
+     * Write the decrypted content to the stream, reassembling chunked notes a few chunks at a time.
+     */
+    public void stream(Note note, OutputStream out) throws IOException {
+        if (note.getChunkManifest() != null) {
+            try {
+                writeChunks(note, out);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return;
+        }
+        String content = read(note);
+        if (content != null) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Drop the chunks of a deleted note.
+     */
+    public void delete(Long noteId) {
+        chunkRepository.deleteByNoteId(noteId);
+    }
+
+    private void writeChunks(Note note, OutputStream out) {
+        byte[] manifest = note.getChunkManifest();
+        int count = manifest.length / EncryptionUtil.FINGERPRINT_SIZE;
+        for (int from = 0; from < count; from += READ_BATCH) {
+            int to = Math.min(count, from + READ_BATCH);
+            List<String> window = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                window.add(HEX.formatHex(manifest, i * EncryptionUtil.FINGERPRINT_SIZE, (i + 1) * EncryptionUtil.FINGERPRINT_SIZE));
+            }
+
+            Map<String, byte[]> chunks = new HashMap<>();
+            for (NoteChunk chunk : chunkRepository.findByNoteIdAndFingerprintIn(note.getId(), new HashSet<>(window))) {
+                chunks.put(chunk.getFingerprint(), chunk.getData());
+            }
+            for (String fingerprint : window) {
+                byte[] data = chunks.get(fingerprint);
+                if (data == null) {
+                    throw new IllegalStateException("Missing chunk " + fingerprint + " of note " + note.getId());
+                }
+                try {
+                    out.write(EncryptionUtil.decryptContentToBytes(data));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.thisjowi.note.service;
+
+import com.thisjowi.note.Utils.ContentDelta;
+import com.thisjowi.note.Utils.EncryptionUtil;
+import com.thisjowi.note.entity.NoteRevision;
+import com.thisjowi.note.repository.NoteRevisionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Revision history of note content. Every content change is stored as a delta against the previous
+ * revision, with a full snapshot every snapshot-interval revisions (or when a delta would not be much
+ * smaller than the content), so history grows with the size of the edits rather than of the note.
+ * Old revisions are only rebuilt when asked for.
+ */
+@Service
+public class NoteRevisionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(NoteRevisionService.class);
+
+    private final NoteRevisionRepository revisionRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int snapshotInterval;
+    private final int compactAfterDays;
+    private final int maxRevisions;
+
+    public NoteRevisionService(NoteRevisionRepository revisionRepository,
+                               TransactionTemplate transactionTemplate,
+                               @Value("${notes.revisions.enabled:true}") boolean enabled,
+                               @Value("${notes.revisions.snapshot-interval:20}") int snapshotInterval,
+                               @Value("${notes.revisions.compact-after-days:7}") int compactAfterDays,
+                               @Value("${notes.revisions.max-per-note:100}") int maxRevisions) {
+        this.revisionRepository = revisionRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.snapshotInterval = Math.max(1, snapshotInterval);
+        this.compactAfterDays = compactAfterDays;
+        this.maxRevisions = Math.max(1, maxRevisions);
+    }
+
+    /**
+     * Record new content of a note. Must run inside the caller's transaction.
+     *
+     * @param previous the content before the change if the caller has it at hand, else null
+     */
+    public void record(Long noteId, String previous, String current) {
+        if (!enabled || noteId == null || current == null) {
+            return;
+        }
+        byte[] content = current.getBytes(StandardCharsets.UTF_8);
+        NoteRevision last = revisionRepository.findTopByNoteIdOrderByRevisionDesc(noteId).orElse(null);
+        int lastRevision;
+        byte[] base;
+        if (last == null) {
+            if (previous == null || previous.equals(current)) {
+                save(noteId, 1, true, content, content.length);
+                return;
+            }
+            // Notes written before revisions existed: keep the old content as the first revision
+            base = previous.getBytes(StandardCharsets.UTF_8);
+            save(noteId, 1, true, base, base.length);
+            lastRevision = 1;
+        } else {
+            lastRevision = last.getRevision();
+            base = previous != null ? previous.getBytes(StandardCharsets.UTF_8) : rebuildBytes(noteId, lastRevision);
+        }
+        if (Arrays.equals(base, content)) {
+            return;
+        }
+
+        int next = lastRevision + 1;
+        Integer snapshot = revisionRepository.findLatestSnapshot(noteId);
+        if (snapshot == null || next - snapshot >= snapshotInterval) {
+            save(noteId, next, true, content, content.length);
+            return;
+        }
+        byte[] delta = ContentDelta.diff(base, content);
+        if (delta.length * 2L > content.length) {
+            save(noteId, next, true, content, content.length);
+        } else {
+            save(noteId, next, false, delta, content.length);
+        }
+    }
+
+    public List<NoteRevision> list(Long noteId) {
+        return revisionRepository.findByNoteIdOrderByRevisionAsc(noteId);
+    }
+
+    /**
+     * Content of a revision, rebuilt from the closest snapshot. Empty if the revision does not exist
+     * (or was merged away by compaction).
+     */
+    public Optional<String> rebuild(Long noteId, int revision) {
+        byte[] content = rebuildBytes(noteId, revision);
+        return Optional.ofNullable(content).map(c -> new String(c, StandardCharsets.UTF_8));
+    }
+
+    // Must run inside the caller's transaction
+    public void deleteForNote(Long noteId) {
+        revisionRepository.deleteByNoteId(noteId);
+    }
+
+    public void deleteForPurge(Long userId, Long fromId, Long toId) {
+        revisionRepository.deleteRangeForPurge(userId, fromId, toId);
+    }
+
+    /**
+     * Thin out old history: revisions older than compact-after-days are reduced to the last one of
+     * each day and at most max-per-note revisions are kept. Deltas whose base was dropped are
+     * recomputed against the previous kept revision.
+     */
+    @Scheduled(cron = "${notes.revisions.compaction-cron:0 30 3 * * *}")
+    public void compact() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(compactAfterDays);
+        int compacted = 0;
+        List<Long> noteIds;
+        do {
+            noteIds = revisionRepository.findNotesToCompact(cutoff, maxRevisions, 100);
+            for (Long noteId : noteIds) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> compactNote(noteId, cutoff));
+                    compacted++;
+                } catch (RuntimeException e) {
+                    logger.error("[Revisions] Failed to compact revisions of note {}", noteId, e);
+                    return;
+                }
+            }
+        } while (noteIds.size() == 100);
+        if (compacted > 0) {
+            logger.info("[Revisions] Compacted revision history of {} notes", compacted);
+        }
+    }
+
+    private void compactNote(Long noteId, LocalDateTime cutoff) {
+        List<NoteRevision> revisions = revisionRepository.findByNoteIdOrderByRevisionAsc(noteId);
+        boolean[] keep = new boolean[revisions.size()];
+        int kept = 0;
+        for (int i = revisions.size() - 1; i >= 0; i--) {
+            NoteRevision revision = revisions.get(i);
+            boolean latest = i == revisions.size() - 1;
+            boolean old = revision.getCreatedAt().isBefore(cutoff);
+            boolean lastOfDay = latest || !revisions.get(i + 1).getCreatedAt().toLocalDate().equals(revision.getCreatedAt().toLocalDate());
+            keep[i] = kept < maxRevisions && (!old || lastOfDay);
+            if (keep[i]) {
+                kept++;
+            }
+        }
+
+        // One pass in revision order; only the current and the previous kept content are held in memory
+        List<NoteRevision> dropped = new ArrayList<>();
+        List<NoteRevision> retained = new ArrayList<>();
+        byte[] content = null;
+        byte[] keptContent = null;
+        boolean previousKept = false;
+        for (int i = 0; i < revisions.size(); i++) {
+            NoteRevision revision = revisions.get(i);
+            byte[] data = EncryptionUtil.decryptContentToBytes(revision.getData());
+            content = revision.isSnapshot() ? data : ContentDelta.apply(content, data);
+            if (!keep[i]) {
+                dropped.add(revision);
+            } else if (keptContent == null) {
+                // The oldest kept revision starts the chain, so it must be a snapshot
+                if (!revision.isSnapshot()) {
+                    revision.setSnapshot(true);
+                    revision.setData(EncryptionUtil.encryptContentToBytes(content));
+                }
+            } else if (!revision.isSnapshot() && !previousKept) {
+                byte[] delta = ContentDelta.diff(keptContent, content);
+                boolean asSnapshot = delta.length * 2L > content.length;
+                revision.setSnapshot(asSnapshot);
+                revision.setData(EncryptionUtil.encryptContentToBytes(asSnapshot ? content : delta));
+            }
+            if (keep[i]) {
+                retained.add(revision);
+                keptContent = content;
+            }
+            previousKept = keep[i];
+        }
+        revisionRepository.deleteAllInBatch(dropped);
+        revisionRepository.saveAll(retained);
+    }
+
+    private byte[] rebuildBytes(Long noteId, int revision) {
+        List<NoteRevision> chain = revisionRepository.findChain(noteId, revision);
+        if (chain.isEmpty() || chain.get(chain.size() - 1).getRevision() != revision) {
+            return null;
+        }
+        byte[] content = null;
+        for (NoteRevision r : chain) {
+            byte[] data = EncryptionUtil.decryptContentToBytes(r.getData());
+            content = r.isSnapshot() ? data : ContentDelta.apply(content, data);
+        }
+        return content;
+    }
+
+    private void save(Long noteId, int revision, boolean snapshot, byte[] payload, long size) {
+        revisionRepository.upsert(noteId, revision, snapshot, EncryptionUtil.encryptContentToBytes(payload), size, LocalDateTime.now());
+    }
+}
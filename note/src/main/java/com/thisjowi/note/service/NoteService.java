@@ -1,12 +1,25 @@
 package com.thisjowi.note.service;
 
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.roaringbitmap.longlong.LongIterator;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import com.thisjowi.note.Utils.EncryptionUtil;
 import com.thisjowi.note.entity.Note;
+import com.thisjowi.note.entity.NoteChanges;
+import com.thisjowi.note.entity.NoteRevision;
+import com.thisjowi.note.entity.NoteSyncState;
 import com.thisjowi.note.repository.NoteRepository;
+import com.thisjowi.note.repository.NoteSyncStateRepository;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
 
@@ -14,15 +27,37 @@ import java.util.Optional;
 public class NoteService {
 
     private final NoteRepository noteRepository;
+    private final NoteContentStore contentStore;
+    private final NoteSyncStateRepository syncStateRepository;
+    private final CollectionVersionCache collectionVersions;
+    private final AttachmentService attachmentService;
+    private final NoteRevisionService revisionService;
+    private final TagIndexService tagIndex;
+    private final DistributionSummary plaintextContentSize;
+    private final DistributionSummary storedContentSize;
 
-    public NoteService(NoteRepository noteRepository) {
+    public NoteService(NoteRepository noteRepository, NoteContentStore contentStore,
+                       NoteSyncStateRepository syncStateRepository, CollectionVersionCache collectionVersions,
+                       AttachmentService attachmentService, NoteRevisionService revisionService,
+                       TagIndexService tagIndex, MeterRegistry meterRegistry) {
         this.noteRepository = noteRepository;
+        this.contentStore = contentStore;
+        this.syncStateRepository = syncStateRepository;
+        this.collectionVersions = collectionVersions;
+        this.attachmentService = attachmentService;
+        this.revisionService = revisionService;
+        this.tagIndex = tagIndex;
+        // Bytes written per note content before and after compression + encryption
+        this.plaintextContentSize = DistributionSummary.builder("notes.content.size")
+                .baseUnit("bytes").tag("stage", "plaintext").register(meterRegistry);
+        this.storedContentSize = DistributionSummary.builder("notes.content.size")
+                .baseUnit("bytes").tag("stage", "stored").register(meterRegistry);
     }
 
     // Get all notes (without filtering by user)
     @Transactional(readOnly = true)
     public List<Note> getAllNotes() {
-        List<Note> notes = noteRepository.findAll();
+        List<Note> notes = noteRepository.findByDeletedFalse();
         return notes.stream().map(this::decryptNote).toList();
     }
 
@@ -30,24 +65,27 @@ public class NoteService {
     @Transactional(readOnly = true)
     public List<Note> searchNotesByTitle(String title) {
         if (title == null) title = "";
-        List<Note> notes = noteRepository.findByTitleIgnoreCaseContaining(title);
+        List<Note> notes = noteRepository.findByTitleIgnoreCaseContainingAndDeletedFalse(title);
         return notes.stream().map(this::decryptNote).toList();
     }
 
     @Transactional
     public Note saveNote(Note note) {
+        String content = note.getContent();
+        List<String> tags = TagIndexService.normalizeTags(note.getTags());
+        String folder = TagIndexService.normalizeName(note.getFolder());
         note.setTitle(EncryptionUtil.encrypt(note.getTitle()));
-        note.setContent(EncryptionUtil.encrypt(note.getContent()));
+        note.setTagsEnc(TagIndexService.encryptTags(tags));
+        note.setFolderEnc(encryptFolder(folder));
+        writeContent(note, content);
+        note.setDeleted(false);
+        touch(note);
         Note saved = noteRepository.save(note);
+        revisionService.record(saved.getId(), null, content);
+        tagIndex.update(saved.getUserId(), saved.getId(), List.of(), null, tags, folder);
         
         // Return a copy with decrypted content to avoid dirty checking update
-        Note response = new Note();
-        response.setId(saved.getId());
-        response.setUserId(saved.getUserId());
-        response.setCreatedAt(saved.getCreatedAt());
-        response.setTitle(EncryptionUtil.decrypt(saved.getTitle()));
-        response.setContent(EncryptionUtil.decrypt(saved.getContent()));
-        return response;
+        return decryptNote(saved);
     }
 
     @Transactional(readOnly = true)
@@ -55,7 +93,7 @@ public class NoteService {
         if (title == null || title.isBlank()) {
             throw new IllegalArgumentException("Cannot search for a blank note");
         }
-        return noteRepository.findByTitleIgnoreCase(title)
+        return noteRepository.findByTitleIgnoreCaseAndDeletedFalse(title)
                 .map(this::decryptNote);
     }
 
@@ -65,53 +103,172 @@ public class NoteService {
 
     @Transactional(readOnly = true)
     public List<Note> getNotesByUserId(Long userId) {
-        List<Note> notes = noteRepository.findByUserId(userId);
+        List<Note> notes = noteRepository.findByUserIdAndDeletedFalse(userId);
         return notes.stream().map(this::decryptNote).toList();
     }
 
+    /**
+     * Notes of the user that changed after the given sequence number, oldest change first.
+     * since = 0 is a full sync: every live note, including rows written before sequences existed, paged
+     * by id while {@code afterId} is set. Its pages keep the sequence read on the first one, so whatever
+     * changed during the full sync follows by seq once the ids run out.
+     */
+    @Transactional(readOnly = true)
+    public NoteChanges getChangesSince(Long userId, long since, Long afterId, int limit) {
+        // Read the cursor first: anything committed later is either in this page or in the next call
+        long cursor = syncStateRepository.findById(userId).map(NoteSyncState::getLastSeq).orElse(0L);
+
+        if (since <= 0 || afterId != null) {
+            long start = afterId == null ? cursor : since;
+            List<Note> page = noteRepository.findPageForExport(userId, afterId == null ? 0L : afterId, PageRequest.of(0, limit));
+            Long next = page.size() == limit ? page.get(page.size() - 1).getId() : null;
+            boolean hasMore = next != null || cursor > start;
+            return new NoteChanges(start, hasMore, page.stream().map(this::decryptNote).toList(), List.of(), next);
+        }
+
+        List<Note> changed = noteRepository.findByUserIdAndSeqGreaterThanOrderBySeqAsc(userId, since, PageRequest.of(0, limit));
+        boolean hasMore = changed.size() == limit;
+        if (hasMore) {
+            cursor = changed.get(changed.size() - 1).getSeq();
+        } else if (!changed.isEmpty()) {
+            cursor = Math.max(cursor, changed.get(changed.size() - 1).getSeq());
+        }
+
+        List<Note> notes = new ArrayList<>();
+        List<Long> deleted = new ArrayList<>();
+        for (Note note : changed) {
+            if (note.isDeleted()) {
+                deleted.add(note.getId());
+            } else {
+                notes.add(decryptNote(note));
+            }
+        }
+        return new NoteChanges(cursor, hasMore, notes, deleted, null);
+    }
+
     // Returns true if the note existed and was deleted, false if it didn't exist
     @Transactional
     public boolean deleteNoteById(Long id) {
-        if (noteRepository.existsById(id)) {
-            noteRepository.deleteById(id);
+        Optional<Note> existing = noteRepository.findById(id).filter(note -> !note.isDeleted());
+        if (existing.isPresent()) {
+            tombstone(existing.get());
             return true;
         }
         return false;
     }
 
+    /**
+     * Delete a note owned by the user with a single statement.
+     *
+     * @return true if the note was deleted; false if it does not exist or belongs to someone else,
+     *         tell them apart with {@link #isLiveNote(Long)}
+     */
+    @Transactional
+    public boolean deleteNoteForUser(Long id, Long userId) {
+        if (noteRepository.softDeleteOwned(id, userId) == 0) {
+            return false;
+        }
+        attachmentService.deleteForNote(id);
+        revisionService.deleteForNote(id);
+        tagIndex.removeNote(userId, id);
+        collectionVersions.bump(userId);
+        return true;
+    }
+
+    @Transactional(readOnly = true)
+    public boolean isLiveNote(Long id) {
+        return noteRepository.isLive(id);
+    }
+
+    /**
+     * Every tag and folder of the user with the number of notes carrying it.
+     */
+    @Transactional(readOnly = true)
+    public List<TagIndexService.TagCount> getTagCounts(Long userId) {
+        return tagIndex.counts(userId);
+    }
+
+    /**
+     * Notes of the user with all tags in {@code all}, at least one of {@code any} and in {@code folder}
+     * (each criterion optional), lowest id first. Only the matching rows are read and decrypted.
+     */
+    @Transactional(readOnly = true)
+    public List<Note> filterNotes(Long userId, List<String> all, List<String> any, String folder, int limit) {
+        List<Long> ids = new ArrayList<>(Math.min(limit, 1024));
+        LongIterator matches = tagIndex.filter(userId, all, any, folder).getLongIterator();
+        while (matches.hasNext() && ids.size() < limit) {
+            ids.add(matches.next());
+        }
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        return noteRepository.findAllById(ids).stream()
+                .filter(note -> !note.isDeleted() && userId.equals(note.getUserId()))
+                .sorted(Comparator.comparing(Note::getId))
+                .map(this::decryptNote)
+                .toList();
+    }
+
+    @Transactional(readOnly = true)
+    public long countNotes(Long userId, List<String> all, List<String> any, String folder) {
+        return tagIndex.filter(userId, all, any, folder).getLongCardinality();
+    }
+
+    @Transactional(readOnly = true)
+    public List<NoteRevision> getRevisions(Long noteId) {
+        return revisionService.list(noteId);
+    }
+
+    @Transactional(readOnly = true)
+    public Optional<String> getRevisionContent(Long noteId, int revision) {
+        return revisionService.rebuild(noteId, revision);
+    }
+
+    /**
+     * Make an old revision the current content again. The restore is itself a new revision,
+     * so it can be undone like any other edit.
+     */
+    @Transactional
+    public Optional<Note> restoreRevision(Note note, int revision) {
+        Optional<String> content = revisionService.rebuild(note.getId(), revision);
+        if (content.isEmpty()) {
+            return Optional.empty();
+        }
+        replaceContent(note, content.get());
+        touch(note);
+        return Optional.of(decryptNote(noteRepository.save(note)));
+    }
+
+    // Write the decrypted content to the stream without building the whole note in memory first
+    public void streamContent(Note note, OutputStream out) throws IOException {
+        contentStore.stream(note, out);
+    }
+
     @Transactional
     public Note updateNote(Note note) {
+        String content = note.getContent();
         // Encrypt title and content before updating
         if (note.getTitle() != null) {
             note.setTitle(EncryptionUtil.encrypt(note.getTitle()));
         }
-        if (note.getContent() != null) {
-            note.setContent(EncryptionUtil.encrypt(note.getContent()));
+        if (content != null) {
+            writeContent(note, content);
         }
+        touch(note);
         Note saved = noteRepository.save(note);
+        revisionService.record(saved.getId(), null, content);
         
         // Return a copy with decrypted content
-        Note response = new Note();
-        response.setId(saved.getId());
-        response.setUserId(saved.getUserId());
-        response.setCreatedAt(saved.getCreatedAt());
-        
-        if (saved.getTitle() != null) {
-            response.setTitle(EncryptionUtil.decrypt(saved.getTitle()));
-        }
-        if (saved.getContent() != null) {
-            response.setContent(EncryptionUtil.decrypt(saved.getContent()));
-        }
-        return response;
+        return decryptNote(saved);
     }
 
     // New: Delete a note by its title (case-insensitive). Returns true if deleted.
     @Transactional
     public boolean deleteNoteByTitle(String title) {
         if (title == null || title.isBlank()) return false;
-        Optional<Note> existing = noteRepository.findByTitleIgnoreCase(title);
+        Optional<Note> existing = noteRepository.findByTitleIgnoreCaseAndDeletedFalse(title);
         if (existing.isPresent()) {
-            noteRepository.delete(existing.get());
+            tombstone(existing.get());
             return true;
         }
         return false;
@@ -121,7 +278,7 @@ public class NoteService {
     @Transactional
     public Optional<Note> updateNoteByTitle(String title, Note noteDetails) {
         if (title == null || title.isBlank()) return Optional.empty();
-        Optional<Note> existingOpt = noteRepository.findByTitleIgnoreCase(title);
+        Optional<Note> existingOpt = noteRepository.findByTitleIgnoreCaseAndDeletedFalse(title);
         if (existingOpt.isPresent()) {
             Note noteToUpdate = existingOpt.get();
             // Update allowed fields (encrypt before saving)
@@ -129,19 +286,14 @@ public class NoteService {
                 noteToUpdate.setTitle(EncryptionUtil.encrypt(noteDetails.getTitle()));
             }
             if (noteDetails.getContent() != null) {
-                noteToUpdate.setContent(EncryptionUtil.encrypt(noteDetails.getContent()));
+                replaceContent(noteToUpdate, noteDetails.getContent());
             }
+            replaceTags(noteToUpdate, noteDetails.getTags(), noteDetails.getFolder());
+            touch(noteToUpdate);
             Note saved = noteRepository.save(noteToUpdate);
             
-            // Return a copy with decrypted content
-            Note response = new Note();
-            response.setId(saved.getId());
-            response.setUserId(saved.getUserId());
-            response.setCreatedAt(saved.getCreatedAt());
-            response.setTitle(EncryptionUtil.decrypt(saved.getTitle()));
-            response.setContent(EncryptionUtil.decrypt(saved.getContent()));
-            
-            return Optional.of(response);
+            // Return a copy with decrypted title and content
+            return Optional.of(decryptNote(saved));
         }
         return Optional.empty();
     }
@@ -150,7 +302,7 @@ public class NoteService {
     @Transactional(readOnly = true)
     public List<Note> searchNotesByTitleAndUserId(String title, Long userId) {
         if (title == null) title = "";
-        List<Note> notes = noteRepository.findByTitleIgnoreCaseContainingAndUserId(title, userId);
+        List<Note> notes = noteRepository.findByTitleIgnoreCaseContainingAndUserIdAndDeletedFalse(title, userId);
         return notes.stream().map(this::decryptNote).toList();
     }
 
@@ -159,14 +311,14 @@ public class NoteService {
         if (title == null || title.isBlank()) {
             throw new IllegalArgumentException("Cannot search for a blank note");
         }
-        return noteRepository.findByTitleIgnoreCaseAndUserId(title, userId)
+        return noteRepository.findByTitleIgnoreCaseAndUserIdAndDeletedFalse(title, userId)
                 .map(this::decryptNote);
     }
 
     @Transactional
     public Optional<Note> updateNoteByTitleAndUserId(String title, Note noteDetails, Long userId) {
         if (title == null || title.isBlank()) return Optional.empty();
-        Optional<Note> existingOpt = noteRepository.findByTitleIgnoreCaseAndUserId(title, userId);
+        Optional<Note> existingOpt = noteRepository.findByTitleIgnoreCaseAndUserIdAndDeletedFalse(title, userId);
         if (existingOpt.isPresent()) {
             Note noteToUpdate = existingOpt.get();
             // Update allowed fields (encrypt before saving)
@@ -174,20 +326,15 @@ public class NoteService {
                 noteToUpdate.setTitle(EncryptionUtil.encrypt(noteDetails.getTitle()));
             }
             if (noteDetails.getContent() != null) {
-                noteToUpdate.setContent(EncryptionUtil.encrypt(noteDetails.getContent()));
+                replaceContent(noteToUpdate, noteDetails.getContent());
             }
+            replaceTags(noteToUpdate, noteDetails.getTags(), noteDetails.getFolder());
             noteToUpdate.setUserId(userId); // Ensure userId remains
+            touch(noteToUpdate);
             Note saved = noteRepository.save(noteToUpdate);
             
             // Return a copy with decrypted title and content
-            Note response = new Note();
-            response.setId(saved.getId());
-            response.setUserId(saved.getUserId());
-            response.setCreatedAt(saved.getCreatedAt());
-            response.setTitle(EncryptionUtil.decrypt(saved.getTitle()));
-            response.setContent(EncryptionUtil.decrypt(saved.getContent()));
-            
-            return Optional.of(response);
+            return Optional.of(decryptNote(saved));
         }
         return Optional.empty();
     }
@@ -195,21 +342,93 @@ public class NoteService {
     @Transactional
     public boolean deleteNoteByTitleAndUserId(String title, Long userId) {
         if (title == null || title.isBlank()) return false;
-        Optional<Note> existing = noteRepository.findByTitleIgnoreCaseAndUserId(title, userId);
+        Optional<Note> existing = noteRepository.findByTitleIgnoreCaseAndUserIdAndDeletedFalse(title, userId);
         if (existing.isPresent()) {
-            noteRepository.delete(existing.get());
+            tombstone(existing.get());
             return true;
         }
         return false;
     }
 
+    // Compress (when worthwhile) and encrypt note content, recording the bytes actually written
+    private void writeContent(Note note, String content) {
+        long stored = contentStore.write(note, content);
+        if (content != null) {
+            plaintextContentSize.record(content.getBytes(StandardCharsets.UTF_8).length);
+            storedContentSize.record(stored);
+        }
+    }
+
+    // Write new content and record it as a revision, diffed against the content it replaces
+    private void replaceContent(Note note, String content) {
+        String previous = readContent(note);
+        writeContent(note, content);
+        revisionService.record(note.getId(), previous, content);
+    }
+
+    // Replace tags and/or folder (null keeps them, an empty folder clears it) and move the note in the index
+    private void replaceTags(Note note, List<String> tags, String folder) {
+        if (tags == null && folder == null) {
+            return;
+        }
+        List<String> oldTags = TagIndexService.decryptTags(note.getTagsEnc());
+        String oldFolder = decryptFolder(note.getFolderEnc());
+        List<String> newTags = tags == null ? oldTags : TagIndexService.normalizeTags(tags);
+        String newFolder = folder == null ? oldFolder : TagIndexService.normalizeName(folder);
+        note.setTagsEnc(TagIndexService.encryptTags(newTags));
+        note.setFolderEnc(encryptFolder(newFolder));
+        tagIndex.update(note.getUserId(), note.getId(), oldTags, oldFolder, newTags, newFolder);
+    }
+
+    private static String encryptFolder(String folder) {
+        return folder == null ? null : EncryptionUtil.encrypt(folder);
+    }
+
+    private static String decryptFolder(String folderEnc) {
+        return folderEnc == null ? null : EncryptionUtil.decrypt(folderEnc);
+    }
+
+    private String readContent(Note note) {
+        return contentStore.read(note);
+    }
+
+    // Record a user-visible change: next sequence number of the owner, a fresh updatedAt and a new list ETag
+    private void touch(Note note) {
+        if (note.getUserId() != null) {
+            note.setSeq(syncStateRepository.nextSeq(note.getUserId()));
+        }
+        note.setUpdatedAt(LocalDateTime.now());
+        collectionVersions.bump(note.getUserId());
+    }
+
+    // Soft delete: drop the content but keep the row so incremental sync can report the deletion
+    private void tombstone(Note note) {
+        contentStore.delete(note.getId());
+        attachmentService.deleteForNote(note.getId());
+        revisionService.deleteForNote(note.getId());
+        tagIndex.update(note.getUserId(), note.getId(),
+                TagIndexService.decryptTags(note.getTagsEnc()), decryptFolder(note.getFolderEnc()), List.of(), null);
+        note.setTagsEnc(null);
+        note.setFolderEnc(null);
+        note.setContent(null);
+        note.setContentBin(null);
+        note.setChunkManifest(null);
+        note.setDeleted(true);
+        touch(note);
+        noteRepository.save(note);
+    }
+
     private Note decryptNote(Note note) {
         Note copy = new Note();
         copy.setId(note.getId());
         copy.setUserId(note.getUserId());
         copy.setCreatedAt(note.getCreatedAt());
+        copy.setUpdatedAt(note.getUpdatedAt());
+        copy.setSeq(note.getSeq());
         copy.setTitle(EncryptionUtil.decrypt(note.getTitle()));
-        copy.setContent(EncryptionUtil.decrypt(note.getContent()));
+        copy.setContent(readContent(note));
+        copy.setTags(TagIndexService.decryptTags(note.getTagsEnc()));
+        copy.setFolder(decryptFolder(note.getFolderEnc()));
         return copy;
     }
 }
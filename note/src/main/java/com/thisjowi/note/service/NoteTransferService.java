@@ -0,0 +1,357 @@
+package com.thisjowi.note.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.thisjowi.note.Utils.EncryptionUtil;
+import com.thisjowi.note.entity.Note;
+import com.thisjowi.note.repository.NoteRepository;
+import com.thisjowi.note.repository.NoteSyncStateRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Bulk import and export of notes as NDJSON (one JSON object per line).
+ *
+ * Import encrypts a batch on a worker pool while the previous batch is inserted with a single
+ * JDBC batch in its own transaction, tags and folders included. If the batch fails it is retried a
+ * line at a time, so only the lines that cannot be stored are reported. Notes large enough to be
+ * chunked still go through NoteService one by one: their chunks need the note id. Progress and
+ * per-line failures are written back as NDJSON.
+ */
+@Service
+public class NoteTransferService {
+
+    private static final Logger logger = LoggerFactory.getLogger(NoteTransferService.class);
+
+    private static final String INSERT_SQL = "INSERT INTO notes (title, content_bin, tags, folder, created_at, updated_at, user_id, seq, deleted) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, FALSE)";
+
+    private final NoteService noteService;
+    private final NoteContentStore contentStore;
+    private final NoteRepository noteRepository;
+    private final NoteSyncStateRepository syncStateRepository;
+    private final CollectionVersionCache collectionVersions;
+    private final TagIndexService tagIndex;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final ExecutorService cryptoPool;
+    private final int batchSize;
+
+    public NoteTransferService(NoteService noteService,
+                               NoteContentStore contentStore,
+                               NoteRepository noteRepository,
+                               NoteSyncStateRepository syncStateRepository,
+                               CollectionVersionCache collectionVersions,
+                               TagIndexService tagIndex,
+                               JdbcTemplate jdbcTemplate,
+                               TransactionTemplate transactionTemplate,
+                               ObjectMapper objectMapper,
+                               @Value("${notes.import.batch-size:200}") int batchSize,
+                               @Value("${notes.import.crypto-threads:0}") int cryptoThreads) {
+        this.noteService = noteService;
+        this.contentStore = contentStore;
+        this.noteRepository = noteRepository;
+        this.syncStateRepository = syncStateRepository;
+        this.collectionVersions = collectionVersions;
+        this.tagIndex = tagIndex;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        this.batchSize = Math.max(1, batchSize);
+        int threads = cryptoThreads > 0 ? cryptoThreads : Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        this.cryptoPool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "note-import-crypto");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        cryptoPool.shutdownNow();
+    }
+
+    /**
+     * Import NDJSON lines of the form {"title": "...", "content": "...", "createdAt": "2024-01-31T10:15:30"},
+     * optionally with "tags": [...] and "folder": "...".
+     * The report stream gets a progress line per batch, an error line per failed input line and a final summary.
+     */
+    public void importNotes(Long userId, InputStream input, OutputStream report) throws IOException {
+        ImportStats stats = new ImportStats();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+
+        List<CompletableFuture<ImportRow>> pending = null;
+        List<ImportRow> batch = readBatch(reader, stats);
+        while (!batch.isEmpty() || pending != null) {
+            // Encrypt this batch while the previous one is written
+            List<CompletableFuture<ImportRow>> encrypting = new ArrayList<>(batch.size());
+            for (ImportRow row : batch) {
+                encrypting.add(row.error != null || row.large
+                        ? CompletableFuture.completedFuture(row)
+                        : CompletableFuture.supplyAsync(() -> encrypt(row), cryptoPool));
+            }
+
+            if (pending != null) {
+                writeBatch(userId, pending, stats, report);
+            }
+            pending = encrypting.isEmpty() ? null : encrypting;
+            batch = pending == null ? batch : readBatch(reader, stats);
+        }
+
+        writeLine(report, summary("summary", stats));
+        report.flush();
+        logger.info("[Import] User {} imported {} notes, {} failed", userId, stats.imported, stats.failed);
+    }
+
+    /**
+     * Write every live note of the user as NDJSON, decrypting one page at a time.
+     */
+    public void exportNotes(Long userId, OutputStream out) throws IOException {
+        long afterId = 0;
+        while (true) {
+            List<Note> page = noteRepository.findPageForExport(userId, afterId, PageRequest.of(0, batchSize));
+            for (Note note : page) {
+                Map<String, Object> line = new LinkedHashMap<>();
+                line.put("id", note.getId());
+                line.put("title", EncryptionUtil.decrypt(note.getTitle()));
+                line.put("content", contentStore.read(note));
+                line.put("tags", TagIndexService.decryptTags(note.getTagsEnc()));
+                line.put("folder", note.getFolderEnc() == null ? null : EncryptionUtil.decrypt(note.getFolderEnc()));
+                line.put("createdAt", note.getCreatedAt());
+                line.put("updatedAt", note.getUpdatedAt());
+                writeLine(out, line);
+            }
+            out.flush();
+            if (page.size() < batchSize) {
+                return;
+            }
+            afterId = page.get(page.size() - 1).getId();
+        }
+    }
+
+    private List<ImportRow> readBatch(BufferedReader reader, ImportStats stats) throws IOException {
+        List<ImportRow> batch = new ArrayList<>(batchSize);
+        String line;
+        while (batch.size() < batchSize && (line = reader.readLine()) != null) {
+            stats.lines++;
+            if (line.isBlank()) {
+                continue;
+            }
+            ImportRow row = new ImportRow(stats.lines);
+            try {
+                JsonNode node = objectMapper.readTree(line);
+                row.title = node.path("title").asText(null);
+                row.content = node.path("content").asText("");
+                if (node.hasNonNull("createdAt")) {
+                    row.createdAt = LocalDateTime.parse(node.get("createdAt").asText());
+                }
+                if (node.path("tags").isArray()) {
+                    List<String> tags = new ArrayList<>();
+                    node.get("tags").forEach(tag -> tags.add(tag.asText()));
+                    row.tags = TagIndexService.normalizeTags(tags);
+                }
+                row.folder = TagIndexService.normalizeName(node.path("folder").asText(null));
+                if (row.title == null || row.title.isBlank()) {
+                    row.error = "title is required";
+                } else {
+                    // Chunked notes need their id before the chunks can be written
+                    row.large = contentStore.isChunked(row.content.getBytes(StandardCharsets.UTF_8).length);
+                }
+            } catch (IllegalArgumentException e) {
+                row.error = e.getMessage();
+            } catch (Exception e) {
+                row.error = "invalid JSON: " + e.getMessage();
+            }
+            batch.add(row);
+        }
+        return batch;
+    }
+
+    private ImportRow encrypt(ImportRow row) {
+        try {
+            row.encryptedTitle = EncryptionUtil.encrypt(row.title);
+            row.encryptedContent = EncryptionUtil.encryptContentToBytes(row.content);
+            row.encryptedTags = TagIndexService.encryptTags(row.tags);
+            row.encryptedFolder = row.folder == null ? null : EncryptionUtil.encrypt(row.folder);
+        } catch (Exception e) {
+            row.error = "encryption failed";
+        }
+        return row;
+    }
+
+    private void writeBatch(Long userId, List<CompletableFuture<ImportRow>> futures, ImportStats stats, OutputStream report) throws IOException {
+        List<ImportRow> inserts = new ArrayList<>();
+        for (CompletableFuture<ImportRow> future : futures) {
+            ImportRow row = future.join();
+            if (row.error != null) {
+                fail(row, row.error, stats, report);
+            } else if (row.large) {
+                try {
+                    Note note = new Note();
+                    note.setUserId(userId);
+                    note.setTitle(row.title);
+                    note.setContent(row.content);
+                    note.setTags(row.tags);
+                    note.setFolder(row.folder);
+                    note.setCreatedAt(row.createdAt);
+                    noteService.saveNote(note);
+                    stats.imported++;
+                } catch (Exception e) {
+                    fail(row, "could not store note", stats, report);
+                }
+            } else {
+                inserts.add(row);
+            }
+        }
+
+        if (!inserts.isEmpty()) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> insert(userId, inserts));
+                collectionVersions.bump(userId);
+                stats.imported += inserts.size();
+            } catch (Exception e) {
+                logger.warn("[Import] Batch insert failed for user {}, retrying line by line: {}", userId, e.getMessage());
+                retryOneByOne(userId, inserts, stats, report);
+            }
+        }
+
+        writeLine(report, summary("progress", stats));
+        report.flush();
+    }
+
+    // A failed batch rolled back as a whole; each line gets its own transaction to find the bad ones
+    private void retryOneByOne(Long userId, List<ImportRow> rows, ImportStats stats, OutputStream report) throws IOException {
+        long imported = 0;
+        for (ImportRow row : rows) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> insert(userId, List.of(row)));
+                imported++;
+            } catch (Exception e) {
+                logger.debug("[Import] Line {} of user {} failed: {}", row.lineNumber, userId, e.getMessage());
+                fail(row, "could not store note", stats, report);
+            }
+        }
+        if (imported > 0) {
+            collectionVersions.bump(userId);
+            stats.imported += imported;
+        }
+    }
+
+    private void insert(Long userId, List<ImportRow> rows) {
+        long lastSeq = syncStateRepository.allocateSeqs(userId, rows.size());
+        long firstSeq = lastSeq - rows.size() + 1;
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+
+        List<Object[]> args = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            ImportRow row = rows.get(i);
+            Timestamp createdAt = row.createdAt != null ? Timestamp.valueOf(row.createdAt) : now;
+            args.add(new Object[]{row.encryptedTitle, row.encryptedContent, row.encryptedTags, row.encryptedFolder,
+                    createdAt, now, userId, firstSeq + i});
+        }
+        // The generated ids come back in insert order; tagged notes need theirs for the tag index
+        GeneratedKeyHolder keys = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(connection -> connection.prepareStatement(INSERT_SQL, new String[]{"id"}),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement statement, int i) throws SQLException {
+                        Object[] values = args.get(i);
+                        for (int column = 0; column < values.length; column++) {
+                            statement.setObject(column + 1, values[column]);
+                        }
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return args.size();
+                    }
+                }, keys);
+
+        List<TagIndexService.TaggedNote> tagged = new ArrayList<>();
+        List<Map<String, Object>> ids = keys.getKeyList();
+        for (int i = 0; i < rows.size(); i++) {
+            ImportRow row = rows.get(i);
+            if (!row.tags.isEmpty() || row.folder != null) {
+                tagged.add(new TagIndexService.TaggedNote(((Number) ids.get(i).get("id")).longValue(), row.tags, row.folder));
+            }
+        }
+        if (!tagged.isEmpty()) {
+            tagIndex.addNotes(userId, tagged);
+        }
+    }
+
+    private void fail(ImportRow row, String error, ImportStats stats, OutputStream report) throws IOException {
+        stats.failed++;
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("type", "error");
+        line.put("line", row.lineNumber);
+        line.put("error", error);
+        writeLine(report, line);
+    }
+
+    private Map<String, Object> summary(String type, ImportStats stats) {
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("type", type);
+        line.put("lines", stats.lines);
+        line.put("imported", stats.imported);
+        line.put("failed", stats.failed);
+        return line;
+    }
+
+    private void writeLine(OutputStream out, Object value) throws IOException {
+        out.write(objectMapper.writeValueAsBytes(value));
+        out.write('\n');
+    }
+
+    private static final class ImportStats {
+        long lines;
+        long imported;
+        long failed;
+    }
+
+    private static final class ImportRow {
+        final long lineNumber;
+        String title;
+        String content;
+        LocalDateTime createdAt;
+        List<String> tags = List.of();
+        String folder;
+        boolean large;
+        String error;
+        String encryptedTitle;
+        byte[] encryptedContent;
+        String encryptedTags;
+        String encryptedFolder;
+
+        ImportRow(long lineNumber) {
+            this.lineNumber = lineNumber;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.thisjowi.note.service;
+
+import com.thisjowi.note.Utils.EncryptionUtil;
+import com.thisjowi.note.entity.Note;
+import com.thisjowi.note.entity.NoteChanges;
+import com.thisjowi.note.entity.NoteChunk;
+import com.thisjowi.note.repository.ReactiveNoteRepository;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+
+/**
+ * Reactive counterpart of {@link NoteService} for the reactive profile.
+ *
+ * Reads run on R2DBC and decrypt on the bounded crypto scheduler, so no event loop thread ever waits
+ * on the database or spends a request's worth of CPU on AES. Writes are delegated to NoteService on
+ * the JPA scheduler: they share the revision history, tag index and sync sequence bookkeeping, which
+ * all live in JPA transactions.
+ */
+@Service
+@Profile("reactive")
+public class ReactiveNoteService {
+
+    private static final HexFormat HEX = HexFormat.of();
+    // Chunks fetched per query when reassembling a note, as in NoteContentStore
+    private static final int READ_BATCH = 16;
+
+    private final ReactiveNoteRepository noteRepository;
+    private final NoteService noteService;
+    private final Scheduler cryptoScheduler;
+    private final Scheduler jpaScheduler;
+    private final int decryptConcurrency;
+
+    public ReactiveNoteService(ReactiveNoteRepository noteRepository, NoteService noteService,
+                               @Qualifier("cryptoScheduler") Scheduler cryptoScheduler,
+                               @Qualifier("jpaScheduler") Scheduler jpaScheduler,
+                               @Value("${notes.reactive.decrypt-concurrency:4}") int decryptConcurrency) {
+        this.noteRepository = noteRepository;
+        this.noteService = noteService;
+        this.cryptoScheduler = cryptoScheduler;
+        this.jpaScheduler = jpaScheduler;
+        this.decryptConcurrency = Math.max(1, decryptConcurrency);
+    }
+
+    // In database order; a few notes per request are decrypted in parallel, the order is kept
+    public Flux<Note> getNotesByUserId(Long userId) {
+        return noteRepository.findByUserIdAndDeletedFalse(userId)
+                .flatMapSequential(this::decryptNote, decryptConcurrency);
+    }
+
+    public Flux<Note> searchNotesByTitleAndUserId(String title, Long userId) {
+        return noteRepository.findByTitleIgnoreCaseContainingAndUserIdAndDeletedFalse(title == null ? "" : title, userId)
+                .flatMapSequential(this::decryptNote, decryptConcurrency);
+    }
+
+    public Mono<Note> getNoteByTitleAndUserId(String title, Long userId) {
+        if (title == null || title.isBlank()) {
+            return Mono.error(new IllegalArgumentException("Cannot search for a blank note"));
+        }
+        return noteRepository.findByTitleIgnoreCaseAndUserIdAndDeletedFalse(title, userId)
+                .flatMap(this::decryptNote);
+    }
+
+    // Live note by id, still encrypted; ownership is checked by the caller
+    public Mono<Note> findLiveNote(Long id) {
+        return noteRepository.findById(id).filter(note -> !note.isDeleted());
+    }
+
+    /**
+     * Same contract as {@link NoteService#getChangesSince(Long, long, Long, int)}.
+     */
+    public Mono<NoteChanges> getChangesSince(Long userId, long since, Long afterId, int limit) {
+        // Read the cursor first: anything committed later is either in this page or in the next call
+        return noteRepository.findLastSeq(userId).defaultIfEmpty(0L).flatMap(cursor -> {
+            if (since <= 0 || afterId != null) {
+                long start = afterId == null ? cursor : since;
+                return noteRepository.findPageAfterId(userId, afterId == null ? 0L : afterId, limit).collectList()
+                        .flatMap(page -> {
+                            Long next = page.size() == limit ? page.get(page.size() - 1).getId() : null;
+                            boolean hasMore = next != null || cursor > start;
+                            return Flux.fromIterable(page)
+                                    .flatMapSequential(this::decryptNote, decryptConcurrency)
+                                    .collectList()
+                                    .map(notes -> new NoteChanges(start, hasMore, notes, List.of(), next));
+                        });
+            }
+            return noteRepository.findByUserIdAndSeqGreaterThanOrderBySeqAsc(userId, since, limit).collectList()
+                    .flatMap(changed -> {
+                        boolean hasMore = changed.size() == limit;
+                        long next = cursor;
+                        if (hasMore) {
+                            next = changed.get(changed.size() - 1).getSeq();
+                        } else if (!changed.isEmpty()) {
+                            next = Math.max(cursor, changed.get(changed.size() - 1).getSeq());
+                        }
+                        long seq = next;
+                        List<Long> deleted = changed.stream().filter(Note::isDeleted).map(Note::getId).toList();
+                        return Flux.fromIterable(changed)
+                                .filter(note -> !note.isDeleted())
+                                .flatMapSequential(this::decryptNote, decryptConcurrency)
+                                .collectList()
+                                .map(notes -> new NoteChanges(seq, hasMore, notes, deleted, null));
+                    });
+        });
+    }
+
+    /**
+     * Decrypted content of a note as UTF-8 bytes. Chunked notes are emitted a window of chunks at a
+     * time, and the next window is only fetched once the client has taken the previous one.
+     */
+    public Flux<byte[]> streamContent(Note note) {
+        byte[] manifest = note.getChunkManifest();
+        if (manifest == null) {
+            return decrypt(() -> {
+                String content = note.getContentBin() != null
+                        ? EncryptionUtil.decryptContent(note.getContentBin())
+                        : EncryptionUtil.decryptContent(note.getContent());
+                return content == null ? new byte[0] : content.getBytes(StandardCharsets.UTF_8);
+            }).flux();
+        }
+        int count = manifest.length / EncryptionUtil.FINGERPRINT_SIZE;
+        return Flux.range(0, (count + READ_BATCH - 1) / READ_BATCH)
+                .concatMap(window -> readWindow(note.getId(), manifest, window * READ_BATCH,
+                        Math.min(count, (window + 1) * READ_BATCH)), 1);
+    }
+
+    public Mono<Note> saveNote(Note note) {
+        return blocking(() -> noteService.saveNote(note));
+    }
+
+    public Mono<Optional<Note>> updateNoteByTitleAndUserId(String title, Note noteDetails, Long userId) {
+        return blocking(() -> noteService.updateNoteByTitleAndUserId(title, noteDetails, userId));
+    }
+
+    public Mono<Boolean> deleteNoteForUser(Long id, Long userId) {
+        return blocking(() -> noteService.deleteNoteForUser(id, userId));
+    }
+
+    public Mono<Boolean> isLiveNote(Long id) {
+        return noteRepository.findById(id).map(note -> !note.isDeleted()).defaultIfEmpty(false);
+    }
+
+    // One window of a chunked note: a single query, then decryption in manifest order
+    private Flux<byte[]> readWindow(Long noteId, byte[] manifest, int from, int to) {
+        List<String> window = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            window.add(HEX.formatHex(manifest, i * EncryptionUtil.FINGERPRINT_SIZE, (i + 1) * EncryptionUtil.FINGERPRINT_SIZE));
+        }
+        return noteRepository.findChunks(noteId, window)
+                .collectMap(NoteChunk::getFingerprint, NoteChunk::getData)
+                .flatMapMany(chunks -> decrypt(() -> {
+                    List<byte[]> plain = new ArrayList<>(window.size());
+                    for (String fingerprint : window) {
+                        byte[] data = chunks.get(fingerprint);
+                        if (data == null) {
+                            throw new IllegalStateException("Missing chunk " + fingerprint + " of note " + noteId);
+                        }
+                        plain.add(EncryptionUtil.decryptContentToBytes(data));
+                    }
+                    return plain;
+                }).flatMapIterable(plain -> plain));
+    }
+
+    private Mono<Note> decryptNote(Note note) {
+        if (note.getChunkManifest() == null) {
+            return decrypt(() -> copy(note, note.getContentBin() != null
+                    ? EncryptionUtil.decryptContent(note.getContentBin())
+                    : EncryptionUtil.decryptContent(note.getContent())));
+        }
+        return streamContent(note)
+                .collect(ByteArrayOutputStream::new, (out, bytes) -> out.write(bytes, 0, bytes.length))
+                .flatMap(out -> decrypt(() -> copy(note, out.toString(StandardCharsets.UTF_8))));
+    }
+
+    // Same fields as NoteService.decryptNote
+    private static Note copy(Note note, String content) {
+        Note copy = new Note();
+        copy.setId(note.getId());
+        copy.setUserId(note.getUserId());
+        copy.setCreatedAt(note.getCreatedAt());
+        copy.setUpdatedAt(note.getUpdatedAt());
+        copy.setSeq(note.getSeq());
+        copy.setTitle(EncryptionUtil.decrypt(note.getTitle()));
+        copy.setContent(content);
+        copy.setTags(TagIndexService.decryptTags(note.getTagsEnc()));
+        copy.setFolder(note.getFolderEnc() == null ? null : EncryptionUtil.decrypt(note.getFolderEnc()));
+        return copy;
+    }
+
+    private <T> Mono<T> decrypt(Callable<T> task) {
+        return Mono.fromCallable(task).subscribeOn(cryptoScheduler);
+    }
+
+    private <T> Mono<T> blocking(Callable<T> task) {
+        return Mono.fromCallable(task).subscribeOn(jpaScheduler);
+    }
+}
@@ -0,0 +1,359 @@
+package com.thisjowi.note.service;
+
+import com.thisjowi.note.Utils.EncryptionUtil;
+import com.thisjowi.note.entity.NoteTagIndex;
+import com.thisjowi.note.repository.NoteTagIndexRepository;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-user bitmap index from tag (and folder) to note ids. Tag and folder names are stored encrypted on
+ * the note, so filtering by them would otherwise mean decrypting every note of the user; with the index
+ * an AND/OR filter or a count is a handful of bitmap operations on data already in memory.
+ *
+ * Bitmaps are persisted in note_tag_index and loaded per user on first use. Active users stay in an LRU
+ * cache; any write evicts the user after commit and the next read reloads the few rows again.
+ */
+@Service
+public class TagIndexService {
+
+    public static final int MAX_TAGS = 50;
+    public static final int MAX_NAME_LENGTH = 64;
+    private static final String TAG_PREFIX = "tag:";
+    private static final String FOLDER_PREFIX = "folder:";
+
+    public record TagCount(String name, boolean folder, long count) {
+    }
+
+    // Tags and folder of a note being added to the index
+    public record TaggedNote(Long noteId, List<String> tags, String folder) {
+    }
+
+    private record IndexEntry(String name, boolean folder, Roaring64NavigableMap notes) {
+    }
+
+    private final NoteTagIndexRepository indexRepository;
+    private final Map<Long, Map<String, IndexEntry>> cache;
+    // Bumped on every eviction; a load that overlapped one is not cached, it may have read old rows
+    private final AtomicLong evictions = new AtomicLong();
+
+    public TagIndexService(NoteTagIndexRepository indexRepository,
+                           @Value("${notes.tags.cached-users:10000}") int cachedUsers) {
+        this.indexRepository = indexRepository;
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Map<String, IndexEntry>> eldest) {
+                return size() > cachedUsers;
+            }
+        });
+    }
+
+    /**
+     * Trim, drop blanks and duplicates (case-insensitive) and enforce the limits.
+     */
+    public static List<String> normalizeTags(List<String> tags) {
+        if (tags == null) {
+            return List.of();
+        }
+        Map<String, String> unique = new LinkedHashMap<>();
+        for (String tag : tags) {
+            String name = normalizeName(tag);
+            if (name != null) {
+                unique.putIfAbsent(name.toLowerCase(Locale.ROOT), name);
+            }
+        }
+        if (unique.size() > MAX_TAGS) {
+            throw new IllegalArgumentException("A note can have at most " + MAX_TAGS + " tags");
+        }
+        return List.copyOf(unique.values());
+    }
+
+    public static String normalizeName(String name) {
+        if (name == null || name.isBlank()) {
+            return null;
+        }
+        String trimmed = name.trim();
+        if (trimmed.length() > MAX_NAME_LENGTH || trimmed.indexOf('\n') >= 0) {
+            throw new IllegalArgumentException("Tag and folder names are limited to " + MAX_NAME_LENGTH + " characters on one line");
+        }
+        return trimmed;
+    }
+
+    public static String encryptTags(List<String> tags) {
+        return tags == null || tags.isEmpty() ? null : EncryptionUtil.encrypt(String.join("\n", tags));
+    }
+
+    public static List<String> decryptTags(String tagsEnc) {
+        return tagsEnc == null ? List.of() : List.of(EncryptionUtil.decrypt(tagsEnc).split("\n"));
+    }
+
+    /**
+     * Move a note from its old tags and folder to the new ones. Must run inside the caller's transaction.
+     */
+    public void update(Long userId, Long noteId, List<String> oldTags, String oldFolder, List<String> newTags, String newFolder) {
+        if (userId == null || noteId == null) {
+            return;
+        }
+        Map<String, String> before = names(oldTags, oldFolder);
+        Map<String, String> after = names(newTags, newFolder);
+        Set<String> removed = new HashSet<>(before.keySet());
+        removed.removeAll(after.keySet());
+        Set<String> added = new HashSet<>(after.keySet());
+        added.removeAll(before.keySet());
+        if (removed.isEmpty() && added.isEmpty()) {
+            return;
+        }
+
+        Map<String, NoteTagIndex> rows = lock(userId, removed, added, after);
+        for (String key : removed) {
+            NoteTagIndex row = rows.get(key);
+            if (row != null) {
+                Roaring64NavigableMap notes = deserialize(row.getBitmap());
+                notes.removeLong(noteId);
+                store(row, notes);
+            }
+        }
+        for (String key : added) {
+            NoteTagIndex row = rows.get(key);
+            Roaring64NavigableMap notes = deserialize(row.getBitmap());
+            notes.addLong(noteId);
+            store(row, notes);
+        }
+        evictAfterCommit(userId);
+    }
+
+    /**
+     * Add new notes to their tags and folders, rewriting each touched bitmap once for the whole list
+     * instead of once per note. Must run inside the caller's transaction.
+     */
+    public void addNotes(Long userId, List<TaggedNote> taggedNotes) {
+        Map<String, String> names = new HashMap<>();
+        Map<String, Roaring64NavigableMap> additions = new HashMap<>();
+        for (TaggedNote note : taggedNotes) {
+            names(note.tags(), note.folder()).forEach((key, name) -> {
+                names.putIfAbsent(key, name);
+                additions.computeIfAbsent(key, k -> new Roaring64NavigableMap()).addLong(note.noteId());
+            });
+        }
+        if (additions.isEmpty()) {
+            return;
+        }
+
+        Map<String, NoteTagIndex> rows = lock(userId, Set.of(), additions.keySet(), names);
+        additions.forEach((key, added) -> {
+            NoteTagIndex row = rows.get(key);
+            Roaring64NavigableMap notes = deserialize(row.getBitmap());
+            notes.or(added);
+            store(row, notes);
+        });
+        evictAfterCommit(userId);
+    }
+
+    /**
+     * Drop a note from every bitmap of the user, for deletes that do not load the note first.
+     */
+    public void removeNote(Long userId, Long noteId) {
+        for (NoteTagIndex row : indexRepository.findAllForUpdate(userId)) {
+            Roaring64NavigableMap notes = deserialize(row.getBitmap());
+            if (notes.contains(noteId)) {
+                notes.removeLong(noteId);
+                store(row, notes);
+            }
+        }
+        evictAfterCommit(userId);
+    }
+
+    public void deleteUser(Long userId) {
+        indexRepository.deleteByUserId(userId);
+        evictAfterCommit(userId);
+    }
+
+    /**
+     * Ids of the notes having all tags in {@code all}, at least one tag in {@code any} (if given)
+     * and sitting in {@code folder} (if given).
+     */
+    public Roaring64NavigableMap filter(Long userId, List<String> all, List<String> any, String folder) {
+        Map<String, IndexEntry> index = load(userId);
+        Roaring64NavigableMap result = null;
+
+        List<String> required = new ArrayList<>();
+        for (String tag : normalizeTags(all)) {
+            required.add(tagKey(tag, false));
+        }
+        String folderName = normalizeName(folder);
+        if (folderName != null) {
+            required.add(tagKey(folderName, true));
+        }
+        for (String key : required) {
+            IndexEntry entry = index.get(key);
+            if (entry == null) {
+                return new Roaring64NavigableMap();
+            }
+            result = intersect(result, entry.notes());
+        }
+
+        List<String> anyTags = normalizeTags(any);
+        if (!anyTags.isEmpty()) {
+            Roaring64NavigableMap union = new Roaring64NavigableMap();
+            for (String tag : anyTags) {
+                IndexEntry entry = index.get(tagKey(tag, false));
+                if (entry != null) {
+                    union.or(entry.notes());
+                }
+            }
+            result = intersect(result, union);
+        }
+        return result == null ? new Roaring64NavigableMap() : result;
+    }
+
+    /**
+     * Every tag and folder of the user with the number of notes carrying it.
+     */
+    public List<TagCount> counts(Long userId) {
+        return load(userId).values().stream()
+                .map(e -> new TagCount(e.name(), e.folder(), e.notes().getLongCardinality()))
+                .sorted(Comparator.comparing(TagCount::folder).thenComparing(TagCount::name, String.CASE_INSENSITIVE_ORDER))
+                .toList();
+    }
+
+    // Keyed by index key; values keep the prefixed display name so new rows know their kind
+    private static Map<String, String> names(List<String> tags, String folder) {
+        Map<String, String> names = new HashMap<>();
+        for (String tag : normalizeTags(tags)) {
+            names.put(tagKey(tag, false), TAG_PREFIX + tag);
+        }
+        String folderName = normalizeName(folder);
+        if (folderName != null) {
+            names.put(tagKey(folderName, true), FOLDER_PREFIX + folderName);
+        }
+        return names;
+    }
+
+    // Locks the rows of the touched keys. Added keys get an empty row first: a missing row cannot be
+    // locked, so two notes adding the same new tag at once would otherwise both insert it
+    private Map<String, NoteTagIndex> lock(Long userId, Set<String> removed, Set<String> added, Map<String, String> names) {
+        Map<String, NoteTagIndex> rows = new HashMap<>();
+        Set<String> missing = new TreeSet<>(added);
+        Set<String> toLock = new HashSet<>(removed);
+        toLock.addAll(added);
+        byte[] empty = serialize(new Roaring64NavigableMap());
+        while (true) {
+            for (String key : missing) {
+                String name = names.get(key);
+                indexRepository.insertIfAbsent(userId, key, name.startsWith(FOLDER_PREFIX),
+                        EncryptionUtil.encrypt(name.substring(name.indexOf(':') + 1)), empty);
+            }
+            for (NoteTagIndex row : indexRepository.findForUpdate(userId, toLock)) {
+                rows.put(row.getTagKey(), row);
+            }
+            missing.removeAll(rows.keySet());
+            if (missing.isEmpty()) {
+                return rows;
+            }
+            // Emptied and deleted by another update between the insert and the lock
+            toLock = new HashSet<>(missing);
+        }
+    }
+
+    private static String tagKey(String name, boolean folder) {
+        return EncryptionUtil.tagKey((folder ? FOLDER_PREFIX : TAG_PREFIX) + name.toLowerCase(Locale.ROOT));
+    }
+
+    // Never mutates the cached bitmaps
+    private static Roaring64NavigableMap intersect(Roaring64NavigableMap current, Roaring64NavigableMap other) {
+        Roaring64NavigableMap result = new Roaring64NavigableMap();
+        result.or(current == null ? other : current);
+        if (current != null) {
+            result.and(other);
+        }
+        return result;
+    }
+
+    private Map<String, IndexEntry> load(Long userId) {
+        Map<String, IndexEntry> index = cache.get(userId);
+        if (index != null) {
+            return index;
+        }
+        long generation = evictions.get();
+        Map<String, IndexEntry> loaded = new HashMap<>();
+        for (NoteTagIndex row : indexRepository.findByUserId(userId)) {
+            loaded.put(row.getTagKey(), new IndexEntry(EncryptionUtil.decrypt(row.getName()), row.isFolder(), deserialize(row.getBitmap())));
+        }
+        index = Collections.unmodifiableMap(loaded);
+        if (evictions.get() == generation) {
+            cache.put(userId, index);
+        }
+        return index;
+    }
+
+    private void store(NoteTagIndex row, Roaring64NavigableMap notes) {
+        if (notes.isEmpty()) {
+            if (row.getId() != null) {
+                indexRepository.delete(row);
+            }
+            return;
+        }
+        row.setBitmap(serialize(notes));
+        indexRepository.save(row);
+    }
+
+    private void evictAfterCommit(Long userId) {
+        evict(userId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evict(userId);
+                }
+            });
+        }
+    }
+
+    private void evict(Long userId) {
+        evictions.incrementAndGet();
+        cache.remove(userId);
+    }
+
+    private static byte[] serialize(Roaring64NavigableMap notes) {
+        notes.runOptimize();
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            notes.serialize(new DataOutputStream(bytes));
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Roaring64NavigableMap deserialize(byte[] data) {
+        Roaring64NavigableMap notes = new Roaring64NavigableMap();
+        try {
+            notes.deserialize(new DataInputStream(new ByteArrayInputStream(data)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return notes;
+    }
+}
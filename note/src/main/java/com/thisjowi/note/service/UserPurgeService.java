@@ -0,0 +1,146 @@
+package com.thisjowi.note.service;
+
+import com.thisjowi.note.entity.UserPurge;
+import com.thisjowi.note.repository.NoteChunkRepository;
+import com.thisjowi.note.repository.NoteRepository;
+import com.thisjowi.note.repository.NoteSyncStateRepository;
+import com.thisjowi.note.repository.UserPurgeRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Removes every note of a deleted account. The Kafka listener only records the request; this job
+ * deletes in primary-key ranges of at most batch-size notes, one short transaction per range, and
+ * stores the end of each range so a restart continues where it stopped.
+ */
+@Component
+public class UserPurgeService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserPurgeService.class);
+
+    private final UserPurgeRepository purgeRepository;
+    private final NoteRepository noteRepository;
+    private final NoteChunkRepository chunkRepository;
+    private final NoteSyncStateRepository syncStateRepository;
+    private final AttachmentService attachmentService;
+    private final NoteRevisionService revisionService;
+    private final TagIndexService tagIndex;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int batchSize;
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong lagSeconds = new AtomicLong();
+    private final Counter purgedRows;
+
+    public UserPurgeService(UserPurgeRepository purgeRepository,
+                            NoteRepository noteRepository,
+                            NoteChunkRepository chunkRepository,
+                            NoteSyncStateRepository syncStateRepository,
+                            AttachmentService attachmentService,
+                            NoteRevisionService revisionService,
+                            TagIndexService tagIndex,
+                            TransactionTemplate transactionTemplate,
+                            MeterRegistry meterRegistry,
+                            @Value("${notes.user-purge.enabled:true}") boolean enabled,
+                            @Value("${notes.user-purge.batch-size:1000}") int batchSize) {
+        this.purgeRepository = purgeRepository;
+        this.noteRepository = noteRepository;
+        this.chunkRepository = chunkRepository;
+        this.syncStateRepository = syncStateRepository;
+        this.attachmentService = attachmentService;
+        this.revisionService = revisionService;
+        this.tagIndex = tagIndex;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        // Refreshed by every run so scraping the metrics never touches the database
+        Gauge.builder("notes.purge.pending", pending, AtomicLong::get)
+                .description("Deleted accounts whose notes are not purged yet").register(meterRegistry);
+        Gauge.builder("notes.purge.lag", lagSeconds, AtomicLong::get)
+                .baseUnit("seconds").description("Age of the oldest unfinished purge").register(meterRegistry);
+        this.purgedRows = Counter.builder("notes.purge.rows").register(meterRegistry);
+    }
+
+    /**
+     * Record that the user's notes must be purged. Idempotent, so redelivered events are harmless.
+     */
+    public void requestPurge(Long userId) {
+        if (userId == null || userId <= 0) {
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!purgeRepository.existsById(userId)) {
+                purgeRepository.save(new UserPurge(userId, LocalDateTime.now()));
+            }
+        });
+        logger.info("[Purge] Notes of deleted user {} scheduled for removal", userId);
+    }
+
+    @Scheduled(fixedDelayString = "${notes.user-purge.delay-ms:10000}", initialDelayString = "${notes.user-purge.initial-delay-ms:30000}")
+    public void run() {
+        if (!enabled) {
+            return;
+        }
+        List<UserPurge> purges = purgeRepository.findByCompletedAtIsNullOrderByRequestedAtAsc(PageRequest.of(0, 10));
+        for (UserPurge purge : purges) {
+            try {
+                purge(purge.getUserId());
+            } catch (RuntimeException e) {
+                // Checkpoint is committed per batch; the next run retries from there
+                logger.error("[Purge] Failed to purge notes of user {}", purge.getUserId(), e);
+            }
+        }
+        refreshMetrics();
+    }
+
+    private void purge(Long userId) {
+        Boolean done;
+        do {
+            done = transactionTemplate.execute(status -> purgeBatch(userId));
+        } while (Boolean.FALSE.equals(done));
+    }
+
+    // Deletes the next id range and moves the checkpoint; returns true once nothing is left
+    private boolean purgeBatch(Long userId) {
+        UserPurge purge = purgeRepository.findForUpdate(userId).orElse(null);
+        if (purge == null || purge.getCompletedAt() != null) {
+            return true;
+        }
+        List<Long> ids = noteRepository.findIdsForPurge(userId, purge.getLastId(), PageRequest.of(0, batchSize));
+        if (ids.isEmpty()) {
+            syncStateRepository.deleteById(userId);
+            tagIndex.deleteUser(userId);
+            purge.setCompletedAt(LocalDateTime.now());
+            logger.info("[Purge] Removed {} notes of deleted user {}", purge.getPurged(), userId);
+            return true;
+        }
+        long toId = ids.get(ids.size() - 1);
+        chunkRepository.deleteRangeForPurge(userId, purge.getLastId(), toId);
+        attachmentService.deleteForPurge(userId, purge.getLastId(), toId);
+        revisionService.deleteForPurge(userId, purge.getLastId(), toId);
+        int deleted = noteRepository.deleteRangeForPurge(userId, purge.getLastId(), toId);
+        purge.setLastId(toId);
+        purge.setPurged(purge.getPurged() + deleted);
+        purgedRows.increment(deleted);
+        return false;
+    }
+
+    private void refreshMetrics() {
+        pending.set(purgeRepository.countByCompletedAtIsNull());
+        LocalDateTime oldest = purgeRepository.findOldestPendingRequest();
+        lagSeconds.set(oldest == null ? 0 : Math.max(0, Duration.between(oldest, LocalDateTime.now()).getSeconds()));
+    }
+}
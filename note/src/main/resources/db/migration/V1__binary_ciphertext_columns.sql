@@ -0,0 +1,3 @@
+-- Encrypted note content is stored as raw bytes (format byte + IV + ciphertext) instead of Base64 text.
+-- On a fresh database Hibernate creates the table after this runs, hence the guards.
+ALTER TABLE IF EXISTS notes ADD COLUMN IF NOT EXISTS content_bin BYTEA;
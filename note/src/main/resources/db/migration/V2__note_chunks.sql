@@ -0,0 +1,3 @@
+-- Large notes are stored as encrypted chunks in note_chunks (created by Hibernate with the entity);
+-- the note row keeps the ordered chunk fingerprints.
+ALTER TABLE IF EXISTS notes ADD COLUMN IF NOT EXISTS chunk_manifest BYTEA;
@@ -0,0 +1,5 @@
+-- Incremental sync: per-user change sequence, update time and soft-delete tombstones.
+-- note_sync_state and idx_notes_user_seq come from the entity mappings.
+ALTER TABLE IF EXISTS notes ADD COLUMN IF NOT EXISTS updated_at TIMESTAMP;
+ALTER TABLE IF EXISTS notes ADD COLUMN IF NOT EXISTS seq BIGINT;
+ALTER TABLE IF EXISTS notes ADD COLUMN IF NOT EXISTS deleted BOOLEAN NOT NULL DEFAULT FALSE;
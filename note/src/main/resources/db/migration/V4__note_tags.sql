@@ -0,0 +1,3 @@
+-- Encrypted tag and folder names. note_tag_index comes from the entity mapping.
+ALTER TABLE IF EXISTS notes ADD COLUMN IF NOT EXISTS tags TEXT;
+ALTER TABLE IF EXISTS notes ADD COLUMN IF NOT EXISTS folder TEXT;
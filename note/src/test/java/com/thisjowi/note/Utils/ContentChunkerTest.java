@@ -0,0 +1,67 @@
+package com.thisjowi.note.Utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ContentChunkerTest {
+
+    @Test
+    public void testChunksCoverInputWithinSizeLimits() {
+        byte[] data = randomBytes(1_000_000, 1);
+        int[] ends = ContentChunker.boundaries(data);
+
+        assertEquals(data.length, ends[ends.length - 1]);
+        int start = 0;
+        for (int i = 0; i < ends.length; i++) {
+            int length = ends[i] - start;
+            assertTrue(length <= ContentChunker.MAX_CHUNK_SIZE);
+            if (i < ends.length - 1) {
+                assertTrue(length >= ContentChunker.MIN_CHUNK_SIZE);
+            }
+            start = ends[i];
+        }
+    }
+
+    @Test
+    public void testSmallEditKeepsMostChunks() {
+        byte[] original = randomBytes(1_000_000, 2);
+        byte[] edited = new byte[original.length + 1];
+        System.arraycopy(original, 0, edited, 0, 500_000);
+        edited[500_000] = 'x';
+        System.arraycopy(original, 500_000, edited, 500_001, original.length - 500_000);
+
+        Set<String> before = chunks(original);
+        Set<String> after = chunks(edited);
+        after.removeAll(before);
+
+        // Only the chunk around the insertion (and possibly its neighbour) is new
+        assertTrue(after.size() <= 2, "changed chunks: " + after.size());
+    }
+
+    @Test
+    public void testEmptyInput() {
+        assertEquals(0, ContentChunker.boundaries(new byte[0]).length);
+    }
+
+    private static Set<String> chunks(byte[] data) {
+        Set<String> chunks = new HashSet<>();
+        int start = 0;
+        for (int end : ContentChunker.boundaries(data)) {
+            chunks.add(Arrays.toString(Arrays.copyOfRange(data, start, end)));
+            start = end;
+        }
+        return chunks;
+    }
+
+    private static byte[] randomBytes(int size, long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
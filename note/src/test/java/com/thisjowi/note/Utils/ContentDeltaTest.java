@@ -0,0 +1,64 @@
+package com.thisjowi.note.Utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ContentDeltaTest {
+
+    @Test
+    public void testRoundTripOfSmallEdits() {
+        byte[] base = "The quick brown fox jumps over the lazy dog".getBytes(StandardCharsets.UTF_8);
+        for (String edited : new String[]{"", "The quick brown fox", "The quick red fox jumps over the lazy dog",
+                "Intro. The quick brown fox jumps over the lazy dog", "The quick brown fox jumps over the lazy dog!",
+                "completely different"}) {
+            byte[] target = edited.getBytes(StandardCharsets.UTF_8);
+            assertArrayEquals(target, ContentDelta.apply(base, ContentDelta.diff(base, target)), edited);
+        }
+        assertArrayEquals(base, ContentDelta.apply(new byte[0], ContentDelta.diff(new byte[0], base)));
+    }
+
+    @Test
+    public void testDeltaSizeFollowsTheEditNotTheContent() {
+        byte[] base = randomBytes(1_000_000, 1);
+        byte[] target = base.clone();
+        target[500_000] ^= 1;
+
+        byte[] delta = ContentDelta.diff(base, target);
+        assertArrayEquals(target, ContentDelta.apply(base, delta));
+        assertTrue(delta.length < 32, "delta of " + delta.length + " bytes");
+    }
+
+    @Test
+    public void testScatteredEditsReuseUnchangedChunks() {
+        byte[] base = randomBytes(1_000_000, 2);
+        byte[] target = base.clone();
+        for (int i = 50_000; i < target.length; i += 200_000) {
+            target[i] ^= 1;
+        }
+
+        byte[] delta = ContentDelta.diff(base, target);
+        assertArrayEquals(target, ContentDelta.apply(base, delta));
+        // Five edits cost about five chunks, far below the size of the note
+        assertTrue(delta.length < 5 * ContentChunker.MAX_CHUNK_SIZE, "delta of " + delta.length + " bytes");
+    }
+
+    @Test
+    public void testCorruptDeltaIsRejected() {
+        byte[] base = "base".getBytes(StandardCharsets.UTF_8);
+        byte[] delta = ContentDelta.diff(base, "base and more".getBytes(StandardCharsets.UTF_8));
+
+        assertThrows(IllegalStateException.class, () -> ContentDelta.apply(base, new byte[]{9}));
+        assertThrows(IllegalStateException.class, () -> ContentDelta.apply(base, java.util.Arrays.copyOf(delta, delta.length - 3)));
+        assertThrows(IllegalStateException.class, () -> ContentDelta.apply(new byte[0], delta));
+    }
+
+    private static byte[] randomBytes(int size, long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
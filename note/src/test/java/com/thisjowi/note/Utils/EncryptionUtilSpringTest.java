@@ -23,4 +23,48 @@ public class EncryptionUtilSpringTest {
         
         assertEquals(original, decrypted);
     }
+
+    @Test
+    public void testContentRoundTripIsCompressedAboveThreshold() {
+        String original = "Meeting notes: discuss the roadmap and assign owners. ".repeat(200);
+        String stored = EncryptionUtil.encryptContent(original);
+
+        assertTrue(stored.startsWith(EncryptionUtil.CONTENT_FORMAT_PREFIX));
+        assertTrue(stored.length() < original.length());
+        assertEquals(original, EncryptionUtil.decryptContent(stored));
+    }
+
+    @Test
+    public void testShortContentRoundTrip() {
+        String original = "short";
+        String stored = EncryptionUtil.encryptContent(original);
+
+        assertTrue(stored.startsWith(EncryptionUtil.CONTENT_FORMAT_PREFIX));
+        assertEquals(original, EncryptionUtil.decryptContent(stored));
+    }
+
+    @Test
+    public void testLegacyContentIsStillReadable() {
+        String original = "Written before the content format header existed";
+        String legacy = EncryptionUtil.encrypt(original);
+
+        assertEquals(original, EncryptionUtil.decryptContent(legacy));
+    }
+
+    @Test
+    public void testBinaryContentRoundTrip() {
+        String original = "Meeting notes: discuss the roadmap and assign owners. ".repeat(200);
+        byte[] stored = EncryptionUtil.encryptContentToBytes(original);
+
+        assertTrue(stored.length < original.length());
+        assertEquals(original, EncryptionUtil.decryptContent(stored));
+    }
+
+    @Test
+    public void testTextContentConvertsToBinaryWithoutChange() {
+        String original = "Written before the binary column existed";
+
+        assertEquals(original, EncryptionUtil.decryptContent(EncryptionUtil.toBinaryContent(EncryptionUtil.encrypt(original))));
+        assertEquals(original, EncryptionUtil.decryptContent(EncryptionUtil.toBinaryContent(EncryptionUtil.encryptContent(original))));
+    }
 }
@@ -0,0 +1,100 @@
+package com.thisjowi.note.Utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SegmentedCipherTest {
+
+    private static final byte[] KEY = new byte[32];
+    private static final byte[] AAD = "blob-key".getBytes();
+    private static final int SEGMENT = 1024;
+
+    @Test
+    public void testEverySegmentDecryptsToThePlaintext() throws IOException {
+        for (int size : new int[]{0, 1, SEGMENT - 1, SEGMENT, SEGMENT + 1, 10 * SEGMENT, 10 * SEGMENT + 7}) {
+            byte[] plain = randomBytes(size, size);
+            byte[] blob = encrypt(plain);
+
+            long segments = SegmentedCipher.segmentCount(size, SEGMENT);
+            assertEquals(SegmentedCipher.HEADER_SIZE + size + segments * SegmentedCipher.TAG_SIZE, blob.length);
+            assertArrayEquals(plain, decrypt(blob, size, 0, segments - 1), "size " + size);
+        }
+    }
+
+    @Test
+    public void testSingleSegmentCanBeDecryptedAlone() throws IOException {
+        byte[] plain = randomBytes(5 * SEGMENT + 100, 3);
+        byte[] blob = encrypt(plain);
+
+        assertArrayEquals(Arrays.copyOfRange(plain, 3 * SEGMENT, 4 * SEGMENT), decrypt(blob, plain.length, 3, 3));
+        assertArrayEquals(Arrays.copyOfRange(plain, 5 * SEGMENT, plain.length), decrypt(blob, plain.length, 5, 5));
+    }
+
+    @Test
+    public void testTamperedSegmentIsRejected() throws IOException {
+        byte[] plain = randomBytes(3 * SEGMENT, 4);
+        byte[] blob = encrypt(plain);
+        blob[(int) SegmentedCipher.segmentOffset(1, SEGMENT) + 10] ^= 1;
+
+        assertThrows(IllegalStateException.class, () -> decrypt(blob, plain.length, 1, 1));
+        assertArrayEquals(Arrays.copyOfRange(plain, 0, SEGMENT), decrypt(blob, plain.length, 0, 0));
+    }
+
+    @Test
+    public void testTruncatedBlobIsRejected() throws IOException {
+        byte[] plain = randomBytes(3 * SEGMENT, 5);
+        byte[] blob = encrypt(plain);
+
+        // Dropping the last segment makes the previous one claim to be last, which its nonce forbids
+        byte[] truncated = Arrays.copyOf(blob, (int) SegmentedCipher.segmentOffset(2, SEGMENT));
+        assertThrows(IllegalStateException.class, () -> decrypt(truncated, 2L * SEGMENT, 1, 1));
+    }
+
+    @Test
+    public void testOtherAadIsRejected() throws IOException {
+        byte[] blob = encrypt(randomBytes(100, 6));
+        SegmentedCipher.Decryptor decryptor = SegmentedCipher.decryptor(
+                Arrays.copyOf(blob, SegmentedCipher.HEADER_SIZE), KEY, "other-key".getBytes());
+        byte[] segment = Arrays.copyOfRange(blob, SegmentedCipher.HEADER_SIZE, blob.length);
+
+        assertThrows(IllegalStateException.class, () -> decryptor.decryptSegment(0, true, segment, segment.length));
+    }
+
+    private static byte[] encrypt(byte[] plain) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (SegmentedCipher.EncryptingStream stream = SegmentedCipher.encrypt(out, KEY, AAD, SEGMENT)) {
+            // Odd write sizes exercise the segment buffering
+            for (int off = 0; off < plain.length; off += 333) {
+                stream.write(plain, off, Math.min(333, plain.length - off));
+            }
+            assertEquals(plain.length, stream.size());
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] decrypt(byte[] blob, long size, long first, long last) {
+        SegmentedCipher.Decryptor decryptor = SegmentedCipher.decryptor(Arrays.copyOf(blob, SegmentedCipher.HEADER_SIZE), KEY, AAD);
+        long lastSegment = SegmentedCipher.segmentCount(size, SEGMENT) - 1;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (long i = first; i <= last; i++) {
+            int offset = (int) SegmentedCipher.segmentOffset(i, SEGMENT);
+            boolean isLast = i == lastSegment;
+            int length = (isLast ? (int) (size - i * SEGMENT) : SEGMENT) + SegmentedCipher.TAG_SIZE;
+            byte[] segment = Arrays.copyOfRange(blob, offset, offset + length);
+            out.writeBytes(decryptor.decryptSegment(i, isLast, segment, length));
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] randomBytes(int size, long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,202 @@
+package com.thisjowi.note.bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load test of the servlet (default) and reactive profiles under many slow clients.
+ *
+ * Start the service twice against the same database, once as is and once with
+ * {@code --spring.profiles.active=reactive} on another port, then run
+ * <pre>
+ * ./gradlew loadBenchmark -Pbench.targets=mvc=http://localhost:8083,reactive=http://localhost:8084 \
+ *     -Pbench.token=&lt;JWT of a user with a few hundred notes&gt;
+ * </pre>
+ *
+ * Every client is a virtual thread with its own connection and a small receive buffer that reads the
+ * note list a few hundred bytes at a time, so responses sit in the server's send path for a long time.
+ * A separate probe keeps requesting a cheap endpoint and shows how long an ordinary request waits while
+ * the slow clients hold the server. Other settings (bench.*): clients, duration-seconds,
+ * warmup-seconds, path, probe-path, read-bytes, read-delay-ms, receive-buffer.
+ */
+public class NotesLoadBenchmark {
+
+    private static final int TIMEOUT_MS = 60_000;
+
+    private final String token;
+    private final String path;
+    private final String probePath;
+    private final int clients;
+    private final int durationSeconds;
+    private final int warmupSeconds;
+    private final int readBytes;
+    private final int readDelayMs;
+    private final int receiveBuffer;
+
+    NotesLoadBenchmark() {
+        this.token = System.getProperty("bench.token", "");
+        this.path = System.getProperty("bench.path", "/api/v1/notes");
+        this.probePath = System.getProperty("bench.probe-path", "/actuator/health");
+        this.clients = Integer.getInteger("bench.clients", 2000);
+        this.durationSeconds = Integer.getInteger("bench.duration-seconds", 60);
+        this.warmupSeconds = Integer.getInteger("bench.warmup-seconds", 10);
+        this.readBytes = Integer.getInteger("bench.read-bytes", 512);
+        this.readDelayMs = Integer.getInteger("bench.read-delay-ms", 20);
+        this.receiveBuffer = Integer.getInteger("bench.receive-buffer", 4096);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, URI> targets = new LinkedHashMap<>();
+        for (String target : System.getProperty("bench.targets", "mvc=http://localhost:8083").split(",")) {
+            String[] parts = target.split("=", 2);
+            targets.put(parts[0].trim(), URI.create(parts[1].trim()));
+        }
+        NotesLoadBenchmark benchmark = new NotesLoadBenchmark();
+        List<Result> results = new ArrayList<>();
+        for (Map.Entry<String, URI> target : targets.entrySet()) {
+            System.out.printf("%s: warming up for %ds%n", target.getKey(), benchmark.warmupSeconds);
+            benchmark.run(target.getValue(), benchmark.warmupSeconds);
+            System.out.printf("%s: %d slow clients for %ds%n", target.getKey(), benchmark.clients, benchmark.durationSeconds);
+            Result result = benchmark.run(target.getValue(), benchmark.durationSeconds);
+            results.add(new Result(target.getKey(), result.requests, result.errors, result.seconds,
+                    result.firstByte, result.total, result.probe));
+        }
+
+        System.out.printf("%n%-10s %9s %7s %8s %10s %10s %10s %10s %10s %10s%n", "target", "requests", "errors", "req/s",
+                "ttfb p50", "ttfb p99", "full p50", "full p99", "probe p50", "probe p99");
+        for (Result r : results) {
+            System.out.printf("%-10s %9d %7d %8.1f %8dms %8dms %8dms %8dms %8dms %8dms%n", r.name, r.requests, r.errors,
+                    r.requests / r.seconds, percentile(r.firstByte, 50), percentile(r.firstByte, 99),
+                    percentile(r.total, 50), percentile(r.total, 99), percentile(r.probe, 50), percentile(r.probe, 99));
+        }
+    }
+
+    private Result run(URI target, int seconds) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        AtomicLong errors = new AtomicLong();
+        List<long[]> firstByte = new ArrayList<>();
+        List<long[]> total = new ArrayList<>();
+        List<Long> probe = new ArrayList<>();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < clients; i++) {
+                executor.submit(() -> {
+                    List<Long> ttfb = new ArrayList<>();
+                    List<Long> full = new ArrayList<>();
+                    while (System.nanoTime() < deadline) {
+                        long start = System.nanoTime();
+                        try {
+                            long[] timing = request(target, path, readBytes, readDelayMs, receiveBuffer);
+                            ttfb.add(timing[0] - start);
+                            full.add(timing[1] - start);
+                        } catch (IOException | RuntimeException e) {
+                            errors.incrementAndGet();
+                        }
+                    }
+                    synchronized (firstByte) {
+                        firstByte.add(ttfb.stream().mapToLong(Long::longValue).toArray());
+                        total.add(full.stream().mapToLong(Long::longValue).toArray());
+                    }
+                    return null;
+                });
+            }
+            // One ordinary client next to the slow ones
+            executor.submit(() -> {
+                while (System.nanoTime() < deadline) {
+                    long start = System.nanoTime();
+                    try {
+                        long[] timing = request(target, probePath, 8192, 0, 65536);
+                        probe.add(timing[1] - start);
+                    } catch (IOException | RuntimeException e) {
+                        probe.add(TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MS));
+                    }
+                    Thread.sleep(100);
+                }
+                return null;
+            });
+        }
+
+        long[] ttfb = merge(firstByte);
+        return new Result(null, ttfb.length, errors.get(), seconds, ttfb, merge(total),
+                probe.stream().mapToLong(Long::longValue).sorted().toArray());
+    }
+
+    /**
+     * One HTTP/1.1 GET on a fresh connection, read slowly to the end.
+     *
+     * @return nanoTime of the first response byte and of the last one
+     */
+    private long[] request(URI target, String requestPath, int chunk, int delayMs, int buffer) throws IOException {
+        int port = target.getPort() > 0 ? target.getPort() : 80;
+        try (Socket socket = new Socket()) {
+            socket.setReceiveBufferSize(buffer);
+            socket.setSoTimeout(TIMEOUT_MS);
+            socket.connect(new InetSocketAddress(target.getHost(), port), TIMEOUT_MS);
+            OutputStream out = socket.getOutputStream();
+            String request = "GET " + requestPath + " HTTP/1.1\r\n"
+                    + "Host: " + target.getHost() + ":" + port + "\r\n"
+                    + (token.isEmpty() ? "" : "Authorization: Bearer " + token + "\r\n")
+                    + "Accept: application/json\r\n"
+                    + "Connection: close\r\n\r\n";
+            out.write(request.getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+
+            InputStream in = socket.getInputStream();
+            byte[] data = new byte[chunk];
+            int n = in.read(data);
+            long first = System.nanoTime();
+            if (n < 12 || data[9] != '2') {
+                throw new IOException("Unexpected response: " + new String(data, 0, Math.max(n, 0), StandardCharsets.US_ASCII));
+            }
+            while (n != -1) {
+                if (delayMs > 0) {
+                    sleep(delayMs);
+                }
+                n = in.read(data);
+            }
+            return new long[]{first, System.nanoTime()};
+        }
+    }
+
+    private static void sleep(int millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long[] merge(List<long[]> parts) {
+        long[] all = parts.stream().flatMapToLong(Arrays::stream).toArray();
+        Arrays.sort(all);
+        return all;
+    }
+
+    // In milliseconds, from sorted nanosecond samples
+    private static long percentile(long[] sorted, int p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+        return TimeUnit.NANOSECONDS.toMillis(sorted[Math.max(0, index)]);
+    }
+
+    private record Result(String name, long requests, long errors, double seconds,
+                          long[] firstByte, long[] total, long[] probe) {
+    }
+}
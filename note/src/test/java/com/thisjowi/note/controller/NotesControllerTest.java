@@ -0,0 +1,62 @@
+package com.thisjowi.note.controller;
+
+import com.thisjowi.note.service.AuthenticationClient;
+import com.thisjowi.note.service.NoteService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class NotesControllerTest {
+
+    private static final String AUTH = "Bearer token";
+    private static final long USER_ID = 7L;
+
+    private final NoteService notesService = mock(NoteService.class);
+    private final AuthenticationClient authenticationClient = mock(AuthenticationClient.class);
+    private final NotesController controller = new NotesController();
+
+    @BeforeEach
+    public void setUp() {
+        ReflectionTestUtils.setField(controller, "notesService", notesService);
+        ReflectionTestUtils.setField(controller, "authenticationClient", authenticationClient);
+        when(authenticationClient.getUserIdFromToken(AUTH)).thenReturn(USER_ID);
+    }
+
+    @Test
+    public void testDeleteOwnNote() {
+        when(notesService.deleteNoteForUser(3L, USER_ID)).thenReturn(true);
+
+        assertEquals(204, controller.deleteNote(AUTH, 3L).getStatusCode().value());
+        // A successful delete needs no second query
+        verify(notesService, never()).isLiveNote(any());
+    }
+
+    @Test
+    public void testDeleteOfSomeoneElsesNoteIsForbidden() {
+        when(notesService.deleteNoteForUser(3L, USER_ID)).thenReturn(false);
+        when(notesService.isLiveNote(3L)).thenReturn(true);
+
+        assertEquals(403, controller.deleteNote(AUTH, 3L).getStatusCode().value());
+    }
+
+    @Test
+    public void testDeleteOfAMissingNoteIsNotFound() {
+        when(notesService.deleteNoteForUser(3L, USER_ID)).thenReturn(false);
+        when(notesService.isLiveNote(3L)).thenReturn(false);
+
+        assertEquals(404, controller.deleteNote(AUTH, 3L).getStatusCode().value());
+    }
+
+    @Test
+    public void testDeleteWithoutTokenIsUnauthorized() {
+        assertEquals(401, controller.deleteNote(null, 3L).getStatusCode().value());
+        verify(notesService, never()).deleteNoteForUser(any(), any());
+    }
+}
@@ -0,0 +1,202 @@
+package com.thisjowi.note.service;
+
+import com.thisjowi.note.Utils.EncryptionUtil;
+import com.thisjowi.note.entity.Note;
+import com.thisjowi.note.entity.NoteChanges;
+import com.thisjowi.note.entity.NoteSyncState;
+import com.thisjowi.note.repository.NoteRepository;
+import com.thisjowi.note.repository.NoteSyncStateRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class NoteServiceTest {
+
+    private static final long USER_ID = 7L;
+
+    private final NoteRepository noteRepository = mock(NoteRepository.class);
+    private final NoteContentStore contentStore = mock(NoteContentStore.class);
+    private final NoteSyncStateRepository syncStateRepository = mock(NoteSyncStateRepository.class);
+    private final CollectionVersionCache collectionVersions = mock(CollectionVersionCache.class);
+    private final AttachmentService attachmentService = mock(AttachmentService.class);
+    private final NoteRevisionService revisionService = mock(NoteRevisionService.class);
+    private final TagIndexService tagIndex = mock(TagIndexService.class);
+    private NoteService noteService;
+
+    @BeforeAll
+    public static void initEncryption() {
+        new EncryptionUtil("test-secret-key-at-least-32-characters-long", true, 512);
+    }
+
+    @BeforeEach
+    public void setUp() {
+        when(contentStore.read(any(Note.class))).thenAnswer(invocation -> "content of " + invocation.<Note>getArgument(0).getId());
+        noteService = new NoteService(noteRepository, contentStore, syncStateRepository, collectionVersions,
+                attachmentService, revisionService, tagIndex, new SimpleMeterRegistry());
+    }
+
+    @Test
+    public void testFullSyncIsPagedById() {
+        lastSeq(10L);
+        when(noteRepository.findPageForExport(USER_ID, 0L, PageRequest.of(0, 2))).thenReturn(List.of(note(1L, 4L), note(2L, null)));
+
+        NoteChanges changes = noteService.getChangesSince(USER_ID, 0, null, 2);
+
+        assertEquals(10L, changes.getSeq());
+        assertTrue(changes.isHasMore());
+        assertEquals(2L, changes.getAfterId());
+        assertEquals(List.of("title 1", "title 2"), changes.getNotes().stream().map(Note::getTitle).toList());
+        assertEquals("content of 1", changes.getNotes().get(0).getContent());
+        assertEquals(List.of(), changes.getDeleted());
+        verify(noteRepository, never()).findByUserIdAndDeletedFalse(any());
+    }
+
+    @Test
+    public void testResumedFullSyncKeepsTheFirstCursor() {
+        // Two notes changed while the client was paging
+        lastSeq(12L);
+        when(noteRepository.findPageForExport(USER_ID, 2L, PageRequest.of(0, 2))).thenReturn(List.of(note(3L, 11L)));
+
+        NoteChanges changes = noteService.getChangesSince(USER_ID, 10, 2L, 2);
+
+        assertEquals(10L, changes.getSeq());
+        assertNull(changes.getAfterId());
+        // Out of ids, but the changes after 10 still have to follow by seq
+        assertTrue(changes.isHasMore());
+        assertEquals(List.of(3L), changes.getNotes().stream().map(Note::getId).toList());
+    }
+
+    @Test
+    public void testFullSyncEndsWhenNothingChangedMeanwhile() {
+        lastSeq(10L);
+        when(noteRepository.findPageForExport(USER_ID, 2L, PageRequest.of(0, 2))).thenReturn(List.of());
+
+        NoteChanges changes = noteService.getChangesSince(USER_ID, 10, 2L, 2);
+
+        assertEquals(10L, changes.getSeq());
+        assertFalse(changes.isHasMore());
+        assertNull(changes.getAfterId());
+        assertTrue(changes.getNotes().isEmpty());
+    }
+
+    @Test
+    public void testFullSyncOfAUserWithoutSequences() {
+        when(syncStateRepository.findById(USER_ID)).thenReturn(Optional.empty());
+        when(noteRepository.findPageForExport(USER_ID, 0L, PageRequest.of(0, 500))).thenReturn(List.of(note(1L, null)));
+
+        NoteChanges changes = noteService.getChangesSince(USER_ID, 0, null, 500);
+
+        assertEquals(0L, changes.getSeq());
+        assertFalse(changes.isHasMore());
+        assertNull(changes.getAfterId());
+        assertEquals(1, changes.getNotes().size());
+    }
+
+    @Test
+    public void testIncrementalPageReportsTombstones() {
+        lastSeq(20L);
+        Note deleted = note(5L, 12L);
+        deleted.setDeleted(true);
+        when(noteRepository.findByUserIdAndSeqGreaterThanOrderBySeqAsc(USER_ID, 10L, PageRequest.of(0, 2)))
+                .thenReturn(List.of(note(4L, 11L), deleted));
+
+        NoteChanges changes = noteService.getChangesSince(USER_ID, 10, null, 2);
+
+        // A full page resumes after its last change, not at the user's latest sequence
+        assertEquals(12L, changes.getSeq());
+        assertTrue(changes.isHasMore());
+        assertNull(changes.getAfterId());
+        assertEquals(List.of(4L), changes.getNotes().stream().map(Note::getId).toList());
+        assertEquals(List.of(5L), changes.getDeleted());
+        verify(contentStore, never()).read(deleted);
+    }
+
+    @Test
+    public void testLastIncrementalPageMovesToTheLatestSequence() {
+        lastSeq(20L);
+        when(noteRepository.findByUserIdAndSeqGreaterThanOrderBySeqAsc(USER_ID, 10L, PageRequest.of(0, 2)))
+                .thenReturn(List.of(note(4L, 11L)));
+
+        NoteChanges changes = noteService.getChangesSince(USER_ID, 10, null, 2);
+
+        assertEquals(20L, changes.getSeq());
+        assertFalse(changes.isHasMore());
+    }
+
+    @Test
+    public void testDeleteOfAnOwnedNoteCleansUp() {
+        when(noteRepository.softDeleteOwned(3L, USER_ID)).thenReturn(1);
+
+        assertTrue(noteService.deleteNoteForUser(3L, USER_ID));
+
+        verify(attachmentService).deleteForNote(3L);
+        verify(revisionService).deleteForNote(3L);
+        verify(tagIndex).removeNote(USER_ID, 3L);
+        verify(collectionVersions).bump(USER_ID);
+    }
+
+    @Test
+    public void testDeleteOfSomeoneElsesNoteChangesNothing() {
+        when(noteRepository.softDeleteOwned(3L, USER_ID)).thenReturn(0);
+
+        assertFalse(noteService.deleteNoteForUser(3L, USER_ID));
+
+        verify(attachmentService, never()).deleteForNote(any());
+        verify(revisionService, never()).deleteForNote(any());
+        verify(tagIndex, never()).removeNote(any(), any());
+        verify(collectionVersions, never()).bump(any());
+    }
+
+    @Test
+    public void testUpdateOnlyFindsTheUsersOwnNote() {
+        when(noteRepository.findByTitleIgnoreCaseAndUserIdAndDeletedFalse("shared", USER_ID)).thenReturn(Optional.empty());
+        Note details = new Note();
+        details.setTitle("renamed");
+
+        assertEquals(Optional.empty(), noteService.updateNoteByTitleAndUserId("shared", details, USER_ID));
+
+        verify(noteRepository, never()).save(any());
+        verify(syncStateRepository, never()).nextSeq(any());
+    }
+
+    @Test
+    public void testUpdateOfAnOwnedNoteTakesTheNextSequence() {
+        Note existing = note(3L, 4L);
+        when(noteRepository.findByTitleIgnoreCaseAndUserIdAndDeletedFalse("title 3", USER_ID)).thenReturn(Optional.of(existing));
+        when(noteRepository.save(existing)).thenReturn(existing);
+        when(syncStateRepository.nextSeq(USER_ID)).thenReturn(5L);
+        Note details = new Note();
+        details.setTitle("renamed");
+
+        Note updated = noteService.updateNoteByTitleAndUserId("title 3", details, USER_ID).orElseThrow();
+
+        assertEquals("renamed", updated.getTitle());
+        assertEquals(5L, updated.getSeq());
+        assertEquals(USER_ID, existing.getUserId());
+    }
+
+    private void lastSeq(long seq) {
+        when(syncStateRepository.findById(USER_ID)).thenReturn(Optional.of(new NoteSyncState(USER_ID, seq)));
+    }
+
+    private static Note note(Long id, Long seq) {
+        Note note = new Note();
+        note.setId(id);
+        note.setUserId(USER_ID);
+        note.setSeq(seq);
+        note.setTitle(EncryptionUtil.encrypt("title " + id));
+        return note;
+    }
+}
@@ -0,0 +1,261 @@
+package com.thisjowi.note.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.thisjowi.note.Utils.EncryptionUtil;
+import com.thisjowi.note.entity.Note;
+import com.thisjowi.note.repository.NoteRepository;
+import com.thisjowi.note.repository.NoteSyncStateRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class NoteTransferServiceTest {
+
+    private static final long USER_ID = 7L;
+
+    private final NoteService noteService = mock(NoteService.class);
+    private final NoteContentStore contentStore = mock(NoteContentStore.class);
+    private final NoteRepository noteRepository = mock(NoteRepository.class);
+    private final NoteSyncStateRepository syncStateRepository = mock(NoteSyncStateRepository.class);
+    private final CollectionVersionCache collectionVersions = mock(CollectionVersionCache.class);
+    private final TagIndexService tagIndex = mock(TagIndexService.class);
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    // Committed rows, with the columns in INSERT_SQL order
+    private final List<Object[]> inserted = new ArrayList<>();
+    private final AtomicLong ids = new AtomicLong(100);
+    private final AtomicLong seqs = new AtomicLong();
+    private NoteTransferService transferService;
+
+    @BeforeAll
+    public static void initEncryption() {
+        new EncryptionUtil("test-secret-key-at-least-32-characters-long", true, 512);
+    }
+
+    @BeforeEach
+    public void setUp() {
+        when(syncStateRepository.allocateSeqs(eq(USER_ID), anyLong()))
+                .thenAnswer(invocation -> seqs.addAndGet(invocation.<Long>getArgument(1)));
+        doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        // Runs the statement setter against a recording statement; a note titled "bad" fails the whole batch
+        when(jdbcTemplate.batchUpdate(any(PreparedStatementCreator.class), any(BatchPreparedStatementSetter.class), any(KeyHolder.class)))
+                .thenAnswer(invocation -> {
+                    BatchPreparedStatementSetter setter = invocation.getArgument(1);
+                    KeyHolder keys = invocation.getArgument(2);
+                    List<Object[]> rows = new ArrayList<>();
+                    for (int i = 0; i < setter.getBatchSize(); i++) {
+                        Object[] row = new Object[8];
+                        setter.setValues(recording(row), i);
+                        rows.add(row);
+                    }
+                    if (rows.stream().anyMatch(row -> "bad".equals(EncryptionUtil.decrypt((String) row[0])))) {
+                        throw new DataIntegrityViolationException("value too long");
+                    }
+                    for (Object[] row : rows) {
+                        keys.getKeyList().add(Map.of("id", ids.incrementAndGet()));
+                    }
+                    inserted.addAll(rows);
+                    return new int[rows.size()];
+                });
+
+        transferService = new NoteTransferService(noteService, contentStore, noteRepository, syncStateRepository,
+                collectionVersions, tagIndex, jdbcTemplate, transactionTemplate, objectMapper, 2, 2);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        transferService.shutdown();
+    }
+
+    @Test
+    public void testLinesAreInsertedInBatches() throws IOException {
+        List<JsonNode> report = importLines(
+                "{\"title\":\"one\",\"content\":\"first\",\"createdAt\":\"2024-01-31T10:15:30\"}",
+                "",
+                "{\"title\":\"two\",\"content\":\"second\"}",
+                "{\"title\":\"three\"}");
+
+        assertEquals(List.of("one", "two", "three"), inserted.stream().map(row -> EncryptionUtil.decrypt((String) row[0])).toList());
+        assertEquals("first", EncryptionUtil.decryptContent((byte[]) inserted.get(0)[1]));
+        assertEquals("", EncryptionUtil.decryptContent((byte[]) inserted.get(2)[1]));
+        assertEquals(java.sql.Timestamp.valueOf(LocalDateTime.of(2024, 1, 31, 10, 15, 30)), inserted.get(0)[4]);
+        // Each batch takes a block of sequence numbers
+        assertEquals(List.of(1L, 2L, 3L), inserted.stream().map(row -> (Long) row[7]).toList());
+        verify(collectionVersions, times(2)).bump(USER_ID);
+        verify(tagIndex, never()).addNotes(anyLong(), anyList());
+        verify(noteService, never()).saveNote(any());
+        assertSummary(report, 4, 3, 0);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testTaggedLinesAreBatchedToo() throws IOException {
+        importLines(
+                "{\"title\":\"one\",\"content\":\"x\",\"tags\":[\" Work \",\"work\",\"home\"],\"folder\":\"Projects\"}",
+                "{\"title\":\"two\",\"content\":\"y\"}");
+
+        assertEquals(2, inserted.size());
+        assertEquals(List.of("Work", "home"), TagIndexService.decryptTags((String) inserted.get(0)[2]));
+        assertEquals("Projects", EncryptionUtil.decrypt((String) inserted.get(0)[3]));
+        assertNull(inserted.get(1)[2]);
+        assertNull(inserted.get(1)[3]);
+        ArgumentCaptor<List<TagIndexService.TaggedNote>> tagged = ArgumentCaptor.forClass(List.class);
+        verify(tagIndex).addNotes(eq(USER_ID), tagged.capture());
+        assertEquals(List.of(new TagIndexService.TaggedNote(101L, List.of("Work", "home"), "Projects")), tagged.getValue());
+        verify(noteService, never()).saveNote(any());
+    }
+
+    @Test
+    public void testFailedBatchIsRetriedLineByLine() throws IOException {
+        List<JsonNode> report = importLines(
+                "{\"title\":\"good\"}",
+                "{\"title\":\"bad\"}",
+                "{\"title\":\"next\"}");
+
+        assertEquals(List.of("good", "next"), inserted.stream().map(row -> EncryptionUtil.decrypt((String) row[0])).toList());
+        List<JsonNode> errors = errors(report);
+        assertEquals(1, errors.size());
+        assertEquals(2, errors.get(0).get("line").asLong());
+        assertEquals("could not store note", errors.get(0).get("error").asText());
+        assertSummary(report, 3, 2, 1);
+    }
+
+    @Test
+    public void testInvalidLinesAreReportedWithTheirNumber() throws IOException {
+        List<JsonNode> report = importLines(
+                "not json",
+                "{\"content\":\"no title\"}",
+                "{\"title\":\"bad folder\",\"folder\":\"two\\nlines\"}",
+                "{\"title\":\"ok\"}");
+
+        List<JsonNode> errors = errors(report);
+        assertEquals(List.of(1L, 2L, 3L), errors.stream().map(line -> line.get("line").asLong()).toList());
+        assertTrue(errors.get(0).get("error").asText().startsWith("invalid JSON"));
+        assertEquals("title is required", errors.get(1).get("error").asText());
+        assertEquals(1, inserted.size());
+        assertSummary(report, 4, 1, 3);
+    }
+
+    @Test
+    public void testChunkedNotesGoThroughNoteService() throws IOException {
+        when(contentStore.isChunked(anyInt())).thenAnswer(invocation -> invocation.<Integer>getArgument(0) > 10);
+
+        List<JsonNode> report = importLines("{\"title\":\"big\",\"content\":\"" + "x".repeat(20) + "\",\"tags\":[\"a\"]}");
+
+        ArgumentCaptor<Note> saved = ArgumentCaptor.forClass(Note.class);
+        verify(noteService).saveNote(saved.capture());
+        assertEquals(USER_ID, saved.getValue().getUserId());
+        assertEquals("big", saved.getValue().getTitle());
+        assertEquals(List.of("a"), saved.getValue().getTags());
+        assertTrue(inserted.isEmpty());
+        assertSummary(report, 1, 1, 0);
+    }
+
+    @Test
+    public void testExportPagesThroughTheNotes() throws IOException {
+        when(noteRepository.findPageForExport(USER_ID, 0L, PageRequest.of(0, 2))).thenReturn(List.of(note(1L, null, null), note(2L, List.of("a"), "f")));
+        when(noteRepository.findPageForExport(USER_ID, 2L, PageRequest.of(0, 2))).thenReturn(List.of(note(3L, null, null)));
+        when(contentStore.read(any(Note.class))).thenAnswer(invocation -> "content " + invocation.<Note>getArgument(0).getId());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        transferService.exportNotes(USER_ID, out);
+
+        List<JsonNode> lines = readLines(out);
+        assertEquals(List.of(1L, 2L, 3L), lines.stream().map(line -> line.get("id").asLong()).toList());
+        assertEquals("title 2", lines.get(1).get("title").asText());
+        assertEquals("content 2", lines.get(1).get("content").asText());
+        assertEquals("a", lines.get(1).get("tags").get(0).asText());
+        assertEquals("f", lines.get(1).get("folder").asText());
+        assertTrue(lines.get(0).get("folder").isNull());
+    }
+
+    private List<JsonNode> importLines(String... lines) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        transferService.importNotes(USER_ID, new ByteArrayInputStream(String.join("\n", lines).getBytes(StandardCharsets.UTF_8)), out);
+        return readLines(out);
+    }
+
+    private List<JsonNode> readLines(ByteArrayOutputStream out) throws IOException {
+        List<JsonNode> lines = new ArrayList<>();
+        for (String line : out.toString(StandardCharsets.UTF_8).split("\n")) {
+            lines.add(objectMapper.readTree(line));
+        }
+        return lines;
+    }
+
+    private static List<JsonNode> errors(List<JsonNode> report) {
+        return report.stream().filter(line -> "error".equals(line.get("type").asText())).toList();
+    }
+
+    private static void assertSummary(List<JsonNode> report, long lines, long imported, long failed) {
+        JsonNode summary = report.get(report.size() - 1);
+        assertEquals("summary", summary.get("type").asText());
+        assertEquals(lines, summary.get("lines").asLong());
+        assertEquals(imported, summary.get("imported").asLong());
+        assertEquals(failed, summary.get("failed").asLong());
+    }
+
+    private static Note note(Long id, List<String> tags, String folder) {
+        Note note = new Note();
+        note.setId(id);
+        note.setUserId(USER_ID);
+        note.setTitle(EncryptionUtil.encrypt("title " + id));
+        note.setTagsEnc(TagIndexService.encryptTags(tags));
+        note.setFolderEnc(folder == null ? null : EncryptionUtil.encrypt(folder));
+        return note;
+    }
+
+    // Statement that only records setObject calls into the given row
+    private static PreparedStatement recording(Object[] row) {
+        return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(), new Class<?>[]{PreparedStatement.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("setObject")) {
+                        row[(Integer) args[0] - 1] = args[1];
+                        return null;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
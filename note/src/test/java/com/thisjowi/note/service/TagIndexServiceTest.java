@@ -0,0 +1,279 @@
+package com.thisjowi.note.service;
+
+import com.thisjowi.note.Utils.EncryptionUtil;
+import com.thisjowi.note.entity.NoteTagIndex;
+import com.thisjowi.note.repository.NoteTagIndexRepository;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TagIndexServiceTest {
+
+    private static final long USER_ID = 7L;
+
+    private final NoteTagIndexRepository repository = mock(NoteTagIndexRepository.class);
+    // The table, keyed by tag key, as the mocked repository sees it
+    private final Map<String, NoteTagIndex> table = new HashMap<>();
+    private final AtomicLong ids = new AtomicLong();
+    private TagIndexService tagIndex;
+
+    @BeforeAll
+    public static void initEncryption() {
+        new EncryptionUtil("test-secret-key-at-least-32-characters-long", true, 512);
+    }
+
+    @BeforeEach
+    public void setUp() {
+        when(repository.insertIfAbsent(eq(USER_ID), anyString(), anyBoolean(), anyString(), any(byte[].class)))
+                .thenAnswer(invocation -> {
+                    String key = invocation.getArgument(1);
+                    if (table.containsKey(key)) {
+                        return 0;
+                    }
+                    NoteTagIndex row = new NoteTagIndex();
+                    row.setId(ids.incrementAndGet());
+                    row.setUserId(USER_ID);
+                    row.setTagKey(key);
+                    row.setFolder(invocation.getArgument(2));
+                    row.setName(invocation.getArgument(3));
+                    row.setBitmap(invocation.getArgument(4));
+                    table.put(key, row);
+                    return 1;
+                });
+        when(repository.findForUpdate(eq(USER_ID), anyCollection())).thenAnswer(invocation -> {
+            Collection<String> keys = invocation.getArgument(1);
+            return table.values().stream().filter(row -> keys.contains(row.getTagKey())).toList();
+        });
+        when(repository.findAllForUpdate(USER_ID)).thenAnswer(invocation -> new ArrayList<>(table.values()));
+        when(repository.findByUserId(USER_ID)).thenAnswer(invocation -> new ArrayList<>(table.values()));
+        when(repository.save(any(NoteTagIndex.class))).thenAnswer(invocation -> {
+            NoteTagIndex row = invocation.getArgument(0);
+            table.put(row.getTagKey(), row);
+            return row;
+        });
+        doAnswer(invocation -> table.remove(invocation.<NoteTagIndex>getArgument(0).getTagKey()))
+                .when(repository).delete(any(NoteTagIndex.class));
+
+        tagIndex = new TagIndexService(repository, 100);
+    }
+
+    @Test
+    public void testNormalizeTagsTrimsAndDropsDuplicates() {
+        assertEquals(List.of("Work", "home"), TagIndexService.normalizeTags(List.of(" Work ", "", "  ", "work", "home", "WORK")));
+        assertEquals(List.of(), TagIndexService.normalizeTags(null));
+        assertEquals(List.of(), TagIndexService.normalizeTags(Collections.singletonList(null)));
+    }
+
+    @Test
+    public void testNormalizeEnforcesTheLimits() {
+        List<String> tooMany = new ArrayList<>();
+        for (int i = 0; i <= TagIndexService.MAX_TAGS; i++) {
+            tooMany.add("tag" + i);
+        }
+        assertThrows(IllegalArgumentException.class, () -> TagIndexService.normalizeTags(tooMany));
+        assertThrows(IllegalArgumentException.class, () -> TagIndexService.normalizeName("x".repeat(TagIndexService.MAX_NAME_LENGTH + 1)));
+        assertThrows(IllegalArgumentException.class, () -> TagIndexService.normalizeName("two\nlines"));
+        assertEquals("x".repeat(TagIndexService.MAX_NAME_LENGTH), TagIndexService.normalizeName(" " + "x".repeat(TagIndexService.MAX_NAME_LENGTH) + " "));
+        assertNull(TagIndexService.normalizeName(" "));
+    }
+
+    @Test
+    public void testTagsRoundTripEncrypted() {
+        String encrypted = TagIndexService.encryptTags(List.of("a", "b c"));
+
+        assertFalse(encrypted.contains("b c"));
+        assertEquals(List.of("a", "b c"), TagIndexService.decryptTags(encrypted));
+        assertNull(TagIndexService.encryptTags(List.of()));
+        assertEquals(List.of(), TagIndexService.decryptTags(null));
+    }
+
+    @Test
+    public void testNewTagsAreInsertedBeforeTheyAreLocked() {
+        tagIndex.update(USER_ID, 1L, List.of(), null, List.of("Work"), "Projects");
+
+        InOrder order = inOrder(repository);
+        order.verify(repository, times(2)).insertIfAbsent(eq(USER_ID), anyString(), anyBoolean(), anyString(), any(byte[].class));
+        order.verify(repository).findForUpdate(eq(USER_ID), anyCollection());
+        assertEquals(notes(1L), bitmap("tag:work"));
+        assertEquals(notes(1L), bitmap("folder:projects"));
+        assertTrue(table.get(key("folder:projects")).isFolder());
+        assertEquals("Projects", EncryptionUtil.decrypt(table.get(key("folder:projects")).getName()));
+    }
+
+    @Test
+    public void testExistingTagKeepsItsNotes() {
+        tagIndex.update(USER_ID, 1L, List.of(), null, List.of("work"), null);
+        tagIndex.update(USER_ID, 2L, List.of(), null, List.of("Work"), null);
+
+        assertEquals(1, table.size());
+        assertEquals(notes(1L, 2L), bitmap("tag:work"));
+        // The second insert hit the existing row and changed nothing
+        assertEquals("work", EncryptionUtil.decrypt(table.get(key("tag:work")).getName()));
+    }
+
+    @Test
+    public void testRowDeletedBeforeTheLockIsInsertedAgain() {
+        tagIndex.update(USER_ID, 1L, List.of(), null, List.of("work"), null);
+        NoteTagIndex existing = table.get(key("tag:work"));
+        // Another note's update empties and deletes the row right after this insert found it
+        doAnswer(invocation -> {
+            table.remove(existing.getTagKey());
+            return List.of();
+        }).doAnswer(invocation -> {
+            Collection<String> keys = invocation.getArgument(1);
+            return table.values().stream().filter(row -> keys.contains(row.getTagKey())).toList();
+        }).when(repository).findForUpdate(eq(USER_ID), anyCollection());
+
+        tagIndex.update(USER_ID, 2L, List.of(), null, List.of("work"), null);
+
+        assertEquals(notes(2L), bitmap("tag:work"));
+    }
+
+    @Test
+    public void testMovingANoteUpdatesOnlyTheChangedTags() {
+        tagIndex.update(USER_ID, 1L, List.of(), null, List.of("a", "b"), null);
+        tagIndex.update(USER_ID, 2L, List.of(), null, List.of("b"), null);
+
+        tagIndex.update(USER_ID, 1L, List.of("a", "b"), null, List.of("b", "c"), null);
+
+        // "a" lost its last note and is gone; "b" was untouched
+        assertFalse(table.containsKey(key("tag:a")));
+        assertEquals(notes(1L, 2L), bitmap("tag:b"));
+        assertEquals(notes(1L), bitmap("tag:c"));
+    }
+
+    @Test
+    public void testUnchangedTagsTouchNothing() {
+        tagIndex.update(USER_ID, 1L, List.of("a"), "f", List.of(" A "), "F");
+
+        verify(repository, never()).insertIfAbsent(anyLong(), anyString(), anyBoolean(), anyString(), any(byte[].class));
+        verify(repository, never()).findForUpdate(anyLong(), anyCollection());
+    }
+
+    @Test
+    public void testAddNotesWritesEachRowOnce() {
+        tagIndex.update(USER_ID, 1L, List.of(), null, List.of("a"), null);
+
+        tagIndex.addNotes(USER_ID, List.of(
+                new TagIndexService.TaggedNote(2L, List.of("a", "b"), null),
+                new TagIndexService.TaggedNote(3L, List.of("B"), "f"),
+                new TagIndexService.TaggedNote(4L, List.of(), null)));
+
+        assertEquals(notes(1L, 2L), bitmap("tag:a"));
+        assertEquals(notes(2L, 3L), bitmap("tag:b"));
+        assertEquals(notes(3L), bitmap("folder:f"));
+        // One save for the first update, then one per touched row
+        verify(repository, times(4)).save(any(NoteTagIndex.class));
+    }
+
+    @Test
+    public void testRemoveNoteDropsItEverywhere() {
+        tagIndex.update(USER_ID, 1L, List.of(), null, List.of("a", "b"), "f");
+        tagIndex.update(USER_ID, 2L, List.of(), null, List.of("b"), null);
+
+        tagIndex.removeNote(USER_ID, 1L);
+
+        assertEquals(1, table.size());
+        assertEquals(notes(2L), bitmap("tag:b"));
+    }
+
+    @Test
+    public void testFilterCombinesAllAnyAndFolder() {
+        tagIndex.update(USER_ID, 1L, List.of(), null, List.of("a", "b"), "f");
+        tagIndex.update(USER_ID, 2L, List.of(), null, List.of("a", "c"), "f");
+        tagIndex.update(USER_ID, 3L, List.of(), null, List.of("a", "b", "c"), null);
+
+        assertEquals(notes(1L, 2L, 3L), tagIndex.filter(USER_ID, List.of("A"), null, null));
+        assertEquals(notes(1L, 3L), tagIndex.filter(USER_ID, List.of("a", "b"), null, null));
+        assertEquals(notes(1L, 2L), tagIndex.filter(USER_ID, List.of("a"), null, " F "));
+        assertEquals(notes(2L, 3L), tagIndex.filter(USER_ID, null, List.of("c", "missing"), null));
+        assertEquals(notes(2L), tagIndex.filter(USER_ID, null, List.of("c"), "f"));
+        assertEquals(notes(), tagIndex.filter(USER_ID, List.of("a", "missing"), null, null));
+        assertEquals(notes(), tagIndex.filter(USER_ID, null, null, "missing"));
+    }
+
+    @Test
+    public void testFilterDoesNotChangeTheCachedIndex() {
+        tagIndex.update(USER_ID, 1L, List.of(), null, List.of("a", "b"), null);
+        tagIndex.update(USER_ID, 2L, List.of(), null, List.of("a"), null);
+
+        tagIndex.filter(USER_ID, List.of("a", "b"), null, null).addLong(9L);
+
+        assertEquals(notes(1L, 2L), tagIndex.filter(USER_ID, List.of("a"), null, null));
+    }
+
+    @Test
+    public void testCountsListTagsBeforeFolders() {
+        tagIndex.update(USER_ID, 1L, List.of(), null, List.of("beta", "Alpha"), "Inbox");
+        tagIndex.update(USER_ID, 2L, List.of(), null, List.of("beta"), "Archive");
+
+        assertEquals(List.of(
+                new TagIndexService.TagCount("Alpha", false, 1),
+                new TagIndexService.TagCount("beta", false, 2),
+                new TagIndexService.TagCount("Archive", true, 1),
+                new TagIndexService.TagCount("Inbox", true, 1)), tagIndex.counts(USER_ID));
+    }
+
+    @Test
+    public void testIndexIsCachedUntilTheNextWrite() {
+        tagIndex.update(USER_ID, 1L, List.of(), null, List.of("a"), null);
+        tagIndex.counts(USER_ID);
+        tagIndex.filter(USER_ID, List.of("a"), null, null);
+        verify(repository, times(1)).findByUserId(USER_ID);
+
+        tagIndex.update(USER_ID, 2L, List.of(), null, List.of("a"), null);
+
+        assertEquals(notes(1L, 2L), tagIndex.filter(USER_ID, List.of("a"), null, null));
+        verify(repository, times(2)).findByUserId(USER_ID);
+    }
+
+    private static String key(String prefixedName) {
+        return EncryptionUtil.tagKey(prefixedName);
+    }
+
+    private Roaring64NavigableMap bitmap(String prefixedName) {
+        Roaring64NavigableMap notes = new Roaring64NavigableMap();
+        try {
+            notes.deserialize(new DataInputStream(new ByteArrayInputStream(table.get(key(prefixedName)).getBitmap())));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return notes;
+    }
+
+    private static Roaring64NavigableMap notes(long... ids) {
+        Roaring64NavigableMap notes = new Roaring64NavigableMap();
+        for (long id : ids) {
+            notes.addLong(id);
+        }
+        return notes;
+    }
+}
@@ -0,0 +1,133 @@
+package com.thisjowi.note.service;
+
+import com.thisjowi.note.entity.UserPurge;
+import com.thisjowi.note.repository.NoteChunkRepository;
+import com.thisjowi.note.repository.NoteRepository;
+import com.thisjowi.note.repository.NoteSyncStateRepository;
+import com.thisjowi.note.repository.UserPurgeRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class UserPurgeServiceTest {
+
+    private static final long USER_ID = 7L;
+
+    private final UserPurgeRepository purgeRepository = mock(UserPurgeRepository.class);
+    private final NoteRepository noteRepository = mock(NoteRepository.class);
+    private final NoteChunkRepository chunkRepository = mock(NoteChunkRepository.class);
+    private final NoteSyncStateRepository syncStateRepository = mock(NoteSyncStateRepository.class);
+    private final AttachmentService attachmentService = mock(AttachmentService.class);
+    private final NoteRevisionService revisionService = mock(NoteRevisionService.class);
+    private final TagIndexService tagIndex = mock(TagIndexService.class);
+    private final TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+    private UserPurgeService purgeService;
+
+    @BeforeEach
+    public void setUp() {
+        doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        doAnswer(invocation -> invocation.<TransactionCallback<Object>>getArgument(0).doInTransaction(null))
+                .when(transactionTemplate).execute(any());
+        purgeService = new UserPurgeService(purgeRepository, noteRepository, chunkRepository, syncStateRepository,
+                attachmentService, revisionService, tagIndex, transactionTemplate, new SimpleMeterRegistry(), true, 2);
+    }
+
+    @Test
+    public void testRedeliveredRequestIsRecordedOnce() {
+        when(purgeRepository.existsById(USER_ID)).thenReturn(false, true);
+
+        purgeService.requestPurge(USER_ID);
+        purgeService.requestPurge(USER_ID);
+
+        verify(purgeRepository, times(1)).save(any(UserPurge.class));
+    }
+
+    @Test
+    public void testInvalidUserIsIgnored() {
+        purgeService.requestPurge(null);
+        purgeService.requestPurge(0L);
+
+        verify(purgeRepository, never()).save(any(UserPurge.class));
+    }
+
+    @Test
+    public void testRestartedPurgeContinuesAfterTheCheckpoint() {
+        // An earlier run got as far as id 100 and removed 5 notes
+        UserPurge purge = pending(100L, 5L);
+        when(noteRepository.findIdsForPurge(USER_ID, 100L, PageRequest.of(0, 2))).thenReturn(List.of(101L, 105L));
+        when(noteRepository.deleteRangeForPurge(USER_ID, 100L, 105L)).thenReturn(2);
+        when(noteRepository.findIdsForPurge(USER_ID, 105L, PageRequest.of(0, 2))).thenReturn(List.of(110L));
+        when(noteRepository.deleteRangeForPurge(USER_ID, 105L, 110L)).thenReturn(1);
+        when(noteRepository.findIdsForPurge(USER_ID, 110L, PageRequest.of(0, 2))).thenReturn(List.of());
+
+        purgeService.run();
+
+        verify(noteRepository, never()).findIdsForPurge(USER_ID, 0L, PageRequest.of(0, 2));
+        verify(chunkRepository).deleteRangeForPurge(USER_ID, 100L, 105L);
+        verify(attachmentService).deleteForPurge(USER_ID, 100L, 105L);
+        verify(revisionService).deleteForPurge(USER_ID, 100L, 105L);
+        verify(chunkRepository).deleteRangeForPurge(USER_ID, 105L, 110L);
+        assertEquals(110L, purge.getLastId());
+        assertEquals(8L, purge.getPurged());
+        assertNotNull(purge.getCompletedAt());
+    }
+
+    @Test
+    public void testCompletionDropsTheSyncStateAndTagIndex() {
+        UserPurge purge = pending(0L, 0L);
+        when(noteRepository.findIdsForPurge(USER_ID, 0L, PageRequest.of(0, 2))).thenReturn(List.of());
+
+        purgeService.run();
+
+        assertNotNull(purge.getCompletedAt());
+        verify(syncStateRepository).deleteById(USER_ID);
+        verify(tagIndex).deleteUser(USER_ID);
+        verify(noteRepository, never()).deleteRangeForPurge(anyLong(), anyLong(), anyLong());
+    }
+
+    @Test
+    public void testPurgeCompletedByAnotherInstanceIsLeftAlone() {
+        // Listed as pending, but finished by the time the row lock is taken
+        UserPurge listed = new UserPurge(USER_ID, LocalDateTime.now());
+        UserPurge locked = new UserPurge(USER_ID, listed.getRequestedAt());
+        locked.setCompletedAt(LocalDateTime.now());
+        when(purgeRepository.findByCompletedAtIsNullOrderByRequestedAtAsc(PageRequest.of(0, 10))).thenReturn(List.of(listed));
+        when(purgeRepository.findForUpdate(USER_ID)).thenReturn(Optional.of(locked));
+
+        purgeService.run();
+
+        verify(noteRepository, never()).findIdsForPurge(any(), any(), any());
+        verify(tagIndex, never()).deleteUser(any());
+    }
+
+    private UserPurge pending(long lastId, long purged) {
+        UserPurge purge = new UserPurge(USER_ID, LocalDateTime.now());
+        purge.setLastId(lastId);
+        purge.setPurged(purged);
+        when(purgeRepository.findByCompletedAtIsNullOrderByRequestedAtAsc(PageRequest.of(0, 10))).thenReturn(List.of(purge));
+        when(purgeRepository.findForUpdate(USER_ID)).thenReturn(Optional.of(purge));
+        return purge;
+    }
+}
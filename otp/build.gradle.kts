@@ -2,6 +2,7 @@ plugins {
 	java
 	id("org.springframework.boot") version "3.5.9"
 	id("io.spring.dependency-management") version "1.1.7"
+	id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "com.thisjowi"
@@ -22,6 +23,7 @@ extra["springCloudVersion"] = "2024.0.0"
 
 dependencies {
     implementation("org.springframework.boot:spring-boot-starter-web")
+    implementation("org.springframework.boot:spring-boot-starter-actuator")
     implementation("org.springframework.boot:spring-boot-starter-data-jpa")
     implementation("org.springframework.boot:spring-boot-starter-security")
     implementation("org.springframework.kafka:spring-kafka")
@@ -33,8 +35,11 @@ dependencies {
 	implementation("org.flywaydb:flyway-database-postgresql")
     implementation("com.google.zxing:core:3.5.3")
     implementation("com.google.zxing:javase:3.5.3")
+    implementation("io.jsonwebtoken:jjwt-api:0.12.6")
     
     runtimeOnly("org.postgresql:postgresql")
+    runtimeOnly("io.jsonwebtoken:jjwt-impl:0.12.6")
+    runtimeOnly("io.jsonwebtoken:jjwt-jackson:0.12.6")
     
     compileOnly("org.projectlombok:lombok")
     annotationProcessor("org.projectlombok:lombok")
@@ -51,6 +56,15 @@ dependencyManagement {
 	}
 }
 
+// ./gradlew jmh: codes validated per second per core, see OtpValidationBenchmark
+jmh {
+	benchmarkMode = listOf("thrpt")
+	timeUnit = "s"
+	warmupIterations = 3
+	iterations = 5
+	fork = 1
+}
+
 tasks.withType<Test> {
 	useJUnitPlatform()
 }
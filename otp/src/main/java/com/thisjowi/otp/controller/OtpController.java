@@ -1,11 +1,18 @@
 package com.thisjowi.otp.controller;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import com.thisjowi.otp.dto.OtpCode;
 import com.thisjowi.otp.entity.otp;
+import com.thisjowi.otp.service.CollectionVersionCache;
+import com.thisjowi.otp.service.OtpCodeService;
 import com.thisjowi.otp.service.OtpService;
 import com.thisjowi.otp.service.QrService;
+import com.thisjowi.otp.util.JwtUtil;
 
 import javax.crypto.Cipher;
 import javax.crypto.spec.IvParameterSpec;
@@ -24,6 +31,16 @@ public class OtpController {
 
     @Autowired
     private QrService qrService;
+
+    @Autowired
+    private CollectionVersionCache collectionVersions;
+
+    @Autowired
+    private OtpCodeService otpCodeService;
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
     @PostMapping("/decode-qr")
     public ResponseEntity<String> decodeQr(@RequestBody String base64Image) {
         try {
@@ -35,12 +52,41 @@ public class OtpController {
     }
 
     @GetMapping
-    public ResponseEntity<List<otp>> getAllOtps(@RequestHeader(value = "Authorization", required = false) String token) {
+    public ResponseEntity<List<otp>> getAllOtps(
+            @RequestHeader(value = "Authorization", required = false) String token,
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        Long userId = extractUserIdFromToken(token);
+        if (userId == null) {
+            return ResponseEntity.status(401).build();
+        }
+        // Unchanged since the client's copy: answer without loading or decrypting anything
+        String etag = collectionVersions.etag(userId);
+        if (collectionVersions.matches(etag, ifNoneMatch)) {
+            return ResponseEntity.status(304).eTag(etag).cacheControl(CacheControl.noCache().cachePrivate()).build();
+        }
+        return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache().cachePrivate()).body(otpService.getAllOtps(userId));
+    }
+
+    // Current and next code of every entry, computed here so the client needs no secrets
+    @GetMapping("/codes")
+    public ResponseEntity<List<OtpCode>> getCodes(
+            @RequestHeader(value = "Authorization", required = false) String token) {
+        Long userId = extractUserIdFromToken(token);
+        if (userId == null) {
+            return ResponseEntity.status(401).build();
+        }
+        return ResponseEntity.ok().cacheControl(CacheControl.noStore()).body(otpCodeService.getCodes(userId));
+    }
+
+    // Server-sent "codes" events: everything on connect, then each period group at its boundary
+    @GetMapping(value = "/codes/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamCodes(
+            @RequestHeader(value = "Authorization", required = false) String token) {
         Long userId = extractUserIdFromToken(token);
         if (userId == null) {
             return ResponseEntity.status(401).build();
         }
-        return ResponseEntity.ok(otpService.getAllOtps(userId));
+        return ResponseEntity.ok().cacheControl(CacheControl.noStore()).body(otpCodeService.streamCodes(userId));
     }
 
     @GetMapping("/{id}")
@@ -84,16 +130,43 @@ public class OtpController {
     }
 
     @PutMapping("/{id}")
-    public otp updateOtp(@PathVariable Long id, @RequestBody otp updatedOtp) {
+    public ResponseEntity<otp> updateOtp(
+            @RequestHeader(value = "Authorization", required = false) String token,
+            @PathVariable Long id, @RequestBody otp updatedOtp) {
+        Long userId = extractUserIdFromToken(token);
+        if (userId == null) {
+            return ResponseEntity.status(401).build();
+        }
         if (updatedOtp.getSecret() != null && !updatedOtp.getSecret().isEmpty()) {
             updatedOtp.setSecret(decrypt(updatedOtp.getSecret()));
         }
-        return otpService.updateOtp(id, updatedOtp);
+        try {
+            return ResponseEntity.ok(otpService.updateOtp(id, userId, updatedOtp));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(409).build();
+        } catch (SecurityException e) {
+            return ResponseEntity.status(403).build();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.notFound().build();
+        }
     }
 
     @DeleteMapping("/{id}")
-    public void deleteOtp(@PathVariable Long id) {
-        otpService.deleteOtp(id);
+    public ResponseEntity<Void> deleteOtp(
+            @RequestHeader(value = "Authorization", required = false) String token,
+            @PathVariable Long id) {
+        Long userId = extractUserIdFromToken(token);
+        if (userId == null) {
+            return ResponseEntity.status(401).build();
+        }
+        try {
+            otpService.deleteOtp(id, userId);
+            return ResponseEntity.noContent().build();
+        } catch (SecurityException e) {
+            return ResponseEntity.status(403).build();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.notFound().build();
+        }
     }
 
     @PostMapping("/{id}/validate")
@@ -142,29 +215,11 @@ public class OtpController {
         }
     }
 
+    // Only tokens signed by the auth service; the subject of an unverified token is not trusted
     private Long extractUserIdFromToken(String token) {
-        if (token != null && token.startsWith("Bearer ")) {
-            token = token.substring(7);
-            try {
-                String[] parts = token.split("\\.");
-                if (parts.length == 3) {
-                    String payload = parts[1];
-                    int padding = 4 - (payload.length() % 4);
-                    if (padding != 4) {
-                        payload = payload + "=".repeat(padding);
-                    }
-                    byte[] decodedBytes = java.util.Base64.getUrlDecoder().decode(payload);
-                    String decodedString = new String(decodedBytes);
-                    com.fasterxml.jackson.databind.ObjectMapper mapper = new com.fasterxml.jackson.databind.ObjectMapper();
-                    com.fasterxml.jackson.databind.JsonNode node = mapper.readTree(decodedString);
-                    if (node.has("sub")) {
-                        return Long.parseLong(node.get("sub").asText());
-                    }
-                }
-            } catch (Exception e) {
-                // Log error
-            }
+        if (token == null || !token.startsWith("Bearer ")) {
+            return null;
         }
-        return null;
+        return jwtUtil.extractUserId(token);
     }
 }
@@ -0,0 +1,19 @@
+package com.thisjowi.otp.converter;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+import com.thisjowi.otp.util.EncryptionUtil;
+
+@Converter
+public class BooleanBinaryCryptoConverter implements AttributeConverter<Boolean, byte[]> {
+
+    @Override
+    public byte[] convertToDatabaseColumn(Boolean attribute) {
+        return attribute == null ? null : EncryptionUtil.encryptToBytes(String.valueOf(attribute));
+    }
+
+    @Override
+    public Boolean convertToEntityAttribute(byte[] dbData) {
+        return dbData == null ? null : Boolean.valueOf(EncryptionUtil.decryptBytes(dbData));
+    }
+}
@@ -0,0 +1,19 @@
+package com.thisjowi.otp.converter;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+import com.thisjowi.otp.util.EncryptionUtil;
+
+@Converter
+public class IntegerBinaryCryptoConverter implements AttributeConverter<Integer, byte[]> {
+
+    @Override
+    public byte[] convertToDatabaseColumn(Integer attribute) {
+        return attribute == null ? null : EncryptionUtil.encryptToBytes(String.valueOf(attribute));
+    }
+
+    @Override
+    public Integer convertToEntityAttribute(byte[] dbData) {
+        return dbData == null ? null : Integer.valueOf(EncryptionUtil.decryptBytes(dbData));
+    }
+}
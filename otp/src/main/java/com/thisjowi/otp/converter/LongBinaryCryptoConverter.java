@@ -0,0 +1,19 @@
+package com.thisjowi.otp.converter;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+import com.thisjowi.otp.util.EncryptionUtil;
+
+@Converter
+public class LongBinaryCryptoConverter implements AttributeConverter<Long, byte[]> {
+
+    @Override
+    public byte[] convertToDatabaseColumn(Long attribute) {
+        return attribute == null ? null : EncryptionUtil.encryptToBytes(String.valueOf(attribute));
+    }
+
+    @Override
+    public Long convertToEntityAttribute(byte[] dbData) {
+        return dbData == null ? null : Long.valueOf(EncryptionUtil.decryptBytes(dbData));
+    }
+}
@@ -0,0 +1,19 @@
+package com.thisjowi.otp.converter;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+import com.thisjowi.otp.util.EncryptionUtil;
+
+@Converter
+public class StringBinaryCryptoConverter implements AttributeConverter<String, byte[]> {
+
+    @Override
+    public byte[] convertToDatabaseColumn(String attribute) {
+        return EncryptionUtil.encryptToBytes(attribute);
+    }
+
+    @Override
+    public String convertToEntityAttribute(byte[] dbData) {
+        return EncryptionUtil.decryptBytes(dbData);
+    }
+}
@@ -0,0 +1,23 @@
+package com.thisjowi.otp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Current and next code of one OTP entry, so clients can show codes without holding secrets
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OtpCode {
+    private Long id;
+    private String issuer;
+    private String name;
+    private String type; // TOTP, HOTP
+    private Integer digits;
+    private Integer period; // null for HOTP
+    private String code;
+    private String nextCode;
+    private Long validUntil; // epoch millis when code is replaced by nextCode; null for HOTP
+}
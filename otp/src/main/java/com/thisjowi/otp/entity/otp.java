@@ -1,20 +1,34 @@
 package com.thisjowi.otp.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import com.thisjowi.otp.converter.*;
+import com.thisjowi.otp.util.EncryptionUtil;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 
 @Entity
 @Getter
 @Setter
 @NoArgsConstructor
 @AllArgsConstructor
-@Table(name = "otp")
+@Table(name = "otp", indexes = {
+        @Index(name = "idx_otp_user_secret_fp", columnList = "user_id, secret_fp", unique = true)
+})
 public class otp {
 
+    private static final byte PAYLOAD_VERSION = 1;
+    // Stands in for the payload once a sensitive field changed; never written, seal() replaces it
+    private static final byte[] UNSEALED = new byte[0];
 
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -23,38 +37,242 @@ public class otp {
     @Column(nullable = true)
     private Long userId;
 
-    @Convert(converter = StringCryptoConverter.class)
-    @Column(nullable = false)
+    // The sensitive fields below are not columns. They are sealed into one AES-GCM payload per row
+    // (one decrypt per loaded row instead of one per field), or into the *_bin columns when
+    // app.encryption.row-payload is off. Rows written before are read from the *_bin columns or the
+    // legacy Base64 text columns until the migration job seals them.
+
+    @Transient
     private String email;
 
-    @Convert(converter = StringCryptoConverter.class)
-    @Column(nullable = false)
+    @Transient
     private String secret;
 
-    @Convert(converter = LongCryptoConverter.class)
-    @Column(nullable = false)
+    @Transient
     private Long expiresAt;
 
-    @Convert(converter = StringCryptoConverter.class)
-    @Column(nullable = false)
+    @Transient
     private String type; // TOTP, HOTP
 
     @Column(nullable = true)
     private String issuer;
 
-    @Convert(converter = IntegerCryptoConverter.class)
-    @Column(nullable = true)
+    @Transient
     private Integer digits;
 
     @Column(nullable = true)
     private Integer period;
 
-    @Convert(converter = StringCryptoConverter.class)
-    @Column(nullable = true)
+    @Transient
     private String algorithm;
 
-    @Convert(converter = BooleanCryptoConverter.class)
-    @Column(nullable = false)
+    @Transient
     private Boolean valid;
 
+    // HOTP: next counter to accept; only moved by a validated code
+    @Column(nullable = true)
+    private Long counter;
+
+    // Keyed fingerprint of the secret, unique per user; "-" + id for rows that cannot have one
+    @JsonIgnore
+    @Column(name = "secret_fp", length = 32)
+    private String secretFp;
+
+    @JsonIgnore
+    @Column(name = "payload", columnDefinition = "BYTEA")
+    private byte[] payload;
+
+    @JsonIgnore
+    @Convert(converter = StringBinaryCryptoConverter.class)
+    @Column(name = "email_bin", columnDefinition = "BYTEA")
+    private String emailBin;
+
+    @JsonIgnore
+    @Convert(converter = StringBinaryCryptoConverter.class)
+    @Column(name = "secret_bin", columnDefinition = "BYTEA")
+    private String secretBin;
+
+    @JsonIgnore
+    @Convert(converter = LongBinaryCryptoConverter.class)
+    @Column(name = "expires_at_bin", columnDefinition = "BYTEA")
+    private Long expiresAtBin;
+
+    @JsonIgnore
+    @Convert(converter = StringBinaryCryptoConverter.class)
+    @Column(name = "type_bin", columnDefinition = "BYTEA")
+    private String typeBin;
+
+    @JsonIgnore
+    @Convert(converter = IntegerBinaryCryptoConverter.class)
+    @Column(name = "digits_bin", columnDefinition = "BYTEA")
+    private Integer digitsBin;
+
+    @JsonIgnore
+    @Convert(converter = StringBinaryCryptoConverter.class)
+    @Column(name = "algorithm_bin", columnDefinition = "BYTEA")
+    private String algorithmBin;
+
+    @JsonIgnore
+    @Convert(converter = BooleanBinaryCryptoConverter.class)
+    @Column(name = "valid_bin", columnDefinition = "BYTEA")
+    private Boolean validBin;
+
+    @JsonIgnore
+    @Convert(converter = StringCryptoConverter.class)
+    @Column(name = "email", nullable = true)
+    private String legacyEmail;
+
+    @JsonIgnore
+    @Convert(converter = StringCryptoConverter.class)
+    @Column(name = "secret", nullable = true)
+    private String legacySecret;
+
+    @JsonIgnore
+    @Convert(converter = LongCryptoConverter.class)
+    @Column(name = "expires_at", nullable = true)
+    private Long legacyExpiresAt;
+
+    @JsonIgnore
+    @Convert(converter = StringCryptoConverter.class)
+    @Column(name = "type", nullable = true)
+    private String legacyType;
+
+    @JsonIgnore
+    @Convert(converter = IntegerCryptoConverter.class)
+    @Column(name = "digits", nullable = true)
+    private Integer legacyDigits;
+
+    @JsonIgnore
+    @Convert(converter = StringCryptoConverter.class)
+    @Column(name = "algorithm", nullable = true)
+    private String legacyAlgorithm;
+
+    @JsonIgnore
+    @Convert(converter = BooleanCryptoConverter.class)
+    @Column(name = "valid", nullable = true)
+    private Boolean legacyValid;
+
+    /**
+     * Fill the sensitive fields from whichever storage the row has: payload, *_bin or legacy columns.
+     */
+    @PostLoad
+    void open() {
+        if (payload != null) {
+            readPayload(EncryptionUtil.decryptPayload(payload, owner()));
+            return;
+        }
+        email = emailBin != null ? emailBin : legacyEmail;
+        secret = secretBin != null ? secretBin : legacySecret;
+        expiresAt = expiresAtBin != null ? expiresAtBin : legacyExpiresAt;
+        type = typeBin != null ? typeBin : legacyType;
+        digits = digitsBin != null ? digitsBin : legacyDigits;
+        algorithm = algorithmBin != null ? algorithmBin : legacyAlgorithm;
+        valid = validBin != null ? validBin : legacyValid;
+    }
+
+    /**
+     * Write the sensitive fields to the payload (or the *_bin columns) and clear the other storages.
+     * Runs before every insert and update; call it directly before a bulk update such as updateOwned.
+     */
+    @PrePersist
+    @PreUpdate
+    public void seal() {
+        legacyEmail = null;
+        legacySecret = null;
+        legacyExpiresAt = null;
+        legacyType = null;
+        legacyDigits = null;
+        legacyAlgorithm = null;
+        legacyValid = null;
+        boolean sealed = EncryptionUtil.rowPayloadEnabled();
+        payload = sealed ? EncryptionUtil.encryptPayload(writePayload(), owner()) : null;
+        emailBin = sealed ? null : email;
+        secretBin = sealed ? null : secret;
+        expiresAtBin = sealed ? null : expiresAt;
+        typeBin = sealed ? null : type;
+        digitsBin = sealed ? null : digits;
+        algorithmBin = sealed ? null : algorithm;
+        validBin = sealed ? null : valid;
+    }
+
+    // Hibernate does not track @Transient fields, so every setter of a sealed field also swaps the payload
+    // for a placeholder: the row is dirty and the next flush seals it again in @PreUpdate
+
+    public void setEmail(String email) {
+        this.email = email;
+        payload = UNSEALED;
+    }
+
+    public void setSecret(String secret) {
+        this.secret = secret;
+        payload = UNSEALED;
+    }
+
+    public void setExpiresAt(Long expiresAt) {
+        this.expiresAt = expiresAt;
+        payload = UNSEALED;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+        payload = UNSEALED;
+    }
+
+    public void setDigits(Integer digits) {
+        this.digits = digits;
+        payload = UNSEALED;
+    }
+
+    public void setAlgorithm(String algorithm) {
+        this.algorithm = algorithm;
+        payload = UNSEALED;
+    }
+
+    public void setValid(Boolean valid) {
+        this.valid = valid;
+        payload = UNSEALED;
+    }
+
+    private long owner() {
+        return userId != null ? userId : -1L;
+    }
+
+    // Presence mask (bit 6 is valid's presence, bit 7 its value), then the present fields in order
+    private byte[] writePayload() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(96);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            int mask = (email != null ? 1 : 0) | (secret != null ? 2 : 0) | (expiresAt != null ? 4 : 0)
+                    | (type != null ? 8 : 0) | (digits != null ? 16 : 0) | (algorithm != null ? 32 : 0)
+                    | (valid != null ? 64 : 0) | (Boolean.TRUE.equals(valid) ? 128 : 0);
+            out.writeByte(PAYLOAD_VERSION);
+            out.writeByte(mask);
+            if (email != null) out.writeUTF(email);
+            if (secret != null) out.writeUTF(secret);
+            if (expiresAt != null) out.writeLong(expiresAt);
+            if (type != null) out.writeUTF(type);
+            if (digits != null) out.writeInt(digits);
+            if (algorithm != null) out.writeUTF(algorithm);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private void readPayload(byte[] plaintext) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(plaintext))) {
+            if (in.readByte() != PAYLOAD_VERSION) {
+                throw new IllegalStateException("Unknown OTP payload version");
+            }
+            int mask = in.readUnsignedByte();
+            email = (mask & 1) != 0 ? in.readUTF() : null;
+            secret = (mask & 2) != 0 ? in.readUTF() : null;
+            expiresAt = (mask & 4) != 0 ? in.readLong() : null;
+            type = (mask & 8) != 0 ? in.readUTF() : null;
+            digits = (mask & 16) != 0 ? in.readInt() : null;
+            algorithm = (mask & 32) != 0 ? in.readUTF() : null;
+            valid = (mask & 64) != 0 ? (mask & 128) != 0 : null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 }
@@ -8,6 +8,7 @@ import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Service;
 import com.thisjowi.otp.dto.UserRegisteredEvent;
 import com.thisjowi.otp.service.OtpService;
+import com.thisjowi.otp.service.UserPurgeService;
 
 /**
  * Service for consuming Kafka messages from Authentication service
@@ -19,24 +20,39 @@ public class KafkaConsumerService {
 
     private final ObjectMapper objectMapper;
     private final OtpService otpService;
+    private final UserPurgeService userPurgeService;
 
     @Autowired
-    public KafkaConsumerService(ObjectMapper objectMapper, OtpService otpService) {
+    public KafkaConsumerService(ObjectMapper objectMapper, OtpService otpService, UserPurgeService userPurgeService) {
         this.objectMapper = objectMapper;
         this.otpService = otpService;
+        this.userPurgeService = userPurgeService;
     }
 
     /**
      * Listen for user registration events from Authentication service
-     * When a user registers, automatically create an OTP for them
+     * When a user registers, automatically create an OTP for them;
+     * when an account is deleted, schedule the purge of its OTPs
      */
     @KafkaListener(topics = "${kafka.topic.auth-events:auth-events}", groupId = "${kafka.consumer.group-id:otp-service-group}")
     public void handleUserRegisteredEvent(String message) {
+        logger.info("Received message from Kafka: {}", message);
+        UserRegisteredEvent event;
+        try {
+            event = objectMapper.readValue(message, UserRegisteredEvent.class);
+        } catch (Exception e) {
+            logger.error("Could not read event from Kafka", e);
+            return;
+        }
+
+        if ("USER_DELETED".equals(event.getEventType())) {
+            // Only records the request; the purge job deletes the OTPs in batches.
+            // Failures propagate so the container redelivers the event
+            userPurgeService.requestPurge(event.getUserId());
+            return;
+        }
+
         try {
-            logger.info("Received message from Kafka: {}", message);
-            
-            UserRegisteredEvent event = objectMapper.readValue(message, UserRegisteredEvent.class);
-            
             if ("USER_REGISTERED".equals(event.getEventType())) {
                 logger.info("Processing user registration event for user: {}", event.getEmail());
                 
@@ -46,7 +62,6 @@ public class KafkaConsumerService {
                 
                 logger.info("OTP automatically created for user: {}", event.getEmail());
             }
-            
         } catch (Exception e) {
             logger.error("Error processing user registered event", e);
         }
@@ -1,9 +1,67 @@
 package com.thisjowi.otp.repository;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
 import com.thisjowi.otp.entity.otp;
 import java.util.List;
+import java.util.Optional;
 
 public interface OtpRepository extends JpaRepository<otp, Long> {
     List<otp> findByUserId(Long userId);
+
+    // Duplicate detection: one probe of idx_otp_user_secret_fp
+    Optional<otp> findByUserIdAndSecretFp(Long userId, String secretFp);
+
+    boolean existsByUserIdAndSecretFp(Long userId, String secretFp);
+
+    // A user's rows the fingerprint backfill has not reached yet; the unique index cannot see them
+    List<otp> findByUserIdAndSecretFpIsNull(Long userId);
+
+    // Rows written before secret fingerprints, keyset paged by id
+    @Query("select o from otp o where o.secretFp is null and o.id > :afterId order by o.id")
+    List<otp> findMissingFingerprint(Long afterId, Pageable pageable);
+
+    // Rows still stored in the per-field columns: binary or legacy Base64 text
+    @Query("select o from otp o where o.payload is null and (o.secretBin is not null or o.legacySecret is not null) order by o.id")
+    List<otp> findUnsealed(Pageable pageable);
+
+    // Rows still in the legacy Base64 text columns, for when row payloads are off
+    @Query("select o from otp o where o.payload is null and o.secretBin is null and o.legacySecret is not null order by o.id")
+    List<otp> findLegacyCiphertext(Pageable pageable);
+
+    // Owner-scoped mutations in one statement; 0 means missing or not owned
+    @Modifying
+    @Transactional
+    @Query("delete from otp o where o.id = :id and o.userId = :userId")
+    int deleteOwned(Long id, Long userId);
+
+    // Full replace of the editable fields; d must be sealed first, which also clears the storages it does not use
+    @Modifying
+    @Transactional
+    @Query("update otp o set o.payload = :#{#d.payload}, o.secretFp = :#{#d.secretFp}, "
+            + "o.issuer = :#{#d.issuer}, o.period = :#{#d.period}, "
+            + "o.emailBin = :#{#d.emailBin}, o.secretBin = :#{#d.secretBin}, o.expiresAtBin = :#{#d.expiresAtBin}, "
+            + "o.typeBin = :#{#d.typeBin}, o.digitsBin = :#{#d.digitsBin}, o.algorithmBin = :#{#d.algorithmBin}, "
+            + "o.validBin = :#{#d.validBin}, "
+            + "o.legacyEmail = null, o.legacySecret = null, o.legacyExpiresAt = null, o.legacyType = null, "
+            + "o.legacyDigits = null, o.legacyAlgorithm = null, o.legacyValid = null "
+            + "where o.id = :id and o.userId = :userId")
+    int updateOwned(Long id, Long userId, otp d);
+
+    // HOTP: move the counter past an accepted code, unless a concurrent request with the same code already did
+    @Modifying
+    @Transactional
+    @Query("update otp o set o.counter = :next where o.id = :id and coalesce(o.counter, 0) = :expected")
+    int advanceCounter(Long id, long expected, long next);
+
+    // Account purge: next primary-key range of the user's OTPs
+    @Query("select o.id from otp o where o.userId = :userId and o.id > :afterId order by o.id")
+    List<Long> findIdsForPurge(Long userId, Long afterId, Pageable pageable);
+
+    @Modifying
+    @Query("delete from otp o where o.userId = :userId and o.id > :fromId and o.id <= :toId")
+    int deleteRangeForPurge(Long userId, Long fromId, Long toId);
 }
@@ -0,0 +1,27 @@
+package com.thisjowi.otp.repository;
+
+import com.thisjowi.otp.entity.UserPurge;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+public interface UserPurgeRepository extends JpaRepository<UserPurge, Long> {
+
+    List<UserPurge> findByCompletedAtIsNullOrderByRequestedAtAsc(Pageable pageable);
+
+    long countByCompletedAtIsNull();
+
+    // Serialises batches of the same purge when several instances run the job
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select p from UserPurge p where p.userId = :userId")
+    Optional<UserPurge> findForUpdate(Long userId);
+
+    @Query("select min(p.requestedAt) from UserPurge p where p.completedAt is null")
+    LocalDateTime findOldestPendingRequest();
+}
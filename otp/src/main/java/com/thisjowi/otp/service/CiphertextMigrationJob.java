@@ -0,0 +1,108 @@
+package com.thisjowi.otp.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import com.thisjowi.otp.entity.otp;
+import com.thisjowi.otp.repository.OtpRepository;
+import com.thisjowi.otp.util.EncryptionUtil;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Re-encrypts otp rows still stored one field per column (legacy Base64 text or binary) into the
+ * row payload in small batches, or only moves legacy rows to the binary columns when row payloads are off.
+ * Also fills the secret fingerprint of rows written before it existed.
+ */
+@Component
+public class CiphertextMigrationJob {
+
+    private static final Logger logger = LoggerFactory.getLogger(CiphertextMigrationJob.class);
+
+    @Autowired
+    private OtpRepository otpRepository;
+
+    @Autowired
+    private OtpService otpService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${app.binary-migration.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.binary-migration.batch-size:500}")
+    private int batchSize;
+
+    @Scheduled(fixedDelayString = "${app.binary-migration.delay-ms:30000}", initialDelayString = "${app.binary-migration.initial-delay-ms:60000}")
+    public void migrate() {
+        if (!enabled) {
+            return;
+        }
+        int migrated = 0;
+        int batch;
+        do {
+            batch = transactionTemplate.execute(status -> migrateBatch());
+            migrated += batch;
+        } while (batch == batchSize);
+
+        if (migrated > 0) {
+            logger.info("Moved {} OTP entries to {}", migrated, EncryptionUtil.rowPayloadEnabled() ? "the encrypted row payload" : "binary ciphertext columns");
+        }
+
+        int indexed = 0;
+        long[] afterId = {0L};
+        try {
+            do {
+                batch = transactionTemplate.execute(status -> fingerprintBatch(afterId));
+                indexed += batch;
+            } while (batch == batchSize);
+        } catch (DataIntegrityViolationException e) {
+            // A create raced the batch; the next run sees that row and marks the duplicate
+            logger.warn("Secret fingerprint batch after OTP {} conflicted with a concurrent write", afterId[0]);
+        }
+        if (indexed > 0) {
+            logger.info("Fingerprinted the secrets of {} OTP entries", indexed);
+        }
+    }
+
+    private int migrateBatch() {
+        List<otp> rows = EncryptionUtil.rowPayloadEnabled()
+                ? otpRepository.findUnsealed(PageRequest.of(0, batchSize))
+                : otpRepository.findLegacyCiphertext(PageRequest.of(0, batchSize));
+        // Sealing changes mapped columns, so the merge below writes them
+        rows.forEach(otp::seal);
+        otpRepository.saveAll(rows);
+        return rows.size();
+    }
+
+    // In id order, so of entries that already duplicate each other the oldest keeps the fingerprint.
+    // The others, and rows without a secret, get "-" + id: unique and never equal to a fingerprint.
+    private int fingerprintBatch(long[] afterId) {
+        List<otp> rows = otpRepository.findMissingFingerprint(afterId[0], PageRequest.of(0, batchSize));
+        Set<String> taken = new HashSet<>();
+        for (otp row : rows) {
+            afterId[0] = row.getId();
+            String fp = null;
+            try {
+                fp = otpService.secretFingerprint(row.getUserId(), row.getSecret());
+            } catch (RuntimeException e) {
+                logger.error("Could not fingerprint OTP entry {}: {}", row.getId(), e.getMessage());
+            }
+            if (fp == null || !taken.add(row.getUserId() + ":" + fp) || otpRepository.existsByUserIdAndSecretFp(row.getUserId(), fp)) {
+                fp = "-" + row.getId();
+            }
+            row.setSecretFp(fp);
+        }
+        otpRepository.saveAll(rows);
+        return rows.size();
+    }
+}
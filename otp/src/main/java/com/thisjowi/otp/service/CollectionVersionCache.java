@@ -0,0 +1,102 @@
+package com.thisjowi.otp.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In-memory version of each user's OTP collection, used as the ETag of the list endpoint.
+ * Every write bumps the owner's version, so an unchanged collection can be answered with
+ * 304 Not Modified before touching the database or decrypting anything.
+ *
+ * Versions come from one counter shared by all users and are kept for the
+ * {@code app.collection-version.max-cached-users} most recently used users. A user without an entry
+ * gets the highest version evicted so far. That is at least the user's last version, so an ETag
+ * issued before a change never matches again after an eviction; evictions only cost extra misses.
+ *
+ * Versions live in this instance only: the epoch changes on restart so old ETags never match,
+ * and the service must run as a single replica (as deployed) for the versions to stay accurate.
+ * The note and password services have the same class for their collections; the services share no
+ * code module, so a change here belongs in all three.
+ */
+@Component
+public class CollectionVersionCache {
+
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final Map<Long, Long> versions;
+    private long clock;
+    private long evictedVersion;
+
+    public CollectionVersionCache(@Value("${app.collection-version.max-cached-users:100000}") int maxCachedUsers) {
+        this.versions = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+                if (size() > maxCachedUsers) {
+                    evictedVersion = Math.max(evictedVersion, eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Current ETag of the user's collection. Read it before loading the data, so a write that
+     * lands in between makes the next request miss instead of caching stale data.
+     */
+    public String etag(Long userId) {
+        return "\"" + epoch + "." + version(userId) + "\"";
+    }
+
+    /**
+     * Whether an If-None-Match header value matches the given ETag.
+     */
+    public boolean matches(String etag, String ifNoneMatch) {
+        if (ifNoneMatch == null || ifNoneMatch.isBlank()) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if (value.equals("*") || value.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Mark the user's collection as changed. Inside a transaction the bump waits for the commit,
+     * otherwise a concurrent read could pair the new ETag with the old data.
+     */
+    public void bump(Long userId) {
+        if (userId == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    increment(userId);
+                }
+            });
+        } else {
+            increment(userId);
+        }
+    }
+
+    private synchronized long version(Long userId) {
+        Long version = versions.get(userId);
+        return version != null ? version : evictedVersion;
+    }
+
+    private synchronized void increment(Long userId) {
+        versions.put(userId, ++clock);
+    }
+}
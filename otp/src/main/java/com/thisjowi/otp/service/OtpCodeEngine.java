@@ -0,0 +1,366 @@
+package com.thisjowi.otp.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HOTP (RFC 4226) and TOTP (RFC 6238) codes with HMAC-SHA1, SHA256 or SHA512, 1 to 9 digits and any period.
+ *
+ * Validation does not allocate: every thread keeps one {@link Mac} per algorithm and reuses it while
+ * the key stays the same, and the counter and HMAC go through per-thread buffers. Decoded secrets are
+ * kept as {@link CodeKey}s in a bounded LRU cache by OTP id, rebuilt when the entry's secret or
+ * parameters change.
+ *
+ * TOTP accepts {@code app.otp.skew-steps} steps of clock drift either way. The highest accepted time step
+ * of each entry is remembered until it leaves the window, and only a later step is accepted after it
+ * (RFC 6238 section 5.2), so a code works once and an older code cannot follow a newer one; like
+ * {@link CollectionVersionCache} this lives in this instance only. HOTP codes are accepted up to {@code app.otp.hotp-look-ahead}
+ * counters ahead and replay is prevented by moving the stored counter past the accepted one.
+ */
+@Component
+public class OtpCodeEngine {
+
+    public static final int DEFAULT_DIGITS = 6;
+    public static final int DEFAULT_PERIOD = 30;
+
+    private static final String[] ALGORITHMS = {"HmacSHA1", "HmacSHA256", "HmacSHA512"};
+    private static final int[] POW10 = {1, 10, 100, 1_000, 10_000, 100_000, 1_000_000, 10_000_000, 100_000_000, 1_000_000_000};
+    private static final String BASE32 = "ABCDEFGHIJKLMNOPQRSTUVWXYZ234567";
+    private static final long SWEEP_INTERVAL_MS = 1000;
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final int skewSteps;
+    private final int hotpLookAhead;
+    private final Map<Long, CodeKey> keys;
+    private final ConcurrentHashMap<Long, AcceptedStep> acceptedSteps = new ConcurrentHashMap<>();
+    private final AtomicLong lastSweep = new AtomicLong();
+
+    public OtpCodeEngine(@Value("${app.otp.skew-steps:1}") int skewSteps,
+                         @Value("${app.otp.hotp-look-ahead:10}") int hotpLookAhead,
+                         @Value("${app.otp.key-cache-size:10000}") int keyCacheSize) {
+        this.skewSteps = skewSteps;
+        this.hotpLookAhead = hotpLookAhead;
+        this.keys = Collections.synchronizedMap(new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, CodeKey> eldest) {
+                return size() > keyCacheSize;
+            }
+        });
+    }
+
+    /**
+     * Key of an OTP entry, from the cache unless the secret or parameters changed since it was built.
+     *
+     * @throws IllegalArgumentException if the secret, algorithm, digits or period are not usable
+     */
+    public CodeKey key(Long otpId, String secret, String algorithm, Integer digits, Integer period) {
+        CodeKey key = keys.get(otpId);
+        if (key == null || !key.matches(secret, algorithm, digits, period)) {
+            if (key != null) {
+                // Steps of the old secret or period say nothing about the new one
+                acceptedSteps.remove(otpId);
+            }
+            key = new CodeKey(secret, algorithm, digits, period);
+            keys.put(otpId, key);
+        }
+        return key;
+    }
+
+    /**
+     * Drop the cached key of a deleted entry.
+     */
+    public void forget(Long otpId) {
+        keys.remove(otpId);
+        acceptedSteps.remove(otpId);
+    }
+
+    /**
+     * Check a TOTP code at {@code nowMillis}. A matching code is accepted only if its step is later than
+     * the last one accepted for the entry.
+     */
+    public boolean verifyTotp(CodeKey key, long otpId, CharSequence code, long nowMillis) {
+        int submitted = parseCode(code, key.digits);
+        if (submitted < 0) {
+            return false;
+        }
+        long periodMillis = key.period * 1000L;
+        long step = Math.floorDiv(nowMillis, periodMillis);
+        long matched = match(key, submitted, step, skewSteps, skewSteps);
+        if (matched < 0) {
+            return false;
+        }
+        sweep(nowMillis);
+        // Once the current step is past matched + skew, every code it could block is rejected anyway
+        AcceptedStep accepted = new AcceptedStep(matched, periodMillis, (matched + skewSteps + 1) * periodMillis);
+        return acceptedSteps.merge(otpId, accepted, (last, next) ->
+                next.periodMillis() != last.periodMillis() || next.step() > last.step() ? next : last) == accepted;
+    }
+
+    /**
+     * Check an HOTP code against the counters from {@code counter} to {@code counter + hotp-look-ahead}.
+     *
+     * @return the counter to store after the matched one, or -1 if nothing matched
+     */
+    public long verifyHotp(CodeKey key, CharSequence code, long counter) {
+        int submitted = parseCode(code, key.digits);
+        if (submitted < 0) {
+            return -1;
+        }
+        long matched = match(key, submitted, counter, 0, hotpLookAhead);
+        return matched < 0 ? -1 : matched + 1;
+    }
+
+    /**
+     * Counter within [counter - behind, counter + ahead] whose code is {@code code}, nearest first, or -1.
+     */
+    public long match(CodeKey key, int code, long counter, int behind, int ahead) {
+        if (counter >= 0 && generate(key, counter) == code) {
+            return counter;
+        }
+        for (int i = 1; i <= Math.max(behind, ahead); i++) {
+            if (i <= behind && counter - i >= 0 && generate(key, counter - i) == code) {
+                return counter - i;
+            }
+            if (i <= ahead && generate(key, counter + i) == code) {
+                return counter + i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * HOTP value of a counter (for TOTP, the time step), as an int below 10^digits.
+     */
+    public int generate(CodeKey key, long counter) {
+        Scratch scratch = SCRATCH.get();
+        Mac mac = scratch.mac(key);
+        byte[] message = scratch.counter;
+        for (int i = 7; i >= 0; i--) {
+            message[i] = (byte) counter;
+            counter >>>= 8;
+        }
+        byte[] hash = scratch.hash;
+        try {
+            mac.update(message);
+            mac.doFinal(hash, 0);
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException(e);
+        }
+        // Dynamic truncation, RFC 4226 section 5.3
+        int offset = hash[mac.getMacLength() - 1] & 0x0f;
+        int binary = (hash[offset] & 0x7f) << 24
+                | (hash[offset + 1] & 0xff) << 16
+                | (hash[offset + 2] & 0xff) << 8
+                | (hash[offset + 3] & 0xff);
+        return binary % POW10[key.digits];
+    }
+
+    /**
+     * Submitted code as an int, ignoring spaces; -1 unless it has exactly {@code digits} digits.
+     */
+    public static int parseCode(CharSequence code, int digits) {
+        if (code == null) {
+            return -1;
+        }
+        int value = 0;
+        int count = 0;
+        for (int i = 0; i < code.length(); i++) {
+            char c = code.charAt(i);
+            if (c == ' ') {
+                continue;
+            }
+            if (c < '0' || c > '9' || ++count > digits) {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return count == digits ? value : -1;
+    }
+
+    /**
+     * Unpadded Base32 (RFC 4648), the secret format authenticator apps expect.
+     */
+    public static String encodeBase32(byte[] bytes) {
+        StringBuilder out = new StringBuilder((bytes.length * 8 + 4) / 5);
+        int buffer = 0;
+        int bits = 0;
+        for (byte b : bytes) {
+            buffer = buffer << 8 | (b & 0xff);
+            bits += 8;
+            while (bits >= 5) {
+                out.append(BASE32.charAt(buffer >>> (bits - 5) & 31));
+                bits -= 5;
+            }
+        }
+        if (bits > 0) {
+            out.append(BASE32.charAt(buffer << (5 - bits) & 31));
+        }
+        return out.toString();
+    }
+
+    /**
+     * Secret bytes: Base32 as in otpauth URIs (any case, spaces, dashes and padding ignored), or Base64
+     * for secrets generated before they were Base32.
+     *
+     * @throws IllegalArgumentException if it is neither
+     */
+    static byte[] decodeSecret(String secret) {
+        if (secret == null || secret.isBlank()) {
+            throw new IllegalArgumentException("OTP secret is empty");
+        }
+        byte[] decoded = decodeBase32(secret);
+        if (decoded == null) {
+            try {
+                decoded = Base64.getDecoder().decode(secret.trim());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("OTP secret is neither Base32 nor Base64");
+            }
+        }
+        if (decoded.length == 0) {
+            throw new IllegalArgumentException("OTP secret is empty");
+        }
+        return decoded;
+    }
+
+    // null if not valid Base32; 20-byte Base64 secrets always fail on their length
+    private static byte[] decodeBase32(String secret) {
+        byte[] out = new byte[secret.length() * 5 / 8];
+        int buffer = 0;
+        int bits = 0;
+        int chars = 0;
+        int length = 0;
+        for (int i = 0; i < secret.length(); i++) {
+            char c = Character.toUpperCase(secret.charAt(i));
+            if (c == ' ' || c == '-' || c == '=') {
+                continue;
+            }
+            int value = BASE32.indexOf(c);
+            if (value < 0) {
+                return null;
+            }
+            chars++;
+            buffer = buffer << 5 | value;
+            bits += 5;
+            if (bits >= 8) {
+                out[length++] = (byte) (buffer >>> (bits - 8));
+                bits -= 8;
+            }
+        }
+        // Lengths that leave 1, 3 or 6 characters in the last group are not Base32
+        int tail = chars % 8;
+        if (tail == 1 || tail == 3 || tail == 6) {
+            return null;
+        }
+        return Arrays.copyOf(out, length);
+    }
+
+    private void sweep(long nowMillis) {
+        long last = lastSweep.get();
+        if (nowMillis - last >= SWEEP_INTERVAL_MS && lastSweep.compareAndSet(last, nowMillis)) {
+            acceptedSteps.values().removeIf(accepted -> accepted.expiresAt() <= nowMillis);
+        }
+    }
+
+    private static int algorithmIndex(String algorithm) {
+        if (algorithm == null || algorithm.isBlank()) {
+            return 0;
+        }
+        String normalized = algorithm.toUpperCase().replace("HMAC", "").replace("-", "").trim();
+        switch (normalized) {
+            case "SHA1":
+                return 0;
+            case "SHA256":
+                return 1;
+            case "SHA512":
+                return 2;
+            default:
+                throw new IllegalArgumentException("Unsupported OTP algorithm: " + algorithm);
+        }
+    }
+
+    /**
+     * Decoded secret and parameters of one OTP entry.
+     */
+    public static final class CodeKey {
+        private final String secret;
+        private final String algorithm;
+        private final Integer requestedDigits;
+        private final Integer requestedPeriod;
+        final int algorithmIndex;
+        final SecretKeySpec spec;
+        final int digits;
+        final int period;
+
+        public CodeKey(String secret, String algorithm, Integer digits, Integer period) {
+            this.secret = secret;
+            this.algorithm = algorithm;
+            this.requestedDigits = digits;
+            this.requestedPeriod = period;
+            this.algorithmIndex = algorithmIndex(algorithm);
+            this.spec = new SecretKeySpec(decodeSecret(secret), ALGORITHMS[algorithmIndex]);
+            this.digits = digits != null ? digits : DEFAULT_DIGITS;
+            this.period = period != null ? period : DEFAULT_PERIOD;
+            if (this.digits < 1 || this.digits >= POW10.length) {
+                throw new IllegalArgumentException("Unsupported number of OTP digits: " + digits);
+            }
+            if (this.period < 1) {
+                throw new IllegalArgumentException("Invalid OTP period: " + period);
+            }
+        }
+
+        public int getDigits() {
+            return digits;
+        }
+
+        public int getPeriod() {
+            return period;
+        }
+
+        boolean matches(String secret, String algorithm, Integer digits, Integer period) {
+            return Objects.equals(this.secret, secret) && Objects.equals(this.algorithm, algorithm)
+                    && Objects.equals(requestedDigits, digits) && Objects.equals(requestedPeriod, period);
+        }
+    }
+
+    private record AcceptedStep(long step, long periodMillis, long expiresAt) {
+    }
+
+    // One Mac per algorithm, initialised with the key it was last used with
+    private static final class Scratch {
+        final Mac[] macs = new Mac[ALGORITHMS.length];
+        final CodeKey[] macKeys = new CodeKey[ALGORITHMS.length];
+        final byte[] counter = new byte[8];
+        final byte[] hash = new byte[64];
+
+        Mac mac(CodeKey key) {
+            int index = key.algorithmIndex;
+            try {
+                if (macs[index] == null) {
+                    macs[index] = Mac.getInstance(ALGORITHMS[index]);
+                }
+                if (macKeys[index] != key) {
+                    macs[index].init(key.spec);
+                    macKeys[index] = key;
+                }
+            } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+                throw new IllegalStateException(ALGORITHMS[index] + " not available", e);
+            }
+            return macs[index];
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.thisjowi.otp.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import com.thisjowi.otp.dto.OtpCode;
+import com.thisjowi.otp.entity.otp;
+import com.thisjowi.otp.repository.OtpRepository;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Codes of a user's OTP entries computed on the server, so clients no longer need the secrets.
+ *
+ * {@link #getCodes(Long)} answers once. {@link #streamCodes(Long)} sends every code on connect and then,
+ * at each period boundary, one "codes" event with the codes of the entries with that period: entries
+ * are grouped by period so a tick is one batch over cached keys. Each tick first compares the
+ * collection's ETag, and reloads and resends everything when entries were added, changed or removed.
+ * The default period always ticks, which also notices the first entry of an empty collection.
+ *
+ * The ticker thread only queues ticks. Reloads, code computation and writes run on a worker pool,
+ * one task of a stream at a time, so a slow client holds at most one worker and delays nobody else.
+ * A stream with more than {@code app.otp.codes.max-backlog} queued events is closed.
+ */
+@Service
+public class OtpCodeService {
+
+    private static final Logger logger = LoggerFactory.getLogger(OtpCodeService.class);
+
+    @Autowired
+    private OtpRepository otpRepository;
+
+    @Autowired
+    private OtpCodeEngine codeEngine;
+
+    @Autowired
+    private CollectionVersionCache collectionVersions;
+
+    @Value("${app.otp.codes.stream-timeout-ms:600000}")
+    private long streamTimeoutMs;
+
+    @Value("${app.otp.codes.stream-threads:8}")
+    private int streamThreads;
+
+    @Value("${app.otp.codes.max-backlog:4}")
+    private int maxBacklog;
+
+    private ScheduledThreadPoolExecutor ticker;
+
+    private ExecutorService workers;
+
+    @PostConstruct
+    public void init() {
+        ticker = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "otp-code-ticker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        workers = Executors.newFixedThreadPool(streamThreads, runnable -> {
+            Thread thread = new Thread(runnable, "otp-code-stream");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ticker.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    public List<OtpCode> getCodes(Long userId) {
+        return compute(load(userId), System.currentTimeMillis());
+    }
+
+    /**
+     * Open a stream of the user's codes; it ends after {@code app.otp.codes.stream-timeout-ms} and
+     * the client reconnects.
+     */
+    public SseEmitter streamCodes(Long userId) {
+        return open(userId, new SseEmitter(streamTimeoutMs));
+    }
+
+    SseEmitter open(Long userId, SseEmitter emitter) {
+        CodeStream stream = new CodeStream(userId, emitter);
+        emitter.onCompletion(stream::close);
+        emitter.onTimeout(stream::close);
+        emitter.onError(e -> stream.close());
+        submit(stream, () -> snapshot(stream, System.currentTimeMillis()));
+        return emitter;
+    }
+
+    // Reload the entries, send all their codes and start ticking any new period
+    private void snapshot(CodeStream stream, long now) {
+        if (stream.closed) {
+            return;
+        }
+        // Read before loading, so a write in between is seen as a change on the next tick
+        stream.etag = collectionVersions.etag(stream.userId);
+        List<CodeSource> sources = load(stream.userId);
+        Map<Integer, List<CodeSource>> groups = new TreeMap<>();
+        groups.put(OtpCodeEngine.DEFAULT_PERIOD, new ArrayList<>());
+        for (CodeSource source : sources) {
+            if (!source.hotp()) {
+                groups.computeIfAbsent(source.key().getPeriod(), period -> new ArrayList<>()).add(source);
+            }
+        }
+        stream.groups = groups;
+        send(stream, compute(sources, now));
+        // Periods keep ticking once started; one whose entries are gone sends nothing
+        for (Integer period : groups.keySet()) {
+            if (stream.periods.add(period)) {
+                scheduleTick(stream, period, now);
+            }
+        }
+    }
+
+    private void tick(CodeStream stream, int period, long boundary) {
+        if (stream.closed) {
+            return;
+        }
+        if (!collectionVersions.etag(stream.userId).equals(stream.etag)) {
+            snapshot(stream, boundary);
+        } else {
+            List<CodeSource> group = stream.groups.get(period);
+            if (group != null && !group.isEmpty()) {
+                send(stream, compute(group, boundary));
+            }
+        }
+    }
+
+    // Runs on the ticker: queue the tick and schedule the next one, whether or not the client keeps up
+    private void scheduleTick(CodeStream stream, int period, long now) {
+        long periodMillis = period * 1000L;
+        long boundary = (Math.floorDiv(now, periodMillis) + 1) * periodMillis;
+        long delay = Math.max(0, boundary - System.currentTimeMillis());
+        ticker.schedule(() -> {
+            if (!stream.closed) {
+                submit(stream, () -> tick(stream, period, boundary));
+                scheduleTick(stream, period, boundary);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    // Queue work for the stream; the first task of an idle stream starts a worker that drains its queue
+    private void submit(CodeStream stream, Runnable task) {
+        if (stream.backlog.get() >= maxBacklog) {
+            if (!stream.closed) {
+                logger.warn("Closing the OTP code stream of user {}: the client is {} events behind", stream.userId, maxBacklog);
+                stream.close();
+            }
+            return;
+        }
+        stream.queue.add(task);
+        if (stream.backlog.getAndIncrement() == 0) {
+            workers.execute(() -> drain(stream));
+        }
+    }
+
+    private void drain(CodeStream stream) {
+        do {
+            try {
+                stream.queue.poll().run();
+            } catch (RuntimeException e) {
+                logger.error("OTP code stream of user {} failed", stream.userId, e);
+                stream.close();
+            }
+        } while (stream.backlog.decrementAndGet() > 0);
+        if (stream.closed) {
+            // Ends the response of a stream closed for falling behind or failing; no-op once completed
+            stream.emitter.complete();
+        }
+    }
+
+    private void send(CodeStream stream, List<OtpCode> codes) {
+        try {
+            stream.emitter.send(SseEmitter.event().name("codes").data(codes, MediaType.APPLICATION_JSON));
+        } catch (IOException | IllegalStateException e) {
+            // Client went away; the completion callback may never come
+            stream.close();
+        }
+    }
+
+    private List<CodeSource> load(Long userId) {
+        List<CodeSource> sources = new ArrayList<>();
+        for (otp entry : otpRepository.findByUserId(userId)) {
+            if (!Boolean.TRUE.equals(entry.getValid()) || entry.getSecret() == null) {
+                continue;
+            }
+            try {
+                OtpCodeEngine.CodeKey key = codeEngine.key(entry.getId(), entry.getSecret(), entry.getAlgorithm(), entry.getDigits(), entry.getPeriod());
+                boolean hotp = "HOTP".equalsIgnoreCase(entry.getType());
+                sources.add(new CodeSource(entry.getId(), entry.getIssuer(), entry.getEmail(), hotp ? "HOTP" : "TOTP",
+                        key, entry.getCounter() != null ? entry.getCounter() : 0L, hotp));
+            } catch (IllegalArgumentException e) {
+                logger.warn("No codes for OTP {}: {}", entry.getId(), e.getMessage());
+            }
+        }
+        sources.sort(Comparator.comparing(CodeSource::id));
+        return sources;
+    }
+
+    private List<OtpCode> compute(List<CodeSource> sources, long now) {
+        List<OtpCode> codes = new ArrayList<>(sources.size());
+        for (CodeSource source : sources) {
+            OtpCodeEngine.CodeKey key = source.key();
+            if (source.hotp()) {
+                codes.add(new OtpCode(source.id(), source.issuer(), source.name(), source.type(), key.getDigits(), null,
+                        format(codeEngine.generate(key, source.counter()), key.getDigits()),
+                        format(codeEngine.generate(key, source.counter() + 1), key.getDigits()), null));
+            } else {
+                long periodMillis = key.getPeriod() * 1000L;
+                long step = Math.floorDiv(now, periodMillis);
+                codes.add(new OtpCode(source.id(), source.issuer(), source.name(), source.type(), key.getDigits(), key.getPeriod(),
+                        format(codeEngine.generate(key, step), key.getDigits()),
+                        format(codeEngine.generate(key, step + 1), key.getDigits()), (step + 1) * periodMillis));
+            }
+        }
+        return codes;
+    }
+
+    private static String format(int code, int digits) {
+        String value = Integer.toString(code);
+        return value.length() >= digits ? value : "0".repeat(digits - value.length()) + value;
+    }
+
+    private record CodeSource(Long id, String issuer, String name, String type, OtpCodeEngine.CodeKey key, long counter, boolean hotp) {
+    }
+
+    // One open stream; its tasks run one at a time, in the order they were queued
+    private static final class CodeStream {
+        final Long userId;
+        final SseEmitter emitter;
+        final Set<Integer> periods = ConcurrentHashMap.newKeySet();
+        final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+        final AtomicInteger backlog = new AtomicInteger();
+        volatile boolean closed;
+        String etag;
+        Map<Integer, List<CodeSource>> groups = Map.of();
+
+        CodeStream(Long userId, SseEmitter emitter) {
+            this.userId = userId;
+            this.emitter = emitter;
+        }
+
+        void close() {
+            closed = true;
+        }
+    }
+}
@@ -3,15 +3,17 @@ package com.thisjowi.otp.service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 import com.thisjowi.otp.dto.OtpCreatedEvent;
 import com.thisjowi.otp.entity.otp;
 import com.thisjowi.otp.kafka.KafkaProducerService;
 import com.thisjowi.otp.repository.OtpRepository;
+import com.thisjowi.otp.util.EncryptionUtil;
 
+import java.nio.charset.StandardCharsets;
 import java.security.SecureRandom;
 import java.time.Instant;
-import java.util.Base64;
 import java.util.List;
 import java.util.Optional;
 
@@ -26,6 +28,12 @@ public class OtpService {
     @Autowired
     private KafkaProducerService kafkaProducerService;
 
+    @Autowired
+    private CollectionVersionCache collectionVersions;
+
+    @Autowired
+    private OtpCodeEngine codeEngine;
+
     public List<otp> getAllOtps(Long userId) {
         if (userId != null) {
             return otpRepository.findByUserId(userId);
@@ -38,19 +46,18 @@ public class OtpService {
     }
 
     public otp createOtp(Long userId, String name, String type, String secret, String issuer, Integer digits, Integer period, String algorithm) {
-        // Check for duplicates if secret is provided
-        if (secret != null && !secret.isEmpty()) {
-            String normalizedSecret = secret.trim().replace(" ", "").toUpperCase();
-            List<otp> existing = otpRepository.findByUserId(userId);
-            for (otp entry : existing) {
-                String existingSecret = entry.getSecret();
-                if (existingSecret != null) {
-                    String normalizedExisting = existingSecret.trim().replace(" ", "").toUpperCase();
-                    if (normalizedExisting.equals(normalizedSecret)) {
-                        logger.info("Duplicate OTP creation attempt prevented for user {} with secret ending in ...{}", userId, normalizedSecret.substring(Math.max(0, normalizedSecret.length() - 4)));
-                        return entry; // Return existing entry
-                    }
-                }
+        boolean imported = secret != null && !secret.isEmpty();
+        String secretValue = imported ? secret : generateSecret();
+        String secretFp = secretFingerprint(userId, secretValue);
+        // Duplicates are found with one index probe instead of decrypting every secret of the user
+        if (imported) {
+            Optional<otp> existing = otpRepository.findByUserIdAndSecretFp(userId, secretFp);
+            if (existing.isEmpty()) {
+                existing = findUnfingerprintedDuplicate(userId, secretFp, null);
+            }
+            if (existing.isPresent()) {
+                logger.info("Duplicate OTP creation attempt prevented for user {}, existing entry {}", userId, existing.get().getId());
+                return existing.get();
             }
         }
 
@@ -58,15 +65,28 @@ public class OtpService {
         o.setUserId(userId);
         o.setEmail(name);
         o.setType(type);
-        o.setSecret((secret != null && !secret.isEmpty()) ? secret : generateSecret());
+        o.setSecret(secretValue);
+        o.setSecretFp(secretFp);
         o.setIssuer(issuer);
         o.setDigits(digits);
         o.setPeriod(period);
         o.setAlgorithm(algorithm);
         o.setValid(true);
-        o.setExpiresAt(System.currentTimeMillis() + (period != null ? period * 1000L : 30000L)); // Default 30s if null
+        // Authenticator entries do not expire; only one-shot codes from createOtpForUser have an expiry
 
-        otp saved = otpRepository.save(o);
+        otp saved;
+        try {
+            saved = otpRepository.save(o);
+        } catch (DataIntegrityViolationException e) {
+            // A concurrent import of the same secret inserted first; the unique index kept one row
+            Optional<otp> existing = otpRepository.findByUserIdAndSecretFp(userId, secretFp);
+            if (existing.isEmpty()) {
+                throw e;
+            }
+            logger.info("Duplicate OTP creation attempt prevented for user {}, existing entry {}", userId, existing.get().getId());
+            return existing.get();
+        }
+        collectionVersions.bump(userId);
         
         // Send event to Kafka
         OtpCreatedEvent event = new OtpCreatedEvent(
@@ -94,7 +114,9 @@ public class OtpService {
         o.setValid(true);
         o.setExpiresAt(System.currentTimeMillis() + (validitySeconds * 1000));
         o.setSecret(generateSecret());
+        o.setSecretFp(secretFingerprint(userId, o.getSecret()));
         otp saved = otpRepository.save(o);
+        collectionVersions.bump(userId);
         
         // Send Kafka event with userId when OTP is created
         try {
@@ -116,28 +138,117 @@ public class OtpService {
         return saved;
     }
 
-    public otp updateOtp(Long id, otp updatedOtp) {
+    /**
+     * Replace an OTP owned by the user in a single statement.
+     *
+     * @throws SecurityException if the OTP belongs to someone else
+     * @throws IllegalArgumentException if it does not exist
+     * @throws IllegalStateException if another entry of the user has the same secret
+     */
+    public otp updateOtp(Long id, Long userId, otp updatedOtp) {
+        // The payload is bound to its owner, so the owner is set before sealing
         updatedOtp.setId(id);
-        return otpRepository.save(updatedOtp);
+        updatedOtp.setUserId(userId);
+        updatedOtp.setSecretFp(secretFingerprint(userId, updatedOtp.getSecret()));
+        if (updatedOtp.getSecretFp() != null && findUnfingerprintedDuplicate(userId, updatedOtp.getSecretFp(), id).isPresent()) {
+            throw new IllegalStateException("Another OTP entry already has this secret");
+        }
+        updatedOtp.seal();
+        try {
+            if (otpRepository.updateOwned(id, userId, updatedOtp) == 0) {
+                throw ownershipFailure(id);
+            }
+        } catch (DataIntegrityViolationException e) {
+            throw new IllegalStateException("Another OTP entry already has this secret");
+        }
+        collectionVersions.bump(userId);
+        return updatedOtp;
     }
 
-    public void deleteOtp(Long id) {
-        otpRepository.deleteById(id);
+    public void deleteOtp(Long id, Long userId) {
+        if (otpRepository.deleteOwned(id, userId) == 0) {
+            throw ownershipFailure(id);
+        }
+        codeEngine.forget(id);
+        collectionVersions.bump(userId);
+    }
+
+    // Tell "not yours" from "not there"; only runs after an owner-scoped statement matched nothing
+    private RuntimeException ownershipFailure(Long id) {
+        if (otpRepository.existsById(id)) {
+            return new SecurityException("OTP belongs to another user");
+        }
+        return new IllegalArgumentException("OTP not found");
     }
 
+    /**
+     * Check a TOTP or HOTP code for the entry, with its algorithm, digits and period.
+     * A code is accepted once: TOTP steps go to the engine's replay cache, HOTP moves the stored counter.
+     */
     public boolean validateOtp(Long id, String code) {
         Optional<otp> o = otpRepository.findById(id);
-        if (o.isPresent() && o.get().getValid() && o.get().getExpiresAt() > System.currentTimeMillis()) {
-            // Aquí deberías implementar la validación TOTP/HOTP real
-            return o.get().getSecret().equals(code);
+        if (o.isEmpty() || !Boolean.TRUE.equals(o.get().getValid())) {
+            return false;
+        }
+        otp entry = o.get();
+        long now = System.currentTimeMillis();
+        if (entry.getExpiresAt() != null && entry.getExpiresAt() <= now) {
+            return false;
+        }
+        OtpCodeEngine.CodeKey key;
+        try {
+            key = codeEngine.key(id, entry.getSecret(), entry.getAlgorithm(), entry.getDigits(), entry.getPeriod());
+        } catch (IllegalArgumentException e) {
+            logger.warn("OTP {} cannot be validated: {}", id, e.getMessage());
+            return false;
+        }
+        if ("HOTP".equalsIgnoreCase(entry.getType())) {
+            long counter = entry.getCounter() != null ? entry.getCounter() : 0L;
+            long next = codeEngine.verifyHotp(key, code, counter);
+            if (next < 0 || otpRepository.advanceCounter(id, counter, next) != 1) {
+                return false;
+            }
+            // The counter is part of the listed entry, so cached lists and code streams must reload
+            collectionVersions.bump(entry.getUserId());
+            return true;
+        }
+        return codeEngine.verifyTotp(key, id, code, now);
+    }
+
+    /**
+     * Keyed fingerprint of a secret, over its decoded bytes so case, spaces and padding do not matter;
+     * a secret that does not decode is fingerprinted in the normalized form the old comparison used.
+     * Null for no secret.
+     */
+    public String secretFingerprint(Long userId, String secret) {
+        if (secret == null || secret.isBlank()) {
+            return null;
+        }
+        byte[] value;
+        try {
+            value = OtpCodeEngine.decodeSecret(secret);
+        } catch (IllegalArgumentException e) {
+            value = secret.trim().replace(" ", "").toUpperCase().getBytes(StandardCharsets.UTF_8);
+        }
+        return EncryptionUtil.secretFingerprint(userId != null ? userId : -1L, value);
+    }
+
+    // Rows from before fingerprints have a null secret_fp, which the unique index ignores, until the
+    // migration job backfills them; compare their secrets so they are not duplicated in the meantime
+    private Optional<otp> findUnfingerprintedDuplicate(Long userId, String secretFp, Long exceptId) {
+        for (otp row : otpRepository.findByUserIdAndSecretFpIsNull(userId)) {
+            if (!row.getId().equals(exceptId) && secretFp.equals(secretFingerprint(userId, row.getSecret()))) {
+                return Optional.of(row);
+            }
         }
-        return false;
+        return Optional.empty();
     }
 
     private String generateSecret() {
         SecureRandom random = new SecureRandom();
         byte[] bytes = new byte[20];
         random.nextBytes(bytes);
-        return Base64.getEncoder().encodeToString(bytes);
+        // Base32 like otpauth URIs; older Base64 secrets still validate
+        return OtpCodeEngine.encodeBase32(bytes);
     }
 }
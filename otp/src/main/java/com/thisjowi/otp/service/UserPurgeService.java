@@ -0,0 +1,123 @@
+package com.thisjowi.otp.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import com.thisjowi.otp.entity.UserPurge;
+import com.thisjowi.otp.repository.OtpRepository;
+import com.thisjowi.otp.repository.UserPurgeRepository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Removes every OTP of a deleted account in primary-key ranges of at most batch-size rows,
+ * one short transaction per range. The end of each range is stored so a restart resumes there.
+ */
+@Component
+public class UserPurgeService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserPurgeService.class);
+
+    @Autowired
+    private UserPurgeRepository purgeRepository;
+
+    @Autowired
+    private OtpRepository otpRepository;
+
+    @Autowired
+    private CollectionVersionCache collectionVersions;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.user-purge.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.user-purge.batch-size:1000}")
+    private int batchSize;
+
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong lagSeconds = new AtomicLong();
+    private Counter purgedRows;
+
+    @PostConstruct
+    void registerMetrics() {
+        Gauge.builder("otp.purge.pending", pending, AtomicLong::get)
+                .description("Deleted accounts whose OTPs are not purged yet").register(meterRegistry);
+        Gauge.builder("otp.purge.lag", lagSeconds, AtomicLong::get)
+                .baseUnit("seconds").description("Age of the oldest unfinished purge").register(meterRegistry);
+        purgedRows = Counter.builder("otp.purge.rows").register(meterRegistry);
+    }
+
+    /**
+     * Record that the user's OTPs must be purged. Idempotent for redelivered events.
+     */
+    public void requestPurge(Long userId) {
+        if (userId == null || userId <= 0) {
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!purgeRepository.existsById(userId)) {
+                purgeRepository.save(new UserPurge(userId, LocalDateTime.now()));
+            }
+        });
+        logger.info("[Purge] OTPs of deleted user {} scheduled for removal", userId);
+    }
+
+    @Scheduled(fixedDelayString = "${app.user-purge.delay-ms:10000}", initialDelayString = "${app.user-purge.initial-delay-ms:30000}")
+    public void run() {
+        if (!enabled) {
+            return;
+        }
+        List<UserPurge> purges = purgeRepository.findByCompletedAtIsNullOrderByRequestedAtAsc(PageRequest.of(0, 10));
+        for (UserPurge purge : purges) {
+            try {
+                Boolean done;
+                do {
+                    done = transactionTemplate.execute(status -> purgeBatch(purge.getUserId()));
+                } while (Boolean.FALSE.equals(done));
+            } catch (RuntimeException e) {
+                logger.error("[Purge] Failed to purge OTPs of user {}", purge.getUserId(), e);
+            }
+        }
+        pending.set(purgeRepository.countByCompletedAtIsNull());
+        LocalDateTime oldest = purgeRepository.findOldestPendingRequest();
+        lagSeconds.set(oldest == null ? 0 : Math.max(0, Duration.between(oldest, LocalDateTime.now()).getSeconds()));
+    }
+
+    // Deletes the next id range and moves the checkpoint; returns true once nothing is left
+    private boolean purgeBatch(Long userId) {
+        UserPurge purge = purgeRepository.findForUpdate(userId).orElse(null);
+        if (purge == null || purge.getCompletedAt() != null) {
+            return true;
+        }
+        List<Long> ids = otpRepository.findIdsForPurge(userId, purge.getLastId(), PageRequest.of(0, batchSize));
+        if (ids.isEmpty()) {
+            purge.setCompletedAt(LocalDateTime.now());
+            collectionVersions.bump(userId);
+            logger.info("[Purge] Removed {} OTPs of deleted user {}", purge.getPurged(), userId);
+            return true;
+        }
+        long toId = ids.get(ids.size() - 1);
+        int deleted = otpRepository.deleteRangeForPurge(userId, purge.getLastId(), toId);
+        purge.setLastId(toId);
+        purge.setPurged(purge.getPurged() + deleted);
+        purgedRows.increment(deleted);
+        return false;
+    }
+}
@@ -4,11 +4,17 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
 import java.util.Base64;
 import jakarta.annotation.PostConstruct;
 import java.util.Arrays;
+import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.HexFormat;
 
 @Component
 public class EncryptionUtil {
@@ -16,11 +22,18 @@ public class EncryptionUtil {
     @Value("${app.encryption.key:ThisIsADefaultKeyForDevOnly123}")
     private String secretKey;
 
+    @Value("${app.encryption.row-payload:true}")
+    private boolean rowPayload;
+
     private static SecretKeySpec secretKeySpec;
+    private static SecretKeySpec payloadKeySpec;
+    private static SecretKeySpec fingerprintKeySpec;
+    private static boolean rowPayloadEnabled = true;
 
     @PostConstruct
     public void init() {
         setKey(secretKey);
+        rowPayloadEnabled = rowPayload;
     }
 
     private static void setKey(String myKey) {
@@ -31,6 +44,11 @@ public class EncryptionUtil {
             key = sha.digest(key);
             key = Arrays.copyOf(key, 16);
             secretKeySpec = new SecretKeySpec(key, "AES");
+            // Separate 256-bit key for the row payloads, so the two formats never share a key
+            byte[] payloadKey = MessageDigest.getInstance("SHA-256").digest(("otp-row-payload:" + myKey).getBytes("UTF-8"));
+            payloadKeySpec = new SecretKeySpec(payloadKey, "AES");
+            byte[] fingerprintKey = MessageDigest.getInstance("SHA-256").digest(("otp-secret-fp:" + myKey).getBytes("UTF-8"));
+            fingerprintKeySpec = new SecretKeySpec(fingerprintKey, "HmacSHA256");
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -66,4 +84,129 @@ public class EncryptionUtil {
             return strToDecrypt;
         }
     }
+
+    // Binary columns: format byte + ciphertext, no Base64
+    private static final byte BINARY_FORMAT_V1 = 1;
+
+    public static byte[] encryptToBytes(String strToEncrypt) {
+        if (strToEncrypt == null) return null;
+        if (secretKeySpec == null) {
+             setKey("ThisIsADefaultKeyForDevOnly123");
+        }
+        try {
+            Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
+            cipher.init(Cipher.ENCRYPT_MODE, secretKeySpec);
+            byte[] input = strToEncrypt.getBytes("UTF-8");
+            byte[] out = new byte[1 + cipher.getOutputSize(input.length)];
+            out[0] = BINARY_FORMAT_V1;
+            int written = cipher.doFinal(input, 0, input.length, out, 1);
+            return written == out.length - 1 ? out : Arrays.copyOf(out, written + 1);
+        } catch (Exception e) {
+            throw new RuntimeException("Error while encrypting: " + e.toString(), e);
+        }
+    }
+
+    public static String decryptBytes(byte[] bytesToDecrypt) {
+        if (bytesToDecrypt == null) return null;
+        if (secretKeySpec == null) {
+             setKey("ThisIsADefaultKeyForDevOnly123");
+        }
+        if (bytesToDecrypt.length == 0 || bytesToDecrypt[0] != BINARY_FORMAT_V1) {
+            throw new IllegalStateException("Unknown binary ciphertext format");
+        }
+        try {
+            Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
+            cipher.init(Cipher.DECRYPT_MODE, secretKeySpec);
+            return new String(cipher.doFinal(bytesToDecrypt, 1, bytesToDecrypt.length - 1), "UTF-8");
+        } catch (Exception e) {
+            // No plaintext fallback here: binary columns were always written encrypted
+            throw new RuntimeException("Error while decrypting: " + e.toString(), e);
+        }
+    }
+
+    // Row payloads: format byte + 12-byte IV + AES-GCM ciphertext and tag. The format byte and the
+    // owner are authenticated too, so a payload cannot be moved to another user's row.
+    private static final byte PAYLOAD_FORMAT_V1 = 2;
+    private static final int GCM_IV_BYTES = 12;
+    private static final int GCM_TAG_BITS = 128;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    // Cipher.getInstance is the expensive part; one GCM cipher per thread is re-initialised instead
+    private static final ThreadLocal<Cipher> GCM = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance("AES/GCM/NoPadding");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES/GCM not available", e);
+        }
+    });
+
+    /**
+     * Whether rows are written as one encrypted payload ({@code app.encryption.row-payload}) instead of
+     * one binary column per field. Both are always readable.
+     */
+    public static boolean rowPayloadEnabled() {
+        return rowPayloadEnabled;
+    }
+
+    public static byte[] encryptPayload(byte[] plaintext, long owner) {
+        if (payloadKeySpec == null) {
+             setKey("ThisIsADefaultKeyForDevOnly123");
+        }
+        try {
+            byte[] out = new byte[1 + GCM_IV_BYTES + plaintext.length + GCM_TAG_BITS / 8];
+            out[0] = PAYLOAD_FORMAT_V1;
+            byte[] iv = new byte[GCM_IV_BYTES];
+            RANDOM.nextBytes(iv);
+            System.arraycopy(iv, 0, out, 1, GCM_IV_BYTES);
+            Cipher cipher = GCM.get();
+            cipher.init(Cipher.ENCRYPT_MODE, payloadKeySpec, new GCMParameterSpec(GCM_TAG_BITS, iv));
+            cipher.updateAAD(associatedData(owner));
+            cipher.doFinal(plaintext, 0, plaintext.length, out, 1 + GCM_IV_BYTES);
+            return out;
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Error while encrypting: " + e.toString(), e);
+        }
+    }
+
+    /**
+     * @throws IllegalStateException on an unknown format, a tampered payload or the wrong owner
+     */
+    public static byte[] decryptPayload(byte[] payload, long owner) {
+        if (payloadKeySpec == null) {
+             setKey("ThisIsADefaultKeyForDevOnly123");
+        }
+        if (payload.length < 1 + GCM_IV_BYTES + GCM_TAG_BITS / 8 || payload[0] != PAYLOAD_FORMAT_V1) {
+            throw new IllegalStateException("Unknown payload format");
+        }
+        try {
+            Cipher cipher = GCM.get();
+            cipher.init(Cipher.DECRYPT_MODE, payloadKeySpec, new GCMParameterSpec(GCM_TAG_BITS, payload, 1, GCM_IV_BYTES));
+            cipher.updateAAD(associatedData(owner));
+            return cipher.doFinal(payload, 1 + GCM_IV_BYTES, payload.length - 1 - GCM_IV_BYTES);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Payload failed authentication", e);
+        }
+    }
+
+    private static byte[] associatedData(long owner) {
+        return ByteBuffer.allocate(9).put(PAYLOAD_FORMAT_V1).putLong(owner).array();
+    }
+
+    /**
+     * Keyed fingerprint of an OTP secret, 32 hex characters: equal for equal secrets of the same owner,
+     * unrelated across owners, and useless without the key.
+     */
+    public static String secretFingerprint(long owner, byte[] secret) {
+        if (fingerprintKeySpec == null) {
+             setKey("ThisIsADefaultKeyForDevOnly123");
+        }
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(fingerprintKeySpec);
+            mac.update(ByteBuffer.allocate(8).putLong(owner).array());
+            return HexFormat.of().formatHex(mac.doFinal(secret), 0, 16);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 not available", e);
+        }
+    }
 }
@@ -0,0 +1,39 @@
+package com.thisjowi.otp.util;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import javax.crypto.SecretKey;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+@Component
+public class JwtUtil {
+    private final SecretKey key;
+
+    public JwtUtil(@Value("${app.jwt.secret}") String secret) {
+        if (secret == null || secret.trim().isEmpty()) {
+            throw new IllegalArgumentException("JWT secret cannot be null or empty");
+        }
+        this.key = Keys.hmacShaKeyFor(secret.getBytes());
+    }
+
+    /**
+     * User id in the subject of a token signed by the auth service; null if the signature does not
+     * verify, the token expired or the subject is not a number.
+     */
+    public Long extractUserId(String token) {
+        if (token == null || token.isBlank()) return null;
+        String jwt = token.startsWith("Bearer ") ? token.substring(7) : token;
+        try {
+            String subject = Jwts.parser()
+                    .verifyWith(key)
+                    .build()
+                    .parseSignedClaims(jwt)
+                    .getPayload()
+                    .getSubject();
+            return Long.parseLong(subject);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
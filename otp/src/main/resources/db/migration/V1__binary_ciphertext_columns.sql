@@ -0,0 +1,16 @@
+-- Encrypted fields are stored as raw bytes (format byte + ciphertext) instead of Base64 text.
+-- New rows only fill the *_bin columns, so the legacy text columns must accept NULL.
+-- On a fresh database Hibernate creates the table after this runs, hence the guards.
+ALTER TABLE IF EXISTS otp ADD COLUMN IF NOT EXISTS email_bin BYTEA;
+ALTER TABLE IF EXISTS otp ADD COLUMN IF NOT EXISTS secret_bin BYTEA;
+ALTER TABLE IF EXISTS otp ADD COLUMN IF NOT EXISTS expires_at_bin BYTEA;
+ALTER TABLE IF EXISTS otp ADD COLUMN IF NOT EXISTS type_bin BYTEA;
+ALTER TABLE IF EXISTS otp ADD COLUMN IF NOT EXISTS digits_bin BYTEA;
+ALTER TABLE IF EXISTS otp ADD COLUMN IF NOT EXISTS algorithm_bin BYTEA;
+ALTER TABLE IF EXISTS otp ADD COLUMN IF NOT EXISTS valid_bin BYTEA;
+
+ALTER TABLE IF EXISTS otp ALTER COLUMN email DROP NOT NULL;
+ALTER TABLE IF EXISTS otp ALTER COLUMN secret DROP NOT NULL;
+ALTER TABLE IF EXISTS otp ALTER COLUMN expires_at DROP NOT NULL;
+ALTER TABLE IF EXISTS otp ALTER COLUMN type DROP NOT NULL;
+ALTER TABLE IF EXISTS otp ALTER COLUMN valid DROP NOT NULL;
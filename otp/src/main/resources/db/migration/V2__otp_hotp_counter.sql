@@ -0,0 +1,3 @@
+-- HOTP entries keep the next counter to accept; NULL reads as 0.
+-- On a fresh database Hibernate creates the table after this runs, hence the guard.
+ALTER TABLE IF EXISTS otp ADD COLUMN IF NOT EXISTS counter BIGINT;
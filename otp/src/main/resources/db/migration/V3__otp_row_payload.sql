@@ -0,0 +1,4 @@
+-- Sensitive fields sealed into one AES-GCM payload per row (format byte + IV + ciphertext and tag).
+-- Existing rows keep their per-field columns until the migration job seals them.
+-- On a fresh database Hibernate creates the table after this runs, hence the guard.
+ALTER TABLE IF EXISTS otp ADD COLUMN IF NOT EXISTS payload BYTEA;
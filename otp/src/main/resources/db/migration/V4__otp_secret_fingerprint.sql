@@ -0,0 +1,3 @@
+-- Keyed fingerprint of the secret for duplicate detection, filled for old rows by the migration job.
+-- The unique idx_otp_user_secret_fp comes from the entity mapping; NULLs do not collide until then.
+ALTER TABLE IF EXISTS otp ADD COLUMN IF NOT EXISTS secret_fp VARCHAR(32);
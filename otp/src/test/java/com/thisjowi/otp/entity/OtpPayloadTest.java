@@ -0,0 +1,217 @@
+package com.thisjowi.otp.entity;
+
+import com.thisjowi.otp.util.EncryptionUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OtpPayloadTest {
+
+    private static final String KEY = "ThisIsADefaultKeyForDevOnly123";
+
+    @AfterEach
+    public void tearDown() {
+        rowPayload(true);
+    }
+
+    @Test
+    public void testSealThenOpenRoundTrip() {
+        otp entry = entry(7L);
+        entry.seal();
+
+        assertNotNull(entry.getPayload());
+        assertNull(entry.getSecretBin());
+        assertNull(entry.getEmailBin());
+
+        otp loaded = load(7L, entry.getPayload());
+        assertEquals("alice@example.com", loaded.getEmail());
+        assertEquals("JBSWY3DPEHPK3PXP", loaded.getSecret());
+        assertEquals(1_700_000_000_000L, loaded.getExpiresAt());
+        assertEquals("TOTP", loaded.getType());
+        assertEquals(8, loaded.getDigits());
+        assertEquals("SHA256", loaded.getAlgorithm());
+        assertEquals(Boolean.TRUE, loaded.getValid());
+    }
+
+    @Test
+    public void testMissingFieldsStayMissing() {
+        otp entry = new otp();
+        entry.setUserId(7L);
+        entry.setSecret("JBSWY3DPEHPK3PXP");
+        entry.setValid(false);
+        entry.seal();
+
+        otp loaded = load(7L, entry.getPayload());
+        assertEquals("JBSWY3DPEHPK3PXP", loaded.getSecret());
+        assertEquals(Boolean.FALSE, loaded.getValid());
+        assertNull(loaded.getEmail());
+        assertNull(loaded.getExpiresAt());
+        assertNull(loaded.getType());
+        assertNull(loaded.getDigits());
+        assertNull(loaded.getAlgorithm());
+
+        entry.setValid(null);
+        entry.seal();
+        assertNull(load(7L, entry.getPayload()).getValid());
+    }
+
+    @Test
+    public void testPayloadDoesNotOpenUnderAnotherOwner() {
+        otp entry = entry(7L);
+        entry.seal();
+
+        assertThrows(IllegalStateException.class, () -> load(8L, entry.getPayload()));
+        assertThrows(IllegalStateException.class, () -> load(null, entry.getPayload()));
+
+        otp unowned = entry(null);
+        unowned.seal();
+        assertEquals("JBSWY3DPEHPK3PXP", load(null, unowned.getPayload()).getSecret());
+        assertThrows(IllegalStateException.class, () -> load(7L, unowned.getPayload()));
+    }
+
+    @Test
+    public void testTamperedPayloadIsRejected() {
+        otp entry = entry(7L);
+        entry.seal();
+        byte[] tampered = Arrays.copyOf(entry.getPayload(), entry.getPayload().length);
+        tampered[tampered.length - 1] ^= 1;
+
+        assertThrows(IllegalStateException.class, () -> load(7L, tampered));
+        assertThrows(IllegalStateException.class, () -> load(7L, Arrays.copyOf(tampered, 10)));
+    }
+
+    @Test
+    public void testLegacyColumnsAreReadAndClearedOnSeal() {
+        // The converters have already decrypted the legacy text columns when @PostLoad runs
+        otp legacy = new otp();
+        legacy.setUserId(7L);
+        legacy.setLegacyEmail("alice@example.com");
+        legacy.setLegacySecret("JBSWY3DPEHPK3PXP");
+        legacy.setLegacyExpiresAt(1_700_000_000_000L);
+        legacy.setLegacyType("HOTP");
+        legacy.setLegacyDigits(6);
+        legacy.setLegacyAlgorithm("SHA1");
+        legacy.setLegacyValid(true);
+        legacy.open();
+
+        assertEquals("alice@example.com", legacy.getEmail());
+        assertEquals("JBSWY3DPEHPK3PXP", legacy.getSecret());
+        assertEquals(1_700_000_000_000L, legacy.getExpiresAt());
+        assertEquals("HOTP", legacy.getType());
+        assertEquals(6, legacy.getDigits());
+        assertEquals("SHA1", legacy.getAlgorithm());
+        assertEquals(Boolean.TRUE, legacy.getValid());
+
+        legacy.seal();
+        assertNull(legacy.getLegacyEmail());
+        assertNull(legacy.getLegacySecret());
+        assertNull(legacy.getLegacyExpiresAt());
+        assertNull(legacy.getLegacyType());
+        assertNull(legacy.getLegacyDigits());
+        assertNull(legacy.getLegacyAlgorithm());
+        assertNull(legacy.getLegacyValid());
+        assertEquals("HOTP", load(7L, legacy.getPayload()).getType());
+    }
+
+    @Test
+    public void testBinaryColumnsWinOverLegacyColumns() {
+        otp row = new otp();
+        row.setUserId(7L);
+        row.setSecretBin("NEWSECRET");
+        row.setLegacySecret("OLDSECRET");
+        row.setLegacyType("TOTP");
+        row.open();
+
+        assertEquals("NEWSECRET", row.getSecret());
+        assertEquals("TOTP", row.getType());
+    }
+
+    @Test
+    public void testBinaryColumnsWhenRowPayloadIsOff() {
+        rowPayload(false);
+        otp entry = entry(7L);
+        entry.setPayload(new byte[]{2});
+        entry.seal();
+
+        assertNull(entry.getPayload());
+        assertEquals("JBSWY3DPEHPK3PXP", entry.getSecretBin());
+        assertEquals("alice@example.com", entry.getEmailBin());
+        assertEquals(8, entry.getDigitsBin());
+        assertEquals(Boolean.TRUE, entry.getValidBin());
+
+        otp loaded = new otp();
+        loaded.setUserId(7L);
+        loaded.setSecretBin(entry.getSecretBin());
+        loaded.setAlgorithmBin(entry.getAlgorithmBin());
+        loaded.open();
+        assertEquals("JBSWY3DPEHPK3PXP", loaded.getSecret());
+        assertEquals("SHA256", loaded.getAlgorithm());
+    }
+
+    @Test
+    public void testSettingASealedFieldDirtiesThePayload() {
+        otp entry = entry(7L);
+        entry.seal();
+        otp loaded = load(7L, entry.getPayload());
+        byte[] stored = loaded.getPayload();
+
+        // A plain save must see a changed column, or the new secret would never be written
+        loaded.setSecret("NEWSECRETNEWSECR");
+        assertFalse(Arrays.equals(stored, loaded.getPayload()));
+
+        loaded.seal();
+        otp reloaded = load(7L, loaded.getPayload());
+        assertEquals("NEWSECRETNEWSECR", reloaded.getSecret());
+        assertEquals("alice@example.com", reloaded.getEmail());
+    }
+
+    @Test
+    public void testSettingASealedFieldDirtiesBinaryRowsToo() {
+        rowPayload(false);
+        otp loaded = new otp();
+        loaded.setUserId(7L);
+        loaded.setValidBin(true);
+        loaded.open();
+
+        loaded.setValid(false);
+        // The payload column was null on load, so the placeholder is a change as well
+        assertNotNull(loaded.getPayload());
+
+        loaded.seal();
+        assertNull(loaded.getPayload());
+        assertEquals(Boolean.FALSE, loaded.getValidBin());
+    }
+
+    private static otp entry(Long userId) {
+        otp entry = new otp();
+        entry.setUserId(userId);
+        entry.setEmail("alice@example.com");
+        entry.setSecret("JBSWY3DPEHPK3PXP");
+        entry.setExpiresAt(1_700_000_000_000L);
+        entry.setType("TOTP");
+        entry.setDigits(8);
+        entry.setAlgorithm("SHA256");
+        entry.setValid(true);
+        return entry;
+    }
+
+    // What Hibernate does on load: only the columns are set, then @PostLoad runs
+    private static otp load(Long userId, byte[] payload) {
+        otp loaded = new otp();
+        loaded.setUserId(userId);
+        loaded.setPayload(payload);
+        loaded.open();
+        return loaded;
+    }
+
+    private static void rowPayload(boolean enabled) {
+        EncryptionUtil util = new EncryptionUtil();
+        ReflectionTestUtils.setField(util, "secretKey", KEY);
+        ReflectionTestUtils.setField(util, "rowPayload", enabled);
+        util.init();
+    }
+}
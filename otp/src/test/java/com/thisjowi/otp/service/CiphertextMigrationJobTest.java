@@ -0,0 +1,87 @@
+package com.thisjowi.otp.service;
+
+import com.thisjowi.otp.entity.otp;
+import com.thisjowi.otp.repository.OtpRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CiphertextMigrationJobTest {
+
+    private final OtpRepository otpRepository = mock(OtpRepository.class);
+    private final TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+    private final OtpService otpService = new OtpService();
+    private final CiphertextMigrationJob job = new CiphertextMigrationJob();
+
+    @BeforeEach
+    public void setUp() {
+        ReflectionTestUtils.setField(job, "otpRepository", otpRepository);
+        ReflectionTestUtils.setField(job, "otpService", otpService);
+        ReflectionTestUtils.setField(job, "transactionTemplate", transactionTemplate);
+        ReflectionTestUtils.setField(job, "enabled", true);
+        ReflectionTestUtils.setField(job, "batchSize", 500);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<Integer>>getArgument(0).doInTransaction(null));
+        when(otpRepository.findUnsealed(any())).thenReturn(List.of());
+    }
+
+    @Test
+    public void testBackfillFingerprintsLegacyRows() {
+        otp first = entry(1L, 7L, "JBSWY3DPEHPK3PXP");
+        otp duplicate = entry(2L, 7L, "jbsw y3dp ehpk 3pxp");
+        otp noSecret = entry(3L, 7L, null);
+        otp otherUser = entry(4L, 8L, "JBSWY3DPEHPK3PXP");
+        otp alreadyIndexed = entry(5L, 7L, "GEZDGNBVGY3TQOJQ");
+        when(otpRepository.findMissingFingerprint(eq(0L), any(Pageable.class)))
+                .thenReturn(List.of(first, duplicate, noSecret, otherUser, alreadyIndexed));
+        when(otpRepository.existsByUserIdAndSecretFp(anyLong(), anyString())).thenReturn(false);
+        when(otpRepository.existsByUserIdAndSecretFp(7L, otpService.secretFingerprint(7L, "GEZDGNBVGY3TQOJQ"))).thenReturn(true);
+
+        job.migrate();
+
+        assertEquals(otpService.secretFingerprint(7L, "JBSWY3DPEHPK3PXP"), first.getSecretFp());
+        // The oldest of two equal secrets keeps the fingerprint, the others get a unique placeholder
+        assertEquals("-2", duplicate.getSecretFp());
+        assertEquals("-3", noSecret.getSecretFp());
+        assertEquals(otpService.secretFingerprint(8L, "JBSWY3DPEHPK3PXP"), otherUser.getSecretFp());
+        assertEquals("-5", alreadyIndexed.getSecretFp());
+        verify(otpRepository).saveAll(List.of(first, duplicate, noSecret, otherUser, alreadyIndexed));
+    }
+
+    @Test
+    public void testBackfillPagesByIdUntilAShortBatch() {
+        ReflectionTestUtils.setField(job, "batchSize", 2);
+        when(otpRepository.findMissingFingerprint(eq(0L), any(Pageable.class)))
+                .thenReturn(List.of(entry(1L, 7L, "JBSWY3DPEHPK3PXP"), entry(2L, 7L, "GEZDGNBVGY3TQOJQ")));
+        when(otpRepository.findMissingFingerprint(eq(2L), any(Pageable.class)))
+                .thenReturn(List.of(entry(6L, 7L, "MZXW6YTBOI")));
+
+        job.migrate();
+
+        verify(otpRepository).findMissingFingerprint(eq(2L), any(Pageable.class));
+        verify(otpRepository, never()).findMissingFingerprint(eq(6L), any(Pageable.class));
+    }
+
+    private static otp entry(Long id, Long userId, String secret) {
+        otp entry = new otp();
+        entry.setId(id);
+        entry.setUserId(userId);
+        entry.setSecret(secret);
+        return entry;
+    }
+}
@@ -0,0 +1,206 @@
+package com.thisjowi.otp.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OtpCodeEngineTest {
+
+    // RFC 6238 Appendix B seeds; RFC 4226 uses the SHA1 one
+    private static final String SHA1_SEED = base32("12345678901234567890");
+    private static final String SHA256_SEED = base32("12345678901234567890123456789012");
+    private static final String SHA512_SEED = base32("1234567890123456789012345678901234567890123456789012345678901234");
+
+    private final OtpCodeEngine engine = new OtpCodeEngine(1, 10, 100);
+
+    @Test
+    public void testRfc4226AppendixD() {
+        int[] expected = {755224, 287082, 359152, 969429, 338314, 254676, 287922, 162583, 399871, 520489};
+        OtpCodeEngine.CodeKey key = new OtpCodeEngine.CodeKey(SHA1_SEED, null, 6, null);
+
+        for (int counter = 0; counter < expected.length; counter++) {
+            assertEquals(expected[counter], engine.generate(key, counter), "counter " + counter);
+        }
+    }
+
+    @Test
+    public void testRfc6238AppendixB() {
+        long[] times = {59L, 1111111109L, 1111111111L, 1234567890L, 2000000000L, 20000000000L};
+        String[][] expected = {
+                {"94287082", "46119246", "90693936"},
+                {"07081804", "68084774", "25091201"},
+                {"14050471", "67062674", "99943326"},
+                {"89005924", "91819424", "93441116"},
+                {"69279037", "90698825", "38618901"},
+                {"65353130", "77737706", "47863826"},
+        };
+        OtpCodeEngine.CodeKey[] keys = {
+                new OtpCodeEngine.CodeKey(SHA1_SEED, "SHA1", 8, 30),
+                new OtpCodeEngine.CodeKey(SHA256_SEED, "SHA256", 8, 30),
+                new OtpCodeEngine.CodeKey(SHA512_SEED, "SHA512", 8, 30),
+        };
+
+        for (int t = 0; t < times.length; t++) {
+            for (int a = 0; a < keys.length; a++) {
+                // A fresh engine per check, so the replay cache does not interfere
+                OtpCodeEngine fresh = new OtpCodeEngine(0, 10, 100);
+                assertTrue(fresh.verifyTotp(keys[a], 1L, expected[t][a], times[t] * 1000),
+                        "time " + times[t] + ", algorithm " + a);
+            }
+        }
+    }
+
+    @Test
+    public void testAlgorithmNamesAreNormalized() {
+        int sha256 = engine.generate(new OtpCodeEngine.CodeKey(SHA256_SEED, "SHA256", 8, 30), 1);
+
+        assertEquals(sha256, engine.generate(new OtpCodeEngine.CodeKey(SHA256_SEED, "HmacSHA256", 8, 30), 1));
+        assertEquals(sha256, engine.generate(new OtpCodeEngine.CodeKey(SHA256_SEED, "sha-256", 8, 30), 1));
+        assertThrows(IllegalArgumentException.class, () -> new OtpCodeEngine.CodeKey(SHA1_SEED, "MD5", 6, 30));
+        assertThrows(IllegalArgumentException.class, () -> new OtpCodeEngine.CodeKey(SHA1_SEED, null, 10, 30));
+        assertThrows(IllegalArgumentException.class, () -> new OtpCodeEngine.CodeKey(SHA1_SEED, null, 6, 0));
+    }
+
+    @Test
+    public void testSkewWindow() {
+        OtpCodeEngine.CodeKey key = new OtpCodeEngine.CodeKey(SHA1_SEED, null, 6, 30);
+        long step = 50_000_000L;
+        String code = code(key, step);
+
+        assertTrue(engine.verifyTotp(key, 1L, code, (step - 1) * 30_000 + 5_000), "one step early");
+        assertTrue(engine.verifyTotp(key, 2L, code, step * 30_000), "same step");
+        assertTrue(engine.verifyTotp(key, 3L, code, (step + 1) * 30_000 + 29_999), "one step late");
+        assertFalse(engine.verifyTotp(key, 4L, code, (step + 2) * 30_000), "two steps late");
+        assertFalse(engine.verifyTotp(key, 5L, code, (step - 2) * 30_000), "two steps early");
+
+        OtpCodeEngine strict = new OtpCodeEngine(0, 10, 100);
+        assertFalse(strict.verifyTotp(key, 6L, code, (step + 1) * 30_000));
+        assertTrue(strict.verifyTotp(key, 6L, code, step * 30_000));
+    }
+
+    @Test
+    public void testReusedStepIsRejected() {
+        OtpCodeEngine.CodeKey key = new OtpCodeEngine.CodeKey(SHA1_SEED, null, 6, 30);
+        long step = 50_000_000L;
+        String code = code(key, step);
+
+        assertTrue(engine.verifyTotp(key, 1L, code, step * 30_000));
+        assertFalse(engine.verifyTotp(key, 1L, code, step * 30_000 + 10_000));
+        // Still rejected from the next step, where the skew window would otherwise accept it
+        assertFalse(engine.verifyTotp(key, 1L, code, (step + 1) * 30_000));
+        // Other entries with the same secret keep their own replay state
+        assertTrue(engine.verifyTotp(key, 2L, code, step * 30_000));
+        // The next step's code is a new code
+        assertTrue(engine.verifyTotp(key, 1L, code(key, step + 1), (step + 1) * 30_000));
+    }
+
+    @Test
+    public void testOlderStepIsRejectedAfterANewerOne() {
+        OtpCodeEngine.CodeKey key = new OtpCodeEngine.CodeKey(SHA1_SEED, null, 6, 30);
+        long step = 50_000_000L;
+        long now = step * 30_000;
+
+        // The code of the next step arrives first, within the skew window
+        assertTrue(engine.verifyTotp(key, 1L, code(key, step + 1), now));
+        // The current and previous codes are still in the window but no longer later than the accepted one
+        assertFalse(engine.verifyTotp(key, 1L, code(key, step), now));
+        assertFalse(engine.verifyTotp(key, 1L, code(key, step - 1), now));
+        assertTrue(engine.verifyTotp(key, 1L, code(key, step + 2), (step + 1) * 30_000));
+    }
+
+    @Test
+    public void testChangedKeyStartsOver() {
+        OtpCodeEngine.CodeKey key = engine.key(1L, SHA1_SEED, null, 6, 30);
+        long step = 50_000_000L;
+        assertTrue(engine.verifyTotp(key, 1L, code(key, step + 1), step * 30_000));
+
+        OtpCodeEngine.CodeKey changed = engine.key(1L, SHA256_SEED, "SHA256", 6, 30);
+        assertTrue(engine.verifyTotp(changed, 1L, code(changed, step), step * 30_000));
+
+        engine.forget(1L);
+        OtpCodeEngine.CodeKey recreated = engine.key(1L, SHA1_SEED, null, 6, 30);
+        assertTrue(engine.verifyTotp(recreated, 1L, code(recreated, step), step * 30_000));
+    }
+
+    @Test
+    public void testWrongOrMalformedCodesAreRejected() {
+        OtpCodeEngine.CodeKey key = new OtpCodeEngine.CodeKey(SHA1_SEED, null, 6, 30);
+        long now = 50_000_000L * 30_000;
+        String code = code(key, 50_000_000L);
+
+        assertFalse(engine.verifyTotp(key, 1L, code.substring(1), now));
+        assertFalse(engine.verifyTotp(key, 1L, code + "0", now));
+        assertFalse(engine.verifyTotp(key, 1L, "12a456", now));
+        assertFalse(engine.verifyTotp(key, 1L, null, now));
+        assertTrue(engine.verifyTotp(key, 1L, code.substring(0, 3) + " " + code.substring(3), now));
+    }
+
+    @Test
+    public void testHotpLookAhead() {
+        OtpCodeEngine.CodeKey key = new OtpCodeEngine.CodeKey(SHA1_SEED, null, 6, null);
+
+        assertEquals(1, engine.verifyHotp(key, "755224", 0));
+        assertEquals(10, engine.verifyHotp(key, "520489", 0));
+        assertEquals(-1, engine.verifyHotp(key, "755224", 1), "counters behind are never accepted");
+        assertEquals(-1, new OtpCodeEngine(1, 3, 100).verifyHotp(key, "520489", 0), "beyond the look-ahead");
+    }
+
+    @Test
+    public void testBase32Decoding() {
+        assertArrayEquals("12345678901234567890".getBytes(StandardCharsets.US_ASCII), OtpCodeEngine.decodeSecret(SHA1_SEED));
+        assertArrayEquals("12345678901234567890".getBytes(StandardCharsets.US_ASCII), OtpCodeEngine.decodeSecret(SHA1_SEED.toLowerCase()));
+        assertArrayEquals("12345678901234567890".getBytes(StandardCharsets.US_ASCII),
+                OtpCodeEngine.decodeSecret(" GEZD GNBV GY3T QOJQ GEZD-GNBV-GY3T-QOJQ "));
+
+        // RFC 4648 section 10 vectors, padded and unpadded
+        assertArrayEquals("f".getBytes(), OtpCodeEngine.decodeSecret("MY======"));
+        assertArrayEquals("fo".getBytes(), OtpCodeEngine.decodeSecret("MZXQ===="));
+        assertArrayEquals("foo".getBytes(), OtpCodeEngine.decodeSecret("MZXW6==="));
+        assertArrayEquals("foo".getBytes(), OtpCodeEngine.decodeSecret("MZXW6"));
+        assertArrayEquals("foob".getBytes(), OtpCodeEngine.decodeSecret("MZXW6YQ="));
+        assertArrayEquals("fooba".getBytes(), OtpCodeEngine.decodeSecret("MZXW6YTB"));
+        assertArrayEquals("foobar".getBytes(), OtpCodeEngine.decodeSecret("mzxw6ytboi======"));
+
+        assertEquals("MZXW6YTBOI", OtpCodeEngine.encodeBase32("foobar".getBytes()));
+    }
+
+    @Test
+    public void testLegacyBase64SecretsStillDecode() {
+        byte[] bytes = new byte[20];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (i * 37);
+        }
+
+        assertArrayEquals(bytes, OtpCodeEngine.decodeSecret(Base64.getEncoder().encodeToString(bytes)));
+    }
+
+    @Test
+    public void testInvalidSecretsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> OtpCodeEngine.decodeSecret(null));
+        assertThrows(IllegalArgumentException.class, () -> OtpCodeEngine.decodeSecret("  "));
+        assertThrows(IllegalArgumentException.class, () -> OtpCodeEngine.decodeSecret("======"));
+        assertThrows(IllegalArgumentException.class, () -> OtpCodeEngine.decodeSecret("not a secret!"));
+        assertThrows(IllegalArgumentException.class, () -> new OtpCodeEngine.CodeKey("", null, 6, 30));
+    }
+
+    @Test
+    public void testKeysAreCachedUntilTheEntryChanges() {
+        OtpCodeEngine.CodeKey key = engine.key(1L, SHA1_SEED, null, 6, 30);
+
+        assertSame(key, engine.key(1L, SHA1_SEED, null, 6, 30));
+        assertNotSame(key, engine.key(1L, SHA1_SEED, null, 8, 30));
+        engine.forget(1L);
+        assertNotSame(key, engine.key(1L, SHA1_SEED, null, 6, 30));
+    }
+
+    private String code(OtpCodeEngine.CodeKey key, long step) {
+        return String.format("%0" + key.getDigits() + "d", engine.generate(key, step));
+    }
+
+    private static String base32(String ascii) {
+        return OtpCodeEngine.encodeBase32(ascii.getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,190 @@
+package com.thisjowi.otp.service;
+
+import com.thisjowi.otp.dto.OtpCode;
+import com.thisjowi.otp.entity.otp;
+import com.thisjowi.otp.repository.OtpRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class OtpCodeServiceTest {
+
+    private static final long USER_ID = 7L;
+    // RFC 6238 SHA-1 key "12345678901234567890" in Base32
+    private static final String SECRET = "GEZDGNBVGY3TQOJQGEZDGNBVGY3TQOJQ";
+
+    private final OtpRepository otpRepository = mock(OtpRepository.class);
+    private final OtpCodeEngine codeEngine = new OtpCodeEngine(1, 10, 100);
+    private final CollectionVersionCache collectionVersions = new CollectionVersionCache(100);
+    private OtpCodeService codeService;
+
+    @BeforeEach
+    public void setUp() {
+        codeService = new OtpCodeService();
+        ReflectionTestUtils.setField(codeService, "otpRepository", otpRepository);
+        ReflectionTestUtils.setField(codeService, "codeEngine", codeEngine);
+        ReflectionTestUtils.setField(codeService, "collectionVersions", collectionVersions);
+        ReflectionTestUtils.setField(codeService, "streamTimeoutMs", 60_000L);
+        ReflectionTestUtils.setField(codeService, "streamThreads", 2);
+        ReflectionTestUtils.setField(codeService, "maxBacklog", 2);
+        codeService.init();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        codeService.shutdown();
+    }
+
+    @Test
+    public void testGetCodesComputesCurrentAndNextCodes() {
+        otp hotp = entry(2L, "HOTP", 30);
+        hotp.setCounter(5L);
+        otp disabled = entry(3L, "TOTP", 30);
+        disabled.setValid(false);
+        otp broken = entry(4L, "TOTP", 30);
+        broken.setSecret("not base32 or base64!");
+        when(otpRepository.findByUserId(USER_ID)).thenReturn(List.of(hotp, entry(1L, "TOTP", 30), disabled, broken));
+
+        List<OtpCode> codes = codeService.getCodes(USER_ID);
+
+        assertEquals(2, codes.size());
+        OtpCode totp = codes.get(0);
+        assertEquals(1L, totp.getId());
+        assertEquals(30, totp.getPeriod());
+        OtpCodeEngine.CodeKey key = new OtpCodeEngine.CodeKey(SECRET, "SHA1", 6, 30);
+        long step = totp.getValidUntil() / 30_000L - 1;
+        assertEquals(format(codeEngine.generate(key, step)), totp.getCode());
+        assertEquals(format(codeEngine.generate(key, step + 1)), totp.getNextCode());
+
+        OtpCode counter = codes.get(1);
+        assertEquals("HOTP", counter.getType());
+        assertNull(counter.getPeriod());
+        assertNull(counter.getValidUntil());
+        assertEquals(format(codeEngine.generate(key, 5)), counter.getCode());
+        assertEquals(format(codeEngine.generate(key, 6)), counter.getNextCode());
+    }
+
+    @Test
+    public void testStreamSendsEveryCodeOnConnect() throws InterruptedException {
+        when(otpRepository.findByUserId(USER_ID)).thenReturn(List.of(entry(1L, "TOTP", 30), entry(2L, "TOTP", 60)));
+        RecordingEmitter emitter = new RecordingEmitter(Integer.MAX_VALUE);
+
+        codeService.open(USER_ID, emitter);
+
+        assertNotNull(emitter.events.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testStalledClientDoesNotDelayOtherStreams() throws InterruptedException {
+        when(otpRepository.findByUserId(USER_ID)).thenReturn(List.of(entry(1L, "TOTP", 1)));
+        RecordingEmitter stalled = new RecordingEmitter(0);
+        RecordingEmitter healthy = new RecordingEmitter(Integer.MAX_VALUE);
+
+        codeService.open(USER_ID, stalled);
+        codeService.open(USER_ID, healthy);
+
+        // Connect snapshot plus ticks of the one-second period, while the other stream is stuck in a write
+        for (int i = 0; i < 3; i++) {
+            assertNotNull(healthy.events.poll(5, TimeUnit.SECONDS), "event " + i);
+        }
+        stalled.release.countDown();
+    }
+
+    @Test
+    public void testStreamFallingBehindIsClosed() throws InterruptedException {
+        when(otpRepository.findByUserId(USER_ID)).thenReturn(List.of(entry(1L, "TOTP", 1)));
+        // The snapshot goes out, then the client stops reading
+        RecordingEmitter emitter = new RecordingEmitter(1);
+
+        codeService.open(USER_ID, emitter);
+
+        assertNotNull(emitter.events.poll(5, TimeUnit.SECONDS));
+        // One tick is stuck writing and max-backlog more are queued within a few periods
+        Thread.sleep(4_000);
+        emitter.release.countDown();
+        assertTrue(emitter.completed.await(5, TimeUnit.SECONDS));
+        int sent = emitter.sends.get();
+        Thread.sleep(2_000);
+        assertEquals(sent, emitter.sends.get());
+    }
+
+    @Test
+    public void testChangedCollectionIsReloaded() throws InterruptedException {
+        when(otpRepository.findByUserId(USER_ID)).thenReturn(List.of(entry(1L, "TOTP", 1)));
+        RecordingEmitter emitter = new RecordingEmitter(Integer.MAX_VALUE);
+
+        codeService.open(USER_ID, emitter);
+        assertNotNull(emitter.events.poll(5, TimeUnit.SECONDS));
+        verify(otpRepository, timeout(5_000).times(1)).findByUserId(USER_ID);
+
+        collectionVersions.bump(USER_ID);
+
+        verify(otpRepository, timeout(5_000).atLeast(2)).findByUserId(USER_ID);
+    }
+
+    private static otp entry(Long id, String type, int period) {
+        otp o = new otp();
+        o.setId(id);
+        o.setUserId(USER_ID);
+        o.setType(type);
+        o.setSecret(SECRET);
+        o.setAlgorithm("SHA1");
+        o.setDigits(6);
+        o.setPeriod(period);
+        o.setValid(true);
+        return o;
+    }
+
+    private static String format(int code) {
+        return String.format("%06d", code);
+    }
+
+    // Records events; every send after the first sendsBeforeStall blocks until released
+    private static final class RecordingEmitter extends SseEmitter {
+        final BlockingQueue<SseEventBuilder> events = new LinkedBlockingQueue<>();
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch completed = new CountDownLatch(1);
+        final AtomicInteger sends = new AtomicInteger();
+        final int sendsBeforeStall;
+
+        RecordingEmitter(int sendsBeforeStall) {
+            super(60_000L);
+            this.sendsBeforeStall = sendsBeforeStall;
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            if (sends.getAndIncrement() >= sendsBeforeStall) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+            }
+            events.add(builder);
+        }
+
+        @Override
+        public void complete() {
+            completed.countDown();
+        }
+    }
+}
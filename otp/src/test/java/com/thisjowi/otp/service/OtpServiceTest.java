@@ -0,0 +1,155 @@
+package com.thisjowi.otp.service;
+
+import com.thisjowi.otp.entity.otp;
+import com.thisjowi.otp.kafka.KafkaProducerService;
+import com.thisjowi.otp.repository.OtpRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class OtpServiceTest {
+
+    private static final String SECRET = "JBSWY3DPEHPK3PXP";
+
+    @Mock
+    private OtpRepository otpRepository;
+
+    @Mock
+    private KafkaProducerService kafkaProducerService;
+
+    @Mock
+    private CollectionVersionCache collectionVersions;
+
+    @Mock
+    private OtpCodeEngine codeEngine;
+
+    @InjectMocks
+    private OtpService otpService;
+
+    @Test
+    public void testFingerprintIgnoresCaseSpacesAndPadding() {
+        String fp = otpService.secretFingerprint(7L, SECRET);
+
+        assertNotNull(fp);
+        assertEquals(32, fp.length());
+        assertEquals(fp, otpService.secretFingerprint(7L, "jbswy3dpehpk3pxp"));
+        assertEquals(fp, otpService.secretFingerprint(7L, " JBSW Y3DP EHPK 3PXP "));
+        assertEquals(fp, otpService.secretFingerprint(7L, "JBSW-Y3DP-EHPK-3PXP"));
+        assertEquals(fp, otpService.secretFingerprint(7L, "JBSWY3DPEHPK3PXP======"));
+    }
+
+    @Test
+    public void testFingerprintIsPerOwnerAndPerSecret() {
+        String fp = otpService.secretFingerprint(7L, SECRET);
+
+        assertNotEquals(fp, otpService.secretFingerprint(8L, SECRET));
+        assertNotEquals(fp, otpService.secretFingerprint(7L, "JBSWY3DPEHPK3PXQ"));
+        assertNotEquals(fp, otpService.secretFingerprint(null, SECRET));
+        assertEquals(otpService.secretFingerprint(null, SECRET), otpService.secretFingerprint(-1L, SECRET));
+    }
+
+    @Test
+    public void testFingerprintOfUndecodableAndMissingSecrets() {
+        // Not Base32 or Base64: fingerprinted in the normalized form the old comparison used
+        assertEquals(otpService.secretFingerprint(7L, "NOTASECRET!"), otpService.secretFingerprint(7L, " not a secret! "));
+        assertNull(otpService.secretFingerprint(7L, null));
+        assertNull(otpService.secretFingerprint(7L, "   "));
+    }
+
+    @Test
+    public void testCreateReturnsTheExistingEntryForADuplicateSecret() {
+        otp existing = entry(5L, 7L, SECRET);
+        String fp = otpService.secretFingerprint(7L, SECRET);
+        when(otpRepository.findByUserIdAndSecretFp(7L, fp)).thenReturn(Optional.of(existing));
+
+        otp result = otpService.createOtp(7L, "alice@example.com", "TOTP", "jbsw y3dp ehpk 3pxp", "Example", 6, 30, "SHA1");
+
+        assertSame(existing, result);
+        verify(otpRepository, never()).save(any());
+        verify(collectionVersions, never()).bump(any());
+        verify(kafkaProducerService, never()).sendOtpCreatedEvent(any());
+    }
+
+    @Test
+    public void testCreateReturnsTheWinnerOfAConcurrentInsert() {
+        otp winner = entry(5L, 7L, SECRET);
+        String fp = otpService.secretFingerprint(7L, SECRET);
+        when(otpRepository.findByUserIdAndSecretFp(7L, fp)).thenReturn(Optional.empty(), Optional.of(winner));
+        when(otpRepository.save(any())).thenThrow(new DataIntegrityViolationException("idx_otp_user_secret_fp"));
+
+        assertSame(winner, otpService.createOtp(7L, "alice@example.com", "TOTP", SECRET, "Example", 6, 30, "SHA1"));
+        verify(collectionVersions, never()).bump(any());
+    }
+
+    @Test
+    public void testCreateFindsDuplicatesAmongRowsWithoutFingerprint() {
+        otp legacy = entry(3L, 7L, "jbswy3dpehpk3pxp");
+        when(otpRepository.findByUserIdAndSecretFp(eq(7L), any())).thenReturn(Optional.empty());
+        when(otpRepository.findByUserIdAndSecretFpIsNull(7L)).thenReturn(List.of(entry(2L, 7L, "GEZDGNBVGY3TQOJQ"), legacy));
+
+        assertSame(legacy, otpService.createOtp(7L, "alice@example.com", "TOTP", SECRET, "Example", 6, 30, "SHA1"));
+        verify(otpRepository, never()).save(any());
+    }
+
+    @Test
+    public void testCreateStoresTheFingerprintOfANewSecret() {
+        when(otpRepository.findByUserIdAndSecretFp(eq(7L), any())).thenReturn(Optional.empty());
+        when(otpRepository.save(any())).thenAnswer(invocation -> {
+            otp saved = invocation.getArgument(0);
+            saved.setId(9L);
+            return saved;
+        });
+
+        otp created = otpService.createOtp(7L, "alice@example.com", "TOTP", SECRET, "Example", 6, 30, "SHA1");
+
+        assertEquals(otpService.secretFingerprint(7L, SECRET), created.getSecretFp());
+        assertNull(created.getExpiresAt());
+        verify(collectionVersions).bump(7L);
+        verify(kafkaProducerService).sendOtpCreatedEvent(any());
+    }
+
+    @Test
+    public void testUpdateRejectsTheSecretOfARowWithoutFingerprint() {
+        when(otpRepository.findByUserIdAndSecretFpIsNull(7L)).thenReturn(List.of(entry(3L, 7L, SECRET)));
+
+        otp update = entry(null, null, "JBSW Y3DP EHPK 3PXP");
+        assertThrows(IllegalStateException.class, () -> otpService.updateOtp(4L, 7L, update));
+        verify(otpRepository, never()).updateOwned(anyLong(), anyLong(), any());
+    }
+
+    @Test
+    public void testUpdateMayKeepItsOwnSecret() {
+        when(otpRepository.findByUserIdAndSecretFpIsNull(7L)).thenReturn(List.of(entry(3L, 7L, SECRET)));
+        when(otpRepository.updateOwned(eq(3L), eq(7L), any())).thenReturn(1);
+
+        otp updated = otpService.updateOtp(3L, 7L, entry(null, null, SECRET));
+
+        assertEquals(otpService.secretFingerprint(7L, SECRET), updated.getSecretFp());
+        verify(collectionVersions).bump(7L);
+    }
+
+    private static otp entry(Long id, Long userId, String secret) {
+        otp entry = new otp();
+        entry.setId(id);
+        entry.setUserId(userId);
+        entry.setSecret(secret);
+        entry.setType("TOTP");
+        entry.setValid(true);
+        return entry;
+    }
+}
@@ -0,0 +1,116 @@
+package com.thisjowi.otp.service;
+
+import com.thisjowi.otp.entity.UserPurge;
+import com.thisjowi.otp.repository.OtpRepository;
+import com.thisjowi.otp.repository.UserPurgeRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class UserPurgeServiceTest {
+
+    private static final long USER_ID = 7L;
+
+    private final UserPurgeRepository purgeRepository = mock(UserPurgeRepository.class);
+    private final OtpRepository otpRepository = mock(OtpRepository.class);
+    private final CollectionVersionCache collectionVersions = mock(CollectionVersionCache.class);
+    private final TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+    private final UserPurgeService purgeService = new UserPurgeService();
+
+    @BeforeEach
+    public void setUp() {
+        ReflectionTestUtils.setField(purgeService, "purgeRepository", purgeRepository);
+        ReflectionTestUtils.setField(purgeService, "otpRepository", otpRepository);
+        ReflectionTestUtils.setField(purgeService, "collectionVersions", collectionVersions);
+        ReflectionTestUtils.setField(purgeService, "transactionTemplate", transactionTemplate);
+        ReflectionTestUtils.setField(purgeService, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(purgeService, "enabled", true);
+        ReflectionTestUtils.setField(purgeService, "batchSize", 2);
+        purgeService.registerMetrics();
+        doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<Boolean>>getArgument(0).doInTransaction(null));
+    }
+
+    @Test
+    public void testRedeliveredRequestIsRecordedOnce() {
+        when(purgeRepository.existsById(USER_ID)).thenReturn(false, true);
+
+        purgeService.requestPurge(USER_ID);
+        purgeService.requestPurge(USER_ID);
+
+        verify(purgeRepository, times(1)).save(any(UserPurge.class));
+    }
+
+    @Test
+    public void testRestartedPurgeContinuesAfterTheCheckpoint() {
+        // An earlier run got as far as id 100 and removed 5 OTPs
+        UserPurge purge = pending(100L, 5L);
+        when(otpRepository.findIdsForPurge(USER_ID, 100L, PageRequest.of(0, 2))).thenReturn(List.of(101L, 105L));
+        when(otpRepository.deleteRangeForPurge(USER_ID, 100L, 105L)).thenReturn(2);
+        when(otpRepository.findIdsForPurge(USER_ID, 105L, PageRequest.of(0, 2))).thenReturn(List.of());
+
+        purgeService.run();
+
+        verify(otpRepository, never()).findIdsForPurge(USER_ID, 0L, PageRequest.of(0, 2));
+        assertEquals(105L, purge.getLastId());
+        assertEquals(7L, purge.getPurged());
+        assertNotNull(purge.getCompletedAt());
+    }
+
+    @Test
+    public void testCompletionBumpsTheCollection() {
+        UserPurge purge = pending(0L, 0L);
+        when(otpRepository.findIdsForPurge(USER_ID, 0L, PageRequest.of(0, 2))).thenReturn(List.of());
+
+        purgeService.run();
+
+        assertNotNull(purge.getCompletedAt());
+        verify(collectionVersions, times(1)).bump(USER_ID);
+    }
+
+    @Test
+    public void testPurgeCompletedByAnotherInstanceIsLeftAlone() {
+        UserPurge listed = new UserPurge(USER_ID, LocalDateTime.now());
+        UserPurge locked = new UserPurge(USER_ID, listed.getRequestedAt());
+        locked.setCompletedAt(LocalDateTime.now());
+        when(purgeRepository.findByCompletedAtIsNullOrderByRequestedAtAsc(PageRequest.of(0, 10))).thenReturn(List.of(listed));
+        when(purgeRepository.findForUpdate(USER_ID)).thenReturn(Optional.of(locked));
+
+        purgeService.run();
+
+        verify(otpRepository, never()).findIdsForPurge(any(), any(), any());
+        verify(collectionVersions, never()).bump(any());
+    }
+
+    private UserPurge pending(long lastId, long purged) {
+        UserPurge purge = new UserPurge(USER_ID, LocalDateTime.now());
+        purge.setLastId(lastId);
+        purge.setPurged(purged);
+        when(purgeRepository.findByCompletedAtIsNullOrderByRequestedAtAsc(PageRequest.of(0, 10))).thenReturn(List.of(purge));
+        when(purgeRepository.findForUpdate(USER_ID)).thenReturn(Optional.of(purge));
+        return purge;
+    }
+}
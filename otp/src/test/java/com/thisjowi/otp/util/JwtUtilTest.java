@@ -0,0 +1,65 @@
+package com.thisjowi.otp.util;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JwtUtilTest {
+
+    private static final String SECRET = "test-jwt-secret-with-at-least-32-bytes!";
+
+    private final JwtUtil jwtUtil = new JwtUtil(SECRET);
+
+    @Test
+    public void testSignedTokenGivesTheSubject() {
+        assertEquals(42L, jwtUtil.extractUserId("Bearer " + token(SECRET, "42", 60_000)));
+        assertEquals(42L, jwtUtil.extractUserId(token(SECRET, "42", 60_000)));
+    }
+
+    @Test
+    public void testTokenSignedWithAnotherKeyIsRejected() {
+        assertNull(jwtUtil.extractUserId("Bearer " + token("another-secret-with-at-least-32-bytes!!", "42", 60_000)));
+    }
+
+    @Test
+    public void testUnsignedTokenIsRejected() {
+        // Only the payload decodes; this is what the controller used to trust
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        String forged = encoder.encodeToString("{\"alg\":\"none\"}".getBytes(StandardCharsets.UTF_8)) + "."
+                + encoder.encodeToString("{\"sub\":\"42\"}".getBytes(StandardCharsets.UTF_8)) + ".";
+        assertNull(jwtUtil.extractUserId("Bearer " + forged));
+    }
+
+    @Test
+    public void testTamperedSubjectIsRejected() {
+        String[] parts = token(SECRET, "42", 60_000).split("\\.");
+        String payload = Base64.getUrlEncoder().withoutPadding().encodeToString("{\"sub\":\"43\"}".getBytes(StandardCharsets.UTF_8));
+        assertNull(jwtUtil.extractUserId(parts[0] + "." + payload + "." + parts[2]));
+    }
+
+    @Test
+    public void testExpiredTokenIsRejected() {
+        assertNull(jwtUtil.extractUserId(token(SECRET, "42", -60_000)));
+    }
+
+    @Test
+    public void testMissingOrNonNumericSubject() {
+        assertNull(jwtUtil.extractUserId(null));
+        assertNull(jwtUtil.extractUserId(" "));
+        assertNull(jwtUtil.extractUserId(token(SECRET, "alice", 60_000)));
+    }
+
+    private static String token(String secret, String subject, long validForMs) {
+        return Jwts.builder()
+                .subject(subject)
+                .expiration(new Date(System.currentTimeMillis() + validForMs))
+                .signWith(Keys.hmacShaKeyFor(secret.getBytes()))
+                .compact();
+    }
+}
@@ -41,6 +41,7 @@ dependencies {
 	implementation("org.flywaydb:flyway-core:10.22.0")
 	implementation("org.flywaydb:flyway-database-postgresql:10.22.0")
 	implementation("org.springdoc:springdoc-openapi-starter-webmvc-ui:2.3.0")
+	implementation("com.google.guava:guava:33.3.1-jre")
 	runtimeOnly("io.jsonwebtoken:jjwt-impl:0.12.6")
 	runtimeOnly("io.jsonwebtoken:jjwt-jackson:0.12.6")
 	compileOnly("org.projectlombok:lombok")
@@ -1,16 +1,30 @@
 package com.thisjowi.password.Controller;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import com.thisjowi.password.Entity.Password;
 import com.thisjowi.password.Entity.PasswordDTO;
+import com.thisjowi.password.Entity.PasswordHealth;
+import com.thisjowi.password.Entity.PasswordSummary;
+import com.thisjowi.password.Entity.SyncNode;
+import com.thisjowi.password.Service.CollectionVersionCache;
+import com.thisjowi.password.Service.PasswordImportService;
 import com.thisjowi.password.Service.PasswordService;
+import com.thisjowi.password.Service.VaultModeService;
+import com.thisjowi.password.Service.VaultSyncTree;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import jakarta.servlet.http.HttpServletRequest;
+
+import java.io.InputStream;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -19,12 +33,27 @@ import java.util.Map;
 public class PasswordController {
     private static final Logger log = LoggerFactory.getLogger(PasswordController.class);
 
+    private static final int MAX_SYNC_ENTRIES = 500;
+
     @Autowired
     private PasswordService passwordService;
 
+    @Autowired
+    private CollectionVersionCache collectionVersions;
+
+    @Autowired
+    private PasswordImportService importService;
+
+    @Autowired
+    private VaultSyncTree syncTree;
+
+    @Autowired
+    private VaultModeService vaultModes;
+
     @GetMapping
     public ResponseEntity<?> getPasswordsByToken(
-            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authHeader) {
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authHeader,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         try {
             if (authHeader == null || authHeader.isBlank()) {
                 log.warn("GET /passwords: No Authorization header provided");
@@ -32,19 +61,32 @@ public class PasswordController {
                     .body(Map.of("error", "Authorization header required"));
             }
             
-            List<Password> list = passwordService.getPasswordsByToken(authHeader);
-            if (list == null) {
+            Long userId = passwordService.extractUserIdFromToken(authHeader);
+            if (userId == null) {
                 log.warn("GET /passwords: Invalid or expired token");
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                     .body(Map.of("error", "Invalid or expired token"));
             }
             
+            // Nothing changed since the client's copy: skip the query and the decryption
+            String etag = collectionVersions.etag(userId);
+            if (collectionVersions.matches(etag, ifNoneMatch)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(etag).cacheControl(CacheControl.noCache().cachePrivate()).build();
+            }
+            
+            List<PasswordSummary> list = passwordService.getPasswordsByUserId(userId);
             log.info("GET /passwords: Retrieved {} passwords", list.size());
-            return ResponseEntity.ok(list);
+            return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache().cachePrivate()).body(list);
         } catch (IllegalArgumentException e) {
             log.error("GET /passwords: Invalid argument - {}", e.getMessage());
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                 .body(Map.of("error", "Authentication failed"));
+        } catch (IllegalStateException e) {
+            // Vault in zero-knowledge mode or migrating to it
+            log.warn("GET /passwords: Conflict - {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
             log.error("GET /passwords: Unexpected error", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -52,6 +94,195 @@ public class PasswordController {
         }
     }
 
+    @GetMapping("/{id}/secret")
+    public ResponseEntity<?> getSecret(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authHeader,
+            @PathVariable Long id) {
+        try {
+            if (authHeader == null || authHeader.isBlank()) {
+                log.warn("GET /passwords/{}/secret: No Authorization header provided", id);
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(Map.of("error", "Authorization header required"));
+            }
+            
+            if (id == null || id <= 0) {
+                return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Invalid password ID"));
+            }
+            
+            String secret = passwordService.getSecretByToken(authHeader, id);
+            log.info("GET /passwords/{}/secret: Secret revealed", id);
+            // Never cached, by the browser or anything in between
+            return ResponseEntity.ok().cacheControl(CacheControl.noStore())
+                .body(Collections.singletonMap("password", secret));
+        } catch (IllegalArgumentException e) {
+            log.error("GET /passwords/{}/secret: Invalid argument - {}", id, e.getMessage());
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                .body(Map.of("error", "Authentication failed or resource not found"));
+        } catch (SecurityException se) {
+            log.warn("GET /passwords/{}/secret: Forbidden - user not authorized", id);
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                .body(Map.of("error", "Not authorized to read this resource"));
+        } catch (IllegalStateException e) {
+            log.warn("GET /passwords/{}/secret: Conflict - {}", id, e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            log.error("GET /passwords/{}/secret: Unexpected error", id, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(Map.of("error", "Internal server error"));
+        }
+    }
+
+    @GetMapping("/lookup")
+    public ResponseEntity<?> lookupByDomain(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authHeader,
+            @RequestParam(value = "domain", required = false) String domain) {
+        try {
+            if (authHeader == null || authHeader.isBlank()) {
+                log.warn("GET /passwords/lookup: No Authorization header provided");
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(Map.of("error", "Authorization header required"));
+            }
+            
+            if (domain == null || domain.isBlank()) {
+                return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Domain is required"));
+            }
+            
+            List<Password> matches = passwordService.lookupByDomainForToken(authHeader, domain);
+            log.info("GET /passwords/lookup: Found {} passwords", matches.size());
+            // Carries secrets: never cached
+            return ResponseEntity.ok().cacheControl(CacheControl.noStore()).body(matches);
+        } catch (IllegalArgumentException e) {
+            log.error("GET /passwords/lookup: Invalid argument - {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                .body(Map.of("error", "Authentication failed"));
+        } catch (IllegalStateException e) {
+            log.warn("GET /passwords/lookup: Conflict - {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            log.error("GET /passwords/lookup: Unexpected error", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(Map.of("error", "Internal server error"));
+        }
+    }
+
+    @GetMapping("/health")
+    public ResponseEntity<?> getHealth(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authHeader) {
+        try {
+            if (authHeader == null || authHeader.isBlank()) {
+                log.warn("GET /passwords/health: No Authorization header provided");
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(Map.of("error", "Authorization header required"));
+            }
+            
+            PasswordHealth health = passwordService.getHealthByToken(authHeader);
+            log.info("GET /passwords/health: {} of {} passwords reused", health.getReused(), health.getTotal());
+            return ResponseEntity.ok().cacheControl(CacheControl.noCache().cachePrivate()).body(health);
+        } catch (IllegalArgumentException e) {
+            log.error("GET /passwords/health: Invalid argument - {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                .body(Map.of("error", "Authentication failed"));
+        } catch (Exception e) {
+            log.error("GET /passwords/health: Unexpected error", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(Map.of("error", "Internal server error"));
+        }
+    }
+
+    /**
+     * Vault sync, first step: the root of the user's sync tree and its 16 children. The ETag is the
+     * root hash, so an unchanged vault is a 304 with no body.
+     */
+    @GetMapping("/sync")
+    public ResponseEntity<?> getSyncRoot(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authHeader,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return getSyncNode(authHeader, ifNoneMatch, "");
+    }
+
+    /**
+     * Vault sync, next steps: an inner node (one hex digit) with its children's hashes, or a bucket
+     * (two hex digits) with the id, version and hash of each entry in it.
+     */
+    @GetMapping("/sync/{path}")
+    public ResponseEntity<?> getSyncNode(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authHeader,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @PathVariable String path) {
+        try {
+            if (authHeader == null || authHeader.isBlank()) {
+                log.warn("GET /passwords/sync: No Authorization header provided");
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(Map.of("error", "Authorization header required"));
+            }
+            
+            Long userId = passwordService.extractUserIdFromToken(authHeader);
+            if (userId == null) {
+                log.warn("GET /passwords/sync: Invalid or expired token");
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(Map.of("error", "Invalid or expired token"));
+            }
+            
+            SyncNode node;
+            try {
+                node = syncTree.node(userId, path);
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest()
+                    .body(Map.of("error", e.getMessage()));
+            }
+            String etag = "\"" + node.getHash() + "\"";
+            if (collectionVersions.matches(etag, ifNoneMatch)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(etag).cacheControl(CacheControl.noCache().cachePrivate()).build();
+            }
+            return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache().cachePrivate()).body(node);
+        } catch (Exception e) {
+            log.error("GET /passwords/sync: Unexpected error", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(Map.of("error", "Internal server error"));
+        }
+    }
+
+    /**
+     * Vault sync, last step: the decrypted entries whose leaves differ from the client's copy.
+     * Requested ids missing from the answer were deleted.
+     */
+    @PostMapping("/sync/entries")
+    public ResponseEntity<?> getSyncEntries(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authHeader,
+            @RequestBody Map<String, List<Long>> body) {
+        try {
+            if (authHeader == null || authHeader.isBlank()) {
+                log.warn("POST /passwords/sync/entries: No Authorization header provided");
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(Map.of("error", "Authorization header required"));
+            }
+            
+            List<Long> ids = body == null ? null : body.get("ids");
+            if (ids == null || ids.size() > MAX_SYNC_ENTRIES) {
+                return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Between 0 and " + MAX_SYNC_ENTRIES + " ids are required"));
+            }
+            
+            List<Password> entries = passwordService.getEntriesByToken(authHeader, ids);
+            log.info("POST /passwords/sync/entries: Returned {} of {} requested entries", entries.size(), ids.size());
+            // Carries secrets: never cached
+            return ResponseEntity.ok().cacheControl(CacheControl.noStore()).body(entries);
+        } catch (IllegalArgumentException e) {
+            log.error("POST /passwords/sync/entries: Invalid argument - {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                .body(Map.of("error", "Authentication failed"));
+        } catch (Exception e) {
+            log.error("POST /passwords/sync/entries: Unexpected error", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(Map.of("error", "Internal server error"));
+        }
+    }
+
     @PostMapping
     public ResponseEntity<?> createPassword(
             @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authHeader,
@@ -90,6 +321,10 @@ public class PasswordController {
             log.error("POST /passwords: Invalid argument - {}", e.getMessage());
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                 .body(Map.of("error", "Authentication failed"));
+        } catch (IllegalStateException e) {
+            log.warn("POST /passwords: Conflict - {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
             log.error("POST /passwords: Unexpected error", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -97,6 +332,44 @@ public class PasswordController {
         }
     }
 
+    /**
+     * Import a CSV export (Chrome, Bitwarden, 1Password). Answers with an NDJSON report: a progress
+     * line per batch, an error line per rejected record and a final summary.
+     */
+    @PostMapping(value = "/import", consumes = {"text/csv", MediaType.TEXT_PLAIN_VALUE, MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    public ResponseEntity<?> importPasswords(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authHeader,
+            HttpServletRequest request) {
+        try {
+            if (authHeader == null || authHeader.isBlank()) {
+                log.warn("POST /passwords/import: No Authorization header provided");
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(Map.of("error", "Authorization header required"));
+            }
+            
+            Long userId = passwordService.extractUserIdFromToken(authHeader);
+            if (userId == null) {
+                log.warn("POST /passwords/import: Invalid or expired token");
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(Map.of("error", "Invalid or expired token"));
+            }
+            
+            // Checked up front for a plain 409; each batch checks again under the mode lock
+            vaultModes.checkServerWrite(userId);
+            InputStream input = request.getInputStream();
+            StreamingResponseBody body = out -> importService.importCsv(userId, input, out);
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+        } catch (IllegalStateException e) {
+            log.warn("POST /passwords/import: Conflict - {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            log.error("POST /passwords/import: Unexpected error", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(Map.of("error", "Internal server error"));
+        }
+    }
+
     @PutMapping("/{id}")
     public ResponseEntity<?> updatePassword(
             @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authHeader,
@@ -131,6 +404,10 @@ public class PasswordController {
             log.warn("PUT /passwords/{}: Forbidden - user not authorized", id);
             return ResponseEntity.status(HttpStatus.FORBIDDEN)
                 .body(Map.of("error", "Not authorized to update this resource"));
+        } catch (IllegalStateException e) {
+            log.warn("PUT /passwords/{}: Conflict - {}", id, e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
             log.error("PUT /passwords/{}: Unexpected error", id, e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
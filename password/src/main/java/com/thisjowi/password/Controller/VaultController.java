@@ -0,0 +1,345 @@
+package com.thisjowi.password.Controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import com.thisjowi.password.Entity.Password;
+import com.thisjowi.password.Entity.VaultBlob;
+import com.thisjowi.password.Entity.VaultMode;
+import com.thisjowi.password.Entity.VaultStatus;
+import com.thisjowi.password.Service.VaultModeService;
+import com.thisjowi.password.Service.ZeroKnowledgeVaultService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Zero-knowledge vaults: client-encrypted blobs, stored and streamed as opaque bytes, and the
+ * migration of a server-encrypted vault to them. Deleting an entry uses DELETE /api/v1/passwords/{id}
+ * in every mode.
+ */
+@RestController
+@RequestMapping("/api/v1/passwords/vault")
+public class VaultController {
+    private static final Logger log = LoggerFactory.getLogger(VaultController.class);
+
+    private static final int MAX_MIGRATION_PAGE = 500;
+
+    @Autowired
+    private ZeroKnowledgeVaultService vaultService;
+
+    @Autowired
+    private VaultModeService vaultModes;
+
+    @Value("${app.vault.max-blob-bytes:65536}")
+    private int maxBlobBytes;
+
+    @GetMapping
+    public ResponseEntity<?> getStatus(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authHeader) {
+        try {
+            if (authHeader == null || authHeader.isBlank()) {
+                log.warn("GET /vault: No Authorization header provided");
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(Map.of("error", "Authorization header required"));
+            }
+
+            return ResponseEntity.ok(vaultService.getStatusByToken(authHeader));
+        } catch (IllegalArgumentException e) {
+            log.error("GET /vault: Invalid argument - {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                .body(Map.of("error", "Authentication failed"));
+        } catch (Exception e) {
+            log.error("GET /vault: Unexpected error", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(Map.of("error", "Internal server error"));
+        }
+    }
+
+    /**
+     * Start the migration to zero-knowledge mode. Server-side encrypted writes are refused from now on.
+     */
+    @PostMapping("/migration")
+    public ResponseEntity<?> startMigration(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authHeader) {
+        try {
+            if (authHeader == null || authHeader.isBlank()) {
+                log.warn("POST /vault/migration: No Authorization header provided");
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(Map.of("error", "Authorization header required"));
+            }
+
+            VaultStatus status = vaultService.startMigrationByToken(authHeader);
+            log.info("POST /vault/migration: {} entries to migrate", status.getRemaining());
+            return ResponseEntity.ok(status);
+        } catch (IllegalArgumentException e) {
+            log.error("POST /vault/migration: Invalid argument - {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                .body(Map.of("error", "Authentication failed"));
+        } catch (IllegalStateException e) {
+            log.warn("POST /vault/migration: Conflict - {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            log.error("POST /vault/migration: Unexpected error", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(Map.of("error", "Internal server error"));
+        }
+    }
+
+    /**
+     * Next page of entries still encrypted by the server, decrypted for the client to re-encrypt.
+     */
+    @GetMapping("/migration/entries")
+    public ResponseEntity<?> getMigrationEntries(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authHeader,
+            @RequestParam(value = "afterId", defaultValue = "0") Long afterId,
+            @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        try {
+            if (authHeader == null || authHeader.isBlank()) {
+                log.warn("GET /vault/migration/entries: No Authorization header provided");
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(Map.of("error", "Authorization header required"));
+            }
+
+            if (limit <= 0 || limit > MAX_MIGRATION_PAGE) {
+                return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Limit must be between 1 and " + MAX_MIGRATION_PAGE));
+            }
+
+            List<Password> entries = vaultService.getMigrationEntriesByToken(authHeader, afterId, limit);
+            log.info("GET /vault/migration/entries: Exported {} entries", entries.size());
+            // Carries secrets: never cached
+            return ResponseEntity.ok().cacheControl(CacheControl.noStore()).body(entries);
+        } catch (IllegalArgumentException e) {
+            log.error("GET /vault/migration/entries: Invalid argument - {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                .body(Map.of("error", "Authentication failed"));
+        } catch (IllegalStateException e) {
+            log.warn("GET /vault/migration/entries: Conflict - {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            log.error("GET /vault/migration/entries: Unexpected error", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(Map.of("error", "Internal server error"));
+        }
+    }
+
+    /**
+     * Upload the client-encrypted blobs of exported entries, each with the version it was exported at.
+     */
+    @PutMapping("/migration/entries")
+    public ResponseEntity<?> storeMigratedEntries(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authHeader,
+            @RequestBody List<VaultBlob> blobs) {
+        try {
+            if (authHeader == null || authHeader.isBlank()) {
+                log.warn("PUT /vault/migration/entries: No Authorization header provided");
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(Map.of("error", "Authorization header required"));
+            }
+
+            if (blobs == null || blobs.isEmpty() || blobs.size() > MAX_MIGRATION_PAGE) {
+                return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Between 1 and " + MAX_MIGRATION_PAGE + " entries are required"));
+            }
+            for (VaultBlob blob : blobs) {
+                if (blob.getId() == null || blob.getId() <= 0) {
+                    return ResponseEntity.badRequest()
+                        .body(Map.of("error", "Every entry needs an id"));
+                }
+                String error = validateBlob(blob.getBlob());
+                if (error != null) {
+                    return ResponseEntity.badRequest()
+                        .body(Map.of("error", error));
+                }
+            }
+
+            VaultStatus status = vaultService.storeMigratedBlobsByToken(authHeader, blobs);
+            log.info("PUT /vault/migration/entries: Stored {} blobs, {} entries left", status.getConverted(), status.getRemaining());
+            return ResponseEntity.ok(status);
+        } catch (IllegalArgumentException e) {
+            log.error("PUT /vault/migration/entries: Invalid argument - {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                .body(Map.of("error", "Authentication failed"));
+        } catch (IllegalStateException e) {
+            log.warn("PUT /vault/migration/entries: Conflict - {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            log.error("PUT /vault/migration/entries: Unexpected error", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(Map.of("error", "Internal server error"));
+        }
+    }
+
+    /**
+     * Switch to zero-knowledge mode. 409 with the remaining count while entries are left.
+     */
+    @PostMapping("/migration/complete")
+    public ResponseEntity<?> completeMigration(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authHeader) {
+        try {
+            if (authHeader == null || authHeader.isBlank()) {
+                log.warn("POST /vault/migration/complete: No Authorization header provided");
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(Map.of("error", "Authorization header required"));
+            }
+
+            VaultStatus status = vaultService.completeMigrationByToken(authHeader);
+            if (status.getMode() != VaultMode.Mode.CLIENT) {
+                log.warn("POST /vault/migration/complete: {} entries not migrated yet", status.getRemaining());
+                return ResponseEntity.status(HttpStatus.CONFLICT).body(status);
+            }
+            log.info("POST /vault/migration/complete: Vault is zero-knowledge");
+            return ResponseEntity.ok(status);
+        } catch (IllegalArgumentException e) {
+            log.error("POST /vault/migration/complete: Invalid argument - {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                .body(Map.of("error", "Authentication failed"));
+        } catch (IllegalStateException e) {
+            log.warn("POST /vault/migration/complete: Conflict - {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            log.error("POST /vault/migration/complete: Unexpected error", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(Map.of("error", "Internal server error"));
+        }
+    }
+
+    /**
+     * The whole zero-knowledge vault as NDJSON, one {"id","version","blob"} line per entry.
+     */
+    @GetMapping("/blobs")
+    public ResponseEntity<?> streamBlobs(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authHeader) {
+        try {
+            if (authHeader == null || authHeader.isBlank()) {
+                log.warn("GET /vault/blobs: No Authorization header provided");
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(Map.of("error", "Authorization header required"));
+            }
+
+            Long userId = vaultService.requireUser(authHeader);
+            // Checked before the first byte: once streaming, the status can no longer change
+            vaultModes.checkMode(userId, VaultMode.Mode.CLIENT);
+            StreamingResponseBody body = out -> vaultService.streamBlobs(userId, out);
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON)
+                .cacheControl(CacheControl.noCache().cachePrivate()).body(body);
+        } catch (IllegalArgumentException e) {
+            log.error("GET /vault/blobs: Invalid argument - {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                .body(Map.of("error", "Authentication failed"));
+        } catch (IllegalStateException e) {
+            log.warn("GET /vault/blobs: Conflict - {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            log.error("GET /vault/blobs: Unexpected error", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(Map.of("error", "Internal server error"));
+        }
+    }
+
+    @PostMapping("/blobs")
+    public ResponseEntity<?> createBlob(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authHeader,
+            @RequestBody VaultBlob blob) {
+        try {
+            if (authHeader == null || authHeader.isBlank()) {
+                log.warn("POST /vault/blobs: No Authorization header provided");
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(Map.of("error", "Authorization header required"));
+            }
+
+            String error = blob == null ? "Request body is required" : validateBlob(blob.getBlob());
+            if (error != null) {
+                return ResponseEntity.badRequest()
+                    .body(Map.of("error", error));
+            }
+
+            VaultBlob created = vaultService.createBlobByToken(authHeader, blob.getBlob());
+            log.info("POST /vault/blobs: Created entry {}", created.getId());
+            return ResponseEntity.status(HttpStatus.CREATED).body(created);
+        } catch (IllegalArgumentException e) {
+            log.error("POST /vault/blobs: Invalid argument - {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                .body(Map.of("error", "Authentication failed"));
+        } catch (IllegalStateException e) {
+            log.warn("POST /vault/blobs: Conflict - {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            log.error("POST /vault/blobs: Unexpected error", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(Map.of("error", "Internal server error"));
+        }
+    }
+
+    /**
+     * Replace an entry's blob; with "version" set, only if the entry is still at that version.
+     */
+    @PutMapping("/blobs/{id}")
+    public ResponseEntity<?> updateBlob(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authHeader,
+            @PathVariable Long id,
+            @RequestBody VaultBlob blob) {
+        try {
+            if (authHeader == null || authHeader.isBlank()) {
+                log.warn("PUT /vault/blobs/{}: No Authorization header provided", id);
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(Map.of("error", "Authorization header required"));
+            }
+
+            if (id == null || id <= 0) {
+                return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Invalid password ID"));
+            }
+            String error = blob == null ? "Request body is required" : validateBlob(blob.getBlob());
+            if (error != null) {
+                return ResponseEntity.badRequest()
+                    .body(Map.of("error", error));
+            }
+
+            VaultBlob updated = vaultService.updateBlobByToken(authHeader, id, blob.getBlob(), blob.getVersion());
+            log.info("PUT /vault/blobs/{}: Entry now at version {}", id, updated.getVersion());
+            return ResponseEntity.ok(updated);
+        } catch (IllegalArgumentException e) {
+            log.error("PUT /vault/blobs/{}: Invalid argument - {}", id, e.getMessage());
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                .body(Map.of("error", "Authentication failed or resource not found"));
+        } catch (SecurityException se) {
+            log.warn("PUT /vault/blobs/{}: Forbidden - user not authorized", id);
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                .body(Map.of("error", "Not authorized to update this resource"));
+        } catch (IllegalStateException e) {
+            log.warn("PUT /vault/blobs/{}: Conflict - {}", id, e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            log.error("PUT /vault/blobs/{}: Unexpected error", id, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(Map.of("error", "Internal server error"));
+        }
+    }
+
+    private String validateBlob(byte[] blob) {
+        if (blob == null || blob.length == 0) {
+            return "Blob is required";
+        }
+        if (blob.length > maxBlobBytes) {
+            return "Blob must not exceed " + maxBlobBytes + " bytes";
+        }
+        return null;
+    }
+}
@@ -1,10 +1,14 @@
 package com.thisjowi.password.Entity;
 
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.Table;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
@@ -15,7 +19,10 @@ import lombok.Setter;
 @Setter
 @NoArgsConstructor
 @AllArgsConstructor
-@Table(name = "password")
+@Table(name = "password", indexes = {
+        @Index(name = "idx_password_user_domain", columnList = "user_id, domain_index"),
+        @Index(name = "idx_password_user_secret", columnList = "user_id, secret_fp")
+})
 @Entity
 public class Password {
 
@@ -33,5 +40,46 @@ public class Password {
     @JsonProperty("userId")
     Long userId;
 
+    // Binary ciphertext (format byte + IV + ciphertext). The text columns above only
+    // hold legacy Base64 values until the migration job moves them here.
+    @JsonIgnore
+    @Column(name = "password_bin", columnDefinition = "BYTEA")
+    byte[] passwordBin;
+
+    @JsonIgnore
+    @Column(name = "name_bin", columnDefinition = "BYTEA")
+    byte[] nameBin;
+
+    @JsonIgnore
+    @Column(name = "website_bin", columnDefinition = "BYTEA")
+    byte[] websiteBin;
+
+    // Blind index of the website's registrable domain (see Encryption.blindIndex); empty when the
+    // website has no domain, null until computed
+    @JsonIgnore
+    @Column(name = "domain_index", length = 32)
+    String domainIndex;
+
+    // Blind index of the secret, equal for reused passwords of the same user
+    @JsonIgnore
+    @Column(name = "secret_fp", length = 32)
+    String secretFp;
+
+    // Secret found in the breach corpus when it was written; null until checked
+    @JsonProperty("breached")
+    @Column(name = "breached")
+    Boolean breached;
+
+    // Zero-knowledge vaults: the entry encrypted by the client, Base64 in JSON. The server never
+    // decrypts it; rows holding one have no server-side ciphertext or blind indexes.
+    @JsonProperty(value = "blob", access = JsonProperty.Access.READ_ONLY)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @Column(name = "client_blob", columnDefinition = "BYTEA")
+    byte[] clientBlob;
+
+    // Incremented by every owner update, part of the vault sync leaf hash; clients cannot set it
+    @JsonProperty(value = "version", access = JsonProperty.Access.READ_ONLY)
+    @Column(name = "version", nullable = false)
+    Long version = 0L;
 
 }
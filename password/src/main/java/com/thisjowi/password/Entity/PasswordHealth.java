@@ -0,0 +1,28 @@
+package com.thisjowi.password.Entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * Vault health report. Reuse groups hold the ids of entries sharing the same secret, breached the
+ * ids of entries whose secret is in the breach corpus; titles come from the client's own list, so
+ * building the report decrypts nothing.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class PasswordHealth {
+
+    long total;
+
+    long reused;
+
+    List<List<Long>> reuseGroups;
+
+    List<Long> breached;
+}
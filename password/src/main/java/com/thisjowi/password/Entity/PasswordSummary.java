@@ -0,0 +1,29 @@
+package com.thisjowi.password.Entity;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Vault list entry: what the list shows, without the secret.
+ * The password itself is fetched on demand from GET /api/v1/passwords/{id}/secret.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class PasswordSummary {
+
+    Long id;
+
+    @JsonProperty("title")
+    String name;
+
+    @JsonProperty("website")
+    String website;
+
+    @JsonProperty("userId")
+    Long userId;
+}
@@ -0,0 +1,45 @@
+package com.thisjowi.password.Entity;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * One node of a user's vault sync tree. Inner nodes list the hashes of their children (child i has
+ * path + hex digit i), buckets list their entries; see VaultSyncTree.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SyncNode {
+
+    String path;
+
+    String hash;
+
+    List<String> children;
+
+    List<SyncEntry> entries;
+
+    /**
+     * Leaf of the sync tree: a password id, its row version and the hash of its stored ciphertext.
+     */
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class SyncEntry {
+
+        Long id;
+
+        long version;
+
+        String hash;
+    }
+}
@@ -0,0 +1,43 @@
+package com.thisjowi.password.Entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Data key of one user, wrapped (AES-GCM) by the master key masterKeyId. keyId is written into
+ * the header of every value encrypted with this key. Rotating the master key only rewrites
+ * wrappedKey; the password rows keep their ciphertext.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@Table(name = "password_user_keys")
+@Entity
+public class UserKey {
+
+    @Id
+    @Column(name = "user_id")
+    Long userId;
+
+    @Column(name = "key_id", nullable = false)
+    int keyId;
+
+    @Column(name = "master_key_id", nullable = false)
+    int masterKeyId;
+
+    @Column(name = "wrapped_key", nullable = false, columnDefinition = "BYTEA")
+    byte[] wrappedKey;
+
+    @Column(name = "created_at", nullable = false)
+    LocalDateTime createdAt;
+
+    @Column(name = "rewrapped_at")
+    LocalDateTime rewrappedAt;
+}
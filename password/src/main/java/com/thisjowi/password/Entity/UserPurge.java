@@ -0,0 +1,44 @@
+package com.thisjowi.password.Entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Pending or finished purge of a deleted account. lastId is the checkpoint: every password of the
+ * user with an id at or below it is already gone, so a restarted purge continues after it.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@Table(name = "password_user_purges")
+@Entity
+public class UserPurge {
+
+    @Id
+    @Column(name = "user_id")
+    Long userId;
+
+    @Column(name = "last_id", nullable = false)
+    long lastId;
+
+    @Column(nullable = false)
+    long purged;
+
+    @Column(name = "requested_at", nullable = false)
+    LocalDateTime requestedAt;
+
+    @Column(name = "completed_at")
+    LocalDateTime completedAt;
+
+    public UserPurge(Long userId, LocalDateTime requestedAt) {
+        this.userId = userId;
+        this.requestedAt = requestedAt;
+    }
+}
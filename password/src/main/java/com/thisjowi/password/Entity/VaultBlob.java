@@ -0,0 +1,25 @@
+package com.thisjowi.password.Entity;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Entry of a zero-knowledge vault as the API sees it: the client's encrypted blob (Base64 in JSON)
+ * with the row id and version. On writes a version, when given, must match the stored one.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class VaultBlob {
+
+    Long id;
+
+    Long version;
+
+    byte[] blob;
+}
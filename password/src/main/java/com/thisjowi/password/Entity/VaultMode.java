@@ -0,0 +1,49 @@
+package com.thisjowi.password.Entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Encryption mode of a user's vault. Users without a row are in SERVER mode: the service encrypts
+ * each field with the user's data key. In CLIENT (zero-knowledge) mode every entry is a blob the
+ * client encrypted and the service never sees plaintext; MIGRATING is the way from one to the other.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@Table(name = "password_vault_modes")
+@Entity
+public class VaultMode {
+
+    public enum Mode {
+        SERVER,
+        MIGRATING,
+        CLIENT
+    }
+
+    @Id
+    @Column(name = "user_id")
+    Long userId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    Mode mode;
+
+    @Column(name = "changed_at", nullable = false)
+    LocalDateTime changedAt;
+
+    public VaultMode(Long userId, Mode mode, LocalDateTime changedAt) {
+        this.userId = userId;
+        this.mode = mode;
+        this.changedAt = changedAt;
+    }
+}
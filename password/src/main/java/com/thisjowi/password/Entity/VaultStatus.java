@@ -0,0 +1,30 @@
+package com.thisjowi.password.Entity;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * Encryption mode of a vault and the progress of its zero-knowledge migration: entries still
+ * encrypted by the server, and for an upload, how many blobs were stored and which ids were
+ * rejected (deleted, or changed since they were exported).
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class VaultStatus {
+
+    VaultMode.Mode mode;
+
+    Long remaining;
+
+    Integer converted;
+
+    List<Long> rejected;
+}
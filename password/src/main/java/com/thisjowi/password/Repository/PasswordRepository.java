@@ -1,13 +1,90 @@
 package com.thisjowi.password.Repository;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
 import com.thisjowi.password.Entity.Password;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
-public interface PasswordRepository extends JpaRepository<Password, Long> {
+public interface PasswordRepository extends JpaRepository<Password, Long>, PasswordRepositoryCustom {
 
     List<Password> findByName(String name);
     
     List<Password> findByUserId(Long userId);
+
+    // Vault list: title and website only, the secret columns are not even read
+    List<Summary> findSummaryByUserId(Long userId);
+
+    // Autofill: point query on idx_password_user_domain
+    List<Password> findByUserIdAndDomainIndex(Long userId, String domainIndex);
+
+    // Vault sync: the changed entries a client asks for, owner-scoped
+    List<Password> findByUserIdAndIdIn(Long userId, Collection<Long> ids);
+
+    @Query("select p from Password p where p.id = :id and p.userId = :userId")
+    Optional<Password> findOwned(Long id, Long userId);
+
+    // Owner-scoped delete in one statement; 0 means missing or not owned
+    @Modifying
+    @Transactional
+    @Query("delete from Password p where p.id = :id and p.userId = :userId")
+    int deleteOwned(Long id, Long userId);
+
+    // Rows with at least one field still stored as Base64 text
+    @Query("select p from Password p where (p.password is not null and p.passwordBin is null)"
+            + " or (p.name is not null and p.nameBin is null)"
+            + " or (p.website is not null and p.websiteBin is null) order by p.id")
+    List<Password> findLegacyCiphertext(Pageable pageable);
+
+    // Rows with a binary field still under the global key (format byte 1), keyset paged by id
+    @Query(value = "SELECT * FROM password WHERE id > :afterId AND ("
+            + "substring(password_bin from 1 for 1) = decode('01', 'hex')"
+            + " OR substring(name_bin from 1 for 1) = decode('01', 'hex')"
+            + " OR substring(website_bin from 1 for 1) = decode('01', 'hex')) ORDER BY id LIMIT :limit",
+            nativeQuery = true)
+    List<Password> findGlobalKeyCiphertext(Long afterId, int limit);
+
+    // Rows with a blind index that was never computed, keyset paged by id
+    @Query("select p from Password p where (p.domainIndex is null or p.secretFp is null) and p.id > :afterId order by p.id")
+    List<Password> findMissingIndexes(Long afterId, Pageable pageable);
+
+    long countByUserId(Long userId);
+
+    // Zero-knowledge migration: entries the client has not re-encrypted yet, keyset paged by id
+    @Query("select p from Password p where p.userId = :userId and p.clientBlob is null and p.id > :afterId order by p.id")
+    List<Password> findServerEncrypted(Long userId, Long afterId, Pageable pageable);
+
+    long countByUserIdAndClientBlobIsNull(Long userId);
+
+    // Health report: ids of the user's entries sharing a secret fingerprint, one row per group
+    @Query(value = "SELECT string_agg(CAST(id AS TEXT), ',' ORDER BY id) FROM password"
+            + " WHERE user_id = :userId AND secret_fp IS NOT NULL AND secret_fp <> ''"
+            + " GROUP BY secret_fp HAVING count(*) > 1 ORDER BY count(*) DESC, min(id)",
+            nativeQuery = true)
+    List<String> findReuseGroups(Long userId);
+
+    @Query("select p.id from Password p where p.userId = :userId and p.breached = true order by p.id")
+    List<Long> findBreachedIds(Long userId);
+
+    // Account purge: next primary-key range of the user's passwords
+    @Query("select p.id from Password p where p.userId = :userId and p.id > :afterId order by p.id")
+    List<Long> findIdsForPurge(Long userId, Long afterId, Pageable pageable);
+
+    @Modifying
+    @Query("delete from Password p where p.userId = :userId and p.id > :fromId and p.id <= :toId")
+    int deleteRangeForPurge(Long userId, Long fromId, Long toId);
+
+    interface Summary {
+        Long getId();
+        String getName();
+        String getWebsite();
+        Long getUserId();
+        byte[] getNameBin();
+        byte[] getWebsiteBin();
+    }
 }
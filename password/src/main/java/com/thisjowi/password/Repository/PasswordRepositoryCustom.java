@@ -0,0 +1,25 @@
+package com.thisjowi.password.Repository;
+
+import com.thisjowi.password.Entity.Password;
+
+import java.util.Optional;
+
+public interface PasswordRepositoryCustom {
+
+    /**
+     * Overwrite the given encrypted fields, blind indexes and breach flag (null = keep) of a password owned by the user,
+     * in one statement that also returns the resulting row.
+     *
+     * @return the updated row, or empty if no password with this id belongs to the user
+     */
+    Optional<Password> updateOwned(Long id, Long userId, byte[] passwordBin, byte[] nameBin, byte[] websiteBin,
+                                   String domainIndex, String secretFp, Boolean breached);
+
+    /**
+     * Replace a password owned by the user with a client-encrypted blob, dropping every server-side
+     * ciphertext and blind index of the row. With an expected version the row must still have it.
+     *
+     * @return the new row version, or empty if the row is not the user's or has another version
+     */
+    Optional<Long> storeBlobOwned(Long id, Long userId, byte[] blob, Long expectedVersion);
+}
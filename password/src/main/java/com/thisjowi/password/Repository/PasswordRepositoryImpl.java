@@ -0,0 +1,99 @@
+package com.thisjowi.password.Repository;
+
+import com.thisjowi.password.Entity.Password;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Single-statement owner-scoped update. Only the supplied columns are set, so no COALESCE over
+ * untyped NULL parameters is needed; RETURNING hands back the row without a second query.
+ * Every update also increments the row version used by vault sync.
+ */
+public class PasswordRepositoryImpl implements PasswordRepositoryCustom {
+
+    private static final String COLUMNS = "id, user_id, password, name, website, password_bin, name_bin, website_bin, domain_index, secret_fp, breached, version, client_blob";
+
+    private static final RowMapper<Password> ROW_MAPPER = (rs, rowNum) -> {
+        Password p = new Password();
+        p.setId(rs.getLong("id"));
+        p.setUserId(rs.getLong("user_id"));
+        p.setPassword(rs.getString("password"));
+        p.setName(rs.getString("name"));
+        p.setWebsite(rs.getString("website"));
+        p.setPasswordBin(rs.getBytes("password_bin"));
+        p.setNameBin(rs.getBytes("name_bin"));
+        p.setWebsiteBin(rs.getBytes("website_bin"));
+        p.setDomainIndex(rs.getString("domain_index"));
+        p.setSecretFp(rs.getString("secret_fp"));
+        p.setBreached(rs.getObject("breached", Boolean.class));
+        p.setVersion(rs.getLong("version"));
+        p.setClientBlob(rs.getBytes("client_blob"));
+        return p;
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public PasswordRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public Optional<Password> updateOwned(Long id, Long userId, byte[] passwordBin, byte[] nameBin, byte[] websiteBin,
+                                          String domainIndex, String secretFp, Boolean breached) {
+        StringBuilder set = new StringBuilder();
+        List<Object> args = new ArrayList<>();
+        // A new binary value also clears the legacy Base64 column of the same field
+        appendField(set, args, "password", passwordBin);
+        appendField(set, args, "name", nameBin);
+        appendField(set, args, "website", websiteBin);
+        appendIndex(set, args, "domain_index", domainIndex);
+        appendIndex(set, args, "secret_fp", secretFp);
+        appendIndex(set, args, "breached", breached);
+        args.add(id);
+        args.add(userId);
+
+        String sql = set.length() == 0
+                ? "SELECT " + COLUMNS + " FROM password WHERE id = ? AND user_id = ?"
+                : "UPDATE password SET " + set + ", version = version + 1 WHERE id = ? AND user_id = ? RETURNING " + COLUMNS;
+        List<Password> rows = jdbcTemplate.query(sql, ROW_MAPPER, args.toArray());
+        return rows.stream().findFirst();
+    }
+
+    @Override
+    public Optional<Long> storeBlobOwned(Long id, Long userId, byte[] blob, Long expectedVersion) {
+        String sql = "UPDATE password SET client_blob = ?, password = NULL, name = NULL, website = NULL,"
+                + " password_bin = NULL, name_bin = NULL, website_bin = NULL, domain_index = '', secret_fp = '',"
+                + " breached = NULL, version = version + 1 WHERE id = ? AND user_id = ?"
+                + (expectedVersion != null ? " AND version = ?" : "") + " RETURNING version";
+        Object[] args = expectedVersion != null
+                ? new Object[]{blob, id, userId, expectedVersion}
+                : new Object[]{blob, id, userId};
+        return jdbcTemplate.queryForList(sql, Long.class, args).stream().findFirst();
+    }
+
+    private static void appendField(StringBuilder set, List<Object> args, String column, byte[] value) {
+        if (value == null) {
+            return;
+        }
+        if (set.length() > 0) {
+            set.append(", ");
+        }
+        set.append(column).append("_bin = ?, ").append(column).append(" = NULL");
+        args.add(value);
+    }
+
+    private static void appendIndex(StringBuilder set, List<Object> args, String column, Object value) {
+        if (value == null) {
+            return;
+        }
+        if (set.length() > 0) {
+            set.append(", ");
+        }
+        set.append(column).append(" = ?");
+        args.add(value);
+    }
+}
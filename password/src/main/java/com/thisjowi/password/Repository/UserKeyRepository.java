@@ -0,0 +1,27 @@
+package com.thisjowi.password.Repository;
+
+import com.thisjowi.password.Entity.UserKey;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+public interface UserKeyRepository extends JpaRepository<UserKey, Long> {
+
+    // First writer wins when two requests create the key of a new user at the same time.
+    // DataKeyService runs it in its own transaction, so the key is committed before it is used.
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO password_user_keys (user_id, key_id, master_key_id, wrapped_key, created_at) "
+            + "VALUES (:userId, :keyId, :masterKeyId, :wrappedKey, now()) ON CONFLICT (user_id) DO NOTHING",
+            nativeQuery = true)
+    int insertIfAbsent(Long userId, int keyId, int masterKeyId, byte[] wrappedKey);
+
+    // Keys still wrapped by an older master key, in user id order for keyset paging
+    List<UserKey> findByMasterKeyIdNotAndUserIdGreaterThanOrderByUserIdAsc(int masterKeyId, Long afterUserId, Pageable pageable);
+
+    long countByMasterKeyIdNot(int masterKeyId);
+}
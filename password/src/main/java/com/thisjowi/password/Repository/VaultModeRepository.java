@@ -0,0 +1,23 @@
+package com.thisjowi.password.Repository;
+
+import com.thisjowi.password.Entity.VaultMode;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+public interface VaultModeRepository extends JpaRepository<VaultMode, Long> {
+
+    // Users without a row are in SERVER mode; gives them one so there is a row to lock
+    @Modifying
+    @Query(value = "INSERT INTO password_vault_modes (user_id, mode, changed_at) VALUES (:userId, 'SERVER', now()) "
+            + "ON CONFLICT (user_id) DO NOTHING", nativeQuery = true)
+    int insertServerIfAbsent(Long userId);
+
+    // Held by writes until they commit, so a mode change waits for them
+    @Query(value = "SELECT mode FROM password_vault_modes WHERE user_id = :userId FOR SHARE", nativeQuery = true)
+    String findModeForShare(Long userId);
+
+    // Held by mode changes until they commit, so writes after them see the new mode
+    @Query(value = "SELECT mode FROM password_vault_modes WHERE user_id = :userId FOR UPDATE", nativeQuery = true)
+    String findModeForUpdate(Long userId);
+}
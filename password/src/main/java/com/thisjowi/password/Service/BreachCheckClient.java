@@ -0,0 +1,112 @@
+package com.thisjowi.password.Service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Breached-password check against the corpus the auth service maps (POST /breach-check), so the
+ * corpus file and its lookup code live in one service. Only SHA-1 hashes leave this service, in
+ * batches of up to 1000, with the service token auth requires on that endpoint. When auth cannot be
+ * reached the secrets count as not breached, the same as when no corpus is configured.
+ */
+@Service
+public class BreachCheckClient {
+    private static final Logger log = LoggerFactory.getLogger(BreachCheckClient.class);
+
+    // Largest batch the auth endpoint accepts
+    static final int MAX_BATCH = 1000;
+
+    static final String SERVICE_TOKEN_HEADER = "X-Service-Token";
+
+    private final WebClient authenticationWebClient;
+    private final boolean enabled;
+    private final Duration timeout;
+    private final String serviceToken;
+
+    public BreachCheckClient(WebClient authenticationWebClient,
+                             @Value("${app.breach-check.enabled:true}") boolean enabled,
+                             @Value("${app.breach-check.timeout-ms:2000}") long timeoutMs,
+                             @Value("${app.breach-check.service-token:}") String serviceToken) {
+        this.authenticationWebClient = authenticationWebClient;
+        this.enabled = enabled;
+        this.timeout = Duration.ofMillis(timeoutMs);
+        this.serviceToken = serviceToken;
+    }
+
+    public boolean isBreached(String secret) {
+        return secret != null && breached(Collections.singletonList(secret)).get(0);
+    }
+
+    /**
+     * @return one flag per secret, in order; null secrets are never breached
+     */
+    public List<Boolean> breached(List<String> secrets) {
+        List<Boolean> flags = new ArrayList<>(Collections.nCopies(secrets.size(), false));
+        if (!enabled || secrets.isEmpty()) {
+            return flags;
+        }
+        for (int from = 0; from < secrets.size(); from += MAX_BATCH) {
+            int to = Math.min(secrets.size(), from + MAX_BATCH);
+            List<Integer> positions = new ArrayList<>(to - from);
+            List<String> hashes = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                if (secrets.get(i) != null) {
+                    positions.add(i);
+                    hashes.add(sha1(secrets.get(i)));
+                }
+            }
+            if (hashes.isEmpty()) {
+                continue;
+            }
+            List<Boolean> answer = lookup(hashes);
+            for (int i = 0; i < answer.size(); i++) {
+                flags.set(positions.get(i), Boolean.TRUE.equals(answer.get(i)));
+            }
+        }
+        return flags;
+    }
+
+    private List<Boolean> lookup(List<String> hashes) {
+        try {
+            BreachCheckResponse response = authenticationWebClient.post()
+                    .uri("/breach-check")
+                    .header(SERVICE_TOKEN_HEADER, serviceToken)
+                    .bodyValue(Map.of("hashes", hashes))
+                    .retrieve()
+                    .bodyToMono(BreachCheckResponse.class)
+                    .block(timeout);
+            if (response != null && response.breached() != null && response.breached().size() == hashes.size()) {
+                return response.breached();
+            }
+            log.warn("[Breach] Unexpected breach check response for {} hashes", hashes.size());
+        } catch (RuntimeException e) {
+            log.warn("[Breach] Breach check against the auth service failed: {}", e.getMessage());
+        }
+        return List.of();
+    }
+
+    private static String sha1(String secret) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            return HexFormat.of().withUpperCase().formatHex(digest.digest(secret.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+    }
+
+    record BreachCheckResponse(List<Boolean> breached) {
+    }
+}
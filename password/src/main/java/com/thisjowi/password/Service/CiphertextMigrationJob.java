@@ -0,0 +1,162 @@
+package com.thisjowi.password.Service;
+
+import com.thisjowi.password.Entity.Password;
+import com.thisjowi.password.Repository.PasswordRepository;
+import com.thisjowi.password.Utils.Encryption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Moves encrypted fields from the legacy Base64 text columns to the binary columns in small batches,
+ * then re-encrypts binary values still under the global key with their owner's data key. Once both
+ * passes are done no stored value depends on the JWT secret any more. A last pass fills in the
+ * blind indexes (domain, secret fingerprint) of rows written before they existed.
+ */
+@Component
+public class CiphertextMigrationJob {
+    private static final Logger log = LoggerFactory.getLogger(CiphertextMigrationJob.class);
+
+    private final PasswordRepository passwordRepository;
+    private final Encryption encryption;
+    private final PasswordService passwordService;
+    private final VaultSyncTree syncTree;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int batchSize;
+
+    public CiphertextMigrationJob(PasswordRepository passwordRepository,
+                                  Encryption encryption,
+                                  PasswordService passwordService,
+                                  VaultSyncTree syncTree,
+                                  TransactionTemplate transactionTemplate,
+                                  @Value("${app.binary-migration.enabled:true}") boolean enabled,
+                                  @Value("${app.binary-migration.batch-size:500}") int batchSize) {
+        this.passwordRepository = passwordRepository;
+        this.encryption = encryption;
+        this.passwordService = passwordService;
+        this.syncTree = syncTree;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(fixedDelayString = "${app.binary-migration.delay-ms:30000}", initialDelayString = "${app.binary-migration.initial-delay-ms:60000}")
+    public void migrate() {
+        if (!enabled) {
+            return;
+        }
+        int migrated = 0;
+        int batch;
+        do {
+            batch = transactionTemplate.execute(status -> migrateBatch());
+            migrated += batch;
+        } while (batch == batchSize);
+
+        if (migrated > 0) {
+            log.info("Moved {} password entries to binary ciphertext columns", migrated);
+        }
+
+        int reencrypted = 0;
+        long[] afterId = {0};
+        do {
+            batch = transactionTemplate.execute(status -> reencryptBatch(afterId));
+            reencrypted += batch;
+        } while (batch == batchSize);
+
+        if (reencrypted > 0) {
+            log.info("Re-encrypted {} password entries with per-user data keys", reencrypted);
+        }
+
+        int indexed = 0;
+        long[] indexAfterId = {0};
+        do {
+            batch = transactionTemplate.execute(status -> indexBatch(indexAfterId));
+            indexed += batch;
+        } while (batch == batchSize);
+
+        if (indexed > 0) {
+            log.info("Computed the blind indexes of {} password entries", indexed);
+        }
+    }
+
+    private int migrateBatch() {
+        List<Password> passwords = passwordRepository.findLegacyCiphertext(PageRequest.of(0, batchSize));
+        for (Password p : passwords) {
+            if (p.getPassword() != null && p.getPasswordBin() == null) {
+                p.setPasswordBin(encryption.toBinary(p.getUserId(), p.getPassword()));
+            }
+            if (p.getName() != null && p.getNameBin() == null) {
+                p.setNameBin(encryption.toBinary(p.getUserId(), p.getName()));
+            }
+            if (p.getWebsite() != null && p.getWebsiteBin() == null) {
+                p.setWebsiteBin(encryption.toBinary(p.getUserId(), p.getWebsite()));
+            }
+            p.setPassword(null);
+            p.setName(null);
+            p.setWebsite(null);
+            syncTree.touch(p.getUserId(), p.getId());
+        }
+        passwordRepository.saveAll(passwords);
+        return passwords.size();
+    }
+
+    // Rows that fail are logged and skipped; afterId moves past them so one bad row cannot stall the job
+    private int reencryptBatch(long[] afterId) {
+        List<Password> passwords = passwordRepository.findGlobalKeyCiphertext(afterId[0], batchSize);
+        for (Password p : passwords) {
+            afterId[0] = p.getId();
+            try {
+                p.setPasswordBin(encryption.reencrypt(p.getUserId(), p.getPasswordBin()));
+                p.setNameBin(encryption.reencrypt(p.getUserId(), p.getNameBin()));
+                p.setWebsiteBin(encryption.reencrypt(p.getUserId(), p.getWebsiteBin()));
+                syncTree.touch(p.getUserId(), p.getId());
+            } catch (RuntimeException e) {
+                log.error("Could not re-encrypt password entry {}: {}", p.getId(), e.getMessage());
+            }
+        }
+        passwordRepository.saveAll(passwords);
+        return passwords.size();
+    }
+
+    private int indexBatch(long[] afterId) {
+        List<Password> passwords = passwordRepository.findMissingIndexes(afterId[0], PageRequest.of(0, batchSize));
+        // Secrets to check for breaches, in one request for the batch
+        List<Password> fingerprinted = new ArrayList<>();
+        List<String> secrets = new ArrayList<>();
+        for (Password p : passwords) {
+            afterId[0] = p.getId();
+            try {
+                if (p.getDomainIndex() == null) {
+                    String website = decrypt(p, p.getWebsiteBin(), p.getWebsite());
+                    p.setDomainIndex(website == null ? "" : passwordService.domainIndex(p.getUserId(), website));
+                }
+                if (p.getSecretFp() == null) {
+                    String secret = decrypt(p, p.getPasswordBin(), p.getPassword());
+                    p.setSecretFp(passwordService.secretFingerprint(p.getUserId(), secret));
+                    fingerprinted.add(p);
+                    secrets.add(secret);
+                }
+            } catch (RuntimeException e) {
+                log.error("Could not index password entry {}: {}", p.getId(), e.getMessage());
+            }
+        }
+        List<Boolean> breached = passwordService.breached(secrets);
+        for (int i = 0; i < fingerprinted.size(); i++) {
+            fingerprinted.get(i).setBreached(breached.get(i));
+        }
+        passwordRepository.saveAll(passwords);
+        return passwords.size();
+    }
+
+    private String decrypt(Password p, byte[] binary, String legacy) {
+        return binary != null ? encryption.decryptBytes(p.getUserId(), binary) : encryption.decrypt(legacy);
+    }
+}
@@ -0,0 +1,131 @@
+package com.thisjowi.password.Service;
+
+import com.thisjowi.password.Entity.UserKey;
+import com.thisjowi.password.Repository.UserKeyRepository;
+import com.thisjowi.password.Utils.MasterKeyRing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Per-user data keys (envelope encryption). Each user's passwords are encrypted with their own
+ * random AES-256 key, stored wrapped by a master key (see MasterKeyRing). Unwrapped keys of active
+ * users are kept in a bounded LRU cache so a request costs no extra query or unwrap.
+ *
+ * Only committed keys are cached: a new key is stored in its own transaction before anything is
+ * encrypted with it, so a caller's rollback cannot leave a cached key that the database never kept.
+ */
+@Service
+public class DataKeyService {
+    private static final Logger log = LoggerFactory.getLogger(DataKeyService.class);
+
+    private static final int KEY_SIZE = 32;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    public record DataKey(int keyId, SecretKeySpec key) {
+    }
+
+    private final UserKeyRepository userKeyRepository;
+    private final MasterKeyRing masterKeys;
+    private final Map<Long, DataKey> cache;
+    private final TransactionTemplate newTransaction;
+
+    public DataKeyService(UserKeyRepository userKeyRepository,
+                          MasterKeyRing masterKeys,
+                          PlatformTransactionManager transactionManager,
+                          @Value("${app.encryption.key-cache-size:10000}") int cacheSize) {
+        this.userKeyRepository = userKeyRepository;
+        this.masterKeys = masterKeys;
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, DataKey> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    /**
+     * The user's data key, created on first use.
+     */
+    public DataKey forUser(Long userId) {
+        if (userId == null) {
+            throw new IllegalArgumentException("Encrypted values need an owner");
+        }
+        DataKey key = cache.get(userId);
+        if (key != null) {
+            return key;
+        }
+        UserKey stored = userKeyRepository.findById(userId).orElseGet(() -> create(userId));
+        key = unwrap(stored);
+        cache.put(userId, key);
+        return key;
+    }
+
+    /**
+     * Move a data key to the active master key. Only the wrapped key changes, the user's
+     * ciphertext stays valid, so the cached key needs no eviction.
+     *
+     * @return false if the key's master key is no longer configured
+     */
+    public boolean rewrap(UserKey stored) {
+        if (!masterKeys.has(stored.getMasterKeyId())) {
+            log.error("Data key of user {} is wrapped by master key {}, which is not configured", stored.getUserId(), stored.getMasterKeyId());
+            return false;
+        }
+        byte[] aad = aad(stored.getUserId(), stored.getKeyId());
+        byte[] dataKey = masterKeys.unwrap(stored.getMasterKeyId(), stored.getWrappedKey(), aad);
+        stored.setWrappedKey(masterKeys.wrap(masterKeys.activeId(), dataKey, aad));
+        stored.setMasterKeyId(masterKeys.activeId());
+        return true;
+    }
+
+    /**
+     * Destroy the user's data key: whatever ciphertext might survive the purge becomes unreadable.
+     * Must run inside the caller's transaction.
+     */
+    public void deleteKey(Long userId) {
+        userKeyRepository.deleteById(userId);
+        cache.remove(userId);
+    }
+
+    // Committed before it is returned, whatever the caller's transaction does afterwards
+    private UserKey create(Long userId) {
+        byte[] dataKey = new byte[KEY_SIZE];
+        RANDOM.nextBytes(dataKey);
+        int keyId = RANDOM.nextInt(1, Integer.MAX_VALUE);
+        int masterKeyId = masterKeys.activeId();
+        byte[] wrapped = masterKeys.wrap(masterKeyId, dataKey, aad(userId, keyId));
+        UserKey stored = newTransaction.execute(status -> {
+            userKeyRepository.insertIfAbsent(userId, keyId, masterKeyId, wrapped);
+            // Another request may have won the insert; the stored row is the key to use
+            return userKeyRepository.findById(userId).orElse(null);
+        });
+        if (stored == null) {
+            throw new IllegalStateException("Data key of user " + userId + " was not stored");
+        }
+        return stored;
+    }
+
+    private DataKey unwrap(UserKey stored) {
+        byte[] dataKey = masterKeys.unwrap(stored.getMasterKeyId(), stored.getWrappedKey(), aad(stored.getUserId(), stored.getKeyId()));
+        return new DataKey(stored.getKeyId(), new SecretKeySpec(dataKey, "AES"));
+    }
+
+    // Binds a wrapped key to its owner and key id
+    private static byte[] aad(Long userId, int keyId) {
+        return ByteBuffer.allocate(Long.BYTES + Integer.BYTES).putLong(userId).putInt(keyId).array();
+    }
+}
@@ -0,0 +1,105 @@
+package com.thisjowi.password.Service;
+
+import com.thisjowi.password.Entity.UserKey;
+import com.thisjowi.password.Repository.UserKeyRepository;
+import com.thisjowi.password.Utils.MasterKeyRing;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Master key rotation: re-wraps the data keys still wrapped by an older master key with the active
+ * one. Only the 60-byte wrapped keys are rewritten, never the password rows. Batches are paced to
+ * keys-per-second so a rotation does not compete with request traffic.
+ */
+@Component
+public class KeyRewrapJob {
+    private static final Logger log = LoggerFactory.getLogger(KeyRewrapJob.class);
+
+    private final UserKeyRepository userKeyRepository;
+    private final DataKeyService dataKeys;
+    private final MasterKeyRing masterKeys;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int batchSize;
+    private final int keysPerSecond;
+    private final AtomicLong pending = new AtomicLong();
+
+    public KeyRewrapJob(UserKeyRepository userKeyRepository,
+                        DataKeyService dataKeys,
+                        MasterKeyRing masterKeys,
+                        TransactionTemplate transactionTemplate,
+                        MeterRegistry meterRegistry,
+                        @Value("${app.encryption.rewrap.enabled:true}") boolean enabled,
+                        @Value("${app.encryption.rewrap.batch-size:100}") int batchSize,
+                        @Value("${app.encryption.rewrap.keys-per-second:200}") int keysPerSecond) {
+        this.userKeyRepository = userKeyRepository;
+        this.dataKeys = dataKeys;
+        this.masterKeys = masterKeys;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.keysPerSecond = Math.max(1, keysPerSecond);
+        Gauge.builder("passwords.keys.rewrap.pending", pending, AtomicLong::get)
+                .description("Data keys still wrapped by an inactive master key").register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${app.encryption.rewrap.delay-ms:300000}", initialDelayString = "${app.encryption.rewrap.initial-delay-ms:60000}")
+    public void run() {
+        if (!enabled) {
+            return;
+        }
+        int active = masterKeys.activeId();
+        long[] afterUserId = {0};
+        int rewrapped = 0;
+        int batch;
+        do {
+            long started = System.nanoTime();
+            batch = transactionTemplate.execute(status -> rewrapBatch(active, afterUserId));
+            rewrapped += batch;
+            pace(batch, started);
+        } while (batch == batchSize);
+
+        pending.set(userKeyRepository.countByMasterKeyIdNot(active));
+        if (rewrapped > 0) {
+            log.info("[Keys] Re-wrapped {} data keys with master key {}, {} left", rewrapped, active, pending.get());
+        }
+    }
+
+    // Returns the number of keys looked at; keys whose old master key is gone are skipped, not retried in this run
+    private int rewrapBatch(int active, long[] afterUserId) {
+        List<UserKey> keys = userKeyRepository.findByMasterKeyIdNotAndUserIdGreaterThanOrderByUserIdAsc(
+                active, afterUserId[0], PageRequest.of(0, batchSize));
+        for (UserKey key : keys) {
+            afterUserId[0] = key.getUserId();
+            if (dataKeys.rewrap(key)) {
+                key.setRewrappedAt(LocalDateTime.now());
+            }
+        }
+        userKeyRepository.saveAll(keys);
+        return keys.size();
+    }
+
+    // Sleep off whatever is left of the batch's share of a second
+    private void pace(int processed, long startedNanos) {
+        long budgetMillis = processed * 1000L / keysPerSecond;
+        long spentMillis = (System.nanoTime() - startedNanos) / 1_000_000;
+        if (budgetMillis > spentMillis) {
+            try {
+                Thread.sleep(budgetMillis - spentMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package com.thisjowi.password.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.thisjowi.password.Utils.CsvReader;
+import com.thisjowi.password.Utils.Domains;
+import com.thisjowi.password.Utils.Encryption;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Vault import from the CSV exports of Chrome (name,url,username,password,note), Bitwarden
+ * (name,login_uri,login_password,...) and 1Password (Title,Url,Username,Password,...). Columns are
+ * found by header name, so column order and extra columns do not matter.
+ *
+ * The CSV is parsed one record at a time. Each batch is encrypted on a worker pool while the previous
+ * one is inserted with a single JDBC batch in its own transaction, so memory stays bounded by two
+ * batches. Progress and per-record failures are written back as NDJSON.
+ */
+@Service
+public class PasswordImportService {
+    private static final Logger log = LoggerFactory.getLogger(PasswordImportService.class);
+
+    private static final String INSERT_SQL = "INSERT INTO password (user_id, name_bin, website_bin, password_bin, "
+            + "domain_index, secret_fp, breached) VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    private static final List<String> TITLE_COLUMNS = List.of("name", "title");
+    private static final List<String> WEBSITE_COLUMNS = List.of("url", "login_uri", "website", "urls");
+    private static final List<String> PASSWORD_COLUMNS = List.of("password", "login_password");
+    private static final String TYPE_COLUMN = "type";
+
+    private final PasswordService passwordService;
+    private final Encryption encryption;
+    private final DataKeyService dataKeys;
+    private final VaultModeService vaultModes;
+    private final CollectionVersionCache collectionVersions;
+    private final VaultSyncTree syncTree;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final ExecutorService cryptoPool;
+    private final int batchSize;
+
+    public PasswordImportService(PasswordService passwordService,
+                                 Encryption encryption,
+                                 DataKeyService dataKeys,
+                                 VaultModeService vaultModes,
+                                 CollectionVersionCache collectionVersions,
+                                 VaultSyncTree syncTree,
+                                 JdbcTemplate jdbcTemplate,
+                                 TransactionTemplate transactionTemplate,
+                                 ObjectMapper objectMapper,
+                                 @Value("${app.import.batch-size:500}") int batchSize,
+                                 @Value("${app.import.crypto-threads:0}") int cryptoThreads) {
+        this.passwordService = passwordService;
+        this.encryption = encryption;
+        this.dataKeys = dataKeys;
+        this.vaultModes = vaultModes;
+        this.collectionVersions = collectionVersions;
+        this.syncTree = syncTree;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        this.batchSize = Math.max(1, batchSize);
+        int threads = cryptoThreads > 0 ? cryptoThreads : Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        this.cryptoPool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "password-import-crypto");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        cryptoPool.shutdownNow();
+    }
+
+    /**
+     * Import a CSV export. The report stream gets a progress line per batch, an error line per
+     * failed record and a final summary. A header without a password column fails the whole import.
+     */
+    public void importCsv(Long userId, InputStream input, OutputStream report) throws IOException {
+        CsvReader csv = new CsvReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        ImportStats stats = new ImportStats();
+        Columns columns;
+        try {
+            List<String> header = csv.next();
+            columns = header == null ? null : Columns.of(header);
+        } catch (IllegalArgumentException e) {
+            columns = null;
+        }
+        if (columns == null) {
+            fail(1, "CSV header has no password column", stats, report);
+            writeLine(report, summary("summary", stats));
+            report.flush();
+            return;
+        }
+        // Create the user's data key up front instead of racing for it on every crypto thread
+        dataKeys.forUser(userId);
+
+        List<CompletableFuture<ImportRow>> pending = null;
+        List<ImportRow> batch = readBatch(csv, columns, stats, report);
+        while (!batch.isEmpty() || pending != null) {
+            markBreached(batch);
+            // Encrypt this batch while the previous one is written
+            List<CompletableFuture<ImportRow>> encrypting = new ArrayList<>(batch.size());
+            for (ImportRow row : batch) {
+                encrypting.add(CompletableFuture.supplyAsync(() -> encrypt(userId, row), cryptoPool));
+            }
+
+            if (pending != null) {
+                writeBatch(userId, pending, stats, report);
+            }
+            pending = encrypting.isEmpty() ? null : encrypting;
+            batch = pending == null ? batch : readBatch(csv, columns, stats, report);
+        }
+
+        writeLine(report, summary("summary", stats));
+        report.flush();
+        log.info("[Import] User {} imported {} passwords, {} failed, {} skipped", userId, stats.imported, stats.failed, stats.skipped);
+    }
+
+    // Parse errors are reported right away; only rows worth encrypting are returned
+    private List<ImportRow> readBatch(CsvReader csv, Columns columns, ImportStats stats, OutputStream report) throws IOException {
+        List<ImportRow> batch = new ArrayList<>(batchSize);
+        while (batch.size() < batchSize && !stats.stopped) {
+            List<String> record;
+            try {
+                record = csv.next();
+            } catch (IllegalArgumentException e) {
+                // The rest of the input cannot be split into records reliably
+                stats.records++;
+                stats.stopped = true;
+                fail(csv.recordLine(), e.getMessage(), stats, report);
+                return batch;
+            }
+            if (record == null) {
+                return batch;
+            }
+            if (record.size() == 1 && record.get(0).isBlank()) {
+                continue;
+            }
+            stats.records++;
+            String type = columns.value(record, columns.type);
+            if (type != null && !type.isBlank() && !type.equalsIgnoreCase("login")) {
+                // Bitwarden secure notes, cards and identities
+                stats.skipped++;
+                continue;
+            }
+            ImportRow row = new ImportRow(csv.recordLine());
+            row.password = columns.value(record, columns.password);
+            row.website = blankToNull(columns.value(record, columns.website));
+            row.title = blankToNull(columns.value(record, columns.title));
+            if (row.title == null && row.website != null) {
+                row.title = Domains.registrableDomain(row.website);
+            }
+            if (row.password == null || row.password.isEmpty()) {
+                fail(row.lineNumber, "password is required", stats, report);
+            } else if (row.title == null) {
+                fail(row.lineNumber, "title or website is required", stats, report);
+            } else {
+                batch.add(row);
+            }
+        }
+        return batch;
+    }
+
+    // One breach check request per batch instead of one per row
+    private void markBreached(List<ImportRow> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<Boolean> breached = passwordService.breached(batch.stream().map(row -> row.password).toList());
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).breached = breached.get(i);
+        }
+    }
+
+    private ImportRow encrypt(Long userId, ImportRow row) {
+        try {
+            row.nameBin = encryption.encryptToBytes(userId, row.title);
+            row.passwordBin = encryption.encryptToBytes(userId, row.password);
+            row.secretFp = passwordService.secretFingerprint(userId, row.password);
+            if (row.website != null) {
+                row.websiteBin = encryption.encryptToBytes(userId, row.website);
+                row.domainIndex = passwordService.domainIndex(userId, row.website);
+            } else {
+                row.domainIndex = "";
+            }
+        } catch (Exception e) {
+            row.error = "encryption failed";
+        }
+        // Drop the plaintext as soon as it is no longer needed
+        row.password = null;
+        return row;
+    }
+
+    private void writeBatch(Long userId, List<CompletableFuture<ImportRow>> futures, ImportStats stats, OutputStream report) throws IOException {
+        List<ImportRow> inserts = new ArrayList<>(futures.size());
+        for (CompletableFuture<ImportRow> future : futures) {
+            ImportRow row = future.join();
+            if (row.error != null) {
+                fail(row.lineNumber, row.error, stats, report);
+            } else {
+                inserts.add(row);
+            }
+        }
+
+        if (!inserts.isEmpty()) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    // Checked per batch: a migration started mid-import stops it before the next insert
+                    vaultModes.lockServerWrite(userId);
+                    insert(userId, inserts);
+                });
+                collectionVersions.bump(userId);
+                syncTree.invalidate(userId);
+                stats.imported += inserts.size();
+            } catch (IllegalStateException e) {
+                log.warn("[Import] Stopped the import of user {}: {}", userId, e.getMessage());
+                stats.stopped = true;
+                for (ImportRow row : inserts) {
+                    fail(row.lineNumber, e.getMessage(), stats, report);
+                }
+            } catch (Exception e) {
+                log.warn("[Import] Batch insert failed for user {}: {}", userId, e.getMessage());
+                for (ImportRow row : inserts) {
+                    fail(row.lineNumber, "batch insert failed", stats, report);
+                }
+            }
+        }
+
+        writeLine(report, summary("progress", stats));
+        report.flush();
+    }
+
+    private void insert(Long userId, List<ImportRow> rows) {
+        List<Object[]> args = new ArrayList<>(rows.size());
+        for (ImportRow row : rows) {
+            args.add(new Object[]{userId, row.nameBin, row.websiteBin, row.passwordBin, row.domainIndex, row.secretFp, row.breached});
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, args);
+    }
+
+    private void fail(long lineNumber, String error, ImportStats stats, OutputStream report) throws IOException {
+        stats.failed++;
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("type", "error");
+        line.put("line", lineNumber);
+        line.put("error", error);
+        writeLine(report, line);
+    }
+
+    private Map<String, Object> summary(String type, ImportStats stats) {
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("type", type);
+        line.put("records", stats.records);
+        line.put("imported", stats.imported);
+        line.put("failed", stats.failed);
+        line.put("skipped", stats.skipped);
+        return line;
+    }
+
+    private void writeLine(OutputStream out, Object value) throws IOException {
+        out.write(objectMapper.writeValueAsBytes(value));
+        out.write('\n');
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+
+    // Positions of the mapped columns in the export's header, -1 when absent
+    private record Columns(int title, int website, int password, int type) {
+
+        static Columns of(List<String> header) {
+            List<String> names = header.stream().map(name -> name.trim().toLowerCase(Locale.ROOT)).toList();
+            int password = find(names, PASSWORD_COLUMNS);
+            if (password < 0) {
+                return null;
+            }
+            return new Columns(find(names, TITLE_COLUMNS), find(names, WEBSITE_COLUMNS), password, names.indexOf(TYPE_COLUMN));
+        }
+
+        private static int find(List<String> names, List<String> candidates) {
+            for (String candidate : candidates) {
+                int index = names.indexOf(candidate);
+                if (index >= 0) {
+                    return index;
+                }
+            }
+            return -1;
+        }
+
+        String value(List<String> record, int column) {
+            return column >= 0 && column < record.size() ? record.get(column) : null;
+        }
+    }
+
+    private static final class ImportStats {
+        long records;
+        long imported;
+        long failed;
+        long skipped;
+        boolean stopped;
+    }
+
+    private static final class ImportRow {
+        final long lineNumber;
+        String title;
+        String website;
+        String password;
+        String error;
+        byte[] nameBin;
+        byte[] websiteBin;
+        byte[] passwordBin;
+        String domainIndex;
+        String secretFp;
+        Boolean breached;
+
+        ImportRow(long lineNumber) {
+            this.lineNumber = lineNumber;
+        }
+    }
+}
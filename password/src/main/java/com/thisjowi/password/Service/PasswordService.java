@@ -1,14 +1,21 @@
 package com.thisjowi.password.Service;
 
 import lombok.AllArgsConstructor;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 import com.thisjowi.password.Entity.Password;
+import com.thisjowi.password.Entity.PasswordHealth;
+import com.thisjowi.password.Entity.PasswordSummary;
 import com.thisjowi.password.Repository.PasswordRepository;
+import com.thisjowi.password.Utils.Domains;
 import com.thisjowi.password.Utils.Encryption;
 import com.thisjowi.password.Utils.JwtUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
@@ -20,20 +27,17 @@ public class PasswordService {
     private final PasswordRepository passwordRepository;
     private final JwtUtil jwtUtil;
     private final Encryption encryption;
+    private final CollectionVersionCache collectionVersions;
+    private final BreachCheckClient breachCheck;
+    private final VaultSyncTree syncTree;
+    private final VaultModeService vaultModes;
+    private final TransactionTemplate transactionTemplate;
 
     public Password savePassword(Password password) {
         // Encrypt sensitive fields before saving
-        if (password.getPassword() != null && !password.getPassword().isEmpty()) {
-            password.setPassword(encryption.encrypt(password.getPassword()));
-        }
-        if (password.getWebsite() != null && !password.getWebsite().isEmpty()) {
-            password.setWebsite(encryption.encrypt(password.getWebsite()));
-        }
-        if (password.getName() != null && !password.getName().isEmpty()) {
-            password.setName(encryption.encrypt(password.getName()));
-        }
+        encryptPasswordFields(password);
         
-        Password saved = passwordRepository.save(password);
+        Password saved = persist(password);
         
         // Decrypt for the returned object
         decryptPasswordFields(saved);
@@ -44,7 +48,7 @@ public class PasswordService {
      * Get all passwords for the user in the JWT token (Authorization header).
      * IMPORTANT: Only accepts Authorization header, NOT Kafka fallback (security measure).
      */
-    public List<Password> getPasswordsByToken(String authHeader) {
+    public List<PasswordSummary> getPasswordsByToken(String authHeader) {
         log.debug("Attempting to extract userId from Authorization header");
         
         Long userId = extractUserIdFromToken(authHeader);
@@ -65,6 +69,7 @@ public class PasswordService {
         if (userId == null || userId == -1L) {
             throw new IllegalArgumentException("Invalid or expired token");
         }
+        vaultModes.checkServerWrite(userId);
         password.setUserId(userId);
         return savePassword(password);
     }
@@ -77,31 +82,30 @@ public class PasswordService {
         if (userId == null || userId == -1L) {
             throw new IllegalArgumentException("Invalid or expired token");
         }
-        var opt = passwordRepository.findById(id);
-        if (opt.isEmpty()) {
-            throw new IllegalArgumentException("Password not found");
-        }
-        Password existing = opt.get();
-        if (!userId.equals(existing.getUserId())) {
-            throw new SecurityException("Not authorized to update this resource");
-        }
-        
-        // Update and encrypt name/title field
-        if (passwordData.getName() != null && !passwordData.getName().trim().isEmpty()) {
-            existing.setName(encryption.encrypt(passwordData.getName().trim()));
-        }
-        
-        // Update and encrypt password field
-        if (passwordData.getPassword() != null && !passwordData.getPassword().trim().isEmpty()) {
-            existing.setPassword(encryption.encrypt(passwordData.getPassword().trim()));
-        }
-        
-        // Update and encrypt website field
-        if (passwordData.getWebsite() != null && !passwordData.getWebsite().trim().isEmpty()) {
-            existing.setWebsite(encryption.encrypt(passwordData.getWebsite().trim()));
-        }
-        
-        return updatePassword(existing);
+        vaultModes.checkServerWrite(userId);
+        // Encrypt only the supplied fields; the rest stay untouched in the database
+        String name = trimToNull(passwordData.getName());
+        String secret = trimToNull(passwordData.getPassword());
+        String website = trimToNull(passwordData.getWebsite());
+        byte[] nameBin = name != null ? encryption.encryptToBytes(userId, name) : null;
+        byte[] passwordBin = secret != null ? encryption.encryptToBytes(userId, secret) : null;
+        String secretFp = secret != null ? secretFingerprint(userId, secret) : null;
+        Boolean breached = secret != null ? breachCheck.isBreached(secret) : null;
+        byte[] websiteBin = website != null ? encryption.encryptToBytes(userId, website) : null;
+        String domainIndex = website != null ? domainIndex(userId, website) : null;
+
+        Password saved = transactionTemplate.execute(status -> {
+            // The cached check above only avoids encrypting for nothing; this one holds until commit
+            vaultModes.lockServerWrite(userId);
+            // One statement checks ownership, updates and returns the row
+            Password updated = passwordRepository.updateOwned(id, userId, passwordBin, nameBin, websiteBin, domainIndex, secretFp, breached)
+                    .orElseThrow(() -> ownershipFailure(id, "update"));
+            collectionVersions.bump(userId);
+            syncTree.touch(userId, id);
+            return updated;
+        });
+        decryptPasswordFields(saved);
+        return saved;
     }
 
     /**
@@ -112,22 +116,32 @@ public class PasswordService {
         if (userId == null || userId == -1L) {
             throw new IllegalArgumentException("Invalid or expired token");
         }
-        var opt = passwordRepository.findById(id);
-        if (opt.isEmpty()) {
-            throw new IllegalArgumentException("Password not found");
+        if (passwordRepository.deleteOwned(id, userId) == 0) {
+            throw ownershipFailure(id, "delete");
         }
-        Password p = opt.get();
-        if (!userId.equals(p.getUserId())) {
-            throw new SecurityException("Not authorized to delete this resource");
+        collectionVersions.bump(userId);
+        syncTree.touch(userId, id);
+    }
+
+    private static String trimToNull(String value) {
+        return value == null || value.trim().isEmpty() ? null : value.trim();
+    }
+
+    /**
+     * Explain a failed owner-scoped mutation. Only runs on the failure path.
+     */
+    private RuntimeException ownershipFailure(Long id, String action) {
+        if (passwordRepository.existsById(id)) {
+            return new SecurityException("Not authorized to " + action + " this resource");
         }
-        passwordRepository.deleteById(id);
+        return new IllegalArgumentException("Password not found");
     }
 
     /**
      * Extract user ID from JWT token (Authorization header ONLY).
      * SECURITY: No longer falls back to Kafka token for HTTP requests.
      */
-    private Long extractUserIdFromToken(String authHeader) {
+    public Long extractUserIdFromToken(String authHeader) {
         log.debug("Extracting userId from Authorization header");
         
         // Only accept Authorization header
@@ -149,94 +163,219 @@ public class PasswordService {
     }
 
     /**
-     * Get all passwords for a specific user, decrypting them on retrieval.
+     * List the passwords of a user. Only title and website are decrypted; the secret stays in the
+     * database until asked for with {@link #getSecretByToken(String, Long)}.
      */
-    private List<Password> getPasswordsByUserId(Long userId) {
+    public List<PasswordSummary> getPasswordsByUserId(Long userId) {
         if (userId == null || userId <= 0) {
             log.warn("Invalid userId: {}", userId);
             return Collections.emptyList();
         }
+        vaultModes.checkServerRead(userId);
         
-        List<Password> passwords = passwordRepository.findByUserId(userId);
+        List<PasswordRepository.Summary> rows = passwordRepository.findSummaryByUserId(userId);
         
         // Defend against null
-        if (passwords == null || passwords.isEmpty()) {
+        if (rows == null || rows.isEmpty()) {
             return Collections.emptyList();
         }
         
-        // Decrypt all sensitive fields before returning
-        passwords.forEach(this::decryptPasswordFields);
-        
-        return passwords;
+        return rows.stream()
+            .map(row -> new PasswordSummary(row.getId(),
+                decryptField(row.getUserId(), row.getNameBin(), row.getName(), "name/title", row.getId()),
+                decryptField(row.getUserId(), row.getWebsiteBin(), row.getWebsite(), "website", row.getId()),
+                row.getUserId()))
+            .toList();
     }
 
     /**
-     * Decrypt all sensitive fields of a password entity.
-     * If decryption fails, keeps the encrypted value.
+     * Decrypt the secret of one password if it belongs to the authenticated user.
      */
-    private void decryptPasswordFields(Password p) {
-        // Decrypt password field
+    public String getSecretByToken(String authHeader, Long id) {
+        Long userId = extractUserIdFromToken(authHeader);
+        if (userId == null || userId == -1L) {
+            throw new IllegalArgumentException("Invalid or expired token");
+        }
+        vaultModes.checkServerRead(userId);
+        Password password = passwordRepository.findOwned(id, userId)
+            .orElseThrow(() -> ownershipFailure(id, "read"));
+        return decryptField(userId, password.getPasswordBin(), password.getPassword(), "password", id);
+    }
+
+    /**
+     * Vault sync: decrypted entries of the authenticated user with the given ids, typically the
+     * ones whose leaf hash changed. Ids that are gone or not owned are left out, which tells the
+     * client to drop them. Entries of zero-knowledge vaults come back as their blob, untouched.
+     */
+    public List<Password> getEntriesByToken(String authHeader, Collection<Long> ids) {
+        Long userId = extractUserIdFromToken(authHeader);
+        if (userId == null || userId == -1L) {
+            throw new IllegalArgumentException("Invalid or expired token");
+        }
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Password> entries = passwordRepository.findByUserIdAndIdIn(userId, ids);
+        entries.forEach(this::decryptPasswordFields);
+        return entries;
+    }
+
+    /**
+     * Zero-knowledge migration: the next entries of the user still encrypted on the server,
+     * decrypted one last time so the client can encrypt them itself.
+     */
+    public List<Password> getServerEncryptedEntries(Long userId, Long afterId, int limit) {
+        List<Password> entries = passwordRepository.findServerEncrypted(userId, afterId, PageRequest.of(0, limit));
+        entries.forEach(this::decryptPasswordFields);
+        return entries;
+    }
+
+    /**
+     * Autofill: the user's passwords for the registrable domain of {@code domain} (a host or URL).
+     * Only the rows behind the domain index are read and decrypted.
+     */
+    public List<Password> lookupByDomainForToken(String authHeader, String domain) {
+        Long userId = extractUserIdFromToken(authHeader);
+        if (userId == null || userId == -1L) {
+            throw new IllegalArgumentException("Invalid or expired token");
+        }
+        vaultModes.checkServerRead(userId);
+        String registrable = Domains.registrableDomain(domain);
+        if (registrable == null) {
+            return Collections.emptyList();
+        }
+        List<Password> matches = passwordRepository.findByUserIdAndDomainIndex(userId, encryption.blindIndex(userId, "domain", registrable));
+        matches.forEach(this::decryptPasswordFields);
+        return matches;
+    }
+
+    /**
+     * Domain index value for a website: blind index of its registrable domain, or an empty
+     * string when it has none, so the backfill does not pick the row up again.
+     */
+    public String domainIndex(Long userId, String website) {
+        String registrable = Domains.registrableDomain(website);
+        return registrable == null ? "" : encryption.blindIndex(userId, "domain", registrable);
+    }
+
+    /**
+     * Fingerprint of a secret: entries of the same user with equal secrets share it. Surrounding
+     * whitespace is ignored, as updates and imports store the secret trimmed.
+     */
+    public String secretFingerprint(Long userId, String secret) {
+        String value = secret == null ? "" : secret.trim();
+        return value.isEmpty() ? "" : encryption.blindIndex(userId, "secret", value);
+    }
+
+    /**
+     * Whether a secret is in the auth service's breach corpus (false when it has none or is unreachable).
+     */
+    public boolean isBreached(String secret) {
+        return breachCheck.isBreached(secret);
+    }
+
+    /**
+     * {@link #isBreached(String)} for many secrets with one request per 1000, in order.
+     */
+    public List<Boolean> breached(List<String> secrets) {
+        return breachCheck.breached(secrets);
+    }
+
+    /**
+     * Vault health of the authenticated user: groups of entries reusing a secret, found with one
+     * GROUP BY over the fingerprints written at save time, and entries flagged as breached.
+     * Nothing is decrypted.
+     */
+    public PasswordHealth getHealthByToken(String authHeader) {
+        Long userId = extractUserIdFromToken(authHeader);
+        if (userId == null || userId == -1L) {
+            throw new IllegalArgumentException("Invalid or expired token");
+        }
+        List<List<Long>> groups = passwordRepository.findReuseGroups(userId).stream()
+            .map(ids -> Arrays.stream(ids.split(",")).map(Long::valueOf).toList())
+            .toList();
+        long reused = groups.stream().mapToLong(List::size).sum();
+        return new PasswordHealth(passwordRepository.countByUserId(userId), reused, groups,
+            passwordRepository.findBreachedIds(userId));
+    }
+
+    /**
+     * Encrypt all plaintext fields of a password entity into the binary columns.
+     */
+    private void encryptPasswordFields(Password p) {
         if (p.getPassword() != null) {
-            try {
-                String decrypted = encryption.decrypt(p.getPassword());
-                if (decrypted != null) {
-                    p.setPassword(decrypted);
-                } else {
-                    log.warn("Decryption returned null for password field of id {}, keeping encrypted", p.getId());
-                }
-            } catch (Exception e) {
-                log.error("Failed to decrypt password field for id {}: {}", p.getId(), e.getMessage());
-                // Keep encrypted value if decryption fails
-            }
+            p.setPasswordBin(encryption.encryptToBytes(p.getUserId(), p.getPassword()));
+            p.setSecretFp(secretFingerprint(p.getUserId(), p.getPassword()));
+            p.setBreached(breachCheck.isBreached(p.getPassword()));
+            p.setPassword(null);
+        } else if (p.getPasswordBin() == null) {
+            p.setSecretFp("");
         }
-        
-        // Decrypt website field
         if (p.getWebsite() != null) {
-            try {
-                String decrypted = encryption.decrypt(p.getWebsite());
-                if (decrypted != null) {
-                    p.setWebsite(decrypted);
-                } else {
-                    log.warn("Decryption returned null for website field of id {}, keeping encrypted", p.getId());
-                }
-            } catch (Exception e) {
-                log.error("Failed to decrypt website field for id {}: {}", p.getId(), e.getMessage());
-                // Keep encrypted value if decryption fails
-            }
+            p.setWebsiteBin(encryption.encryptToBytes(p.getUserId(), p.getWebsite()));
+            p.setDomainIndex(domainIndex(p.getUserId(), p.getWebsite()));
+            p.setWebsite(null);
+        } else if (p.getWebsiteBin() == null) {
+            p.setDomainIndex("");
         }
-        
-        // Decrypt name/title field
         if (p.getName() != null) {
-            try {
-                String decrypted = encryption.decrypt(p.getName());
-                if (decrypted != null) {
-                    p.setName(decrypted);
-                } else {
-                    log.warn("Decryption returned null for name/title field of id {}, keeping encrypted", p.getId());
-                }
-            } catch (Exception e) {
-                log.error("Failed to decrypt name/title field for id {}: {}", p.getId(), e.getMessage());
-                // Keep encrypted value if decryption fails
+            p.setNameBin(encryption.encryptToBytes(p.getUserId(), p.getName()));
+            p.setName(null);
+        }
+    }
+
+    /**
+     * Decrypt all sensitive fields of a password entity.
+     * Binary columns take precedence; rows not migrated yet still hold Base64 text.
+     * If decryption fails, keeps the stored value.
+     */
+    private void decryptPasswordFields(Password p) {
+        p.setPassword(decryptField(p.getUserId(), p.getPasswordBin(), p.getPassword(), "password", p.getId()));
+        p.setWebsite(decryptField(p.getUserId(), p.getWebsiteBin(), p.getWebsite(), "website", p.getId()));
+        p.setName(decryptField(p.getUserId(), p.getNameBin(), p.getName(), "name/title", p.getId()));
+    }
+
+    private String decryptField(Long userId, byte[] binary, String legacy, String field, Long id) {
+        if (binary == null && legacy == null) {
+            return null;
+        }
+        try {
+            String decrypted = binary != null ? encryption.decryptBytes(userId, binary) : encryption.decrypt(legacy);
+            if (decrypted != null) {
+                return decrypted;
             }
+            log.warn("Decryption returned null for {} field of id {}, keeping encrypted", field, id);
+        } catch (Exception e) {
+            log.error("Failed to decrypt {} field for id {}: {}", field, id, e.getMessage());
+            if (binary != null) {
+                // No stored text to fall back to; an empty field would read as a value the user can save over
+                throw new RuntimeException("Could not decrypt " + field + " field of password " + id, e);
+            }
+            // Keep stored value if decryption fails
         }
+        return legacy;
     }
 
     public Password updatePassword(Password password) {
         // Encrypt all sensitive fields before saving
-        if (password.getPassword() != null && !password.getPassword().isEmpty()) {
-            password.setPassword(encryption.encrypt(password.getPassword()));
-        }
-        if (password.getWebsite() != null && !password.getWebsite().isEmpty()) {
-            password.setWebsite(encryption.encrypt(password.getWebsite()));
-        }
-        if (password.getName() != null && !password.getName().isEmpty()) {
-            password.setName(encryption.encrypt(password.getName()));
-        }
+        encryptPasswordFields(password);
         
-        Password saved = passwordRepository.save(password);
+        Password saved = persist(password);
 
         // Decrypt fields for the returned object
         decryptPasswordFields(saved);
         return saved;
     }
+
+    // The mode is checked again under its row lock in the insert's transaction, so a migration
+    // cannot complete and delete the data key between the check and the write
+    private Password persist(Password password) {
+        return transactionTemplate.execute(status -> {
+            vaultModes.lockServerWrite(password.getUserId());
+            Password saved = passwordRepository.save(password);
+            collectionVersions.bump(saved.getUserId());
+            syncTree.touch(saved.getUserId(), saved.getId());
+            return saved;
+        });
+    }
 }
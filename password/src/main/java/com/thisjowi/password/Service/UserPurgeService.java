@@ -0,0 +1,131 @@
+package com.thisjowi.password.Service;
+
+import com.thisjowi.password.Entity.UserPurge;
+import com.thisjowi.password.Repository.PasswordRepository;
+import com.thisjowi.password.Repository.UserPurgeRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Removes every password of a deleted account in primary-key ranges of at most batch-size rows,
+ * one short transaction per range. The end of each range is stored so a restart resumes there.
+ */
+@Component
+public class UserPurgeService {
+    private static final Logger log = LoggerFactory.getLogger(UserPurgeService.class);
+
+    private final UserPurgeRepository purgeRepository;
+    private final PasswordRepository passwordRepository;
+    private final CollectionVersionCache collectionVersions;
+    private final VaultSyncTree syncTree;
+    private final VaultModeService vaultModes;
+    private final DataKeyService dataKeys;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int batchSize;
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong lagSeconds = new AtomicLong();
+    private final Counter purgedRows;
+
+    public UserPurgeService(UserPurgeRepository purgeRepository,
+                            PasswordRepository passwordRepository,
+                            CollectionVersionCache collectionVersions,
+                            VaultSyncTree syncTree,
+                            VaultModeService vaultModes,
+                            DataKeyService dataKeys,
+                            TransactionTemplate transactionTemplate,
+                            MeterRegistry meterRegistry,
+                            @Value("${app.user-purge.enabled:true}") boolean enabled,
+                            @Value("${app.user-purge.batch-size:1000}") int batchSize) {
+        this.purgeRepository = purgeRepository;
+        this.passwordRepository = passwordRepository;
+        this.collectionVersions = collectionVersions;
+        this.syncTree = syncTree;
+        this.vaultModes = vaultModes;
+        this.dataKeys = dataKeys;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        Gauge.builder("passwords.purge.pending", pending, AtomicLong::get)
+                .description("Deleted accounts whose passwords are not purged yet").register(meterRegistry);
+        Gauge.builder("passwords.purge.lag", lagSeconds, AtomicLong::get)
+                .baseUnit("seconds").description("Age of the oldest unfinished purge").register(meterRegistry);
+        this.purgedRows = Counter.builder("passwords.purge.rows").register(meterRegistry);
+    }
+
+    /**
+     * Record that the user's passwords must be purged. Idempotent for redelivered events.
+     */
+    public void requestPurge(Long userId) {
+        if (userId == null || userId <= 0) {
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!purgeRepository.existsById(userId)) {
+                purgeRepository.save(new UserPurge(userId, LocalDateTime.now()));
+            }
+        });
+        log.info("[Purge] Passwords of deleted user {} scheduled for removal", userId);
+    }
+
+    @Scheduled(fixedDelayString = "${app.user-purge.delay-ms:10000}", initialDelayString = "${app.user-purge.initial-delay-ms:30000}")
+    public void run() {
+        if (!enabled) {
+            return;
+        }
+        List<UserPurge> purges = purgeRepository.findByCompletedAtIsNullOrderByRequestedAtAsc(PageRequest.of(0, 10));
+        for (UserPurge purge : purges) {
+            try {
+                Boolean done;
+                do {
+                    done = transactionTemplate.execute(status -> purgeBatch(purge.getUserId()));
+                } while (Boolean.FALSE.equals(done));
+            } catch (RuntimeException e) {
+                log.error("[Purge] Failed to purge passwords of user {}", purge.getUserId(), e);
+            }
+        }
+        pending.set(purgeRepository.countByCompletedAtIsNull());
+        LocalDateTime oldest = purgeRepository.findOldestPendingRequest();
+        lagSeconds.set(oldest == null ? 0 : Math.max(0, Duration.between(oldest, LocalDateTime.now()).getSeconds()));
+    }
+
+    // Deletes the next id range and moves the checkpoint; returns true once nothing is left
+    private boolean purgeBatch(Long userId) {
+        UserPurge purge = purgeRepository.findForUpdate(userId).orElse(null);
+        if (purge == null || purge.getCompletedAt() != null) {
+            return true;
+        }
+        List<Long> ids = passwordRepository.findIdsForPurge(userId, purge.getLastId(), PageRequest.of(0, batchSize));
+        if (ids.isEmpty()) {
+            dataKeys.deleteKey(userId);
+            vaultModes.forget(userId);
+            purge.setCompletedAt(LocalDateTime.now());
+            // A user with no passwords left nothing for cached versions or sync trees to miss
+            if (purge.getPurged() > 0) {
+                collectionVersions.bump(userId);
+                syncTree.invalidate(userId);
+            }
+            log.info("[Purge] Removed {} passwords of deleted user {}", purge.getPurged(), userId);
+            return true;
+        }
+        long toId = ids.get(ids.size() - 1);
+        int deleted = passwordRepository.deleteRangeForPurge(userId, purge.getLastId(), toId);
+        purge.setLastId(toId);
+        purge.setPurged(purge.getPurged() + deleted);
+        purgedRows.increment(deleted);
+        return false;
+    }
+}
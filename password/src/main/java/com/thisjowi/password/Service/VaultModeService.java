@@ -0,0 +1,140 @@
+package com.thisjowi.password.Service;
+
+import com.thisjowi.password.Entity.VaultMode;
+import com.thisjowi.password.Entity.VaultMode.Mode;
+import com.thisjowi.password.Repository.VaultModeRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Encryption mode of each vault (see {@link VaultMode}), checked on every request that encrypts or
+ * decrypts on the server. Modes of active users are kept in a bounded LRU cache, like data keys;
+ * writes and mode changes re-read the mode under a lock on its row in their own transaction.
+ */
+@Service
+public class VaultModeService {
+
+    private final VaultModeRepository vaultModeRepository;
+    private final Map<Long, Mode> cache;
+
+    public VaultModeService(VaultModeRepository vaultModeRepository,
+                            @Value("${app.vault.mode-cache-size:10000}") int cacheSize) {
+        this.vaultModeRepository = vaultModeRepository;
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Mode> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    public Mode modeOf(Long userId) {
+        Mode mode = cache.get(userId);
+        if (mode == null) {
+            mode = vaultModeRepository.findById(userId).map(VaultMode::getMode).orElse(Mode.SERVER);
+            cache.put(userId, mode);
+        }
+        return mode;
+    }
+
+    /**
+     * Server-side encrypted writes: only while the vault is in SERVER mode, so a migration cannot
+     * miss an entry written behind its back.
+     *
+     * @throws IllegalStateException otherwise
+     */
+    public void checkServerWrite(Long userId) {
+        requireServer(modeOf(userId));
+    }
+
+    /**
+     * Server-side encrypted writes, checked against the database instead of the cache: the mode row
+     * is locked FOR SHARE until the caller's transaction ends, so a migration cannot start or complete
+     * (and delete the data key) while the write is in flight. Must run inside the caller's transaction.
+     *
+     * @throws IllegalStateException unless the vault is in SERVER mode
+     */
+    public void lockServerWrite(Long userId) {
+        vaultModeRepository.insertServerIfAbsent(userId);
+        requireServer(Mode.valueOf(vaultModeRepository.findModeForShare(userId)));
+    }
+
+    /**
+     * Lock the mode row FOR UPDATE before changing the mode: waits for the writes holding it and
+     * blocks new ones until the caller's transaction ends. Must run inside the caller's transaction.
+     *
+     * @return the current mode
+     */
+    public Mode lockForChange(Long userId) {
+        vaultModeRepository.insertServerIfAbsent(userId);
+        return Mode.valueOf(vaultModeRepository.findModeForUpdate(userId));
+    }
+
+    /**
+     * Server-side decryption: anything but CLIENT mode, where the server holds no key.
+     *
+     * @throws IllegalStateException otherwise
+     */
+    public void checkServerRead(Long userId) {
+        if (modeOf(userId) == Mode.CLIENT) {
+            throw new IllegalStateException("Vault is zero-knowledge, use the vault blob endpoints");
+        }
+    }
+
+    /**
+     * @throws IllegalStateException unless the vault is in the given mode
+     */
+    public void checkMode(Long userId, Mode expected) {
+        requireMode(modeOf(userId), expected);
+    }
+
+    /**
+     * @throws IllegalStateException unless the mode is the expected one
+     */
+    public static void requireMode(Mode mode, Mode expected) {
+        if (mode != expected) {
+            throw new IllegalStateException("Vault is in " + mode + " mode, expected " + expected);
+        }
+    }
+
+    public void setMode(Long userId, Mode mode) {
+        vaultModeRepository.save(new VaultMode(userId, mode, LocalDateTime.now()));
+        evict(userId);
+    }
+
+    /**
+     * Forget a purged user; a new account with the same id starts in SERVER mode.
+     */
+    public void forget(Long userId) {
+        vaultModeRepository.deleteById(userId);
+        evict(userId);
+    }
+
+    private static void requireServer(Mode mode) {
+        if (mode != Mode.SERVER) {
+            throw new IllegalStateException(mode == Mode.CLIENT
+                    ? "Vault is zero-knowledge, use the vault blob endpoints"
+                    : "Vault is migrating to zero-knowledge mode");
+        }
+    }
+
+    // Evicted again after commit: a read in between could have cached the old mode
+    private void evict(Long userId) {
+        cache.remove(userId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    cache.remove(userId);
+                }
+            });
+        }
+    }
+}
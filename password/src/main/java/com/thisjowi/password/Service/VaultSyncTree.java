@@ -0,0 +1,278 @@
+package com.thisjowi.password.Service;
+
+import com.thisjowi.password.Entity.SyncNode;
+import com.thisjowi.password.Entity.SyncNode.SyncEntry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Per-user Merkle tree over the password rows, for checking a client's copy of the vault without
+ * downloading it. Each row is a leaf hashing (id, version, stored ciphertext or client blob);
+ * leaves fall into 256 buckets by {@code id % 256} and buckets sit under a 16-ary tree of depth two,
+ * so a node is addressed by the hex digits of its path: "" is the root, "a" an inner node, "a3" a bucket.
+ *
+ * A client keeps the hashes it saw last time. It asks for the root first (usually an ETag match),
+ * then only descends into children whose hash differs, and finally fetches the entries of the
+ * changed buckets. Unchanged vaults cost one request; one changed entry costs four.
+ *
+ * Writes only bump a per-bucket generation after commit. A bucket whose generation moved is
+ * recomputed from the database the next time it is read, with one query for the stale buckets of
+ * the requested node. Trees live in this instance only. They are kept for the
+ * {@code app.sync.max-cached-users} most recently synced users, and an evicted tree is rebuilt from
+ * the database on its next read. {@link CollectionVersionCache} has its own limit,
+ * {@code app.collection-version.max-cached-users}.
+ */
+@Component
+public class VaultSyncTree {
+
+    public static final int FANOUT = 16;
+    public static final int BUCKETS = FANOUT * FANOUT;
+
+    private static final int HASH_BYTES = 16;
+    private static final String LEAF_COLUMNS = "id, version, password, name, website, password_bin, name_bin, website_bin, client_blob";
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<Long, UserTree> trees;
+
+    public VaultSyncTree(JdbcTemplate jdbcTemplate,
+                         @Value("${app.sync.max-cached-users:10000}") int maxCachedUsers) {
+        this.jdbcTemplate = jdbcTemplate;
+        // Access-ordered, so the least recently synced vault goes first
+        this.trees = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, UserTree> eldest) {
+                return size() > maxCachedUsers;
+            }
+        });
+    }
+
+    /**
+     * Node of the user's tree at {@code path} (0 to 2 hex digits), with stale buckets refreshed.
+     *
+     * @throws IllegalArgumentException if the path is not a node of the tree
+     */
+    public SyncNode node(Long userId, String path) {
+        String normalized = path == null ? "" : path.toLowerCase();
+        if (normalized.length() > 2 || !normalized.chars().allMatch(c -> Character.digit(c, FANOUT) >= 0)) {
+            throw new IllegalArgumentException("Invalid sync path");
+        }
+        UserTree tree = trees.computeIfAbsent(userId, id -> new UserTree());
+        synchronized (tree) {
+            if (normalized.length() == 2) {
+                int bucket = Integer.parseInt(normalized, FANOUT);
+                refresh(userId, tree, bucket, bucket + 1);
+                return new SyncNode(normalized, HEX.formatHex(tree.bucketHashes[bucket]), null, List.of(tree.entries[bucket]));
+            }
+            if (normalized.length() == 1) {
+                int child = Integer.parseInt(normalized, FANOUT);
+                refresh(userId, tree, child * FANOUT, (child + 1) * FANOUT);
+                List<String> children = new ArrayList<>(FANOUT);
+                for (int i = 0; i < FANOUT; i++) {
+                    children.add(HEX.formatHex(tree.bucketHashes[child * FANOUT + i]));
+                }
+                return new SyncNode(normalized, HEX.formatHex(tree.innerHashes[child]), children, null);
+            }
+            refresh(userId, tree, 0, BUCKETS);
+            List<String> children = new ArrayList<>(FANOUT);
+            for (byte[] hash : tree.innerHashes) {
+                children.add(HEX.formatHex(hash));
+            }
+            return new SyncNode("", HEX.formatHex(tree.root), children, null);
+        }
+    }
+
+    /**
+     * Root hash of the user's vault; equal roots mean equal vaults.
+     */
+    public String rootHash(Long userId) {
+        return node(userId, "").getHash();
+    }
+
+    /**
+     * Mark the bucket of a written or deleted row as stale. Inside a transaction this waits for the
+     * commit, so a refresh cannot read the old row after the bump.
+     */
+    public void touch(Long userId, Long id) {
+        if (userId == null || id == null) {
+            return;
+        }
+        afterCommit(() -> {
+            UserTree tree = trees.get(userId);
+            if (tree != null) {
+                tree.generations.incrementAndGet(bucketOf(id));
+            }
+        });
+    }
+
+    /**
+     * Drop the user's tree, after bulk writes whose ids are not known (imports, purges).
+     */
+    public void invalidate(Long userId) {
+        if (userId == null) {
+            return;
+        }
+        afterCommit(() -> trees.remove(userId));
+    }
+
+    public static int bucketOf(long id) {
+        return (int) Math.floorMod(id, (long) BUCKETS);
+    }
+
+    // Recompute the stale buckets in [from, to) and the inner hashes above them
+    private void refresh(Long userId, UserTree tree, int from, int to) {
+        List<Integer> stale = new ArrayList<>();
+        int[] seen = new int[BUCKETS];
+        for (int b = from; b < to; b++) {
+            seen[b] = tree.generations.get(b);
+            if (tree.entries[b] == null || seen[b] != tree.builtGenerations[b]) {
+                stale.add(b);
+            }
+        }
+        if (stale.isEmpty()) {
+            return;
+        }
+
+        List<SyncEntry>[] loaded = newBuckets();
+        RowCallbackHandler collect = rs -> {
+            SyncEntry leaf = leaf(rs);
+            loaded[bucketOf(leaf.getId())].add(leaf);
+        };
+        if (stale.size() <= FANOUT) {
+            String buckets = String.join(", ", Collections.nCopies(stale.size(), "?"));
+            List<Object> args = new ArrayList<>(stale.size() + 1);
+            args.add(userId);
+            args.addAll(stale);
+            jdbcTemplate.query("SELECT " + LEAF_COLUMNS + " FROM password WHERE user_id = ? AND id % " + BUCKETS
+                    + " IN (" + buckets + ")", collect, args.toArray());
+        } else {
+            // Many stale buckets (first sync, imports): one pass over the vault
+            jdbcTemplate.query("SELECT " + LEAF_COLUMNS + " FROM password WHERE user_id = ?", collect, userId);
+        }
+        for (List<SyncEntry> bucket : loaded) {
+            bucket.sort(Comparator.comparing(SyncEntry::getId));
+        }
+
+        MessageDigest digest = sha256();
+        for (int bucket : stale) {
+            tree.entries[bucket] = loaded[bucket].toArray(SyncEntry[]::new);
+            for (SyncEntry entry : tree.entries[bucket]) {
+                digest.update(HEX.parseHex(entry.getHash()));
+            }
+            tree.bucketHashes[bucket] = truncate(digest.digest());
+            // A write that landed during the query bumped the generation again and stays stale
+            tree.builtGenerations[bucket] = seen[bucket];
+        }
+        for (int child = 0; child < FANOUT; child++) {
+            if (!touches(stale, child)) {
+                continue;
+            }
+            for (int i = 0; i < FANOUT; i++) {
+                byte[] hash = tree.bucketHashes[child * FANOUT + i];
+                digest.update(hash == null ? tree.emptyHash : hash);
+            }
+            tree.innerHashes[child] = truncate(digest.digest());
+        }
+        for (byte[] hash : tree.innerHashes) {
+            digest.update(hash == null ? tree.emptyHash : hash);
+        }
+        tree.root = truncate(digest.digest());
+    }
+
+    private static boolean touches(List<Integer> buckets, int child) {
+        for (int bucket : buckets) {
+            if (bucket / FANOUT == child) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Hash of one row of LEAF_COLUMNS: whatever is stored, server-side ciphertext or client blob
+    private static SyncEntry leaf(ResultSet rs) throws SQLException {
+        long id = rs.getLong("id");
+        long version = rs.getLong("version");
+        MessageDigest digest = sha256();
+        digest.update(ByteBuffer.allocate(16).putLong(id).putLong(version).array());
+        byte[][] values = {rs.getBytes("password_bin"), rs.getBytes("name_bin"), rs.getBytes("website_bin"),
+                bytes(rs.getString("password")), bytes(rs.getString("name")), bytes(rs.getString("website")),
+                rs.getBytes("client_blob")};
+        for (byte[] value : values) {
+            // Length-prefixed, so moving bytes between fields changes the hash
+            digest.update(ByteBuffer.allocate(4).putInt(value == null ? -1 : value.length).array());
+            if (value != null) {
+                digest.update(value);
+            }
+        }
+        return new SyncEntry(id, version, HEX.formatHex(truncate(digest.digest())));
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] truncate(byte[] hash) {
+        return Arrays.copyOf(hash, HASH_BYTES);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<SyncEntry>[] newBuckets() {
+        List<SyncEntry>[] buckets = new List[BUCKETS];
+        for (int b = 0; b < BUCKETS; b++) {
+            buckets[b] = new ArrayList<>();
+        }
+        return buckets;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    // One user's tree; fields are guarded by the tree's monitor except the generations
+    private static final class UserTree {
+        final AtomicIntegerArray generations = new AtomicIntegerArray(BUCKETS);
+        final int[] builtGenerations = new int[BUCKETS];
+        final SyncEntry[][] entries = new SyncEntry[BUCKETS][];
+        final byte[][] bucketHashes = new byte[BUCKETS][];
+        final byte[][] innerHashes = new byte[FANOUT][];
+        final byte[] emptyHash = truncate(sha256().digest());
+        byte[] root;
+    }
+}
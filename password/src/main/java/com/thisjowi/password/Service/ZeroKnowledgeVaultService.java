@@ -0,0 +1,227 @@
+package com.thisjowi.password.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.thisjowi.password.Entity.Password;
+import com.thisjowi.password.Entity.VaultBlob;
+import com.thisjowi.password.Entity.VaultMode.Mode;
+import com.thisjowi.password.Entity.VaultStatus;
+import com.thisjowi.password.Repository.PasswordRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Zero-knowledge vaults: the client encrypts each entry into one blob and the service only stores,
+ * versions and streams it. Nothing here touches Encryption, except the one-time export of a
+ * migration, which decrypts the old entries so the client can encrypt them itself.
+ *
+ * Migration from server-side encryption: start (SERVER to MIGRATING, server-side writes stop),
+ * page through the decrypted entries, upload a blob for each (the row's ciphertext and blind indexes
+ * are dropped as it goes), then complete, which only succeeds once no server-encrypted entry is
+ * left and deletes the user's data key.
+ */
+@Service
+public class ZeroKnowledgeVaultService {
+    private static final Logger log = LoggerFactory.getLogger(ZeroKnowledgeVaultService.class);
+
+    private static final int STREAM_FETCH_SIZE = 500;
+
+    private final PasswordService passwordService;
+    private final PasswordRepository passwordRepository;
+    private final VaultModeService vaultModes;
+    private final DataKeyService dataKeys;
+    private final CollectionVersionCache collectionVersions;
+    private final VaultSyncTree syncTree;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final JdbcTemplate streamingJdbcTemplate;
+
+    public ZeroKnowledgeVaultService(PasswordService passwordService,
+                                     PasswordRepository passwordRepository,
+                                     VaultModeService vaultModes,
+                                     DataKeyService dataKeys,
+                                     CollectionVersionCache collectionVersions,
+                                     VaultSyncTree syncTree,
+                                     TransactionTemplate transactionTemplate,
+                                     ObjectMapper objectMapper,
+                                     DataSource dataSource) {
+        this.passwordService = passwordService;
+        this.passwordRepository = passwordRepository;
+        this.vaultModes = vaultModes;
+        this.dataKeys = dataKeys;
+        this.collectionVersions = collectionVersions;
+        this.syncTree = syncTree;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        // With a fetch size inside a transaction the PostgreSQL driver reads through a cursor
+        this.streamingJdbcTemplate = new JdbcTemplate(dataSource);
+        this.streamingJdbcTemplate.setFetchSize(STREAM_FETCH_SIZE);
+    }
+
+    public VaultStatus getStatusByToken(String authHeader) {
+        Long userId = requireUser(authHeader);
+        Mode mode = vaultModes.modeOf(userId);
+        return new VaultStatus(mode, mode == Mode.MIGRATING ? passwordRepository.countByUserIdAndClientBlobIsNull(userId) : null, null, null);
+    }
+
+    /**
+     * Start moving the vault to client-side encryption. Idempotent while migrating.
+     *
+     * @throws IllegalStateException if the vault is already zero-knowledge
+     */
+    public VaultStatus startMigrationByToken(String authHeader) {
+        Long userId = requireUser(authHeader);
+        // Waits for server-side writes in flight; later ones see MIGRATING and are rejected
+        transactionTemplate.executeWithoutResult(status -> {
+            Mode mode = vaultModes.lockForChange(userId);
+            if (mode == Mode.CLIENT) {
+                throw new IllegalStateException("Vault is already zero-knowledge");
+            }
+            if (mode == Mode.SERVER) {
+                vaultModes.setMode(userId, Mode.MIGRATING);
+                log.info("[Vault] User {} started the migration to zero-knowledge mode", userId);
+            }
+        });
+        return new VaultStatus(Mode.MIGRATING, passwordRepository.countByUserIdAndClientBlobIsNull(userId), null, null);
+    }
+
+    /**
+     * Next page of entries still encrypted by the server, decrypted, in id order after {@code afterId}.
+     */
+    public List<Password> getMigrationEntriesByToken(String authHeader, Long afterId, int limit) {
+        Long userId = requireUser(authHeader);
+        vaultModes.checkMode(userId, Mode.MIGRATING);
+        return passwordService.getServerEncryptedEntries(userId, afterId, limit);
+    }
+
+    /**
+     * Replace migrated entries with the client's blobs, in one transaction. Entries that are gone,
+     * not the user's or changed since their export (version mismatch) are rejected, not fatal.
+     */
+    public VaultStatus storeMigratedBlobsByToken(String authHeader, List<VaultBlob> blobs) {
+        Long userId = requireUser(authHeader);
+        vaultModes.checkMode(userId, Mode.MIGRATING);
+        List<Long> rejected = new ArrayList<>();
+        Integer converted = transactionTemplate.execute(status -> {
+            int stored = 0;
+            for (VaultBlob blob : blobs) {
+                if (passwordRepository.storeBlobOwned(blob.getId(), userId, blob.getBlob(), blob.getVersion()).isPresent()) {
+                    syncTree.touch(userId, blob.getId());
+                    stored++;
+                } else {
+                    rejected.add(blob.getId());
+                }
+            }
+            if (stored > 0) {
+                collectionVersions.bump(userId);
+            }
+            return stored;
+        });
+        return new VaultStatus(Mode.MIGRATING, passwordRepository.countByUserIdAndClientBlobIsNull(userId), converted, rejected);
+    }
+
+    /**
+     * Finish the migration once every entry is a client blob: the vault switches to CLIENT mode and
+     * the user's data key is deleted, so the server can no longer decrypt anything it kept.
+     *
+     * @return the status; still MIGRATING with the remaining count if entries are left
+     */
+    public VaultStatus completeMigrationByToken(String authHeader) {
+        Long userId = requireUser(authHeader);
+        // Count and switch under the mode row lock, so no server-side write can add an entry in between
+        long remaining = transactionTemplate.execute(status -> {
+            VaultModeService.requireMode(vaultModes.lockForChange(userId), Mode.MIGRATING);
+            long left = passwordRepository.countByUserIdAndClientBlobIsNull(userId);
+            if (left == 0) {
+                vaultModes.setMode(userId, Mode.CLIENT);
+                dataKeys.deleteKey(userId);
+            }
+            return left;
+        });
+        if (remaining > 0) {
+            return new VaultStatus(Mode.MIGRATING, remaining, null, null);
+        }
+        log.info("[Vault] User {} completed the migration to zero-knowledge mode", userId);
+        return new VaultStatus(Mode.CLIENT, 0L, null, null);
+    }
+
+    /**
+     * Write every blob of the user's zero-knowledge vault as NDJSON lines of {@link VaultBlob},
+     * reading through a cursor so memory does not grow with the vault.
+     */
+    public void streamBlobs(Long userId, OutputStream out) throws IOException {
+        vaultModes.checkMode(userId, Mode.CLIENT);
+        try {
+            transactionTemplate.executeWithoutResult(status -> streamingJdbcTemplate.query(
+                    "SELECT id, version, client_blob FROM password WHERE user_id = ? ORDER BY id",
+                    rs -> {
+                        try {
+                            out.write(objectMapper.writeValueAsBytes(new VaultBlob(rs.getLong("id"), rs.getLong("version"), rs.getBytes("client_blob"))));
+                            out.write('\n');
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }, userId));
+        } catch (UncheckedIOException e) {
+            // Client went away mid-stream
+            throw e.getCause();
+        }
+        out.flush();
+    }
+
+    public VaultBlob createBlobByToken(String authHeader, byte[] blob) {
+        Long userId = requireUser(authHeader);
+        vaultModes.checkMode(userId, Mode.CLIENT);
+        Password password = new Password();
+        password.setUserId(userId);
+        password.setClientBlob(blob);
+        // Nothing for the blind index backfill to compute
+        password.setDomainIndex("");
+        password.setSecretFp("");
+        Password saved = passwordRepository.save(password);
+        collectionVersions.bump(userId);
+        syncTree.touch(userId, saved.getId());
+        return new VaultBlob(saved.getId(), saved.getVersion(), null);
+    }
+
+    /**
+     * Replace the blob of an entry. With a version, the write only succeeds if no other client
+     * changed the entry since it read that version.
+     *
+     * @throws IllegalStateException on a version mismatch
+     */
+    public VaultBlob updateBlobByToken(String authHeader, Long id, byte[] blob, Long expectedVersion) {
+        Long userId = requireUser(authHeader);
+        vaultModes.checkMode(userId, Mode.CLIENT);
+        Long version = passwordRepository.storeBlobOwned(id, userId, blob, expectedVersion).orElseThrow(() -> {
+            Password current = passwordRepository.findById(id).orElse(null);
+            if (current == null) {
+                return new IllegalArgumentException("Password not found");
+            }
+            if (!userId.equals(current.getUserId())) {
+                return new SecurityException("Not authorized to update this resource");
+            }
+            return new IllegalStateException("Entry was changed by another client, now at version " + current.getVersion());
+        });
+        collectionVersions.bump(userId);
+        syncTree.touch(userId, id);
+        return new VaultBlob(id, version, null);
+    }
+
+    public Long requireUser(String authHeader) {
+        Long userId = passwordService.extractUserIdFromToken(authHeader);
+        if (userId == null || userId == -1L) {
+            throw new IllegalArgumentException("Invalid or expired token");
+        }
+        return userId;
+    }
+}
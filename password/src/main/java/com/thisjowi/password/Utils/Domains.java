@@ -0,0 +1,72 @@
+package com.thisjowi.password.Utils;
+
+import com.google.common.net.InetAddresses;
+import com.google.common.net.InternetDomainName;
+
+import java.net.IDN;
+import java.util.Locale;
+
+/**
+ * Normalizes what users type as a website to the domain autofill matches on: the registrable
+ * domain (public suffix + one label), so https://www.github.com/login, github.com and
+ * gist.github.com all become github.com, while foo.co.uk and bar.co.uk stay apart.
+ */
+public final class Domains {
+
+    private Domains() {
+    }
+
+    /**
+     * @return the registrable domain, the host itself for IPs and hosts without a public suffix
+     *         (localhost, intranet names), or null if no host can be read from the value
+     */
+    public static String registrableDomain(String website) {
+        if (website == null || website.isBlank()) {
+            return null;
+        }
+        String host = website.trim();
+        int scheme = host.indexOf("://");
+        if (scheme >= 0) {
+            host = host.substring(scheme + 3);
+        }
+        int end = indexOfAny(host, "/?#");
+        if (end >= 0) {
+            host = host.substring(0, end);
+        }
+        host = host.substring(host.lastIndexOf('@') + 1);
+        if (host.startsWith("[")) {
+            // IPv6 literal, port after the bracket
+            int close = host.indexOf(']');
+            return close > 0 ? host.substring(0, close + 1).toLowerCase(Locale.ROOT) : null;
+        }
+        int port = host.indexOf(':');
+        if (port >= 0) {
+            host = host.substring(0, port);
+        }
+        if (host.isEmpty()) {
+            return null;
+        }
+        host = host.toLowerCase(Locale.ROOT);
+        if (host.endsWith(".")) {
+            host = host.substring(0, host.length() - 1);
+        }
+        if (InetAddresses.isInetAddress(host)) {
+            return host;
+        }
+        try {
+            InternetDomainName name = InternetDomainName.from(IDN.toASCII(host));
+            return name.isUnderPublicSuffix() ? name.topPrivateDomain().toString() : name.toString();
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return null;
+        }
+    }
+
+    private static int indexOfAny(String value, String chars) {
+        for (int i = 0; i < value.length(); i++) {
+            if (chars.indexOf(value.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
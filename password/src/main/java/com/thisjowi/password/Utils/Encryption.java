@@ -1,19 +1,26 @@
 package com.thisjowi.password.Utils;
 
+import com.thisjowi.password.Service.DataKeyService;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.crypto.Cipher;
+import javax.crypto.Mac;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.security.SecureRandom;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.HexFormat;
 
 /**
  * EncryptionUtil provides AES-256-GCM encryption/decryption with random IV.
- * The encryption key is loaded from the environment variable (JWT_SECRET).
+ * New values are encrypted with the owner's data key (format 2, see DataKeyService); the global
+ * key loaded from the environment variable (JWT_SECRET) only decrypts values written before that.
  * 
  * ✓ AES-256 (256-bit key)
  * ✓ GCM mode with random IV (authenticated encryption)
@@ -29,11 +36,17 @@ public class Encryption {
     private static final int AES_KEY_SIZE = 32;  // 256 bits
     private static final int IV_SIZE = 12;       // 96 bits (GCM standard)
     private static final int TAG_SIZE = 128;     // 128 bits authentication tag
+    private static final byte FORMAT_V1 = 1;     // Binary columns: format byte + IV + ciphertext
+    private static final byte FORMAT_V2 = 2;     // Format byte + data key id + IV + ciphertext
+    private static final int V2_HEADER_SIZE = 1 + Integer.BYTES;
+    private static final int INDEX_SIZE = 16;    // 128 bits of HMAC-SHA256, hex in the column
+    private static final SecureRandom RANDOM = new SecureRandom();
     
     private final String secretKey;
     private volatile byte[] secretKeyBytes;
+    private final DataKeyService dataKeys;
 
-    public Encryption(@Value("${app.jwt.secret}") String jwtSecret) {
+    public Encryption(@Value("${app.jwt.secret}") String jwtSecret, DataKeyService dataKeys) {
         if (jwtSecret == null || jwtSecret.trim().isEmpty()) {
             log.error("Encryption key not provided via JWT_SECRET environment variable");
             throw new IllegalArgumentException("JWT_SECRET environment variable is required");
@@ -47,6 +60,7 @@ public class Encryption {
         }
         
         this.secretKey = jwtSecret;
+        this.dataKeys = dataKeys;
         // Preprocess key (first execution)
         this.secretKeyBytes = deriveKeyBytes();
         log.info("✓ EncryptionUtil initialized with AES-256-GCM");
@@ -73,24 +87,7 @@ public class Encryption {
         }
         
         try {
-            // Generate random IV
-            byte[] iv = new byte[IV_SIZE];
-            SecureRandom random = new SecureRandom();
-            random.nextBytes(iv);
-            
-            // Initialize cipher with GCM parameters
-            Cipher cipher = Cipher.getInstance(AES_ALGORITHM);
-            SecretKeySpec keySpec = new SecretKeySpec(secretKeyBytes, 0, AES_KEY_SIZE, "AES");
-            GCMParameterSpec gcmSpec = new GCMParameterSpec(TAG_SIZE, iv);
-            cipher.init(Cipher.ENCRYPT_MODE, keySpec, gcmSpec);
-            
-            // Encrypt
-            byte[] encrypted = cipher.doFinal(plaintext.getBytes("UTF-8"));
-            
-            // Combine IV + ciphertext
-            byte[] combined = new byte[IV_SIZE + encrypted.length];
-            System.arraycopy(iv, 0, combined, 0, IV_SIZE);
-            System.arraycopy(encrypted, 0, combined, IV_SIZE, encrypted.length);
+            byte[] combined = seal(legacyKey(), plaintext.getBytes(StandardCharsets.UTF_8), null);
             
             // Encode in Base64
             String result = Base64.getEncoder().encodeToString(combined);
@@ -116,31 +113,9 @@ public class Encryption {
             // Decodificar Base64
             byte[] combined = Base64.getDecoder().decode(ciphertext);
             
-            // Validar longitud mínima (IV + datos)
-            if (combined.length < IV_SIZE) {
-                log.error("Invalid ciphertext: too short (expected at least {}, got {})", 
-                    IV_SIZE, combined.length);
-                throw new RuntimeException(String.format(
-                    "Invalid ciphertext: too short (expected at least %d bytes, got %d)", 
-                    IV_SIZE, combined.length));
-            }
-            
-            // Extraer IV y ciphertext
-            byte[] iv = new byte[IV_SIZE];
-            byte[] encrypted = new byte[combined.length - IV_SIZE];
-            System.arraycopy(combined, 0, iv, 0, IV_SIZE);
-            System.arraycopy(combined, IV_SIZE, encrypted, 0, encrypted.length);
-            
-            // Initialize cipher with GCM parameters
-            Cipher cipher = Cipher.getInstance(AES_ALGORITHM);
-            SecretKeySpec keySpec = new SecretKeySpec(secretKeyBytes, 0, AES_KEY_SIZE, "AES");
-            GCMParameterSpec gcmSpec = new GCMParameterSpec(TAG_SIZE, iv);
-            cipher.init(Cipher.DECRYPT_MODE, keySpec, gcmSpec);
-            
-            // Decrypt
-            byte[] decrypted = cipher.doFinal(encrypted);
-            String result = new String(decrypted, "UTF-8");
-            log.debug("Decrypted {} bytes of data successfully", encrypted.length);
+            byte[] decrypted = open(legacyKey(), combined, 0, combined.length, null);
+            String result = new String(decrypted, StandardCharsets.UTF_8);
+            log.debug("Decrypted {} bytes of data successfully", combined.length - IV_SIZE);
             return result;
             
         } catch (IllegalArgumentException e) {
@@ -151,4 +126,173 @@ public class Encryption {
             throw new RuntimeException("Error decrypting data: " + e.getMessage(), e);
         }
     }
+
+    /**
+     * Encrypts a string for a BYTEA column with the owner's data key:
+     * format byte 2 + data key id + IV + ciphertext, no Base64. The header and the owner are
+     * authenticated with the ciphertext, so values cannot be moved between users.
+     */
+    public byte[] encryptToBytes(Long userId, String plaintext) {
+        if (plaintext == null) {
+            return null;
+        }
+
+        try {
+            DataKeyService.DataKey key = dataKeys.forUser(userId);
+            byte[] header = ByteBuffer.allocate(V2_HEADER_SIZE).put(FORMAT_V2).putInt(key.keyId()).array();
+            byte[] sealed = seal(key.key(), plaintext.getBytes(StandardCharsets.UTF_8), aad(header, userId));
+            byte[] result = new byte[V2_HEADER_SIZE + sealed.length];
+            System.arraycopy(header, 0, result, 0, V2_HEADER_SIZE);
+            System.arraycopy(sealed, 0, result, V2_HEADER_SIZE, sealed.length);
+            return result;
+        } catch (Exception e) {
+            log.error("Error encrypting data: {}", e.getMessage());
+            throw new RuntimeException("Error encrypting data", e);
+        }
+    }
+
+    /**
+     * Decrypts a value produced by encryptToBytes(), or a format 1 value under the global key.
+     */
+    public String decryptBytes(Long userId, byte[] stored) {
+        if (stored == null) {
+            return null;
+        }
+        if (stored.length > 0 && stored[0] == FORMAT_V1) {
+            return decryptLegacyBytes(stored);
+        }
+        if (stored.length < V2_HEADER_SIZE || stored[0] != FORMAT_V2) {
+            throw new RuntimeException("Invalid encrypted data: unknown binary format");
+        }
+
+        try {
+            int keyId = ByteBuffer.wrap(stored, 1, Integer.BYTES).getInt();
+            DataKeyService.DataKey key = dataKeys.forUser(userId);
+            if (key.keyId() != keyId) {
+                throw new IllegalStateException("Value was encrypted with data key " + keyId + ", user has " + key.keyId());
+            }
+            byte[] aad = aad(Arrays.copyOf(stored, V2_HEADER_SIZE), userId);
+            return new String(open(key.key(), stored, V2_HEADER_SIZE, stored.length - V2_HEADER_SIZE, aad), StandardCharsets.UTF_8);
+        } catch (Exception e) {
+            log.error("Error decrypting data: {}", e.getMessage());
+            throw new RuntimeException("Error decrypting data: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Keyed HMAC of a value for equality lookups without decrypting (blind index). The key is derived
+     * from the owner's data key and the purpose, so equal values of different users or different
+     * columns never share an index value.
+     */
+    public String blindIndex(Long userId, String purpose, String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            byte[] indexKey = hmac(dataKeys.forUser(userId).key().getEncoded(), ("blind-index:" + purpose).getBytes(StandardCharsets.UTF_8));
+            byte[] digest = hmac(indexKey, value.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, INDEX_SIZE);
+        } catch (Exception e) {
+            log.error("Error computing blind index: {}", e.getMessage());
+            throw new RuntimeException("Error computing blind index", e);
+        }
+    }
+
+    /**
+     * Whether a binary value still uses the global key and has to be re-encrypted with a data key.
+     */
+    public boolean isLegacy(byte[] stored) {
+        return stored != null && stored.length > 0 && stored[0] == FORMAT_V1;
+    }
+
+    /**
+     * Re-encrypts a format 1 value with the owner's data key; other values are returned as they are.
+     */
+    public byte[] reencrypt(Long userId, byte[] stored) {
+        return isLegacy(stored) ? encryptToBytes(userId, decryptLegacyBytes(stored)) : stored;
+    }
+
+    /**
+     * Converts a legacy Base64 column value to the binary format under the owner's data key.
+     * Valid ciphertext is decrypted with the global key first; anything else is treated as
+     * plaintext stored before encryption.
+     */
+    public byte[] toBinary(Long userId, String stored) {
+        if (stored == null) {
+            return null;
+        }
+        String plaintext = stored;
+        try {
+            byte[] combined = Base64.getDecoder().decode(stored);
+            if (combined.length >= IV_SIZE + TAG_SIZE / 8) {
+                plaintext = new String(open(legacyKey(), combined, 0, combined.length, null), StandardCharsets.UTF_8);
+            }
+        } catch (Exception e) {
+            log.warn("Legacy value is not valid ciphertext, encrypting it as plaintext");
+        }
+        return encryptToBytes(userId, plaintext);
+    }
+
+    private String decryptLegacyBytes(byte[] stored) {
+        try {
+            return new String(open(legacyKey(), stored, 1, stored.length - 1, null), StandardCharsets.UTF_8);
+        } catch (Exception e) {
+            log.error("Error decrypting data: {}", e.getMessage());
+            throw new RuntimeException("Error decrypting data: " + e.getMessage(), e);
+        }
+    }
+
+    private SecretKeySpec legacyKey() {
+        return new SecretKeySpec(secretKeyBytes, 0, AES_KEY_SIZE, "AES");
+    }
+
+    private static byte[] hmac(byte[] key, byte[] data) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(key, "HmacSHA256"));
+        return mac.doFinal(data);
+    }
+
+    private static byte[] aad(byte[] header, Long userId) {
+        return ByteBuffer.allocate(header.length + Long.BYTES).put(header).putLong(userId).array();
+    }
+
+    // IV + ciphertext (with GCM tag)
+    private byte[] seal(SecretKeySpec keySpec, byte[] plaintext, byte[] aad) throws Exception {
+        // Generate random IV
+        byte[] iv = new byte[IV_SIZE];
+        RANDOM.nextBytes(iv);
+
+        // Initialize cipher with GCM parameters
+        Cipher cipher = Cipher.getInstance(AES_ALGORITHM);
+        GCMParameterSpec gcmSpec = new GCMParameterSpec(TAG_SIZE, iv);
+        cipher.init(Cipher.ENCRYPT_MODE, keySpec, gcmSpec);
+        if (aad != null) {
+            cipher.updateAAD(aad);
+        }
+
+        // Combine IV + ciphertext
+        byte[] combined = new byte[IV_SIZE + cipher.getOutputSize(plaintext.length)];
+        System.arraycopy(iv, 0, combined, 0, IV_SIZE);
+        cipher.doFinal(plaintext, 0, plaintext.length, combined, IV_SIZE);
+        return combined;
+    }
+
+    private byte[] open(SecretKeySpec keySpec, byte[] data, int offset, int length, byte[] aad) throws Exception {
+        // Validar longitud mínima (IV + datos)
+        if (length < IV_SIZE) {
+            log.error("Invalid ciphertext: too short (expected at least {}, got {})", IV_SIZE, length);
+            throw new RuntimeException(String.format(
+                "Invalid ciphertext: too short (expected at least %d bytes, got %d)", IV_SIZE, length));
+        }
+
+        // Initialize cipher with GCM parameters, IV read in place
+        Cipher cipher = Cipher.getInstance(AES_ALGORITHM);
+        GCMParameterSpec gcmSpec = new GCMParameterSpec(TAG_SIZE, data, offset, IV_SIZE);
+        cipher.init(Cipher.DECRYPT_MODE, keySpec, gcmSpec);
+        if (aad != null) {
+            cipher.updateAAD(aad);
+        }
+
+        return cipher.doFinal(data, offset + IV_SIZE, length - IV_SIZE);
+    }
 }
@@ -0,0 +1,133 @@
+package com.thisjowi.password.Utils;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Versioned master keys that wrap the per-user data keys.
+ *
+ * Configured as {@code app.encryption.master-keys=1:<base64 32 bytes>,2:<base64 32 bytes>} with
+ * {@code app.encryption.active-master-key=2}: new and re-wrapped data keys use the active key, the
+ * others stay for unwrapping until the re-wrap job has moved every data key off them.
+ * Key id 0 is derived from the JWT secret unless configured explicitly. It is the active key of
+ * deployments without configuration; once real keys are added it only serves data keys that have
+ * not been re-wrapped yet, after which the JWT secret can rotate without touching stored data.
+ */
+@Component
+public class MasterKeyRing {
+    private static final Logger log = LoggerFactory.getLogger(MasterKeyRing.class);
+
+    private static final String AES_ALGORITHM = "AES/GCM/NoPadding";
+    private static final int KEY_SIZE = 32;
+    private static final int IV_SIZE = 12;
+    private static final int TAG_SIZE = 128;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final Map<Integer, SecretKeySpec> keys;
+    private final int activeId;
+
+    public MasterKeyRing(@Value("${app.encryption.master-keys:}") String masterKeys,
+                         @Value("${app.encryption.active-master-key:-1}") int activeId,
+                         @Value("${app.jwt.secret}") String jwtSecret) {
+        Map<Integer, SecretKeySpec> parsed = new HashMap<>();
+        for (String entry : masterKeys.split(",")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            String[] parts = entry.trim().split(":", 2);
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("app.encryption.master-keys entries must look like <id>:<base64 key>");
+            }
+            byte[] key = Base64.getDecoder().decode(parts[1].trim());
+            if (key.length != KEY_SIZE) {
+                throw new IllegalArgumentException("Master key " + parts[0] + " must be " + KEY_SIZE + " bytes");
+            }
+            parsed.put(Integer.parseInt(parts[0].trim()), new SecretKeySpec(key, "AES"));
+        }
+        if (parsed.isEmpty()) {
+            log.warn("No app.encryption.master-keys configured, data keys are wrapped with a key derived from the JWT secret");
+        }
+        // Key 0 stays available for unwrapping until the re-wrap job has moved every data key off it
+        parsed.putIfAbsent(0, new SecretKeySpec(derive(jwtSecret), "AES"));
+        if (activeId < 0) {
+            activeId = Collections.max(parsed.keySet());
+        }
+        if (!parsed.containsKey(activeId)) {
+            throw new IllegalArgumentException("Active master key " + activeId + " is not configured");
+        }
+        this.keys = Map.copyOf(parsed);
+        this.activeId = activeId;
+        log.info("✓ Master key ring loaded with {} key(s), active key {}", keys.size(), activeId);
+    }
+
+    public int activeId() {
+        return activeId;
+    }
+
+    public boolean has(int keyId) {
+        return keys.containsKey(keyId);
+    }
+
+    /**
+     * Wrap a data key with the given master key: IV + ciphertext (with GCM tag).
+     * {@code aad} binds the wrapped key to its owner so wrapped keys cannot be swapped between users.
+     */
+    public byte[] wrap(int masterKeyId, byte[] dataKey, byte[] aad) {
+        try {
+            byte[] iv = new byte[IV_SIZE];
+            RANDOM.nextBytes(iv);
+            Cipher cipher = Cipher.getInstance(AES_ALGORITHM);
+            cipher.init(Cipher.ENCRYPT_MODE, key(masterKeyId), new GCMParameterSpec(TAG_SIZE, iv));
+            cipher.updateAAD(aad);
+            byte[] wrapped = new byte[IV_SIZE + cipher.getOutputSize(dataKey.length)];
+            System.arraycopy(iv, 0, wrapped, 0, IV_SIZE);
+            cipher.doFinal(dataKey, 0, dataKey.length, wrapped, IV_SIZE);
+            return wrapped;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not wrap data key", e);
+        }
+    }
+
+    public byte[] unwrap(int masterKeyId, byte[] wrapped, byte[] aad) {
+        try {
+            Cipher cipher = Cipher.getInstance(AES_ALGORITHM);
+            cipher.init(Cipher.DECRYPT_MODE, key(masterKeyId), new GCMParameterSpec(TAG_SIZE, wrapped, 0, IV_SIZE));
+            cipher.updateAAD(aad);
+            return cipher.doFinal(wrapped, IV_SIZE, wrapped.length - IV_SIZE);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not unwrap data key with master key " + masterKeyId, e);
+        }
+    }
+
+    private SecretKeySpec key(int masterKeyId) {
+        SecretKeySpec key = keys.get(masterKeyId);
+        if (key == null) {
+            throw new IllegalStateException("Master key " + masterKeyId + " is not configured");
+        }
+        return key;
+    }
+
+    private static byte[] derive(String secret) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            return mac.doFinal("password-master-key".getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not derive master key", e);
+        }
+    }
+}
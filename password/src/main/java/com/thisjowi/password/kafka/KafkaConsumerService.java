@@ -1,6 +1,9 @@
 package com.thisjowi.password.kafka;
 
 import java.util.concurrent.atomic.AtomicReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.thisjowi.password.Service.UserPurgeService;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Service;
 import org.slf4j.Logger;
@@ -8,7 +11,8 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Kafka consumer to receive authentication events from auth-service.
- * Stores the latest JWT token for use in password operations.
+ * Stores the latest JWT token for use in password operations and schedules
+ * the purge of deleted accounts.
  */
 @Service
 public class KafkaConsumerService {
@@ -17,9 +21,20 @@ public class KafkaConsumerService {
     // Stores the latest JWT token received from auth-service
     public static final AtomicReference<String> LAST_TOKEN = new AtomicReference<>(null);
 
+    private final ObjectMapper objectMapper;
+    private final UserPurgeService userPurgeService;
+
+    public KafkaConsumerService(ObjectMapper objectMapper, UserPurgeService userPurgeService) {
+        this.objectMapper = objectMapper;
+        this.userPurgeService = userPurgeService;
+    }
+
     @KafkaListener(topics = "auth-events", groupId = "password-service-group")
     public void listen(String message) {
         log.debug("[Password] Received message from Kafka topic 'auth-events': {}", message);
+        if (isUserDeleted(message)) {
+            return;
+        }
         if (message != null && message.startsWith("Bearer ")) {
             LAST_TOKEN.set(message);
             log.debug("[Password] Token updated from Kafka");
@@ -29,5 +44,24 @@ public class KafkaConsumerService {
             log.debug("[Password] JWT token updated from Kafka");
         }
     }
-}
 
+    // Account deletion events are JSON; they schedule a purge and must not be stored as a token
+    private boolean isUserDeleted(String message) {
+        if (message == null || !message.startsWith("{")) {
+            return false;
+        }
+        JsonNode event;
+        try {
+            event = objectMapper.readTree(message);
+        } catch (Exception e) {
+            log.warn("[Password] Could not read event from Kafka: {}", e.getMessage());
+            return false;
+        }
+        if (!"USER_DELETED".equals(event.path("eventType").asText())) {
+            return false;
+        }
+        // Failures propagate so the container redelivers the event
+        userPurgeService.requestPurge(event.path("userId").asLong());
+        return true;
+    }
+}
@@ -0,0 +1,5 @@
+-- Encrypted fields are stored as raw bytes (format byte + IV + ciphertext) instead of Base64 text.
+-- On a fresh database Hibernate creates the table after this runs, hence the guards.
+ALTER TABLE IF EXISTS password ADD COLUMN IF NOT EXISTS password_bin BYTEA;
+ALTER TABLE IF EXISTS password ADD COLUMN IF NOT EXISTS name_bin BYTEA;
+ALTER TABLE IF EXISTS password ADD COLUMN IF NOT EXISTS website_bin BYTEA;
@@ -0,0 +1,3 @@
+-- Blind index of the website's registrable domain for autofill lookups.
+-- idx_password_user_domain comes from the entity mapping.
+ALTER TABLE IF EXISTS password ADD COLUMN IF NOT EXISTS domain_index VARCHAR(32);
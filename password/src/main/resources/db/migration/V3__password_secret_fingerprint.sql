@@ -0,0 +1,3 @@
+-- Keyed fingerprint of the secret for reuse detection.
+-- idx_password_user_secret comes from the entity mapping.
+ALTER TABLE IF EXISTS password ADD COLUMN IF NOT EXISTS secret_fp VARCHAR(32);
@@ -0,0 +1,2 @@
+-- Whether the secret was found in the breach corpus when it was last written.
+ALTER TABLE IF EXISTS password ADD COLUMN IF NOT EXISTS breached BOOLEAN;
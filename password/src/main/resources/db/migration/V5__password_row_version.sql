@@ -0,0 +1,2 @@
+-- Row version for vault sync, incremented by every owner update.
+ALTER TABLE IF EXISTS password ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
@@ -0,0 +1,2 @@
+-- Zero-knowledge vaults: the whole entry as one blob encrypted by the client, opaque to the server.
+ALTER TABLE IF EXISTS password ADD COLUMN IF NOT EXISTS client_blob BYTEA;
@@ -0,0 +1,63 @@
+package com.thisjowi.password.Controller;
+
+import com.thisjowi.password.Service.PasswordService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PasswordControllerTest {
+
+    private static final String AUTH = "Bearer token";
+
+    private final PasswordService passwordService = mock(PasswordService.class);
+    private final PasswordController controller = new PasswordController();
+
+    @BeforeEach
+    public void setUp() {
+        ReflectionTestUtils.setField(controller, "passwordService", passwordService);
+    }
+
+    @Test
+    public void testSecretIsReturnedUncached() {
+        when(passwordService.getSecretByToken(AUTH, 3L)).thenReturn("pw");
+
+        ResponseEntity<?> response = controller.getSecret(AUTH, 3L);
+
+        assertEquals(200, response.getStatusCode().value());
+        assertEquals(Map.of("password", "pw"), response.getBody());
+        assertEquals("no-store", response.getHeaders().getCacheControl());
+    }
+
+    @Test
+    public void testSecretOfSomeoneElsesPasswordIsForbidden() {
+        when(passwordService.getSecretByToken(AUTH, 3L)).thenThrow(new SecurityException("Not authorized to read this resource"));
+
+        ResponseEntity<?> response = controller.getSecret(AUTH, 3L);
+
+        assertEquals(403, response.getStatusCode().value());
+        assertFalse(String.valueOf(response.getBody()).contains("password="));
+    }
+
+    @Test
+    public void testSecretOfMissingPasswordIsRejected() {
+        when(passwordService.getSecretByToken(AUTH, 3L)).thenThrow(new IllegalArgumentException("Password not found"));
+
+        assertEquals(401, controller.getSecret(AUTH, 3L).getStatusCode().value());
+    }
+
+    @Test
+    public void testSecretWithoutTokenIsUnauthorized() {
+        assertEquals(401, controller.getSecret(null, 3L).getStatusCode().value());
+        verify(passwordService, never()).getSecretByToken(any(), any());
+    }
+}
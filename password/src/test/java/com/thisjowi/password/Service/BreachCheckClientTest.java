@@ -0,0 +1,148 @@
+package com.thisjowi.password.Service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.HttpMessageWriter;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.mock.http.client.reactive.MockClientHttpRequest;
+import org.springframework.web.reactive.function.BodyInserter;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeStrategies;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BreachCheckClientTest {
+
+    // SHA-1 of "password"
+    private static final String PASSWORD_SHA1 = "5BAA61E4C9B93F3F0682250B6CF8331B7EE68FD8";
+    private static final String SERVICE_TOKEN = "internal-token";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<List<String>> requests = new ArrayList<>();
+
+    @Test
+    public void testSendsHashesAndKeepsOrder() {
+        BreachCheckClient client = client(hashes -> hashes.stream().map(PASSWORD_SHA1::equals).toList());
+
+        assertEquals(List.of(false, true, false, false), client.breached(Arrays.asList("hunter22", "password", null, "Password")));
+        assertEquals(1, requests.size());
+        // Nothing is sent for a missing secret, and never the secret itself
+        assertEquals(3, requests.get(0).size());
+        assertEquals(PASSWORD_SHA1, requests.get(0).get(1));
+        assertTrue(client.isBreached("password"));
+        assertFalse(client.isBreached(null));
+    }
+
+    @Test
+    public void testLargeListsAreSplitIntoBatches() {
+        BreachCheckClient client = client(hashes -> Collections.nCopies(hashes.size(), true));
+        List<String> secrets = new ArrayList<>();
+        for (int i = 0; i < 2500; i++) {
+            secrets.add("secret" + i);
+        }
+
+        List<Boolean> breached = client.breached(secrets);
+
+        assertEquals(2500, breached.size());
+        assertTrue(breached.stream().allMatch(Boolean::booleanValue));
+        assertEquals(List.of(1000, 1000, 500), requests.stream().map(List::size).toList());
+    }
+
+    @Test
+    public void testUnreachableAuthCountsAsNotBreached() {
+        WebClient failing = WebClient.builder()
+                .exchangeFunction(request -> Mono.error(new IllegalStateException("connection refused")))
+                .build();
+        BreachCheckClient client = new BreachCheckClient(failing, true, 1000, SERVICE_TOKEN);
+
+        assertEquals(List.of(false, false), client.breached(List.of("password", "hunter22")));
+    }
+
+    @Test
+    public void testErrorResponsesCountAsNotBreached() {
+        WebClient rejecting = WebClient.builder()
+                .exchangeFunction(request -> Mono.just(ClientResponse.create(HttpStatus.BAD_REQUEST).build()))
+                .build();
+        BreachCheckClient client = new BreachCheckClient(rejecting, true, 1000, SERVICE_TOKEN);
+
+        assertFalse(client.isBreached("password"));
+    }
+
+    @Test
+    public void testDisabledCheckSendsNothing() {
+        BreachCheckClient client = new BreachCheckClient(webClient(hashes -> List.of(true)), false, 1000, SERVICE_TOKEN);
+
+        assertFalse(client.isBreached("password"));
+        assertTrue(requests.isEmpty());
+    }
+
+    private BreachCheckClient client(Function<List<String>, List<Boolean>> corpus) {
+        return new BreachCheckClient(webClient(corpus), true, 1000, SERVICE_TOKEN);
+    }
+
+    // Answers like the auth service's /breach-check, recording the hashes of each request
+    private WebClient webClient(Function<List<String>, List<Boolean>> corpus) {
+        return WebClient.builder().exchangeFunction(request -> {
+            assertEquals(HttpMethod.POST, request.method());
+            assertEquals("/breach-check", request.url().getPath());
+            // Auth refuses breach lookups without the service token
+            assertEquals(SERVICE_TOKEN, request.headers().getFirst("X-Service-Token"));
+            List<String> hashes = new ArrayList<>();
+            for (JsonNode hash : readBody(request).get("hashes")) {
+                hashes.add(hash.asText());
+            }
+            requests.add(hashes);
+            String body;
+            try {
+                body = objectMapper.writeValueAsString(Map.of("breached", corpus.apply(hashes)));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            return Mono.just(ClientResponse.create(HttpStatus.OK)
+                    .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                    .body(body)
+                    .build());
+        }).build();
+    }
+
+    private JsonNode readBody(ClientRequest request) {
+        MockClientHttpRequest written = new MockClientHttpRequest(request.method(), request.url());
+        request.body().insert(written, new BodyInserter.Context() {
+            @Override
+            public List<HttpMessageWriter<?>> messageWriters() {
+                return ExchangeStrategies.withDefaults().messageWriters();
+            }
+
+            @Override
+            public Optional<ServerHttpRequest> serverRequest() {
+                return Optional.empty();
+            }
+
+            @Override
+            public Map<String, Object> hints() {
+                return Map.of();
+            }
+        }).block();
+        try {
+            return objectMapper.readTree(written.getBodyAsString().block());
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
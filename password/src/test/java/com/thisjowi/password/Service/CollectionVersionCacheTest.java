@@ -0,0 +1,97 @@
+package com.thisjowi.password.Service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CollectionVersionCacheTest {
+
+    @Test
+    public void testEtagChangesOnlyOnBump() {
+        CollectionVersionCache cache = new CollectionVersionCache(10);
+        String initial = cache.etag(1L);
+
+        assertEquals(initial, cache.etag(1L));
+        cache.bump(1L);
+        assertNotEquals(initial, cache.etag(1L));
+        assertEquals(initial, cache.etag(2L), "other users are not affected");
+        cache.bump(null);
+    }
+
+    @Test
+    public void testIfNoneMatch() {
+        CollectionVersionCache cache = new CollectionVersionCache(10);
+        String etag = cache.etag(1L);
+
+        assertTrue(cache.matches(etag, etag));
+        assertTrue(cache.matches(etag, "W/" + etag));
+        assertTrue(cache.matches(etag, "\"other\", " + etag));
+        assertTrue(cache.matches(etag, "*"));
+        assertFalse(cache.matches(etag, "\"other\""));
+        assertFalse(cache.matches(etag, null));
+        assertFalse(cache.matches(etag, " "));
+    }
+
+    @Test
+    public void testEvictionNeverRevivesAStaleEtag() {
+        CollectionVersionCache cache = new CollectionVersionCache(2);
+        String beforeChange = cache.etag(1L);
+        cache.bump(1L);
+        String afterChange = cache.etag(1L);
+
+        // Two other users push user 1 out of the cache
+        cache.bump(2L);
+        cache.bump(3L);
+
+        assertNotEquals(beforeChange, cache.etag(1L));
+        assertFalse(cache.matches(cache.etag(1L), beforeChange));
+        // The next change moves past every version handed out so far
+        String evicted = cache.etag(1L);
+        cache.bump(1L);
+        assertNotEquals(evicted, cache.etag(1L));
+        assertNotEquals(afterChange, cache.etag(1L));
+    }
+
+    @Test
+    public void testUnchangedUserMayKeepMatchingAfterEviction() {
+        CollectionVersionCache cache = new CollectionVersionCache(1);
+        cache.bump(1L);
+        String etag = cache.etag(1L);
+
+        cache.bump(2L);
+
+        // User 1's version was the highest evicted one, so its ETag still stands
+        assertEquals(etag, cache.etag(1L));
+    }
+
+    @Test
+    public void testRecentlyReadUsersStayCached() {
+        CollectionVersionCache cache = new CollectionVersionCache(2);
+        cache.bump(1L);
+        cache.bump(2L);
+        String etag1 = cache.etag(1L);
+
+        cache.bump(3L);
+
+        // User 2 was least recently used, so it was evicted and now reads the highest evicted version
+        assertEquals(etag1, cache.etag(1L));
+        assertEquals(cache.etag(2L), cache.etag(4L));
+    }
+
+    @Test
+    public void testBumpInsideATransactionWaitsForTheCommit() {
+        CollectionVersionCache cache = new CollectionVersionCache(10);
+        String before = cache.etag(1L);
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            cache.bump(1L);
+            assertEquals(before, cache.etag(1L));
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        assertNotEquals(before, cache.etag(1L));
+    }
+}
@@ -0,0 +1,138 @@
+package com.thisjowi.password.Service;
+
+import com.thisjowi.password.Entity.UserKey;
+import com.thisjowi.password.Repository.UserKeyRepository;
+import com.thisjowi.password.Utils.MasterKeyRing;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DataKeyServiceTest {
+
+    private static final String JWT_SECRET = "test-jwt-secret-that-is-long-enough-for-aes";
+
+    private final UserKeyRepository repository = mock(UserKeyRepository.class);
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+    private final MasterKeyRing ring = new MasterKeyRing("1:" + key(1) + ",2:" + key(2), 2, JWT_SECRET);
+    private final DataKeyService service = new DataKeyService(repository, ring, transactionManager, 100);
+
+    @Test
+    public void testNewKeyIsCommittedInItsOwnTransactionBeforeUse() {
+        AtomicReference<UserKey> row = new AtomicReference<>();
+        when(repository.findById(7L)).thenAnswer(invocation -> Optional.ofNullable(row.get()));
+        when(repository.insertIfAbsent(eq(7L), anyInt(), eq(2), any())).thenAnswer(invocation -> {
+            row.set(userKey(7L, invocation.getArgument(1), invocation.getArgument(2), invocation.getArgument(3)));
+            return 1;
+        });
+
+        DataKeyService.DataKey key = service.forUser(7L);
+
+        assertEquals(row.get().getKeyId(), key.keyId());
+        ArgumentCaptor<TransactionDefinition> definition = ArgumentCaptor.forClass(TransactionDefinition.class);
+        verify(transactionManager).getTransaction(definition.capture());
+        assertEquals(TransactionDefinition.PROPAGATION_REQUIRES_NEW, definition.getValue().getPropagationBehavior());
+        verify(transactionManager).commit(any());
+
+        // Cached from now on
+        assertSame(key, service.forUser(7L));
+        verify(repository, times(2)).findById(7L);
+    }
+
+    @Test
+    public void testLosingTheInsertRaceCachesTheStoredKey() {
+        byte[] winnerKey = filled(32, 5);
+        UserKey winner = userKey(7L, 99, 2, ring.wrap(2, winnerKey, aad(7L, 99)));
+        when(repository.findById(7L)).thenReturn(Optional.empty(), Optional.of(winner));
+        when(repository.insertIfAbsent(eq(7L), anyInt(), anyInt(), any())).thenReturn(0);
+
+        DataKeyService.DataKey key = service.forUser(7L);
+
+        assertEquals(99, key.keyId());
+        assertArrayEquals(winnerKey, key.key().getEncoded());
+    }
+
+    @Test
+    public void testKeyThatWasNotStoredIsNotCached() {
+        when(repository.findById(7L)).thenReturn(Optional.empty());
+        when(repository.insertIfAbsent(eq(7L), anyInt(), anyInt(), any())).thenReturn(0);
+
+        assertThrows(IllegalStateException.class, () -> service.forUser(7L));
+        assertThrows(IllegalStateException.class, () -> service.forUser(7L));
+        verify(repository, times(4)).findById(7L);
+    }
+
+    @Test
+    public void testExistingKeyIsUnwrappedWithItsOwnerAndKeyId() {
+        byte[] dataKey = filled(32, 3);
+        when(repository.findById(7L)).thenReturn(Optional.of(userKey(7L, 11, 1, ring.wrap(1, dataKey, aad(7L, 11)))));
+        when(repository.findById(8L)).thenReturn(Optional.of(userKey(8L, 11, 1, ring.wrap(1, dataKey, aad(7L, 11)))));
+
+        assertArrayEquals(dataKey, service.forUser(7L).key().getEncoded());
+        // A wrapped key copied to another user does not unwrap
+        assertThrows(IllegalStateException.class, () -> service.forUser(8L));
+        verify(repository, never()).insertIfAbsent(any(), anyInt(), anyInt(), any());
+    }
+
+    @Test
+    public void testRewrapMovesTheKeyToTheActiveMasterKey() {
+        byte[] dataKey = filled(32, 4);
+        UserKey stored = userKey(7L, 11, 1, ring.wrap(1, dataKey, aad(7L, 11)));
+
+        assertTrue(service.rewrap(stored));
+
+        assertEquals(2, stored.getMasterKeyId());
+        assertEquals(11, stored.getKeyId());
+        assertArrayEquals(dataKey, ring.unwrap(2, stored.getWrappedKey(), aad(7L, 11)));
+    }
+
+    @Test
+    public void testRewrapRefusesAnUnknownMasterKey() {
+        byte[] wrapped = ring.wrap(1, filled(32, 4), aad(7L, 11));
+        UserKey stored = userKey(7L, 11, 9, wrapped);
+
+        assertFalse(service.rewrap(stored));
+        assertEquals(9, stored.getMasterKeyId());
+        assertArrayEquals(wrapped, stored.getWrappedKey());
+    }
+
+    // Same layout as DataKeyService: owner id then key id
+    private static byte[] aad(long userId, int keyId) {
+        return ByteBuffer.allocate(Long.BYTES + Integer.BYTES).putLong(userId).putInt(keyId).array();
+    }
+
+    private static UserKey userKey(Long userId, int keyId, int masterKeyId, byte[] wrapped) {
+        UserKey key = new UserKey();
+        key.setUserId(userId);
+        key.setKeyId(keyId);
+        key.setMasterKeyId(masterKeyId);
+        key.setWrappedKey(wrapped);
+        return key;
+    }
+
+    private static String key(int fill) {
+        return Base64.getEncoder().encodeToString(filled(32, fill));
+    }
+
+    private static byte[] filled(int length, int value) {
+        byte[] bytes = new byte[length];
+        Arrays.fill(bytes, (byte) value);
+        return bytes;
+    }
+}
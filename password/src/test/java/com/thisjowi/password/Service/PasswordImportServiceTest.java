@@ -0,0 +1,238 @@
+package com.thisjowi.password.Service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.thisjowi.password.Utils.Encryption;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PasswordImportServiceTest {
+
+    private static final long USER_ID = 7L;
+
+    private final PasswordService passwordService = mock(PasswordService.class);
+    private final Encryption encryption = mock(Encryption.class);
+    private final DataKeyService dataKeys = mock(DataKeyService.class);
+    private final VaultModeService vaultModes = mock(VaultModeService.class);
+    private final CollectionVersionCache collectionVersions = mock(CollectionVersionCache.class);
+    private final VaultSyncTree syncTree = mock(VaultSyncTree.class);
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<Object[]> inserted = new ArrayList<>();
+    private PasswordImportService importService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        // "Encrypt" to the plaintext bytes so the test can read back which column went where
+        when(encryption.encryptToBytes(anyLong(), anyString()))
+                .thenAnswer(invocation -> invocation.<String>getArgument(1).getBytes(StandardCharsets.UTF_8));
+        when(passwordService.domainIndex(anyLong(), anyString())).thenReturn("index");
+        when(passwordService.secretFingerprint(anyLong(), anyString())).thenReturn("fp");
+        when(passwordService.breached(anyList())).thenAnswer(invocation ->
+                invocation.<List<String>>getArgument(0).stream().map("pw1"::equals).toList());
+        doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        when(jdbcTemplate.batchUpdate(anyString(), any(List.class))).thenAnswer(invocation -> {
+            List<Object[]> rows = invocation.getArgument(1);
+            inserted.addAll(rows);
+            return new int[rows.size()];
+        });
+
+        importService = new PasswordImportService(passwordService, encryption, dataKeys, vaultModes, collectionVersions,
+                syncTree, jdbcTemplate, transactionTemplate, objectMapper, 2, 2);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        importService.shutdown();
+    }
+
+    @Test
+    public void testChromeExport() throws IOException {
+        List<JsonNode> report = importCsv("name,url,username,password,note\n"
+                + "GitHub,https://github.com/login,me,pw1,hello\n");
+
+        assertEquals(1, inserted.size());
+        assertRow(inserted.get(0), "GitHub", "https://github.com/login", "pw1");
+        assertEquals(true, inserted.get(0)[6]);
+        assertSummary(report, 1, 1, 0, 0);
+    }
+
+    @Test
+    public void testBitwardenExportSkipsNonLoginItems() throws IOException {
+        List<JsonNode> report = importCsv("folder,favorite,type,name,notes,fields,reprompt,login_uri,login_username,login_password,login_totp\n"
+                + ",,login,Mail,,,0,https://mail.example.com,me,pw2,\n"
+                + ",1,note,Secure note,\"multi\nline\",,0,,,,\n"
+                + ",,card,Visa,,,0,,,,\n");
+
+        assertEquals(1, inserted.size());
+        assertRow(inserted.get(0), "Mail", "https://mail.example.com", "pw2");
+        assertSummary(report, 3, 1, 0, 2);
+    }
+
+    @Test
+    public void testOnePasswordExport() throws IOException {
+        List<JsonNode> report = importCsv("\uFEFFTitle,Url,Username,Password,OTPAuth,Favorite,Archived,Tags,Notes\r\n"
+                + "Bank,https://bank.example.com,me,\"p,w\"\"3\",,false,false,,\r\n");
+
+        assertEquals(1, inserted.size());
+        assertRow(inserted.get(0), "Bank", "https://bank.example.com", "p,w\"3");
+        assertSummary(report, 1, 1, 0, 0);
+    }
+
+    @Test
+    public void testColumnOrderDoesNotMatter() throws IOException {
+        importCsv("password,extra,url,name\npw4,x,https://shop.example.com,Shop\n");
+
+        assertEquals(1, inserted.size());
+        assertRow(inserted.get(0), "Shop", "https://shop.example.com", "pw4");
+    }
+
+    @Test
+    public void testTitleFallsBackToTheWebsiteDomain() throws IOException {
+        importCsv("url,username,password\nhttps://login.example.com/sign-in,me,pw5\n");
+
+        assertEquals(1, inserted.size());
+        assertRow(inserted.get(0), "example.com", "https://login.example.com/sign-in", "pw5");
+    }
+
+    @Test
+    public void testHeaderWithoutPasswordColumnFailsTheImport() throws IOException {
+        List<JsonNode> report = importCsv("name,url,username\nGitHub,https://github.com,me\n");
+
+        assertEquals("error", report.get(0).get("type").asText());
+        assertEquals("CSV header has no password column", report.get(0).get("error").asText());
+        assertSummary(report, 0, 0, 1, 0);
+        verify(dataKeys, never()).forUser(any());
+        assertTrue(inserted.isEmpty());
+    }
+
+    @Test
+    public void testInvalidRowsAreReportedWithTheirLine() throws IOException {
+        List<JsonNode> report = importCsv("name,url,password\n"
+                + "NoPassword,https://a.example.com,\n"
+                + ",,pw6\n"
+                + "Good,,pw7\n");
+
+        assertEquals(1, inserted.size());
+        assertRow(inserted.get(0), "Good", null, "pw7");
+        assertEquals(2, report.get(0).get("line").asLong());
+        assertEquals("password is required", report.get(0).get("error").asText());
+        assertEquals(3, report.get(1).get("line").asLong());
+        assertEquals("title or website is required", report.get(1).get("error").asText());
+        assertSummary(report, 3, 1, 2, 0);
+    }
+
+    @Test
+    public void testUnterminatedQuoteStopsTheImport() throws IOException {
+        List<JsonNode> report = importCsv("name,password\n"
+                + "a,pw8\n"
+                + "b,\"pw9\n"
+                + "c,pw10\n");
+
+        assertEquals(1, inserted.size());
+        assertRow(inserted.get(0), "a", null, "pw8");
+        JsonNode error = report.stream().filter(line -> line.get("type").asText().equals("error")).findFirst().orElseThrow();
+        assertEquals(3, error.get("line").asLong());
+        assertSummary(report, 2, 1, 1, 0);
+    }
+
+    @Test
+    public void testEveryBatchIsInsertedAndBumpsTheCollection() throws IOException {
+        StringBuilder csv = new StringBuilder("name,password\n");
+        for (int i = 0; i < 5; i++) {
+            csv.append("item").append(i).append(",secret").append(i).append('\n');
+        }
+        List<JsonNode> report = importCsv(csv.toString());
+
+        assertEquals(5, inserted.size());
+        assertTrue(inserted.stream().noneMatch(row -> Boolean.TRUE.equals(row[6])));
+        // One breach check per batch, not per row
+        verify(passwordService, times(3)).breached(anyList());
+        ArgumentCaptor<Long> users = ArgumentCaptor.forClass(Long.class);
+        verify(collectionVersions, times(3)).bump(users.capture());
+        assertEquals(List.of(USER_ID, USER_ID, USER_ID), users.getAllValues());
+        assertSummary(report, 5, 5, 0, 0);
+    }
+
+    @Test
+    public void testMigrationStartedMidImportStopsIt() throws IOException {
+        // The first batch commits; the migration starts before the second one
+        doNothing().doThrow(new IllegalStateException("Vault is migrating to zero-knowledge mode"))
+                .when(vaultModes).lockServerWrite(USER_ID);
+        StringBuilder csv = new StringBuilder("name,password\n");
+        for (int i = 0; i < 5; i++) {
+            csv.append("item").append(i).append(",secret").append(i).append('\n');
+        }
+        List<JsonNode> report = importCsv(csv.toString());
+
+        assertEquals(2, inserted.size());
+        verify(collectionVersions, times(1)).bump(USER_ID);
+        long rejected = report.stream()
+                .filter(line -> "error".equals(line.get("type").asText()))
+                .filter(line -> "Vault is migrating to zero-knowledge mode".equals(line.get("error").asText()))
+                .count();
+        assertEquals(3, rejected);
+        assertSummary(report, 5, 2, 3, 0);
+    }
+
+    private List<JsonNode> importCsv(String csv) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        importService.importCsv(USER_ID, new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), out);
+        List<JsonNode> lines = new ArrayList<>();
+        for (String line : out.toString(StandardCharsets.UTF_8).split("\n")) {
+            lines.add(objectMapper.readTree(line));
+        }
+        return lines;
+    }
+
+    private static void assertRow(Object[] row, String name, String website, String password) {
+        assertEquals(USER_ID, row[0]);
+        assertEquals(name, text(row[1]));
+        assertEquals(website, text(row[2]));
+        assertEquals(password, text(row[3]));
+    }
+
+    private static String text(Object value) {
+        return value == null ? null : new String((byte[]) value, StandardCharsets.UTF_8);
+    }
+
+    private static void assertSummary(List<JsonNode> report, long records, long imported, long failed, long skipped) {
+        JsonNode summary = report.get(report.size() - 1);
+        assertEquals("summary", summary.get("type").asText());
+        assertEquals(records, summary.get("records").asLong());
+        assertEquals(imported, summary.get("imported").asLong());
+        assertEquals(failed, summary.get("failed").asLong());
+        assertEquals(skipped, summary.get("skipped").asLong());
+    }
+}
@@ -0,0 +1,307 @@
+package com.thisjowi.password.Service;
+
+import com.thisjowi.password.Entity.Password;
+import com.thisjowi.password.Entity.PasswordHealth;
+import com.thisjowi.password.Entity.PasswordSummary;
+import com.thisjowi.password.Repository.PasswordRepository;
+import com.thisjowi.password.Utils.Encryption;
+import com.thisjowi.password.Utils.JwtUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PasswordServiceTest {
+
+    private static final String AUTH = "Bearer token";
+    private static final long USER_ID = 7L;
+
+    private final PasswordRepository passwordRepository = mock(PasswordRepository.class);
+    private final JwtUtil jwtUtil = mock(JwtUtil.class);
+    private final Encryption encryption = mock(Encryption.class);
+    private final CollectionVersionCache collectionVersions = mock(CollectionVersionCache.class);
+    private final BreachCheckClient breachCheck = mock(BreachCheckClient.class);
+    private final VaultSyncTree syncTree = mock(VaultSyncTree.class);
+    private final VaultModeService vaultModes = mock(VaultModeService.class);
+    private final TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+    private PasswordService passwordService;
+
+    @BeforeEach
+    public void setUp() {
+        when(jwtUtil.extractUserId("token")).thenReturn(USER_ID);
+        // "Encrypt" to the plaintext bytes and back
+        when(encryption.encryptToBytes(anyLong(), anyString()))
+                .thenAnswer(invocation -> invocation.<String>getArgument(1).getBytes(StandardCharsets.UTF_8));
+        when(encryption.decryptBytes(anyLong(), any()))
+                .thenAnswer(invocation -> new String(invocation.<byte[]>getArgument(1), StandardCharsets.UTF_8));
+        when(encryption.blindIndex(anyLong(), anyString(), anyString()))
+                .thenAnswer(invocation -> invocation.getArgument(1) + ":" + invocation.getArgument(2));
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<Object>>getArgument(0).doInTransaction(null));
+
+        passwordService = new PasswordService(passwordRepository, jwtUtil, encryption, collectionVersions,
+                breachCheck, syncTree, vaultModes, transactionTemplate);
+    }
+
+    @Test
+    public void testSaveChecksTheModeInTheInsertTransaction() {
+        when(passwordRepository.save(any(Password.class))).thenAnswer(invocation -> {
+            Password p = invocation.getArgument(0);
+            p.setId(1L);
+            return p;
+        });
+
+        Password saved = passwordService.savePasswordForToken(AUTH, password("GitHub", "pw", "https://github.com"));
+
+        assertEquals("pw", saved.getPassword());
+        InOrder order = inOrder(vaultModes, passwordRepository);
+        order.verify(vaultModes).lockServerWrite(USER_ID);
+        order.verify(passwordRepository).save(any(Password.class));
+    }
+
+    @Test
+    public void testSaveRejectedWhenMigrationStartedAfterTheCachedCheck() {
+        // The cached check passed, but the locked one sees the new mode
+        doThrow(new IllegalStateException("Vault is migrating to zero-knowledge mode"))
+                .when(vaultModes).lockServerWrite(USER_ID);
+
+        assertThrows(IllegalStateException.class,
+                () -> passwordService.savePasswordForToken(AUTH, password("GitHub", "pw", "https://github.com")));
+        verify(passwordRepository, never()).save(any(Password.class));
+        verify(collectionVersions, never()).bump(anyLong());
+    }
+
+    @Test
+    public void testSaveRejectedByTheCachedCheckEncryptsNothing() {
+        doThrow(new IllegalStateException("Vault is zero-knowledge, use the vault blob endpoints"))
+                .when(vaultModes).checkServerWrite(USER_ID);
+
+        assertThrows(IllegalStateException.class,
+                () -> passwordService.savePasswordForToken(AUTH, password("GitHub", "pw", "https://github.com")));
+        verify(encryption, never()).encryptToBytes(anyLong(), anyString());
+        verify(vaultModes, never()).lockServerWrite(anyLong());
+    }
+
+    @Test
+    public void testUpdateRejectedWhenMigrationStartedAfterTheCachedCheck() {
+        doThrow(new IllegalStateException("Vault is migrating to zero-knowledge mode"))
+                .when(vaultModes).lockServerWrite(USER_ID);
+
+        assertThrows(IllegalStateException.class,
+                () -> passwordService.updatePasswordByToken(AUTH, 1L, password(null, "new", null)));
+        verify(passwordRepository, never()).updateOwned(anyLong(), anyLong(), any(), any(), any(), any(), any(), any());
+        verify(syncTree, never()).touch(anyLong(), anyLong());
+    }
+
+    @Test
+    public void testUpdateChecksTheModeInTheUpdateTransaction() {
+        Password row = password(null, null, null);
+        row.setId(1L);
+        row.setUserId(USER_ID);
+        row.setPasswordBin("new".getBytes(StandardCharsets.UTF_8));
+        when(passwordRepository.updateOwned(anyLong(), anyLong(), any(), any(), any(), any(), any(), any()))
+                .thenReturn(Optional.of(row));
+
+        Password updated = passwordService.updatePasswordByToken(AUTH, 1L, password(null, " new ", null));
+
+        assertEquals("new", updated.getPassword());
+        InOrder order = inOrder(vaultModes, passwordRepository);
+        order.verify(vaultModes).lockServerWrite(USER_ID);
+        order.verify(passwordRepository).updateOwned(anyLong(), anyLong(), any(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    public void testListDecryptsTitleAndWebsiteOnly() {
+        when(passwordRepository.findSummaryByUserId(USER_ID)).thenReturn(List.of(summary(3L, "GitHub", "https://github.com")));
+
+        List<PasswordSummary> list = passwordService.getPasswordsByUserId(USER_ID);
+
+        assertEquals(1, list.size());
+        assertEquals("GitHub", list.get(0).getName());
+        assertEquals("https://github.com", list.get(0).getWebsite());
+        // Two fields decrypted, and no query that reads the secret column
+        verify(encryption, times(2)).decryptBytes(anyLong(), any());
+        verify(passwordRepository, never()).findByUserId(anyLong());
+        verify(passwordRepository, never()).findOwned(anyLong(), anyLong());
+    }
+
+    @Test
+    public void testSecretOfOwnPassword() {
+        Password row = password(null, null, null);
+        row.setId(3L);
+        row.setUserId(USER_ID);
+        row.setPasswordBin("pw".getBytes(StandardCharsets.UTF_8));
+        when(passwordRepository.findOwned(3L, USER_ID)).thenReturn(Optional.of(row));
+
+        assertEquals("pw", passwordService.getSecretByToken(AUTH, 3L));
+    }
+
+    @Test
+    public void testSecretOfSomeoneElsesPasswordIsForbidden() {
+        when(passwordRepository.findOwned(3L, USER_ID)).thenReturn(Optional.empty());
+        when(passwordRepository.existsById(3L)).thenReturn(true);
+
+        assertThrows(SecurityException.class, () -> passwordService.getSecretByToken(AUTH, 3L));
+        verify(encryption, never()).decryptBytes(anyLong(), any());
+    }
+
+    @Test
+    public void testSecretOfMissingPasswordIsNotFound() {
+        when(passwordRepository.findOwned(3L, USER_ID)).thenReturn(Optional.empty());
+        when(passwordRepository.existsById(3L)).thenReturn(false);
+
+        assertThrows(IllegalArgumentException.class, () -> passwordService.getSecretByToken(AUTH, 3L));
+    }
+
+    @Test
+    public void testSecretWithInvalidTokenReadsNothing() {
+        when(jwtUtil.extractUserId("expired")).thenReturn(-1L);
+
+        assertThrows(IllegalArgumentException.class, () -> passwordService.getSecretByToken("Bearer expired", 3L));
+        verify(passwordRepository, never()).findOwned(anyLong(), anyLong());
+    }
+
+    @Test
+    public void testLookupQueriesTheCallersDomainIndex() {
+        Password row = password(null, null, null);
+        row.setId(3L);
+        row.setUserId(USER_ID);
+        row.setNameBin("GitHub".getBytes(StandardCharsets.UTF_8));
+        row.setPasswordBin("pw".getBytes(StandardCharsets.UTF_8));
+        when(passwordRepository.findByUserIdAndDomainIndex(USER_ID, "domain:github.com")).thenReturn(List.of(row));
+
+        List<Password> matches = passwordService.lookupByDomainForToken(AUTH, "https://gist.github.com/login");
+
+        assertEquals(1, matches.size());
+        assertEquals("GitHub", matches.get(0).getName());
+        // The index is keyed per user and the query is scoped to the caller
+        verify(encryption).blindIndex(USER_ID, "domain", "github.com");
+        verify(passwordRepository).findByUserIdAndDomainIndex(USER_ID, "domain:github.com");
+    }
+
+    @Test
+    public void testLookupOfUnreadableDomainQueriesNothing() {
+        assertEquals(List.of(), passwordService.lookupByDomainForToken(AUTH, "not a host"));
+        verify(passwordRepository, never()).findByUserIdAndDomainIndex(anyLong(), anyString());
+    }
+
+    @Test
+    public void testLookupWithInvalidTokenQueriesNothing() {
+        when(jwtUtil.extractUserId("expired")).thenReturn(-1L);
+
+        assertThrows(IllegalArgumentException.class, () -> passwordService.lookupByDomainForToken("Bearer expired", "github.com"));
+        verify(passwordRepository, never()).findByUserIdAndDomainIndex(anyLong(), anyString());
+    }
+
+    @Test
+    public void testLookupInZeroKnowledgeVaultIsRejected() {
+        doThrow(new IllegalStateException("Vault is zero-knowledge, use the vault blob endpoints"))
+                .when(vaultModes).checkServerRead(USER_ID);
+
+        assertThrows(IllegalStateException.class, () -> passwordService.lookupByDomainForToken(AUTH, "github.com"));
+        verify(passwordRepository, never()).findByUserIdAndDomainIndex(anyLong(), anyString());
+    }
+
+    @Test
+    public void testEqualSecretsShareAFingerprint() {
+        String fp = passwordService.secretFingerprint(USER_ID, "pw");
+
+        assertEquals(fp, passwordService.secretFingerprint(USER_ID, " pw\t"));
+        assertNotEquals(fp, passwordService.secretFingerprint(USER_ID, "pw2"));
+        assertNotEquals(fp, passwordService.secretFingerprint(8L, "pw"));
+    }
+
+    @Test
+    public void testEntryWithoutSecretHasNoFingerprint() {
+        // The reuse query skips empty fingerprints
+        assertEquals("", passwordService.secretFingerprint(USER_ID, null));
+        assertEquals("", passwordService.secretFingerprint(USER_ID, "  "));
+        when(passwordRepository.save(any(Password.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        Password saved = passwordService.savePasswordForToken(AUTH, password("Note", null, null));
+
+        assertEquals("", saved.getSecretFp());
+        verify(encryption, never()).blindIndex(anyLong(), eq("secret"), anyString());
+    }
+
+    @Test
+    public void testSaveAndUpdateOfTheSameSecretShareAFingerprint() {
+        when(passwordRepository.save(any(Password.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        Password saved = passwordService.savePasswordForToken(AUTH, password("A", " pw ", null));
+        Password row = password(null, null, null);
+        row.setId(2L);
+        row.setUserId(USER_ID);
+        when(passwordRepository.updateOwned(anyLong(), anyLong(), any(), any(), any(), any(), any(), any()))
+                .thenReturn(Optional.of(row));
+
+        passwordService.updatePasswordByToken(AUTH, 2L, password(null, "pw", null));
+
+        verify(passwordRepository).updateOwned(anyLong(), anyLong(), any(), any(), any(), any(),
+                eq(saved.getSecretFp()), any());
+    }
+
+    @Test
+    public void testHealthReportsReuseGroupsAndBreaches() {
+        when(passwordRepository.findReuseGroups(USER_ID)).thenReturn(List.of("1,4,9", "2,3"));
+        when(passwordRepository.countByUserId(USER_ID)).thenReturn(10L);
+        when(passwordRepository.findBreachedIds(USER_ID)).thenReturn(List.of(4L));
+
+        PasswordHealth health = passwordService.getHealthByToken(AUTH);
+
+        assertEquals(10L, health.getTotal());
+        assertEquals(5L, health.getReused());
+        assertEquals(List.of(List.of(1L, 4L, 9L), List.of(2L, 3L)), health.getReuseGroups());
+        assertEquals(List.of(4L), health.getBreached());
+        // Built from fingerprints and flags alone
+        verify(encryption, never()).decryptBytes(anyLong(), any());
+    }
+
+    @Test
+    public void testHealthWithoutReuse() {
+        when(passwordRepository.findReuseGroups(USER_ID)).thenReturn(List.of());
+        when(passwordRepository.countByUserId(USER_ID)).thenReturn(3L);
+        when(passwordRepository.findBreachedIds(USER_ID)).thenReturn(List.of());
+
+        PasswordHealth health = passwordService.getHealthByToken(AUTH);
+
+        assertEquals(0L, health.getReused());
+        assertEquals(List.of(), health.getReuseGroups());
+    }
+
+    private static Password password(String name, String secret, String website) {
+        Password p = new Password();
+        p.setName(name);
+        p.setPassword(secret);
+        p.setWebsite(website);
+        return p;
+    }
+
+    private static PasswordRepository.Summary summary(Long id, String name, String website) {
+        return new PasswordRepository.Summary() {
+            public Long getId() { return id; }
+            public String getName() { return null; }
+            public String getWebsite() { return null; }
+            public Long getUserId() { return USER_ID; }
+            public byte[] getNameBin() { return name.getBytes(StandardCharsets.UTF_8); }
+            public byte[] getWebsiteBin() { return website.getBytes(StandardCharsets.UTF_8); }
+        };
+    }
+}
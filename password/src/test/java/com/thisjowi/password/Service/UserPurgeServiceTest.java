@@ -0,0 +1,130 @@
+package com.thisjowi.password.Service;
+
+import com.thisjowi.password.Entity.UserPurge;
+import com.thisjowi.password.Repository.PasswordRepository;
+import com.thisjowi.password.Repository.UserPurgeRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class UserPurgeServiceTest {
+
+    private static final long USER_ID = 7L;
+
+    private final UserPurgeRepository purgeRepository = mock(UserPurgeRepository.class);
+    private final PasswordRepository passwordRepository = mock(PasswordRepository.class);
+    private final CollectionVersionCache collectionVersions = mock(CollectionVersionCache.class);
+    private final VaultSyncTree syncTree = mock(VaultSyncTree.class);
+    private final VaultModeService vaultModes = mock(VaultModeService.class);
+    private final DataKeyService dataKeys = mock(DataKeyService.class);
+    private final TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+    private UserPurgeService purgeService;
+
+    @BeforeEach
+    public void setUp() {
+        doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        doAnswer(invocation -> invocation.<TransactionCallback<Object>>getArgument(0).doInTransaction(null))
+                .when(transactionTemplate).execute(any());
+        purgeService = new UserPurgeService(purgeRepository, passwordRepository, collectionVersions, syncTree,
+                vaultModes, dataKeys, transactionTemplate, new SimpleMeterRegistry(), true, 2);
+    }
+
+    @Test
+    public void testRedeliveredRequestIsRecordedOnce() {
+        when(purgeRepository.existsById(USER_ID)).thenReturn(false, true);
+
+        purgeService.requestPurge(USER_ID);
+        purgeService.requestPurge(USER_ID);
+
+        verify(purgeRepository, times(1)).save(any(UserPurge.class));
+    }
+
+    @Test
+    public void testRestartedPurgeContinuesAfterTheCheckpoint() {
+        // An earlier run got as far as id 100 and removed 5 passwords
+        UserPurge purge = pending(100L, 5L);
+        when(passwordRepository.findIdsForPurge(USER_ID, 100L, PageRequest.of(0, 2))).thenReturn(List.of(101L, 105L));
+        when(passwordRepository.deleteRangeForPurge(USER_ID, 100L, 105L)).thenReturn(2);
+        when(passwordRepository.findIdsForPurge(USER_ID, 105L, PageRequest.of(0, 2))).thenReturn(List.of());
+
+        purgeService.run();
+
+        verify(passwordRepository, never()).findIdsForPurge(USER_ID, 0L, PageRequest.of(0, 2));
+        assertEquals(105L, purge.getLastId());
+        assertEquals(7L, purge.getPurged());
+        assertNotNull(purge.getCompletedAt());
+    }
+
+    @Test
+    public void testCompletionBumpsTheCollectionAndDropsTheKeys() {
+        UserPurge purge = pending(0L, 0L);
+        when(passwordRepository.findIdsForPurge(USER_ID, 0L, PageRequest.of(0, 2))).thenReturn(List.of(3L));
+        when(passwordRepository.deleteRangeForPurge(USER_ID, 0L, 3L)).thenReturn(1);
+        when(passwordRepository.findIdsForPurge(USER_ID, 3L, PageRequest.of(0, 2))).thenReturn(List.of());
+
+        purgeService.run();
+
+        assertNotNull(purge.getCompletedAt());
+        verify(collectionVersions).bump(USER_ID);
+        verify(syncTree).invalidate(USER_ID);
+        verify(dataKeys).deleteKey(USER_ID);
+        verify(vaultModes).forget(USER_ID);
+    }
+
+    @Test
+    public void testEmptyVaultCompletesWithoutBump() {
+        UserPurge purge = pending(0L, 0L);
+        when(passwordRepository.findIdsForPurge(USER_ID, 0L, PageRequest.of(0, 2))).thenReturn(List.of());
+
+        purgeService.run();
+
+        assertNotNull(purge.getCompletedAt());
+        verify(dataKeys).deleteKey(USER_ID);
+        verify(collectionVersions, never()).bump(any());
+        verify(syncTree, never()).invalidate(any());
+    }
+
+    @Test
+    public void testPurgeCompletedByAnotherInstanceIsLeftAlone() {
+        UserPurge listed = new UserPurge(USER_ID, LocalDateTime.now());
+        UserPurge locked = new UserPurge(USER_ID, listed.getRequestedAt());
+        locked.setCompletedAt(LocalDateTime.now());
+        when(purgeRepository.findByCompletedAtIsNullOrderByRequestedAtAsc(PageRequest.of(0, 10))).thenReturn(List.of(listed));
+        when(purgeRepository.findForUpdate(USER_ID)).thenReturn(Optional.of(locked));
+
+        purgeService.run();
+
+        verify(passwordRepository, never()).findIdsForPurge(any(), any(), any());
+        verify(collectionVersions, never()).bump(any());
+    }
+
+    private UserPurge pending(long lastId, long purged) {
+        UserPurge purge = new UserPurge(USER_ID, LocalDateTime.now());
+        purge.setLastId(lastId);
+        purge.setPurged(purged);
+        when(purgeRepository.findByCompletedAtIsNullOrderByRequestedAtAsc(PageRequest.of(0, 10))).thenReturn(List.of(purge));
+        when(purgeRepository.findForUpdate(USER_ID)).thenReturn(Optional.of(purge));
+        return purge;
+    }
+}
@@ -0,0 +1,80 @@
+package com.thisjowi.password.Service;
+
+import com.thisjowi.password.Entity.VaultMode.Mode;
+import com.thisjowi.password.Repository.VaultModeRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class VaultModeServiceTest {
+
+    private static final long USER_ID = 7L;
+
+    private final VaultModeRepository repository = mock(VaultModeRepository.class);
+    private final VaultModeService vaultModes = new VaultModeService(repository, 16);
+
+    @Test
+    public void testServerWriteLocksTheModeRowItRead() {
+        when(repository.findModeForShare(USER_ID)).thenReturn("SERVER");
+
+        vaultModes.lockServerWrite(USER_ID);
+
+        // A user without a row gets one first, so there is something to lock
+        InOrder order = inOrder(repository);
+        order.verify(repository).insertServerIfAbsent(USER_ID);
+        order.verify(repository).findModeForShare(USER_ID);
+        verify(repository, never()).findById(USER_ID);
+    }
+
+    @Test
+    public void testServerWriteRejectedWhileMigrating() {
+        when(repository.findModeForShare(USER_ID)).thenReturn("MIGRATING");
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> vaultModes.lockServerWrite(USER_ID));
+        assertEquals("Vault is migrating to zero-knowledge mode", e.getMessage());
+    }
+
+    @Test
+    public void testServerWriteRejectedInClientMode() {
+        when(repository.findModeForShare(USER_ID)).thenReturn("CLIENT");
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> vaultModes.lockServerWrite(USER_ID));
+        assertEquals("Vault is zero-knowledge, use the vault blob endpoints", e.getMessage());
+    }
+
+    @Test
+    public void testLockedCheckIgnoresTheCachedMode() {
+        // SERVER is cached, but a migration started since
+        when(repository.findById(USER_ID)).thenReturn(Optional.empty());
+        vaultModes.checkServerWrite(USER_ID);
+        when(repository.findModeForShare(USER_ID)).thenReturn("MIGRATING");
+
+        assertThrows(IllegalStateException.class, () -> vaultModes.lockServerWrite(USER_ID));
+    }
+
+    @Test
+    public void testLockForChangeTakesTheRowForUpdate() {
+        when(repository.findModeForUpdate(USER_ID)).thenReturn("MIGRATING");
+
+        assertEquals(Mode.MIGRATING, vaultModes.lockForChange(USER_ID));
+        InOrder order = inOrder(repository);
+        order.verify(repository).insertServerIfAbsent(USER_ID);
+        order.verify(repository).findModeForUpdate(USER_ID);
+    }
+
+    @Test
+    public void testRequireMode() {
+        VaultModeService.requireMode(Mode.MIGRATING, Mode.MIGRATING);
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> VaultModeService.requireMode(Mode.CLIENT, Mode.MIGRATING));
+        assertEquals("Vault is in CLIENT mode, expected MIGRATING", e.getMessage());
+    }
+}
@@ -0,0 +1,223 @@
+package com.thisjowi.password.Service;
+
+import com.thisjowi.password.Entity.SyncNode;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+public class VaultSyncTreeTest {
+
+    private static final long USER_ID = 7L;
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    // user -> id -> row, as the password table would return it
+    private final Map<Long, TreeMap<Long, Row>> table = new HashMap<>();
+    // Buckets asked for by each query; null for a full pass over the vault
+    private final List<List<Integer>> queries = new ArrayList<>();
+    private Runnable duringNextQuery;
+
+    private record Row(long version, String ciphertext) {
+    }
+
+    @BeforeEach
+    public void setUp() {
+        doAnswer(invocation -> {
+            String sql = invocation.getArgument(0);
+            RowCallbackHandler handler = invocation.getArgument(1);
+            Object[] args = Arrays.copyOfRange(invocation.getArguments(), 2, invocation.getArguments().length);
+            if (args.length == 1 && args[0] instanceof Object[] raw) {
+                args = raw;
+            }
+            Long userId = (Long) args[0];
+            List<Integer> buckets = null;
+            if (sql.contains(" IN (")) {
+                buckets = new ArrayList<>();
+                for (int i = 1; i < args.length; i++) {
+                    buckets.add((Integer) args[i]);
+                }
+            }
+            queries.add(buckets);
+            // What the query sees is fixed when it starts
+            List<Map.Entry<Long, Row>> snapshot = new ArrayList<>(table.getOrDefault(userId, new TreeMap<>()).entrySet());
+            if (duringNextQuery != null) {
+                Runnable write = duringNextQuery;
+                duringNextQuery = null;
+                write.run();
+            }
+            for (Map.Entry<Long, Row> row : snapshot) {
+                if (buckets == null || buckets.contains(VaultSyncTree.bucketOf(row.getKey()))) {
+                    handler.processRow(resultSet(row.getKey(), row.getValue()));
+                }
+            }
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), any(Object[].class));
+
+        for (long id = 1; id <= 600; id += 7) {
+            put(USER_ID, id, 1, "secret" + id);
+        }
+    }
+
+    @Test
+    public void testRootIsStableWithoutWrites() {
+        VaultSyncTree tree = new VaultSyncTree(jdbcTemplate, 10);
+        String root = tree.rootHash(USER_ID);
+
+        assertEquals(root, tree.rootHash(USER_ID));
+        assertEquals(root, tree.node(USER_ID, "").getHash());
+        // Built with one pass over the vault, then served from memory
+        assertEquals(1, queries.size());
+        assertNull(queries.get(0));
+        // Same rows, same root, whichever instance built it
+        assertEquals(root, new VaultSyncTree(jdbcTemplate, 10).rootHash(USER_ID));
+    }
+
+    @Test
+    public void testOneChangedBucketChangesOnlyItsPath() {
+        VaultSyncTree tree = new VaultSyncTree(jdbcTemplate, 10);
+        SyncNode rootBefore = tree.node(USER_ID, "");
+        SyncNode innerBefore = tree.node(USER_ID, "2");
+        SyncNode bucketBefore = tree.node(USER_ID, "2b");
+        long id = 0x2b;
+        assertEquals(0x2b, VaultSyncTree.bucketOf(id));
+        assertTrue(bucketBefore.getEntries().stream().anyMatch(entry -> entry.getId() == id));
+
+        put(USER_ID, id, 2, "changed");
+        tree.touch(USER_ID, id);
+        SyncNode rootAfter = tree.node(USER_ID, "");
+
+        assertNotEquals(rootBefore.getHash(), rootAfter.getHash());
+        assertEquals(List.of(2), changedChildren(rootBefore, rootAfter));
+        SyncNode innerAfter = tree.node(USER_ID, "2");
+        assertEquals(List.of(0xb), changedChildren(innerBefore, innerAfter));
+        // Only the stale bucket was read again
+        assertEquals(List.of(0x2b), queries.get(queries.size() - 1));
+        SyncNode bucketAfter = tree.node(USER_ID, "2b");
+        assertEquals(2L, bucketAfter.getEntries().stream().filter(entry -> entry.getId() == id).findFirst().orElseThrow().getVersion());
+        assertEquals(new VaultSyncTree(jdbcTemplate, 10).rootHash(USER_ID), rootAfter.getHash());
+    }
+
+    @Test
+    public void testWriteDuringRefreshStaysStale() {
+        VaultSyncTree tree = new VaultSyncTree(jdbcTemplate, 10);
+        tree.rootHash(USER_ID);
+        put(USER_ID, 8L, 2, "first");
+        tree.touch(USER_ID, 8L);
+        // Commits while the refresh query runs, after its snapshot was taken
+        duringNextQuery = () -> {
+            put(USER_ID, 8L, 3, "second");
+            tree.touch(USER_ID, 8L);
+        };
+
+        String raced = tree.rootHash(USER_ID);
+        String expected = new VaultSyncTree(jdbcTemplate, 10).rootHash(USER_ID);
+        assertNotEquals(expected, raced);
+
+        int before = queries.size();
+        assertEquals(expected, tree.rootHash(USER_ID));
+        assertEquals(before + 1, queries.size());
+        assertEquals(List.of(VaultSyncTree.bucketOf(8L)), queries.get(queries.size() - 1));
+    }
+
+    @Test
+    public void testEvictedTreeIsRebuilt() {
+        VaultSyncTree tree = new VaultSyncTree(jdbcTemplate, 1);
+        put(8L, 3L, 1, "other");
+        String root = tree.rootHash(USER_ID);
+        tree.rootHash(8L);
+
+        // The tree of USER_ID was evicted, so nothing records this write
+        put(USER_ID, 8L, 2, "changed");
+        tree.touch(USER_ID, 8L);
+        int before = queries.size();
+        String rebuilt = tree.rootHash(USER_ID);
+
+        assertNotEquals(root, rebuilt);
+        assertEquals(new VaultSyncTree(jdbcTemplate, 10).rootHash(USER_ID), rebuilt);
+        assertNull(queries.get(before), "rebuilt with a full pass");
+    }
+
+    @Test
+    public void testTouchWaitsForTheCommit() {
+        VaultSyncTree tree = new VaultSyncTree(jdbcTemplate, 10);
+        String root = tree.rootHash(USER_ID);
+        int before = queries.size();
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            tree.touch(USER_ID, 8L);
+            tree.invalidate(USER_ID);
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        // Rolled back: the tree is untouched and nothing is read again
+        assertEquals(root, tree.rootHash(USER_ID));
+        assertEquals(before, queries.size());
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            put(USER_ID, 8L, 2, "changed");
+            tree.touch(USER_ID, 8L);
+            assertEquals(root, tree.rootHash(USER_ID), "not visible before the commit");
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        assertNotEquals(root, tree.rootHash(USER_ID));
+    }
+
+    @Test
+    public void testInvalidPathsAreRejected() {
+        VaultSyncTree tree = new VaultSyncTree(jdbcTemplate, 10);
+
+        assertThrows(IllegalArgumentException.class, () -> tree.node(USER_ID, "abc"));
+        assertThrows(IllegalArgumentException.class, () -> tree.node(USER_ID, "g"));
+        assertEquals("2b", tree.node(USER_ID, "2B").getPath());
+    }
+
+    private void put(Long userId, long id, long version, String ciphertext) {
+        table.computeIfAbsent(userId, u -> new TreeMap<>()).put(id, new Row(version, ciphertext));
+    }
+
+    private static List<Integer> changedChildren(SyncNode before, SyncNode after) {
+        List<Integer> changed = new ArrayList<>();
+        for (int i = 0; i < VaultSyncTree.FANOUT; i++) {
+            if (!before.getChildren().get(i).equals(after.getChildren().get(i))) {
+                changed.add(i);
+            }
+        }
+        return changed;
+    }
+
+    // Row of the leaf query: only the columns the tree reads
+    private static ResultSet resultSet(long id, Row row) {
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "getLong" -> "id".equals(args[0]) ? id : row.version();
+                    case "getBytes" -> "password_bin".equals(args[0]) ? row.ciphertext().getBytes(StandardCharsets.UTF_8) : null;
+                    case "getString" -> null;
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
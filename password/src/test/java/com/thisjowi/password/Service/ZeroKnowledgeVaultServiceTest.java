@@ -0,0 +1,123 @@
+package com.thisjowi.password.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.thisjowi.password.Entity.VaultMode.Mode;
+import com.thisjowi.password.Entity.VaultStatus;
+import com.thisjowi.password.Repository.PasswordRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ZeroKnowledgeVaultServiceTest {
+
+    private static final String AUTH = "Bearer token";
+    private static final long USER_ID = 7L;
+
+    private final PasswordService passwordService = mock(PasswordService.class);
+    private final PasswordRepository passwordRepository = mock(PasswordRepository.class);
+    private final VaultModeService vaultModes = mock(VaultModeService.class);
+    private final DataKeyService dataKeys = mock(DataKeyService.class);
+    private final TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+    private ZeroKnowledgeVaultService vaultService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        when(passwordService.extractUserIdFromToken(AUTH)).thenReturn(USER_ID);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<Object>>getArgument(0).doInTransaction(null));
+        doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+
+        vaultService = new ZeroKnowledgeVaultService(passwordService, passwordRepository, vaultModes, dataKeys,
+                mock(CollectionVersionCache.class), mock(VaultSyncTree.class), transactionTemplate,
+                new ObjectMapper(), mock(DataSource.class));
+    }
+
+    @Test
+    public void testStartMovesServerToMigrating() {
+        when(vaultModes.lockForChange(USER_ID)).thenReturn(Mode.SERVER);
+        when(passwordRepository.countByUserIdAndClientBlobIsNull(USER_ID)).thenReturn(3L);
+
+        VaultStatus status = vaultService.startMigrationByToken(AUTH);
+
+        assertEquals(Mode.MIGRATING, status.getMode());
+        assertEquals(3L, status.getRemaining());
+        // The mode row is locked before it changes, so writes in flight finish first
+        InOrder order = inOrder(vaultModes);
+        order.verify(vaultModes).lockForChange(USER_ID);
+        order.verify(vaultModes).setMode(USER_ID, Mode.MIGRATING);
+    }
+
+    @Test
+    public void testStartIsIdempotentWhileMigrating() {
+        when(vaultModes.lockForChange(USER_ID)).thenReturn(Mode.MIGRATING);
+
+        assertEquals(Mode.MIGRATING, vaultService.startMigrationByToken(AUTH).getMode());
+        verify(vaultModes, never()).setMode(anyLong(), any());
+    }
+
+    @Test
+    public void testStartRejectedInClientMode() {
+        when(vaultModes.lockForChange(USER_ID)).thenReturn(Mode.CLIENT);
+
+        assertThrows(IllegalStateException.class, () -> vaultService.startMigrationByToken(AUTH));
+        verify(vaultModes, never()).setMode(anyLong(), any());
+    }
+
+    @Test
+    public void testCompleteWithEntriesLeftStaysMigrating() {
+        when(vaultModes.lockForChange(USER_ID)).thenReturn(Mode.MIGRATING);
+        when(passwordRepository.countByUserIdAndClientBlobIsNull(USER_ID)).thenReturn(2L);
+
+        VaultStatus status = vaultService.completeMigrationByToken(AUTH);
+
+        assertEquals(Mode.MIGRATING, status.getMode());
+        assertEquals(2L, status.getRemaining());
+        verify(vaultModes, never()).setMode(anyLong(), any());
+        verify(dataKeys, never()).deleteKey(anyLong());
+    }
+
+    @Test
+    public void testCompleteMovesMigratingToClientAndDeletesTheKey() {
+        when(vaultModes.lockForChange(USER_ID)).thenReturn(Mode.MIGRATING);
+        when(passwordRepository.countByUserIdAndClientBlobIsNull(USER_ID)).thenReturn(0L);
+
+        VaultStatus status = vaultService.completeMigrationByToken(AUTH);
+
+        assertEquals(Mode.CLIENT, status.getMode());
+        // Counted under the lock, so no server-side write can land between the count and the switch
+        InOrder order = inOrder(vaultModes, passwordRepository, dataKeys);
+        order.verify(vaultModes).lockForChange(USER_ID);
+        order.verify(passwordRepository).countByUserIdAndClientBlobIsNull(USER_ID);
+        order.verify(vaultModes).setMode(USER_ID, Mode.CLIENT);
+        order.verify(dataKeys).deleteKey(USER_ID);
+    }
+
+    @Test
+    public void testCompleteRejectedUnlessMigrating() {
+        when(vaultModes.lockForChange(USER_ID)).thenReturn(Mode.SERVER);
+
+        assertThrows(IllegalStateException.class, () -> vaultService.completeMigrationByToken(AUTH));
+        verify(passwordRepository, never()).countByUserIdAndClientBlobIsNull(anyLong());
+        verify(dataKeys, never()).deleteKey(anyLong());
+    }
+}
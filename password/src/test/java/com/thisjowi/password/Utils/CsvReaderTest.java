@@ -0,0 +1,105 @@
+package com.thisjowi.password.Utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CsvReaderTest {
+
+    @Test
+    public void testQuotedCommasAndLineBreaks() throws IOException {
+        CsvReader csv = new CsvReader(new StringReader("name,note\n\"Acme, Inc\",\"first line\nsecond line\"\nnext,row\n"));
+
+        assertEquals(List.of("name", "note"), csv.next());
+        assertEquals(List.of("Acme, Inc", "first line\nsecond line"), csv.next());
+        assertEquals(2, csv.recordLine());
+        assertEquals(List.of("next", "row"), csv.next());
+        assertEquals(4, csv.recordLine(), "the embedded line break counts towards line numbers");
+        assertNull(csv.next());
+    }
+
+    @Test
+    public void testDoubledQuotes() throws IOException {
+        CsvReader csv = new CsvReader(new StringReader("\"say \"\"hi\"\"\",\"\"\"\",\"\"\n"));
+
+        assertEquals(List.of("say \"hi\"", "\"", ""), csv.next());
+        assertNull(csv.next());
+    }
+
+    @Test
+    public void testCrlfAndMissingFinalLineBreak() throws IOException {
+        CsvReader csv = new CsvReader(new StringReader("a,b\r\n\"c\r\nd\",e\r\nf,g"));
+
+        assertEquals(List.of("a", "b"), csv.next());
+        assertEquals(List.of("c\r\nd", "e"), csv.next());
+        assertEquals(List.of("f", "g"), csv.next());
+        assertEquals(4, csv.recordLine());
+        assertNull(csv.next());
+    }
+
+    @Test
+    public void testEmptyFieldsAreKept() throws IOException {
+        CsvReader csv = new CsvReader(new StringReader(",a,\n\n"));
+
+        assertEquals(List.of("", "a", ""), csv.next());
+        assertEquals(List.of(""), csv.next());
+        assertNull(csv.next());
+    }
+
+    @Test
+    public void testByteOrderMarkIsSkipped() throws IOException {
+        CsvReader csv = new CsvReader(new StringReader("\uFEFFname,password\nx,y\n"));
+
+        assertEquals(List.of("name", "password"), csv.next());
+        assertEquals(List.of("x", "y"), csv.next());
+    }
+
+    @Test
+    public void testUnterminatedQuoteFails() throws IOException {
+        CsvReader csv = new CsvReader(new StringReader("a,b\n\"open,never closed\nmore,rows\n"));
+
+        assertEquals(List.of("a", "b"), csv.next());
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, csv::next);
+        assertTrue(e.getMessage().contains("line 2"), e.getMessage());
+    }
+
+    @Test
+    public void testOversizedRecordFails() throws IOException {
+        StringBuilder input = new StringBuilder("ok\n\"");
+        input.append("x".repeat((1 << 20) + 1));
+        CsvReader csv = new CsvReader(new StringReader(input.toString()));
+
+        assertEquals(List.of("ok"), csv.next());
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, csv::next);
+        assertTrue(e.getMessage().contains("too large"), e.getMessage());
+    }
+
+    @Test
+    public void testRecordsSpanningReadBuffers() throws IOException {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            input.append("row").append(i).append(",\"quoted, value ").append(i).append("\"\r\n");
+        }
+        // Hand out a few characters per read so fields, quotes and CRLF pairs straddle buffer refills
+        Reader trickle = new StringReader(input.toString()) {
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                return super.read(buffer, offset, Math.min(length, 3));
+            }
+        };
+        CsvReader csv = new CsvReader(trickle);
+
+        List<List<String>> records = new ArrayList<>();
+        for (List<String> record = csv.next(); record != null; record = csv.next()) {
+            records.add(record);
+        }
+        assertEquals(5000, records.size());
+        assertEquals(List.of("row4999", "quoted, value 4999"), records.get(4999));
+    }
+}
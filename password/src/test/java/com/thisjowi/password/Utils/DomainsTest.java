@@ -0,0 +1,54 @@
+package com.thisjowi.password.Utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DomainsTest {
+
+    @Test
+    public void testSubdomainsShareTheRegistrableDomain() {
+        assertEquals("github.com", Domains.registrableDomain("github.com"));
+        assertEquals("github.com", Domains.registrableDomain("www.github.com"));
+        assertEquals("github.com", Domains.registrableDomain("gist.github.com"));
+        assertEquals("github.com", Domains.registrableDomain("a.b.c.github.com"));
+    }
+
+    @Test
+    public void testSchemePathPortAndCredentialsAreDropped() {
+        assertEquals("github.com", Domains.registrableDomain("https://www.github.com/login?next=/#top"));
+        assertEquals("github.com", Domains.registrableDomain("http://github.com:8443"));
+        assertEquals("github.com", Domains.registrableDomain("github.com:8443/path"));
+        assertEquals("github.com", Domains.registrableDomain("ftp://user:pw@files.github.com/"));
+        assertEquals("github.com", Domains.registrableDomain("  HTTPS://WWW.GitHub.COM.  "));
+    }
+
+    @Test
+    public void testMultiPartSuffixesKeepSitesApart() {
+        assertEquals("example.co.uk", Domains.registrableDomain("https://login.example.co.uk"));
+        assertEquals("other.co.uk", Domains.registrableDomain("other.co.uk"));
+        assertEquals("example.com.au", Domains.registrableDomain("www.example.com.au"));
+    }
+
+    @Test
+    public void testInternationalizedNamesAreMatchedInPunycode() {
+        assertEquals("xn--bcher-kva.de", Domains.registrableDomain("https://www.b\u00fccher.de/"));
+        assertEquals("xn--bcher-kva.de", Domains.registrableDomain("shop.B\u00dcCHER.de"));
+        assertEquals("xn--bcher-kva.de", Domains.registrableDomain("xn--bcher-kva.de"));
+    }
+
+    @Test
+    public void testHostsWithoutPublicSuffixAreKept() {
+        assertEquals("localhost", Domains.registrableDomain("http://localhost:8080/admin"));
+        assertEquals("192.168.0.1", Domains.registrableDomain("https://192.168.0.1:8443/"));
+        assertEquals("[::1]", Domains.registrableDomain("http://[::1]:8080/"));
+    }
+
+    @Test
+    public void testUnreadableValuesHaveNoDomain() {
+        assertNull(Domains.registrableDomain(null));
+        assertNull(Domains.registrableDomain("   "));
+        assertNull(Domains.registrableDomain("https://"));
+        assertNull(Domains.registrableDomain("not a host"));
+    }
+}
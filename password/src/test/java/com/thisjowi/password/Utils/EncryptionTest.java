@@ -0,0 +1,78 @@
+package com.thisjowi.password.Utils;
+
+import com.thisjowi.password.Service.DataKeyService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class EncryptionTest {
+
+    private static final String JWT_SECRET = "test-jwt-secret-that-is-long-enough-for-aes";
+    private static final SecretKeySpec DATA_KEY = new SecretKeySpec(new byte[32], "AES");
+
+    private final DataKeyService dataKeys = mock(DataKeyService.class);
+    private Encryption encryption;
+    private int currentKeyId;
+
+    @BeforeEach
+    public void setUp() {
+        currentKeyId = 42;
+        when(dataKeys.forUser(any())).thenAnswer(invocation -> new DataKeyService.DataKey(currentKeyId, DATA_KEY));
+        encryption = new Encryption(JWT_SECRET, dataKeys);
+    }
+
+    @Test
+    public void testFormat2HeaderCarriesTheDataKeyId() {
+        byte[] stored = encryption.encryptToBytes(7L, "s3cret");
+
+        assertEquals(2, stored[0]);
+        assertEquals(42, ByteBuffer.wrap(stored, 1, Integer.BYTES).getInt());
+        assertFalse(encryption.isLegacy(stored));
+        assertEquals("s3cret", encryption.decryptBytes(7L, stored));
+    }
+
+    @Test
+    public void testValueIsBoundToItsOwner() {
+        byte[] stored = encryption.encryptToBytes(7L, "s3cret");
+
+        // Same data key, other owner in the AAD
+        assertThrows(RuntimeException.class, () -> encryption.decryptBytes(8L, stored));
+    }
+
+    @Test
+    public void testHeaderIsAuthenticated() {
+        byte[] stored = encryption.encryptToBytes(7L, "s3cret");
+        byte[] relabelled = Arrays.copyOf(stored, stored.length);
+        ByteBuffer.wrap(relabelled, 1, Integer.BYTES).putInt(43);
+        currentKeyId = 43;
+
+        assertThrows(RuntimeException.class, () -> encryption.decryptBytes(7L, relabelled));
+    }
+
+    @Test
+    public void testKeyIdMismatchIsRejected() {
+        byte[] stored = encryption.encryptToBytes(7L, "s3cret");
+        currentKeyId = 43;
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> encryption.decryptBytes(7L, stored));
+        assertTrue(e.getMessage().contains("data key 42"), e.getMessage());
+    }
+
+    @Test
+    public void testUnknownFormatIsRejected() {
+        assertThrows(RuntimeException.class, () -> encryption.decryptBytes(7L, new byte[]{9, 0, 0, 0, 0}));
+    }
+
+    @Test
+    public void testLegacyBase64RoundTrip() {
+        assertEquals("old value", encryption.decrypt(encryption.encrypt("old value")));
+    }
+}
@@ -0,0 +1,63 @@
+package com.thisjowi.password.Utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MasterKeyRingTest {
+
+    private static final String JWT_SECRET = "test-jwt-secret-that-is-long-enough-for-aes";
+    private static final byte[] DATA_KEY = filled(32, 9);
+    private static final byte[] AAD = "user-7:key-5".getBytes();
+
+    @Test
+    public void testWrapUnwrapRoundTrip() {
+        MasterKeyRing ring = ring(2);
+        byte[] wrapped = ring.wrap(2, DATA_KEY, AAD);
+
+        assertFalse(Arrays.equals(DATA_KEY, Arrays.copyOfRange(wrapped, 12, 44)));
+        assertArrayEquals(DATA_KEY, ring.unwrap(2, wrapped, AAD));
+    }
+
+    @Test
+    public void testUnwrapNeedsTheSameAadAndMasterKey() {
+        MasterKeyRing ring = ring(2);
+        byte[] wrapped = ring.wrap(1, DATA_KEY, AAD);
+
+        assertThrows(IllegalStateException.class, () -> ring.unwrap(1, wrapped, "user-8:key-5".getBytes()));
+        assertThrows(IllegalStateException.class, () -> ring.unwrap(2, wrapped, AAD));
+        assertThrows(IllegalStateException.class, () -> ring.unwrap(3, wrapped, AAD));
+    }
+
+    @Test
+    public void testActiveKeyDefaultsToTheHighestId() {
+        assertEquals(2, ring(-1).activeId());
+        assertTrue(ring(-1).has(0));
+        assertThrows(IllegalArgumentException.class, () -> ring(5));
+    }
+
+    @Test
+    public void testWithoutConfigurationKeyZeroIsActive() {
+        MasterKeyRing ring = new MasterKeyRing("", -1, JWT_SECRET);
+
+        assertEquals(0, ring.activeId());
+        assertArrayEquals(DATA_KEY, ring.unwrap(0, ring.wrap(0, DATA_KEY, AAD), AAD));
+    }
+
+    static MasterKeyRing ring(int activeId) {
+        return new MasterKeyRing("1:" + key(1) + ",2:" + key(2), activeId, JWT_SECRET);
+    }
+
+    static String key(int fill) {
+        return Base64.getEncoder().encodeToString(filled(32, fill));
+    }
+
+    private static byte[] filled(int length, int value) {
+        byte[] bytes = new byte[length];
+        Arrays.fill(bytes, (byte) value);
+        return bytes;
+    }
+}